@@ -16,6 +16,8 @@ import android.util.Log;
 import android.widget.Toast;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -73,6 +75,28 @@ public class Airspy implements Runnable {
 	public static final int AIRSPY_SAMPLE_INT16_IQ = 2;			// 2 * 16bit int per sample
 	public static final int AIRSPY_SAMPLE_INT16_REAL = 3;		// 1 * 16bit int per sample
 	public static final int AIRSPY_SAMPLE_UINT16_REAL = 4;		// 1 * 16bit unsigned int per sample (raw)
+	public static final int AIRSPY_SAMPLE_INT8_IQ = 5;			// 2 * 8bit signed int per sample
+	public static final int AIRSPY_SAMPLE_UINT8_IQ = 6;			// 2 * 8bit unsigned int per sample (rtl-sdr compatible)
+	public static final int AIRSPY_SAMPLE_INT8_IQ_SCALED = 7;	// 2 * 8bit signed int per sample; block scaled (first
+																// byte of each buffer is the exponent of the block)
+
+	// Execution models:
+	public static final int AIRSPY_EXECUTION_MODEL_INLINE = 0;			// conversion runs on the USB thread
+	public static final int AIRSPY_EXECUTION_MODEL_PIPELINED = 1;		// conversion runs in a separate thread
+	public static final int AIRSPY_EXECUTION_MODEL_WORKERS = 2;			// conversion runs in multiple worker threads
+
+	// Layouts of the float and int16 IQ buffers:
+	public static final int AIRSPY_IQ_LAYOUT_INTERLEAVED = 0;		// I,Q,I,Q,... (default)
+	public static final int AIRSPY_IQ_LAYOUT_SPLIT = 1;			// I values in the first half of the buffer, Q values in the second half
+
+	// Combined gain presets (same tables as in libairspy; index 0 is the highest gain):
+	public static final int GAIN_PRESET_COUNT = 22;
+	private static final int[] LINEARITY_VGA_GAINS = { 13, 12, 11, 11, 11, 11, 11, 10, 10, 10, 10, 10, 10, 10, 10, 10, 9, 8, 7, 6, 5, 4 };
+	private static final int[] LINEARITY_MIXER_GAINS = { 12, 12, 11, 9, 8, 7, 6, 6, 5, 0, 0, 1, 0, 0, 2, 2, 1, 1, 1, 1, 0, 0 };
+	private static final int[] LINEARITY_LNA_GAINS = { 14, 14, 14, 13, 12, 10, 9, 9, 8, 9, 8, 6, 5, 3, 1, 0, 0, 0, 0, 0, 0, 0 };
+	private static final int[] SENSITIVITY_VGA_GAINS = { 13, 12, 11, 10, 9, 8, 7, 6, 5, 5, 5, 5, 5, 4, 4, 4, 4, 4, 4, 4, 4, 4 };
+	private static final int[] SENSITIVITY_MIXER_GAINS = { 12, 12, 12, 12, 11, 10, 10, 9, 9, 8, 7, 4, 4, 4, 3, 2, 2, 1, 0, 0, 0, 0 };
+	private static final int[] SENSITIVITY_LNA_GAINS = { 14, 14, 14, 14, 14, 14, 14, 14, 14, 13, 12, 12, 9, 9, 8, 7, 6, 5, 3, 2, 1, 0 };
 
 	// Attributes to hold the USB related objects:
 	private UsbManager usbManager = null;
@@ -87,6 +111,9 @@ public class Airspy implements Runnable {
 	private boolean packingEnabled = false;							// is packing currently enabled in the Airspy?
 	private boolean rawMode = false;								// if true, the conversion thread is bypassed and the
 																	// user will access the usbQueue directly
+	private int executionModel = AIRSPY_EXECUTION_MODEL_PIPELINED;	// execution model of the conversion
+	private int numConverterWorkers = 2;							// number of workers (AIRSPY_EXECUTION_MODEL_WORKERS)
+	private int activeExecutionModel = AIRSPY_EXECUTION_MODEL_PIPELINED;	// execution model used while receiving
 	private Thread usbThread = null;								// hold the receiver Thread if running
 	private int usbQueueSize = 16;									// Size of the usbQueue
 	private ArrayBlockingQueue<byte[]> usbQueue = null;				// queue that buffers samples received from the Airspy
@@ -101,9 +128,34 @@ public class Airspy implements Runnable {
 																			// the conversion thread (if sample type is float)
 	private ArrayBlockingQueue<float[]> conversionBufferPoolFloat = null;	// queue that holds spare buffers which can be
 																			// used for conversion processing (if sample type is float)
+	private ArrayBlockingQueue<byte[]> conversionQueueInt8 = null;			// queue that buffers samples that were processed by
+																			// the conversion thread (if sample type is int8)
+	private ArrayBlockingQueue<byte[]> conversionBufferPoolInt8 = null;		// queue that holds spare buffers which can be
+																			// used for conversion processing (if sample type is int8)
 	private int usbPacketSize = 1024 * 16;							// Buffer Size of each UsbRequest
-	private AirspyInt16Converter int16Converter = null;				// Reference to the int16 converter
-	private AirspyFloatConverter floatConverter = null;				// Reference to the float converter
+	private AirspyInt16Converter[] int16Converters = null;			// References to the int16 converter(s)
+	private AirspyFloatConverter[] floatConverters = null;			// References to the float converter(s)
+	private ArrayList<ArrayBlockingQueue<byte[]>> workerQueues = null;	// input queues of the converter workers
+	private AirspyInt8Converter int8Converter = null;				// Reference to the int8 converter
+	private AirspyTimeMachine timeMachine = null;					// Pre-trigger capture buffer (may be null)
+	private AirspyStreamingConfig streamingConfig = null;			// Buffer configuration (null: default sizes)
+	private AirspyTransferMonitor transferMonitor = new AirspyTransferMonitor();	// USB transfer statistics
+	private AirspyAutotuner autotuner = null;						// Online autotuning of the transfer settings (may be null)
+	private boolean autotunerEvaluated = false;						// true after the autotuner evaluated the current settings
+	private UsbRequest[] usbRequests = null;						// UsbRequests of the receiver thread
+	private AirspySampleStatistics sampleStatistics = null;		// Peak, RMS and clipping of the samples (may be null)
+	private AirspyDspPipeline<float[]> floatPipeline = null;		// Additional stages after the float conversion (may be null)
+	private AirspyDspPipeline<short[]> int16Pipeline = null;		// Additional stages after the int16 conversion (may be null)
+	private int hilbertPreset = AirspyFilterDesign.HILBERT_PRESET_NORMAL;	// Hilbert kernel of the IQ converters
+	private int[] conversionModes = new int[AIRSPY_SAMPLE_INT8_IQ_SCALED + 1];	// AirspyConversionTable.MODE_* per sample type
+	private float[] conversionDcOffsets = new float[AIRSPY_SAMPLE_INT8_IQ_SCALED + 1];	// DC offset of the lookup table per sample type
+	private float[] conversionScales = new float[AIRSPY_SAMPLE_INT8_IQ_SCALED + 1];	// scale of the lookup table per sample type
+	private int iqLayout = AIRSPY_IQ_LAYOUT_INTERLEAVED;	// layout of the float and int16 IQ buffers
+	private int lnaGain = -1;										// last LNA gain that was set (-1: unknown)
+	private int mixerGain = -1;										// last mixer gain that was set (-1: unknown)
+	private int vgaGain = -1;										// last VGA gain that was set (-1: unknown)
+	private int lnaAgc = -1;										// last state of the LNA AGC (0: off, 1: on, -1: unknown)
+	private int mixerAgc = -1;										// last state of the mixer AGC (0: off, 1: on, -1: unknown)
 
 	// startTime (in ms since 1970) and packetCounter for statistics:
 	private long receiveStartTime = 0;
@@ -145,7 +197,7 @@ public class Airspy implements Runnable {
 	// Some Constants:
 	private static final String LOGTAG = "airspy_android";
 	private static final String AIRSPY_USB_PERMISSION = "com.mantz_it.airspy_android.USB_PERMISSION";
-	private static final int numUsbRequests = 16;        // Number of parallel UsbRequests
+	private int numUsbRequests = 16;        // Number of parallel UsbRequests
 
 	/**
 	 * Initializing the Airspy Instance with a USB Device. This will try to request
@@ -252,6 +304,7 @@ public class Airspy implements Runnable {
 		// Initialize the class attributes:
 		this.usbManager = usbManager;
 		this.usbDevice = usbDevice;
+		Arrays.fill(conversionScales, 1);
 
 		// For detailed trouble shooting: Read out information of the device:
 		Log.i(LOGTAG, "constructor: create Airspy instance from " + usbDevice.getDeviceName()
@@ -302,7 +355,8 @@ public class Airspy implements Runnable {
 	 * Note that the size is measured in bytes and does not account
 	 * for the type conversion that is done by the Converter classes.
 	 * (i.e. the size is correct for all int16 sample_types but has
-	 * to be multiplyed by 2 to fit the float32 sample_types!)
+	 * to be multiplyed by 2 to fit the float32 sample_types and to be
+	 * divided by 2 to fit the int8 sample_types!)
 	 *
 	 * @return Packet size in Bytes
 	 */
@@ -427,7 +481,7 @@ public class Airspy implements Runnable {
 			return false;
 		}
 
-		if (sampleType < 0 || sampleType > 4) {
+		if (sampleType < 0 || sampleType > AIRSPY_SAMPLE_INT8_IQ_SCALED) {
 			Log.e(LOGTAG, "setSampleType: Not a valid sample type: " + sampleType);
 			return false;
 		}
@@ -436,6 +490,13 @@ public class Airspy implements Runnable {
 		return true;
 	}
 
+	/**
+	 * @return the sample type (AIRSPY_SAMPLE_INT16_REAL, *_INT16_IQ, *FLOAT_REAL, ...)
+	 */
+	public int getSampleType() {
+		return sampleType;
+	}
+
 	/**
 	 * Enables / Disables raw-mode. It raw mode is enabled, the user can access
 	 * the usbQueue directly (conversion threads are not started / bypassed).
@@ -462,6 +523,411 @@ public class Airspy implements Runnable {
 		return rawMode;
 	}
 
+	/**
+	 * Sets the streaming configuration which determines the size of the USB packets, the number
+	 * of parallel USB requests and the size of the buffer pools and queues. Without a streaming
+	 * configuration the default values are used (16 KiB packets, 16 requests, usb queue with 16
+	 * and conversion queue with 20 buffers).
+	 *
+	 * Note that the streaming configuration can only be changed if the Airspy is currently
+	 * in receiver mode OFF!
+	 *
+	 * @param streamingConfig	instance of AirspyStreamingConfig or null to use the default values
+	 * @return true on success, false on error
+	 */
+	public boolean setStreamingConfig(AirspyStreamingConfig streamingConfig) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setStreamingConfig: Airspy is not in receiver mode OFF. Cannot change streaming config!");
+			return false;
+		}
+		if (streamingConfig != null && streamingConfig.isPackingEnabled() != packingEnabled)
+			Log.w(LOGTAG, "setStreamingConfig: Packing setting of the streaming config does not match the Airspy!");
+		this.streamingConfig = streamingConfig;
+		if (streamingConfig == null) {
+			this.usbPacketSize = 1024 * 16;
+			this.numUsbRequests = 16;
+			this.usbQueueSize = 16;
+			this.conversionQueueSize = 20;
+		} else {
+			this.usbPacketSize = streamingConfig.getUsbPacketSize();
+			this.numUsbRequests = streamingConfig.getNumUsbRequests();
+			this.usbQueueSize = streamingConfig.getUsbQueueSize();
+			this.conversionQueueSize = streamingConfig.getConversionQueueSize();
+			Log.i(LOGTAG, "setStreamingConfig: " + streamingConfig);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the current streaming configuration or null if the default values are used
+	 */
+	public AirspyStreamingConfig getStreamingConfig() {
+		return streamingConfig;
+	}
+
+	/**
+	 * Sets an autotuner for online autotuning. If set, the autotuner evaluates the transfer
+	 * statistics of the first seconds of each streaming (see AirspyAutotuner.evaluate()) and
+	 * stores improved transfer settings for the next start. Use AirspyAutotuner.getStreamingConfig()
+	 * to apply the stored settings with setStreamingConfig().
+	 *
+	 * Note that the autotuner can only be changed if the Airspy is currently
+	 * in receiver mode OFF!
+	 *
+	 * @param autotuner		instance of AirspyAutotuner or null to disable online autotuning
+	 * @return true on success, false on error
+	 */
+	public boolean setAutotuner(AirspyAutotuner autotuner) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setAutotuner: Airspy is not in receiver mode OFF. Cannot change autotuner!");
+			return false;
+		}
+		if (autotuner != null && autotuner.isPackingEnabled() != packingEnabled) {
+			Log.e(LOGTAG, "setAutotuner: Packing setting of the autotuner does not match the Airspy!");
+			return false;
+		}
+		this.autotuner = autotuner;
+		return true;
+	}
+
+	/**
+	 * @return the current autotuner or null if not set
+	 */
+	public AirspyAutotuner getAutotuner() {
+		return autotuner;
+	}
+
+	/**
+	 * Returns the statistics of the USB transfers (completion intervals, gaps, queue pressure).
+	 * They are reset by startRX().
+	 *
+	 * @return transfer monitor of this Airspy
+	 */
+	public AirspyTransferMonitor getTransferMonitor() {
+		return transferMonitor;
+	}
+
+	/**
+	 * Lets the converters collect peak, RMS and clipping of the samples while converting them
+	 * (e.g. as input for the AirspyAgc). This is only possible if the receiver mode is currently OFF!
+	 * Note: In raw mode no statistics are collected.
+	 *
+	 * @param statistics	statistics to update (null to disable)
+	 * @return true on success
+	 */
+	public boolean setSampleStatistics(AirspySampleStatistics statistics) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setSampleStatistics: Airspy is not in receiver mode OFF. Cannot change statistics!");
+			return false;
+		}
+		this.sampleStatistics = statistics;
+		return true;
+	}
+
+	/**
+	 * @return the statistics that are collected by the converters (may be null)
+	 */
+	public AirspySampleStatistics getSampleStatistics() {
+		return sampleStatistics;
+	}
+
+	/**
+	 * Sets additional processing stages that run on the converter thread after the conversion
+	 * to float samples (e.g. frequency shift, filter, decimator, squelch). The buffers in the
+	 * float queue keep their size; only the first pipeline.getLength(buffer) values are valid
+	 * (decimators and resamplers change the length from buffer to buffer). Buffers dropped
+	 * by a stage are not delivered. A pipeline always runs on a single converter thread
+	 * (AIRSPY_EXECUTION_MODEL_WORKERS falls back to *_PIPELINED).
+	 * This is only possible if the receiver mode is currently OFF!
+	 *
+	 * @param pipeline	processing stages for float samples (null to disable)
+	 * @return true on success
+	 */
+	public boolean setFloatPipeline(AirspyDspPipeline<float[]> pipeline) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setFloatPipeline: Airspy is not in receiver mode OFF. Cannot change pipeline!");
+			return false;
+		}
+		this.floatPipeline = pipeline;
+		return true;
+	}
+
+	/**
+	 * Same as setFloatPipeline() but for the int16 sample types.
+	 * This is only possible if the receiver mode is currently OFF!
+	 *
+	 * @param pipeline	processing stages for int16 samples (null to disable)
+	 * @return true on success
+	 */
+	public boolean setInt16Pipeline(AirspyDspPipeline<short[]> pipeline) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setInt16Pipeline: Airspy is not in receiver mode OFF. Cannot change pipeline!");
+			return false;
+		}
+		this.int16Pipeline = pipeline;
+		return true;
+	}
+
+	/**
+	 * Selects the Hilbert kernel that the converters use for the IQ sample types. Fewer taps
+	 * cost less cpu but reject the image less (see AirspyBenchmark.benchmarkHilbertPresets()).
+	 * This is only possible if the receiver mode is currently OFF!
+	 *
+	 * @param preset	AirspyFilterDesign.HILBERT_PRESET_FAST, *_NORMAL (default) or *_HIGH_QUALITY
+	 * @return true on success
+	 */
+	public boolean setHilbertPreset(int preset) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setHilbertPreset: Airspy is not in receiver mode OFF. Cannot change Hilbert kernel!");
+			return false;
+		}
+		if (preset < 0 || preset >= AirspyFilterDesign.HILBERT_PRESET_COUNT) {
+			Log.e(LOGTAG, "setHilbertPreset: Not a valid preset: " + preset);
+			return false;
+		}
+		this.hilbertPreset = preset;
+		return true;
+	}
+
+	/**
+	 * @return the Hilbert kernel preset of the IQ converters
+	 */
+	public int getHilbertPreset() {
+		return hilbertPreset;
+	}
+
+	/**
+	 * Selects how the float and int16 converters convert the raw samples of a sample type:
+	 * with arithmetic (default) or with a lookup table. The fastest mode depends on the device
+	 * (see AirspyBenchmark.benchmarkConversionModes()). Lookup tables are not used while
+	 * sample statistics are collected. This is only possible if the receiver mode is currently OFF!
+	 *
+	 * @param sampleType	AIRSPY_SAMPLE_FLOAT32_IQ, *_FLOAT32_REAL, *_INT16_IQ, *_INT16_REAL or *_UINT16_REAL
+	 * @param mode			AirspyConversionTable.MODE_ARITHMETIC, *_TABLE_12BIT or *_TABLE_16BIT
+	 * @return true on success
+	 */
+	public boolean setConversionMode(int sampleType, int mode) {
+		return setConversionMode(sampleType, mode, 0, 1);
+	}
+
+	/**
+	 * Same as setConversionMode(sampleType, mode) but folds a fixed DC offset and scale into the
+	 * lookup table (see AirspyConversionTable). Offset and scale need a table mode.
+	 * This is only possible if the receiver mode is currently OFF!
+	 *
+	 * @param sampleType	AIRSPY_SAMPLE_FLOAT32_IQ, *_FLOAT32_REAL, *_INT16_IQ, *_INT16_REAL or *_UINT16_REAL
+	 * @param mode			AirspyConversionTable.MODE_ARITHMETIC, *_TABLE_12BIT or *_TABLE_16BIT
+	 * @param dcOffset		DC offset (in raw 12 bit units) that is subtracted from each sample (0: none)
+	 * @param scale			factor that is applied after the offset (1: none)
+	 * @return true on success
+	 */
+	public boolean setConversionMode(int sampleType, int mode, float dcOffset, float scale) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setConversionMode: Airspy is not in receiver mode OFF. Cannot change conversion mode!");
+			return false;
+		}
+		if (sampleType < 0 || sampleType >= conversionModes.length || mode < 0 || mode >= AirspyConversionTable.MODE_COUNT) {
+			Log.e(LOGTAG, "setConversionMode: Invalid sample type (" + sampleType + ") or mode (" + mode + ")");
+			return false;
+		}
+		if (mode != AirspyConversionTable.MODE_ARITHMETIC && (sampleType == AIRSPY_SAMPLE_INT8_IQ
+				|| sampleType == AIRSPY_SAMPLE_UINT8_IQ || sampleType == AIRSPY_SAMPLE_INT8_IQ_SCALED)) {
+			Log.e(LOGTAG, "setConversionMode: Lookup tables are not supported for the int8 sample types");
+			return false;
+		}
+		if (mode == AirspyConversionTable.MODE_ARITHMETIC && (dcOffset != 0 || scale != 1)) {
+			Log.e(LOGTAG, "setConversionMode: DC offset and scale are only supported with a lookup table");
+			return false;
+		}
+		this.conversionModes[sampleType] = mode;
+		this.conversionDcOffsets[sampleType] = dcOffset;
+		this.conversionScales[sampleType] = scale;
+		return true;
+	}
+
+	/**
+	 * @param sampleType	AIRSPY_SAMPLE_INT16_REAL, *_INT16_IQ, *FLOAT_REAL, ...
+	 * @return the conversion mode of the sample type (AirspyConversionTable.MODE_*) or -1 if the sample type is invalid
+	 */
+	public int getConversionMode(int sampleType) {
+		if (sampleType < 0 || sampleType >= conversionModes.length) {
+			Log.e(LOGTAG, "getConversionMode: Invalid sample type: " + sampleType);
+			return -1;
+		}
+		return conversionModes[sampleType];
+	}
+
+	/**
+	 * @param sampleType	AIRSPY_SAMPLE_INT16_REAL, *_INT16_IQ, *FLOAT_REAL, ...
+	 * @return the DC offset of the lookup table of the sample type (raw 12 bit units) or 0 if the sample type is invalid
+	 */
+	public float getConversionDcOffset(int sampleType) {
+		if (sampleType < 0 || sampleType >= conversionDcOffsets.length) {
+			Log.e(LOGTAG, "getConversionDcOffset: Invalid sample type: " + sampleType);
+			return 0;
+		}
+		return conversionDcOffsets[sampleType];
+	}
+
+	/**
+	 * @param sampleType	AIRSPY_SAMPLE_INT16_REAL, *_INT16_IQ, *FLOAT_REAL, ...
+	 * @return the scale of the lookup table of the sample type or 1 if the sample type is invalid
+	 */
+	public float getConversionScale(int sampleType) {
+		if (sampleType < 0 || sampleType >= conversionScales.length) {
+			Log.e(LOGTAG, "getConversionScale: Invalid sample type: " + sampleType);
+			return 1;
+		}
+		return conversionScales[sampleType];
+	}
+
+	/**
+	 * Selects the layout of the float and int16 IQ samples in the buffers of the queues. With
+	 * AIRSPY_IQ_LAYOUT_SPLIT the converter writes all I values into the first half and all Q
+	 * values into the second half of each buffer, so that no de-interleaving is needed before
+	 * vector-friendly loops. The DSP stages expect interleaved samples, so the split layout
+	 * can't be combined with a pipeline. This is only possible if the receiver mode is currently OFF!
+	 *
+	 * @param iqLayout	AIRSPY_IQ_LAYOUT_INTERLEAVED (default) or AIRSPY_IQ_LAYOUT_SPLIT
+	 * @return true on success
+	 */
+	public boolean setIqLayout(int iqLayout) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setIqLayout: Airspy is not in receiver mode OFF. Cannot change IQ layout!");
+			return false;
+		}
+		if (iqLayout != AIRSPY_IQ_LAYOUT_INTERLEAVED && iqLayout != AIRSPY_IQ_LAYOUT_SPLIT) {
+			Log.e(LOGTAG, "setIqLayout: Not a valid IQ layout: " + iqLayout);
+			return false;
+		}
+		this.iqLayout = iqLayout;
+		return true;
+	}
+
+	/**
+	 * @return the layout of the float and int16 IQ buffers (AIRSPY_IQ_LAYOUT_*)
+	 */
+	public int getIqLayout() {
+		return iqLayout;
+	}
+
+	/**
+	 * @return number of parallel UsbRequests
+	 */
+	public int getNumUsbRequests() {
+		return numUsbRequests;
+	}
+
+	/**
+	 * @return number of buffers in the usb buffer pool (and size of the usbQueue)
+	 */
+	public int getUsbQueueSize() {
+		return usbQueueSize;
+	}
+
+	/**
+	 * @return number of buffers in the conversion buffer pool (and size of the conversion queue)
+	 */
+	public int getConversionQueueSize() {
+		return conversionQueueSize;
+	}
+
+	/**
+	 * Sets the execution model for the sample conversion:
+	 * - AIRSPY_EXECUTION_MODEL_INLINE: The conversion is done by the USB thread right after a
+	 *   request returned. No additional thread and no context switch, but the USB requests are
+	 *   not queued again until the conversion is done.
+	 * - AIRSPY_EXECUTION_MODEL_PIPELINED: The conversion is done by a separate converter thread
+	 *   (default).
+	 * - AIRSPY_EXECUTION_MODEL_WORKERS: The conversion is shared by multiple converter threads.
+	 *   This is only possible for the stateless sample types (*_REAL). The IQ types will fall back
+	 *   to AIRSPY_EXECUTION_MODEL_PIPELINED because their filters need the samples in order.
+	 *
+	 * Use AirspyBenchmark to find out which model works best on a device. Note that the execution
+	 * model has no effect in raw mode and can only be changed if the Airspy is currently in
+	 * receiver mode OFF!
+	 *
+	 * @param executionModel	AIRSPY_EXECUTION_MODEL_INLINE, *_PIPELINED or *_WORKERS
+	 * @param numWorkers		number of worker threads (only used for AIRSPY_EXECUTION_MODEL_WORKERS)
+	 * @return true on success, false on error
+	 */
+	public boolean setExecutionModel(int executionModel, int numWorkers) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setExecutionModel: Airspy is not in receiver mode OFF. Cannot change execution model!");
+			return false;
+		}
+		if (executionModel < AIRSPY_EXECUTION_MODEL_INLINE || executionModel > AIRSPY_EXECUTION_MODEL_WORKERS) {
+			Log.e(LOGTAG, "setExecutionModel: Not a valid execution model: " + executionModel);
+			return false;
+		}
+		if (executionModel == AIRSPY_EXECUTION_MODEL_WORKERS && numWorkers < 1) {
+			Log.e(LOGTAG, "setExecutionModel: Invalid number of workers: " + numWorkers);
+			return false;
+		}
+		this.executionModel = executionModel;
+		if (executionModel == AIRSPY_EXECUTION_MODEL_WORKERS)
+			this.numConverterWorkers = numWorkers;
+		return true;
+	}
+
+	/**
+	 * @return the configured execution model (AIRSPY_EXECUTION_MODEL_INLINE, *_PIPELINED or *_WORKERS)
+	 */
+	public int getExecutionModel() {
+		return executionModel;
+	}
+
+	/**
+	 * @return number of converter workers used with AIRSPY_EXECUTION_MODEL_WORKERS
+	 */
+	public int getNumConverterWorkers() {
+		return numConverterWorkers;
+	}
+
+	/**
+	 * Checks if a sample type can be converted by multiple workers in parallel (i.e. the
+	 * conversion of a buffer does not depend on the previous buffers).
+	 *
+	 * @param sampleType	sample type (AIRSPY_SAMPLE_*)
+	 * @return true if the sample type can be used with AIRSPY_EXECUTION_MODEL_WORKERS
+	 */
+	public static boolean isStatelessSampleType(int sampleType) {
+		return sampleType == AIRSPY_SAMPLE_FLOAT32_REAL || sampleType == AIRSPY_SAMPLE_INT16_REAL
+				|| sampleType == AIRSPY_SAMPLE_UINT16_REAL;
+	}
+
+	/**
+	 * Sets a time machine (pre-trigger capture buffer). If set, every buffer received from the
+	 * Airspy is also copied into the ring buffer of the time machine. The time machine has to
+	 * be configured with the same sample rate and packing setting as the Airspy and its thread
+	 * must be started by the application (to be able to dump triggered windows).
+	 *
+	 * Note that the time machine can only be changed if the Airspy is currently
+	 * in receiver mode OFF!
+	 *
+	 * @param timeMachine	instance of AirspyTimeMachine or null to disable it
+	 * @return true on success, false on error
+	 */
+	public boolean setTimeMachine(AirspyTimeMachine timeMachine) {
+		if (receiverMode != AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "setTimeMachine: Airspy is not in receiver mode OFF. Cannot change time machine!");
+			return false;
+		}
+		if (timeMachine != null && timeMachine.isPackingEnabled() != packingEnabled) {
+			Log.e(LOGTAG, "setTimeMachine: Packing setting of the time machine does not match the Airspy!");
+			return false;
+		}
+		this.timeMachine = timeMachine;
+		return true;
+	}
+
+	/**
+	 * @return the current time machine or null if not set
+	 */
+	public AirspyTimeMachine getTimeMachine() {
+		return timeMachine;
+	}
+
 	/**
 	 * Executes a Request to the USB interface.
 	 * <p/>
@@ -690,6 +1156,7 @@ public class Airspy implements Runnable {
 			return false;
 		}
 
+		this.mixerGain = gain;
 		return true;
 	}
 
@@ -721,6 +1188,7 @@ public class Airspy implements Runnable {
 			return false;
 		}
 
+		this.vgaGain = gain;
 		return true;
 	}
 
@@ -752,6 +1220,7 @@ public class Airspy implements Runnable {
 			return false;
 		}
 
+		this.lnaGain = gain;
 		return true;
 	}
 
@@ -778,6 +1247,7 @@ public class Airspy implements Runnable {
 			return false;
 		}
 
+		this.lnaAgc = enable ? 1 : 0;
 		return true;
 	}
 
@@ -804,6 +1274,75 @@ public class Airspy implements Runnable {
 			return false;
 		}
 
+		this.mixerAgc = enable ? 1 : 0;
+		return true;
+	}
+
+	/**
+	 * Sets the LNA, mixer and VGA gain according to the linearity gain table (same values as
+	 * airspy_set_linearity_gain() of libairspy). The linearity settings keep the LNA gain low
+	 * and are best for strong signals. The automatic gain controls of LNA and mixer are turned off.
+	 * Only the gains that actually change are sent to the Airspy.
+	 * <p/>
+	 * Note: This function interacts with the USB Hardware and
+	 * should not be called from a GUI Thread!
+	 *
+	 * @return true on success
+	 * @throws AirspyUsbException
+	 * @param    value    gain (0-21)
+	 */
+	public boolean setLinearityGain(int value) throws AirspyUsbException {
+		if (value < 0 || value >= GAIN_PRESET_COUNT) {
+			Log.e(LOGTAG, "setLinearityGain: Gain must be within 0-" + (GAIN_PRESET_COUNT - 1) + "!");
+			return false;
+		}
+		int index = GAIN_PRESET_COUNT - 1 - value;
+		return setGains(LINEARITY_LNA_GAINS[index], LINEARITY_MIXER_GAINS[index], LINEARITY_VGA_GAINS[index]);
+	}
+
+	/**
+	 * Sets the LNA, mixer and VGA gain according to the sensitivity gain table (same values as
+	 * airspy_set_sensitivity_gain() of libairspy). The sensitivity settings keep the LNA gain high
+	 * and are best for weak signals. The automatic gain controls of LNA and mixer are turned off.
+	 * Only the gains that actually change are sent to the Airspy.
+	 * <p/>
+	 * Note: This function interacts with the USB Hardware and
+	 * should not be called from a GUI Thread!
+	 *
+	 * @return true on success
+	 * @throws AirspyUsbException
+	 * @param    value    gain (0-21)
+	 */
+	public boolean setSensitivityGain(int value) throws AirspyUsbException {
+		if (value < 0 || value >= GAIN_PRESET_COUNT) {
+			Log.e(LOGTAG, "setSensitivityGain: Gain must be within 0-" + (GAIN_PRESET_COUNT - 1) + "!");
+			return false;
+		}
+		int index = GAIN_PRESET_COUNT - 1 - value;
+		return setGains(SENSITIVITY_LNA_GAINS[index], SENSITIVITY_MIXER_GAINS[index], SENSITIVITY_VGA_GAINS[index]);
+	}
+
+	/**
+	 * Turns off the automatic gain controls and sets LNA, mixer and VGA gain. Control transfers
+	 * are only issued for values that differ from the last ones that were set successfully.
+	 *
+	 * @param lna		LNA gain (0-14)
+	 * @param mixer		mixer gain (0-15)
+	 * @param vga		VGA gain (0-15)
+	 * @return true on success
+	 * @throws AirspyUsbException
+	 */
+	private boolean setGains(int lna, int mixer, int vga) throws AirspyUsbException {
+		if (mixerAgc != 0 && !setMixerAutomaticGainControl(false))
+			return false;
+		if (lnaAgc != 0 && !setLNAAutomaticGainControl(false))
+			return false;
+		if (vgaGain != vga && !setVGAGain(vga))
+			return false;
+		if (mixerGain != mixer && !setMixerGain(mixer))
+			return false;
+		if (lnaGain != lna && !setLNAGain(lna))
+			return false;
 		return true;
 	}
 
@@ -904,6 +1443,12 @@ public class Airspy implements Runnable {
 	 * @throws AirspyUsbException
 	 */
 	public boolean startRX() throws AirspyUsbException {
+		if (iqLayout == AIRSPY_IQ_LAYOUT_SPLIT && ((sampleType == AIRSPY_SAMPLE_FLOAT32_IQ && floatPipeline != null)
+				|| (sampleType == AIRSPY_SAMPLE_INT16_IQ && int16Pipeline != null))) {
+			Log.e(LOGTAG, "startRX: The split IQ layout can't be combined with a DSP pipeline!");
+			return false;
+		}
+
 		// Create the usbQueue that holds samples received from the Airspy
 		this.usbQueue = new ArrayBlockingQueue<byte[]>(usbQueueSize);
 
@@ -913,7 +1458,31 @@ public class Airspy implements Runnable {
 		for (int i = 0; i < usbQueueSize; i++)
 			this.usbBufferPool.offer(new byte[usbPacketSize]);        // Allocate buffers
 
-		// Create queues for the Conversion Thread and start it (if not in rawMode)
+		// Determine the execution model (only stateless sample types can be converted by multiple workers):
+		activeExecutionModel = rawMode ? AIRSPY_EXECUTION_MODEL_PIPELINED : executionModel;
+		if (activeExecutionModel == AIRSPY_EXECUTION_MODEL_WORKERS && !isStatelessSampleType(sampleType)) {
+			Log.i(LOGTAG, "startRX: Sample type " + sampleType + " can't be converted by multiple workers. Use a single converter thread.");
+			activeExecutionModel = AIRSPY_EXECUTION_MODEL_PIPELINED;
+		}
+		if (activeExecutionModel == AIRSPY_EXECUTION_MODEL_WORKERS && (floatPipeline != null || int16Pipeline != null)) {
+			Log.i(LOGTAG, "startRX: DSP stages need the samples in order. Use a single converter thread.");
+			activeExecutionModel = AIRSPY_EXECUTION_MODEL_PIPELINED;
+		}
+		int numConverters = (activeExecutionModel == AIRSPY_EXECUTION_MODEL_WORKERS) ? numConverterWorkers : 1;
+		AirspyConverterSequencer sequencer = null;
+		this.workerQueues = null;
+		if (numConverters > 1) {
+			// Every worker gets its own input queue. The usb thread will fill them round robin:
+			sequencer = new AirspyConverterSequencer(numConverters);
+			this.workerQueues = new ArrayList<ArrayBlockingQueue<byte[]>>(numConverters);
+			for (int i = 0; i < numConverters; i++)
+				this.workerQueues.add(new ArrayBlockingQueue<byte[]>(usbQueueSize));
+		}
+		boolean startConverters = activeExecutionModel != AIRSPY_EXECUTION_MODEL_INLINE;
+		if (sampleStatistics != null)
+			sampleStatistics.reset();
+
+		// Create queues for the Conversion Thread(s) and start them (if not in rawMode)
 		if(!rawMode) {
 			switch (sampleType) {
 				case AIRSPY_SAMPLE_FLOAT32_IQ:
@@ -923,8 +1492,22 @@ public class Airspy implements Runnable {
 					for (int i = 0; i < conversionQueueSize; i++)
 						this.conversionBufferPoolFloat.offer(new float[getUsbPacketSize()/2]);        // Allocate buffers
 					try {
-						floatConverter = new AirspyFloatConverter(sampleType, packingEnabled, usbQueue, usbBufferPool, conversionQueueFloat, conversionBufferPoolFloat);
-						floatConverter.start();
+						floatConverters = new AirspyFloatConverter[numConverters];
+						for (int i = 0; i < numConverters; i++) {
+							floatConverters[i] = new AirspyFloatConverter(sampleType, packingEnabled, getConverterInputQueue(i),
+									usbBufferPool, conversionQueueFloat, conversionBufferPoolFloat,
+									AirspyFilterDesign.getHilbertKernel(hilbertPreset));
+							if (sequencer != null)
+								floatConverters[i].setSequencer(sequencer, i);
+							floatConverters[i].setStatistics(sampleStatistics);
+							floatConverters[i].setPipeline(floatPipeline);
+							floatConverters[i].setSplitLayout(iqLayout == AIRSPY_IQ_LAYOUT_SPLIT);
+							if (conversionModes[sampleType] != AirspyConversionTable.MODE_ARITHMETIC)
+								floatConverters[i].setConversionTable(new AirspyConversionTable(sampleType, conversionModes[sampleType],
+										conversionDcOffsets[sampleType], conversionScales[sampleType]));
+							if (startConverters)
+								floatConverters[i].start();
+						}
 					} catch (Exception e) {
 						Log.e(LOGTAG, "startRX: Cannot create float converter: " + e.getMessage());
 						return false;
@@ -938,16 +1521,54 @@ public class Airspy implements Runnable {
 					for (int i = 0; i < conversionQueueSize; i++)
 						this.conversionBufferPoolInt16.offer(new short[getUsbPacketSize()/2]);        // Allocate buffers
 					try {
-						int16Converter = new AirspyInt16Converter(sampleType, packingEnabled, usbQueue, usbBufferPool, conversionQueueInt16, conversionBufferPoolInt16);
-						int16Converter.start();
+						int16Converters = new AirspyInt16Converter[numConverters];
+						for (int i = 0; i < numConverters; i++) {
+							int16Converters[i] = new AirspyInt16Converter(sampleType, packingEnabled, getConverterInputQueue(i),
+									usbBufferPool, conversionQueueInt16, conversionBufferPoolInt16,
+									AirspyFilterDesign.getHilbertKernelInt16(hilbertPreset));
+							if (sequencer != null)
+								int16Converters[i].setSequencer(sequencer, i);
+							int16Converters[i].setStatistics(sampleStatistics);
+							int16Converters[i].setPipeline(int16Pipeline);
+							int16Converters[i].setSplitLayout(iqLayout == AIRSPY_IQ_LAYOUT_SPLIT);
+							if (conversionModes[sampleType] != AirspyConversionTable.MODE_ARITHMETIC)
+								int16Converters[i].setConversionTable(new AirspyConversionTable(sampleType, conversionModes[sampleType],
+										conversionDcOffsets[sampleType], conversionScales[sampleType]));
+							if (startConverters)
+								int16Converters[i].start();
+						}
 					} catch (Exception e) {
 						Log.e(LOGTAG, "startRX: Cannot create int16 converter: " + e.getMessage());
 						return false;
 					}
 					break;
+				case AIRSPY_SAMPLE_INT8_IQ:
+				case AIRSPY_SAMPLE_UINT8_IQ:
+				case AIRSPY_SAMPLE_INT8_IQ_SCALED:
+					// block scaled buffers contain an additional byte for the exponent:
+					int int8BufferSize = getUsbPacketSize()/2 + (sampleType == AIRSPY_SAMPLE_INT8_IQ_SCALED ? 1 : 0);
+					this.conversionQueueInt8 = new ArrayBlockingQueue<byte[]>(conversionQueueSize);
+					this.conversionBufferPoolInt8 = new ArrayBlockingQueue<byte[]>(conversionQueueSize);
+					for (int i = 0; i < conversionQueueSize; i++)
+						this.conversionBufferPoolInt8.offer(new byte[int8BufferSize]);        // Allocate buffers
+					try {
+						int8Converter = new AirspyInt8Converter(sampleType, packingEnabled, usbQueue, usbBufferPool, conversionQueueInt8,
+								conversionBufferPoolInt8, AirspyFilterDesign.getHilbertKernelInt16(hilbertPreset));
+						int8Converter.setStatistics(sampleStatistics);
+						if (startConverters)
+							int8Converter.start();
+					} catch (Exception e) {
+						Log.e(LOGTAG, "startRX: Cannot create int8 converter: " + e.getMessage());
+						return false;
+					}
+					break;
 			}
 		}
 
+		// Reset the transfer statistics:
+		this.transferMonitor.reset();
+		this.autotunerEvaluated = false;
+
 		// Signal the Airspy Device to start receiving:
 		this.setReceiverMode(AIRSPY_RECEIVER_MODE_RECEIVE);
 
@@ -973,6 +1594,98 @@ public class Airspy implements Runnable {
 	}
 
 
+	/**
+	 * Waits until the receiver thread terminated after stop() was called. If the thread is blocked
+	 * in requestWait(), the pending UsbRequests are canceled to wake it up.
+	 *
+	 * @param timeoutMs		max. time to wait in ms
+	 * @return true if the receiver thread is not running (anymore)
+	 */
+	public boolean waitForReceiveThread(long timeoutMs) {
+		if (usbThread == null)
+			return true;
+		try {
+			usbThread.join(timeoutMs);
+			if (usbThread.isAlive()) {
+				UsbRequest[] requests = usbRequests;
+				if (requests != null) {
+					for (UsbRequest request : requests) {
+						if (request != null)
+							request.cancel();
+					}
+				}
+				usbThread.join(timeoutMs);
+			}
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "waitForReceiveThread: Interrupted while waiting for the receiver thread!");
+		}
+		return !usbThread.isAlive();
+	}
+
+	/**
+	 * @return number of buffers waiting in the usbQueue (or in all input queues of the converter workers)
+	 */
+	private int getUsbQueueFill() {
+		if (workerQueues == null)
+			return usbQueue.size();
+		int fill = 0;
+		for (ArrayBlockingQueue<byte[]> queue : workerQueues)
+			fill += queue.size();
+		return fill;
+	}
+
+	/**
+	 * Returns the input queue of a converter. This is the usbQueue if there is only one converter.
+	 *
+	 * @param workerIndex	index of the converter worker
+	 * @return input queue for the converter
+	 */
+	private ArrayBlockingQueue<byte[]> getConverterInputQueue(int workerIndex) {
+		if (workerQueues == null)
+			return usbQueue;
+		return workerQueues.get(workerIndex);
+	}
+
+	/**
+	 * Converts a buffer on the USB thread (AIRSPY_EXECUTION_MODEL_INLINE). The output buffer
+	 * is taken from the conversion pool and put into the conversion queue.
+	 *
+	 * @param rawBuffer		raw samples as received from the Airspy
+	 * @return true on success; false if no output buffer was available in time
+	 */
+	private boolean convertInline(byte[] rawBuffer) throws InterruptedException {
+		switch (sampleType) {
+			case AIRSPY_SAMPLE_FLOAT32_IQ:
+			case AIRSPY_SAMPLE_FLOAT32_REAL:
+				float[] floatBuffer = conversionBufferPoolFloat.poll(1000, TimeUnit.MILLISECONDS);
+				if (floatBuffer == null)
+					return false;
+				if (floatConverters[0].convert(rawBuffer, floatBuffer) > 0)
+					conversionQueueFloat.offer(floatBuffer);
+				else
+					conversionBufferPoolFloat.offer(floatBuffer);	// dropped by the pipeline
+				return true;
+			case AIRSPY_SAMPLE_INT16_IQ:
+			case AIRSPY_SAMPLE_INT16_REAL:
+			case AIRSPY_SAMPLE_UINT16_REAL:
+				short[] shortBuffer = conversionBufferPoolInt16.poll(1000, TimeUnit.MILLISECONDS);
+				if (shortBuffer == null)
+					return false;
+				if (int16Converters[0].convert(rawBuffer, shortBuffer) > 0)
+					conversionQueueInt16.offer(shortBuffer);
+				else
+					conversionBufferPoolInt16.offer(shortBuffer);	// dropped by the pipeline
+				return true;
+			default:
+				byte[] byteBuffer = conversionBufferPoolInt8.poll(1000, TimeUnit.MILLISECONDS);
+				if (byteBuffer == null)
+					return false;
+				int8Converter.convert(rawBuffer, byteBuffer);
+				conversionQueueInt8.offer(byteBuffer);
+				return true;
+		}
+	}
+
 	public void run() {
 		if (receiverMode != AIRSPY_RECEIVER_MODE_RECEIVE) {
 			Log.e(LOGTAG, "run: Invalid receiver mode: " + receiverMode);
@@ -988,7 +1701,10 @@ public class Airspy implements Runnable {
 	 */
 	private void receiveLoop() {
 		UsbRequest[] usbRequests = new UsbRequest[numUsbRequests];
+		this.usbRequests = usbRequests;
 		ByteBuffer buffer;
+		long dispatchCounter = 0;
+		int numQueues = (workerQueues == null) ? 1 : workerQueues.size();
 
 		try {
 			// Create, initialize and queue all usb requests:
@@ -1039,34 +1755,66 @@ public class Airspy implements Runnable {
 				// Extract the buffer
 				buffer = (ByteBuffer) request.getClientData();
 
-				// Increment the packetCounter (for statistics)
+				// Increment the packetCounter and update the transfer statistics
 				this.receivePacketCounter++;
+				transferMonitor.onRequestCompleted(usbPacketSize, getUsbQueueFill());
 
-				// Put the received samples into the usbQueue, so that they can be read by the
-				// conversion thread (or the application if in raw mode)
-				try {
-					if (!this.usbQueue.offer(buffer.array(), 1000, TimeUnit.MILLISECONDS)) {
-						// We hit the timeout.
-						Log.e(LOGTAG, "receiveLoop: Queue is full. Stop receiving!");
+				// Let the autotuner evaluate the first seconds of streaming (if set)
+				if (autotuner != null && !autotunerEvaluated && transferMonitor.getElapsedMs() >= autotuner.getWarmupMs()) {
+					autotunerEvaluated = true;
+					autotuner.evaluate(transferMonitor, usbPacketSize, numUsbRequests);
+				}
+
+				// Copy the raw samples into the ring buffer of the time machine (if set)
+				if (timeMachine != null)
+					timeMachine.write(buffer.array());
+
+				if (activeExecutionModel == AIRSPY_EXECUTION_MODEL_INLINE) {
+					// Convert the samples right here. The buffer can be reused for the request afterwards
+					try {
+						if (!convertInline(buffer.array())) {
+							// We hit the timeout.
+							Log.e(LOGTAG, "receiveLoop: Conversion buffer pool is empty. Stop receiving!");
+							break;
+						}
+					} catch (InterruptedException e) {
+						Log.e(LOGTAG, "receiveLoop: Interrupted while waiting on buffers in the conversion pool. Stop receiving!");
+						break;
+					}
+				} else {
+					// Put the received samples into the usbQueue, so that they can be read by the
+					// conversion thread(s) (or the application if in raw mode)
+					// (round robin if there are multiple workers)
+					ArrayBlockingQueue<byte[]> queue = getConverterInputQueue((int) (dispatchCounter++ % numQueues));
+					try {
+						if (!queue.offer(buffer.array(), 1000, TimeUnit.MILLISECONDS)) {
+							// We hit the timeout.
+							Log.e(LOGTAG, "receiveLoop: Queue is full. Stop receiving!");
+							break;
+						}
+					} catch (InterruptedException e) {
+						Log.e(LOGTAG, "receiveLoop: Interrupted while putting a buffer in the queue. Stop receiving!");
 						break;
 					}
-				} catch (InterruptedException e) {
-					Log.e(LOGTAG, "receiveLoop: Interrupted while putting a buffer in the queue. Stop receiving!");
-					break;
-				}
 
-				// Get a fresh ByteBuffer for the request from the buffer pool:
-				try {
-					byte[] tmpBuffer = usbBufferPool.poll(10, TimeUnit.SECONDS);
-					if (tmpBuffer == null) {
-						// We hit the timeout.
-						Log.e(LOGTAG, "receiveLoop: Buffer pool is empty. Stop receiving!");
+					// Get a fresh ByteBuffer for the request from the buffer pool:
+					try {
+						byte[] tmpBuffer = usbBufferPool.poll();
+						if (tmpBuffer == null) {
+							// The consumer is too slow. Wait for a buffer to be returned:
+							transferMonitor.onPoolStall();
+							tmpBuffer = usbBufferPool.poll(10, TimeUnit.SECONDS);
+						}
+						if (tmpBuffer == null) {
+							// We hit the timeout.
+							Log.e(LOGTAG, "receiveLoop: Buffer pool is empty. Stop receiving!");
+							break;
+						}
+						buffer = ByteBuffer.wrap(tmpBuffer);
+					} catch (InterruptedException e) {
+						Log.e(LOGTAG, "receiveLoop: Interrupted while waiting on buffers in the pool. Stop receiving!");
 						break;
 					}
-					buffer = ByteBuffer.wrap(tmpBuffer);
-				} catch (InterruptedException e) {
-					Log.e(LOGTAG, "receiveLoop: Interrupted while waiting on buffers in the pool. Stop receiving!");
-					break;
 				}
 				request.setClientData(buffer);
 
@@ -1098,10 +1846,16 @@ public class Airspy implements Runnable {
 		}
 
 		// Stop all converters if running:
-		if(int16Converter != null)
-			int16Converter.requestStop();
-		if(floatConverter != null)
-			floatConverter.requestStop();
+		if(int16Converters != null) {
+			for (AirspyInt16Converter converter : int16Converters)
+				converter.requestStop();
+		}
+		if(floatConverters != null) {
+			for (AirspyFloatConverter converter : floatConverters)
+				converter.requestStop();
+		}
+		if(int8Converter != null)
+			int8Converter.requestStop();
 	}
 
 	/**
@@ -1160,6 +1914,50 @@ public class Airspy implements Runnable {
 			return null;
 	}
 
+	/**
+	 * Call this after startRX() to get the queue with the received and converted samples (if sample type is int8)
+	 * Also get a reference to the int8ReturnPoolQueue by calling getInt8ReturnPoolQueue() to return the buffers!
+	 * @return ArrayBlockingQueue which is filled by the conversion thread (with received and converted int8 samples)
+	 */
+	public ArrayBlockingQueue<byte[]> getInt8Queue() {
+		if(receiverMode != AIRSPY_RECEIVER_MODE_RECEIVE)
+			return null;
+		if(sampleType == AIRSPY_SAMPLE_INT8_IQ || sampleType == AIRSPY_SAMPLE_UINT8_IQ || sampleType == AIRSPY_SAMPLE_INT8_IQ_SCALED)
+			return conversionQueueInt8;
+		else
+			return null;
+	}
+
+	/**
+	 * Call this after startRX() to get a queue to the bufferPool. Return every buffer you got from the int8Queue into
+	 * the pool after usage (if sample type is int8)
+	 * @return ArrayBlockingQueue that is used to collect buffers from the int8Queue after usage
+	 */
+	public ArrayBlockingQueue<byte[]> getInt8ReturnPoolQueue() {
+		if(receiverMode != AIRSPY_RECEIVER_MODE_RECEIVE)
+			return null;
+		if(sampleType == AIRSPY_SAMPLE_INT8_IQ || sampleType == AIRSPY_SAMPLE_UINT8_IQ || sampleType == AIRSPY_SAMPLE_INT8_IQ_SCALED)
+			return conversionBufferPoolInt8;
+		else
+			return null;
+	}
+
+	/**
+	 * Returns the number of samples that were clipped while quantizing to 8 bit (if sample type is int8)
+	 * @return number of clipped samples since startRX()
+	 */
+	public long getInt8ClippedSamples() {
+		return int8Converter == null ? 0 : int8Converter.getClippedSamples();
+	}
+
+	/**
+	 * Returns the number of samples that were quantized to 8 bit (if sample type is int8)
+	 * @return number of quantized samples since startRX()
+	 */
+	public long getInt8ConvertedSamples() {
+		return int8Converter == null ? 0 : int8Converter.getConvertedSamples();
+	}
+
 	/**
 	 * Call this after startRX() to get the queue with the received raw samples (if rawMode is enabled)
 	 * Also get a reference to the rawReturnPoolQueue by calling getRawReturnPoolQueue() to return the buffers!
@@ -0,0 +1,217 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyAgc.java
+ * Description: This class implements a software AGC for the Airspy. It reads the sample
+ *              statistics that the converters collect (peak and clipping) and moves the
+ *              gain along the linearity or sensitivity gain presets of the Airspy. A target
+ *              range for the peak level provides hysteresis, the gain is changed at most
+ *              once per minChangeIntervalMs and USB control transfers are only sent if a
+ *              gain actually changes.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyAgc extends Thread {
+
+	private static final String LOGTAG = "AirspyAgc";
+
+	// Gain tables:
+	public static final int MODE_LINEARITY = 0;		// use Airspy.setLinearityGain()
+	public static final int MODE_SENSITIVITY = 1;	// use Airspy.setSensitivityGain()
+
+	private static final double DB_PER_STEP = 2;	// approx. gain difference between two presets
+	private static final long POLL_INTERVAL = 50;	// time (in ms) between two checks of the statistics
+
+	private boolean stopRequested = false;
+	private Airspy airspy;
+	private AirspySampleStatistics statistics;
+	private int mode;
+	private volatile int gainIndex;					// current gain preset (0 - Airspy.GAIN_PRESET_COUNT-1)
+	private volatile long gainChanges = 0;			// number of gain changes that were sent to the Airspy
+	private double targetLowDbfs = -12;				// gain is increased if the peak is below this level
+	private double targetHighDbfs = -4;				// gain is decreased if the peak is above this level
+	private double maxClipRatio = 0.0001;			// gain is decreased fast if more samples are clipped
+	private int maxStepUp = 1;						// max. number of presets per increase
+	private int maxStepDown = 4;					// max. number of presets per decrease
+	private long minChangeIntervalMs = 250;			// min. time between two gain changes
+
+	/**
+	 * Constructor for the AGC
+	 *
+	 * @param airspy		Airspy to control (must be open)
+	 * @param statistics	statistics that are collected by the converters (see Airspy.setSampleStatistics())
+	 * @param mode			MODE_LINEARITY or MODE_SENSITIVITY
+	 * @param initialGain	gain preset that is set when the AGC is started (0 - Airspy.GAIN_PRESET_COUNT-1)
+	 * @throws Exception if mode or initial gain are invalid
+	 */
+	public AirspyAgc(Airspy airspy, AirspySampleStatistics statistics, int mode, int initialGain) throws Exception {
+		if (mode != MODE_LINEARITY && mode != MODE_SENSITIVITY) {
+			Log.e(LOGTAG, "constructor: Invalid mode: " + mode);
+			throw new Exception("Invalid mode: " + mode);
+		}
+		if (initialGain < 0 || initialGain >= Airspy.GAIN_PRESET_COUNT) {
+			Log.e(LOGTAG, "constructor: Invalid initial gain: " + initialGain);
+			throw new Exception("Invalid initial gain: " + initialGain);
+		}
+		this.airspy = airspy;
+		this.statistics = statistics;
+		this.mode = mode;
+		this.gainIndex = initialGain;
+	}
+
+	/**
+	 * Sets the range in which the peak level of the samples should stay. As long as it does,
+	 * the gain is not changed. Has to be called before the thread is started.
+	 *
+	 * @param lowDbfs	gain is increased if the peak is below this level (dBFS)
+	 * @param highDbfs	gain is decreased if the peak is above this level (dBFS)
+	 * @return true on success; false if the range is invalid
+	 */
+	public boolean setTargetRange(double lowDbfs, double highDbfs) {
+		if (lowDbfs >= highDbfs || highDbfs > 0) {
+			Log.e(LOGTAG, "setTargetRange: Invalid range: " + lowDbfs + " - " + highDbfs + " dBFS");
+			return false;
+		}
+		this.targetLowDbfs = lowDbfs;
+		this.targetHighDbfs = highDbfs;
+		return true;
+	}
+
+	/**
+	 * Sets the limits of the control loop. Has to be called before the thread is started.
+	 *
+	 * @param maxStepUp				max. number of presets per increase (min. 1)
+	 * @param maxStepDown			max. number of presets per decrease (min. 1)
+	 * @param minChangeIntervalMs	min. time (in ms) between two gain changes
+	 * @param maxClipRatio			fraction of clipped samples above which the gain is decreased by maxStepDown
+	 * @return true on success; false if a value is invalid
+	 */
+	public boolean setLimits(int maxStepUp, int maxStepDown, long minChangeIntervalMs, double maxClipRatio) {
+		if (maxStepUp < 1 || maxStepDown < 1 || minChangeIntervalMs < 0 || maxClipRatio < 0) {
+			Log.e(LOGTAG, "setLimits: Invalid limits!");
+			return false;
+		}
+		this.maxStepUp = maxStepUp;
+		this.maxStepDown = maxStepDown;
+		this.minChangeIntervalMs = minChangeIntervalMs;
+		this.maxClipRatio = maxClipRatio;
+		return true;
+	}
+
+	/**
+	 * @return current gain preset (0 - Airspy.GAIN_PRESET_COUNT-1)
+	 */
+	public int getGainIndex() {
+		return gainIndex;
+	}
+
+	/**
+	 * @return number of gain changes that were sent to the Airspy
+	 */
+	public long getGainChanges() {
+		return gainChanges;
+	}
+
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	/**
+	 * Calculates by how many presets the gain should be changed according to the given statistics.
+	 *
+	 * @param snapshot	statistics of the samples
+	 * @return number of presets (positive: more gain; negative: less gain; 0: stay)
+	 */
+	public int calcGainStep(AirspySampleStatistics.Snapshot snapshot) {
+		if (snapshot.getClipRatio() > maxClipRatio)
+			return -maxStepDown;
+
+		double peak = snapshot.getPeakDbfs();
+		double center = (targetLowDbfs + targetHighDbfs) / 2;
+		if (peak > targetHighDbfs)
+			return -Math.max(1, Math.min(maxStepDown, (int) Math.ceil((peak - center) / DB_PER_STEP)));
+		if (peak < targetLowDbfs)
+			return Math.max(1, Math.min(maxStepUp, (int) Math.floor((center - peak) / DB_PER_STEP)));
+		return 0;
+	}
+
+	private boolean applyGain(int index) throws Airspy.AirspyUsbException {
+		if (mode == MODE_SENSITIVITY)
+			return airspy.setSensitivityGain(index);
+		return airspy.setLinearityGain(index);
+	}
+
+	public void run() {
+		long lastSequence = -1;
+		long lastChange;
+
+		try {
+			if (!applyGain(gainIndex)) {
+				Log.e(LOGTAG, "run: Cannot set initial gain " + gainIndex + ". Stop!");
+				return;
+			}
+		} catch (Airspy.AirspyUsbException e) {
+			Log.e(LOGTAG, "run: USB error while setting initial gain: " + e.getMessage() + ". Stop!");
+			return;
+		}
+		lastChange = System.currentTimeMillis();
+
+		while (!stopRequested) {
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while sleeping. Stop!");
+				break;
+			}
+
+			AirspySampleStatistics.Snapshot snapshot = statistics.getSnapshot();
+			if (snapshot == null || snapshot.getSequence() == lastSequence)
+				continue;
+			lastSequence = snapshot.getSequence();
+
+			// Rate limiting: the snapshot must be taken after the last change had time to settle
+			// (buffers that were already queued still contain samples with the old gain):
+			if (snapshot.getTimestamp() < lastChange + minChangeIntervalMs)
+				continue;
+
+			int newGainIndex = Math.max(0, Math.min(Airspy.GAIN_PRESET_COUNT - 1, gainIndex + calcGainStep(snapshot)));
+			if (newGainIndex == gainIndex)
+				continue;
+
+			try {
+				if (applyGain(newGainIndex)) {
+					gainIndex = newGainIndex;
+					gainChanges++;
+				} else {
+					Log.e(LOGTAG, "run: Cannot set gain " + newGainIndex + "!");
+				}
+			} catch (Airspy.AirspyUsbException e) {
+				Log.e(LOGTAG, "run: USB error while setting gain: " + e.getMessage() + ". Stop!");
+				break;
+			}
+			lastChange = System.currentTimeMillis();
+		}
+		this.stopRequested = true;
+	}
+}
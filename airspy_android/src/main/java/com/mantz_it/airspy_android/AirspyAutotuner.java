@@ -0,0 +1,354 @@
+package com.mantz_it.airspy_android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyAutotuner.java
+ * Description: This class finds the USB transfer settings (packet size and number of
+ *              parallel requests) that sustain a sample rate on the current device with
+ *              minimal latency and cpu load. The settings are measured either in a
+ *              calibration run or during the first seconds of streaming and are stored
+ *              in the shared preferences of the app (per sample rate and packing setting).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyAutotuner {
+
+	private static final String LOGTAG = "AirspyAutotuner";
+	private static final String PREFERENCES_NAME = "airspy_autotuner";
+
+	// Candidates for the calibration run:
+	private static final int[] PACKET_SIZE_CANDIDATES = {1, 2, 4, 6, 8, 10};	// multiples of PACKET_SIZE_ALIGNMENT
+	private static final int[] REQUEST_CANDIDATES = {4, 8, 16, 32, 64};
+	private static final int CALIBRATION_HEADROOM_MS = 500;	// headroom of the queues during calibration
+
+	private static final double MIN_RATE_FACTOR = 0.99;		// measured / expected transfer rate to sustain the rate
+	private static final double CPU_TOLERANCE = 0.2;		// accept 20% more cpu load than the minimum for lower latency
+	private static final double CPU_TOLERANCE_ABS = 0.02;	// ... but at least 0.02 (measurement noise)
+	private static final int DEFAULT_WARMUP_MS = 3000;		// duration of the online measurement
+
+	private SharedPreferences preferences;
+	private int sampleRate;
+	private boolean packingEnabled;
+	private int maxPacketSize;
+	private int warmupMs = DEFAULT_WARMUP_MS;
+
+	/**
+	 * Holds the result of a single calibration run
+	 */
+	public static class Measurement {
+		public int usbPacketSize;
+		public int numUsbRequests;
+		public boolean sustained;		// true if the sample rate was sustained without gaps
+		public long byteRate;			// measured transfer rate in bytes per second
+		public long maxGapUs;			// longest interval between two completed requests
+		public double cpuLoad;			// cpu load of the process
+
+		@Override
+		public String toString() {
+			return String.format("packet=%d requests=%d sustained=%b rate=%d B/s maxGap=%d us cpu=%.2f",
+					usbPacketSize, numUsbRequests, sustained, byteRate, maxGapUs, cpuLoad);
+		}
+	}
+
+	/**
+	 * Constructor for the autotuner. Uses AirspyStreamingConfig.DEFAULT_MAX_PACKET_SIZE.
+	 *
+	 * @param context			context of the app (used to store the settings)
+	 * @param sampleRate		sample rate of the Airspy in Sps (see Airspy.getSampleRates())
+	 * @param packingEnabled	true if packing is enabled
+	 */
+	public AirspyAutotuner(Context context, int sampleRate, boolean packingEnabled) {
+		this(context, sampleRate, packingEnabled, AirspyStreamingConfig.DEFAULT_MAX_PACKET_SIZE);
+	}
+
+	/**
+	 * Constructor for the autotuner.
+	 *
+	 * @param context			context of the app (used to store the settings)
+	 * @param sampleRate		sample rate of the Airspy in Sps (see Airspy.getSampleRates())
+	 * @param packingEnabled	true if packing is enabled
+	 * @param maxPacketSize		max. size of a UsbRequest in bytes (only raise it above the default on Android 9+)
+	 */
+	public AirspyAutotuner(Context context, int sampleRate, boolean packingEnabled, int maxPacketSize) {
+		this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+		this.sampleRate = sampleRate;
+		this.packingEnabled = packingEnabled;
+		this.maxPacketSize = maxPacketSize;
+	}
+
+	private String getKey(String name) {
+		return name + "_" + sampleRate + (packingEnabled ? "_packed" : "");
+	}
+
+	/**
+	 * @return true if settings for this sample rate and packing setting were stored before
+	 */
+	public boolean hasTunedSettings() {
+		return preferences.contains(getKey("packetSize")) && preferences.contains(getKey("numRequests"));
+	}
+
+	/**
+	 * @return stored packet size in bytes; 0 if no settings were stored
+	 */
+	public int getTunedPacketSize() {
+		return preferences.getInt(getKey("packetSize"), 0);
+	}
+
+	/**
+	 * @return stored number of parallel UsbRequests; 0 if no settings were stored
+	 */
+	public int getTunedNumUsbRequests() {
+		return preferences.getInt(getKey("numRequests"), 0);
+	}
+
+	/**
+	 * Removes the stored settings for this sample rate and packing setting
+	 */
+	public void clearTunedSettings() {
+		preferences.edit().remove(getKey("packetSize")).remove(getKey("numRequests")).apply();
+	}
+
+	private void storeTunedSettings(int usbPacketSize, int numUsbRequests) {
+		Log.i(LOGTAG, "storeTunedSettings: sampleRate=" + sampleRate + " packing=" + packingEnabled
+				+ " packetSize=" + usbPacketSize + " numRequests=" + numUsbRequests);
+		preferences.edit().putInt(getKey("packetSize"), usbPacketSize).putInt(getKey("numRequests"), numUsbRequests).apply();
+	}
+
+	/**
+	 * Creates a streaming configuration with the stored transfer settings (queue sizes are
+	 * derived from the headroom). Set it with Airspy.setStreamingConfig().
+	 *
+	 * @param headroomMs	time (in ms) that the application (or the converter) may stall without losing samples
+	 * @param sampleType	sample type that will be used (Airspy.AIRSPY_SAMPLE_*)
+	 * @return streaming configuration or null if no settings were stored
+	 */
+	public AirspyStreamingConfig getStreamingConfig(int headroomMs, int sampleType) {
+		if (!hasTunedSettings())
+			return null;
+		try {
+			return AirspyStreamingConfig.fromTransferSettings(getTunedPacketSize(), getTunedNumUsbRequests(), headroomMs,
+					sampleRate, packingEnabled, sampleType);
+		} catch (Exception e) {
+			Log.e(LOGTAG, "getStreamingConfig: Stored settings are invalid: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return duration (in ms) of the online measurement at the beginning of the streaming
+	 */
+	public int getWarmupMs() {
+		return warmupMs;
+	}
+
+	/**
+	 * @param warmupMs	duration (in ms) of the online measurement at the beginning of the streaming
+	 */
+	public void setWarmupMs(int warmupMs) {
+		this.warmupMs = warmupMs;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public boolean isPackingEnabled() {
+		return packingEnabled;
+	}
+
+	/**
+	 * Checks if the measured statistics show that the sample rate was sustained: The transfer
+	 * rate matches the sample rate and there was never a gap so long that all queued requests
+	 * were filled (the device drops samples if no request is queued).
+	 */
+	private boolean isSustained(AirspyTransferMonitor monitor, int usbPacketSize, int numUsbRequests) {
+		long expectedByteRate = packingEnabled ? sampleRate * 3L / 2 : sampleRate * 2L;
+		long bufferedUs = (long) numUsbRequests * usbPacketSize * 1000000L / expectedByteRate;
+		return monitor.getByteRate() >= expectedByteRate * MIN_RATE_FACTOR && monitor.getMaxGapUs() < bufferedUs;
+	}
+
+	/**
+	 * Online autotuning: Evaluates the statistics of the first seconds of streaming with the given
+	 * settings. If the sample rate was sustained and no settings were stored yet, the settings are
+	 * stored. If it was not sustained, more parallel requests (or larger packets if the number of
+	 * requests is at its maximum) are stored for the next start. Called by the Airspy (usb thread)
+	 * after getWarmupMs() if the autotuner was set with Airspy.setAutotuner().
+	 *
+	 * @param monitor			transfer statistics of the current streaming
+	 * @param usbPacketSize		packet size that is currently used
+	 * @param numUsbRequests	number of parallel requests that is currently used
+	 * @return true if the sample rate was sustained with the current settings
+	 */
+	public boolean evaluate(AirspyTransferMonitor monitor, int usbPacketSize, int numUsbRequests) {
+		boolean sustained = isSustained(monitor, usbPacketSize, numUsbRequests);
+		Log.i(LOGTAG, "evaluate: packetSize=" + usbPacketSize + " numRequests=" + numUsbRequests
+				+ " sustained=" + sustained + " (" + monitor + ")");
+		if (sustained) {
+			if (!hasTunedSettings() && usbPacketSize % AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT == 0)
+				storeTunedSettings(usbPacketSize, numUsbRequests);
+			return true;
+		}
+
+		// Not sustained: use more requests (or larger packets) next time
+		int maxRequests = REQUEST_CANDIDATES[REQUEST_CANDIDATES.length - 1];
+		int alignedMax = maxPacketSize / AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT * AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT;
+		int alignedPacketSize = Math.max(AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT,
+				usbPacketSize / AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT * AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT);
+		if (numUsbRequests < maxRequests)
+			storeTunedSettings(alignedPacketSize, Math.min(maxRequests, numUsbRequests * 2));
+		else if (alignedPacketSize < alignedMax)
+			storeTunedSettings(Math.min(alignedMax, alignedPacketSize * 2), numUsbRequests);
+		else
+			Log.w(LOGTAG, "evaluate: Sample rate not sustained with the largest settings. Device may be too slow!");
+		return false;
+	}
+
+	/**
+	 * Calibration run: Streams with each candidate setting for the given duration (in raw mode,
+	 * the buffers are returned immediately) and measures the transfer statistics. Then picks the
+	 * setting with the smallest packets (lowest latency) whose cpu load is close to the minimum
+	 * and the fewest requests that sustained the sample rate with this packet size. The setting
+	 * is stored and can be used with getStreamingConfig().
+	 *
+	 * The Airspy must be in receiver mode OFF and configured with the sample rate and packing
+	 * setting of this autotuner. The raw mode and streaming config of the Airspy are restored
+	 * afterwards.
+	 *
+	 * Note: This method blocks for several seconds and should not be called from a GUI Thread!
+	 *
+	 * @param airspy				Airspy instance
+	 * @param durationPerRunMs		streaming duration of each candidate in ms (e.g. 1000)
+	 * @return list of all measurements or null on error (e.g. no setting sustained the sample rate)
+	 * @throws Airspy.AirspyUsbException
+	 */
+	public ArrayList<Measurement> calibrate(Airspy airspy, int durationPerRunMs) throws Airspy.AirspyUsbException {
+		if (airspy.getReceiverMode() != Airspy.AIRSPY_RECEIVER_MODE_OFF) {
+			Log.e(LOGTAG, "calibrate: Airspy is not in receiver mode OFF. Cannot calibrate!");
+			return null;
+		}
+		boolean oldRawMode = airspy.getRawMode();
+		AirspyStreamingConfig oldConfig = airspy.getStreamingConfig();
+		ArrayList<Measurement> measurements = new ArrayList<Measurement>();
+		ArrayList<Measurement> sustained = new ArrayList<Measurement>();
+		airspy.setRawMode(true);
+
+		try {
+			for (int packets : PACKET_SIZE_CANDIDATES) {
+				int packetSize = packets * AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT;
+				if (packetSize > maxPacketSize)
+					break;
+				// Try the request counts in ascending order until the rate is sustained:
+				for (int numRequests : REQUEST_CANDIDATES) {
+					Measurement measurement = measure(airspy, packetSize, numRequests, durationPerRunMs);
+					if (measurement == null)
+						return null;
+					measurements.add(measurement);
+					if (measurement.sustained) {
+						sustained.add(measurement);
+						break;
+					}
+				}
+			}
+		} finally {
+			airspy.setRawMode(oldRawMode);
+			airspy.setStreamingConfig(oldConfig);
+		}
+
+		if (sustained.isEmpty()) {
+			Log.e(LOGTAG, "calibrate: No setting sustained the sample rate of " + sampleRate + " Sps!");
+			return null;
+		}
+
+		// Pick the smallest packets with a cpu load close to the minimum:
+		double minCpuLoad = Double.MAX_VALUE;
+		for (Measurement measurement : sustained)
+			minCpuLoad = Math.min(minCpuLoad, measurement.cpuLoad);
+		double maxCpuLoad = Math.max(minCpuLoad * (1 + CPU_TOLERANCE), minCpuLoad + CPU_TOLERANCE_ABS);
+		for (Measurement measurement : sustained) {		// ordered by packet size
+			if (measurement.cpuLoad <= maxCpuLoad) {
+				Log.i(LOGTAG, "calibrate: Selected " + measurement);
+				storeTunedSettings(measurement.usbPacketSize, measurement.numUsbRequests);
+				break;
+			}
+		}
+		return measurements;
+	}
+
+	/**
+	 * Streams with the given settings for the given duration and returns the measurement.
+	 *
+	 * @return measurement or null on error
+	 */
+	private Measurement measure(Airspy airspy, int usbPacketSize, int numUsbRequests, int durationMs) throws Airspy.AirspyUsbException {
+		try {
+			airspy.setStreamingConfig(AirspyStreamingConfig.fromTransferSettings(usbPacketSize, numUsbRequests,
+					CALIBRATION_HEADROOM_MS, sampleRate, packingEnabled, Airspy.AIRSPY_SAMPLE_UINT16_REAL));
+		} catch (Exception e) {
+			Log.e(LOGTAG, "measure: Invalid settings: " + e.getMessage());
+			return null;
+		}
+		if (!airspy.startRX()) {
+			Log.e(LOGTAG, "measure: startRX failed!");
+			return null;
+		}
+
+		// Return the buffers immediately:
+		ArrayBlockingQueue<byte[]> queue = airspy.getRawQueue();
+		ArrayBlockingQueue<byte[]> returnQueue = airspy.getRawReturnPoolQueue();
+		long endTime = System.currentTimeMillis() + durationMs;
+		while (System.currentTimeMillis() < endTime && airspy.getReceiverMode() == Airspy.AIRSPY_RECEIVER_MODE_RECEIVE) {
+			try {
+				byte[] buffer = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (buffer != null)
+					returnQueue.offer(buffer);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "measure: Interrupted while waiting for buffers!");
+				break;
+			}
+		}
+		// Statistics have to be read before the receiving stops:
+		AirspyTransferMonitor monitor = airspy.getTransferMonitor();
+		Measurement measurement = new Measurement();
+		measurement.usbPacketSize = usbPacketSize;
+		measurement.numUsbRequests = numUsbRequests;
+		measurement.sustained = airspy.getReceiverMode() == Airspy.AIRSPY_RECEIVER_MODE_RECEIVE
+				&& isSustained(monitor, usbPacketSize, numUsbRequests);
+		measurement.byteRate = monitor.getByteRate();
+		measurement.maxGapUs = monitor.getMaxGapUs();
+		measurement.cpuLoad = monitor.getCpuLoad();
+		Log.i(LOGTAG, "measure: " + measurement);
+
+		airspy.stop();
+		if (!airspy.waitForReceiveThread(1000)) {
+			Log.e(LOGTAG, "measure: Receive thread did not stop!");
+			return null;
+		}
+		return measurement;
+	}
+}
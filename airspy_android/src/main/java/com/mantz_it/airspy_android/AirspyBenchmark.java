@@ -0,0 +1,893 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyBenchmark.java
+ * Description: This class runs benchmarks of the sample processing without an Airspy
+ *              device. Synthetic raw samples are fed into the converters exactly like
+ *              the USB thread of the Airspy class would do it (with the selected
+ *              execution model) and a consumer thread returns the converted buffers.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyBenchmark {
+
+	private static final String LOGTAG = "AirspyBenchmark";
+	private static final int QUEUE_SIZE = 16;		// number of raw and converted buffers in the pools
+
+	/**
+	 * Holds the result of a single benchmark run
+	 */
+	public static class Result {
+		public int sampleType;
+		public int executionModel;
+		public int numWorkers;
+		public boolean packingEnabled;
+		public long samples;		// number of (real) samples that were converted
+		public long timeNs;			// duration of the run in ns
+
+		/**
+		 * @return number of (real) samples converted per second
+		 */
+		public long getSamplesPerSecond() {
+			if (timeNs == 0)
+				return 0;
+			return samples * 1000000000L / timeNs;
+		}
+
+		/**
+		 * Returns the real time factor for the given sample rate. A value below 1 means that the
+		 * samples can not be converted in real time with this execution model.
+		 *
+		 * @param sampleRate	sample rate of the Airspy in Sps (see Airspy.getSampleRates())
+		 * @return samples per second / sample rate
+		 */
+		public double getRealTimeFactor(int sampleRate) {
+			return (double) getSamplesPerSecond() / sampleRate;
+		}
+
+		@Override
+		public String toString() {
+			return "type=" + sampleType + " model=" + executionModelToString(executionModel, numWorkers)
+					+ " packing=" + packingEnabled + " " + getSamplesPerSecond() + " Sps";
+		}
+	}
+
+	/**
+	 * @return short human readable name of the execution model
+	 */
+	public static String executionModelToString(int executionModel, int numWorkers) {
+		switch (executionModel) {
+			case Airspy.AIRSPY_EXECUTION_MODEL_INLINE:		return "inline";
+			case Airspy.AIRSPY_EXECUTION_MODEL_PIPELINED:	return "pipelined";
+			case Airspy.AIRSPY_EXECUTION_MODEL_WORKERS:		return numWorkers + " workers";
+			default:										return "unknown";
+		}
+	}
+
+	/**
+	 * Converts synthetic samples for the given duration with the given sample type and execution model.
+	 * The calling thread plays the role of the USB thread.
+	 *
+	 * @param sampleType		sample type (Airspy.AIRSPY_SAMPLE_*)
+	 * @param packingEnabled	if true, the raw buffers are packed
+	 * @param executionModel	Airspy.AIRSPY_EXECUTION_MODEL_INLINE, *_PIPELINED or *_WORKERS
+	 * @param numWorkers		number of workers (only used for Airspy.AIRSPY_EXECUTION_MODEL_WORKERS)
+	 * @param usbPacketSize		size of the raw buffers in bytes (as transferred over USB; if packing is
+	 *                          enabled a multiple of AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT)
+	 * @param durationMs		duration of the benchmark in milliseconds
+	 * @return result of the benchmark
+	 * @throws Exception if the combination of parameters is not supported
+	 */
+	public static Result benchmarkExecutionModel(int sampleType, boolean packingEnabled, int executionModel, int numWorkers,
+												 int usbPacketSize, int durationMs) throws Exception {
+		if (usbPacketSize <= 0 || (packingEnabled && usbPacketSize % AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT != 0)) {
+			Log.e(LOGTAG, "benchmarkExecutionModel: Invalid USB packet size " + usbPacketSize + " (packing=" + packingEnabled + ")");
+			throw new Exception("Invalid USB packet size " + usbPacketSize + " (packing=" + packingEnabled + ")");
+		}
+		if (executionModel == Airspy.AIRSPY_EXECUTION_MODEL_WORKERS && !Airspy.isStatelessSampleType(sampleType)) {
+			Log.e(LOGTAG, "benchmarkExecutionModel: Sample type " + sampleType + " can't be converted by multiple workers!");
+			throw new Exception("Sample type " + sampleType + " can't be converted by multiple workers");
+		}
+		int numConverters = (executionModel == Airspy.AIRSPY_EXECUTION_MODEL_WORKERS) ? numWorkers : 1;
+		int unpackedSize = packingEnabled ? usbPacketSize * 4 / 3 : usbPacketSize;
+		final int samplesPerBuffer = unpackedSize / 2;
+
+		// Create the raw buffers with random 12 bit samples:
+		Random random = new Random(0);
+		ArrayBlockingQueue<byte[]> rawPool = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+		for (int i = 0; i < QUEUE_SIZE; i++) {
+			byte[] buffer = new byte[usbPacketSize];
+			random.nextBytes(buffer);
+			if (!packingEnabled) {
+				for (int j = 1; j < buffer.length; j += 2)
+					buffer[j] &= 0x0F;
+			}
+			rawPool.offer(buffer);
+		}
+
+		// Create the input queues of the converters:
+		ArrayList<ArrayBlockingQueue<byte[]>> inputQueues = new ArrayList<ArrayBlockingQueue<byte[]>>(numConverters);
+		for (int i = 0; i < numConverters; i++)
+			inputQueues.add(new ArrayBlockingQueue<byte[]>(QUEUE_SIZE));
+		AirspyConverterSequencer sequencer = (numConverters > 1) ? new AirspyConverterSequencer(numConverters) : null;
+
+		// Create output queues and converters:
+		Thread[] converters = new Thread[numConverters];
+		switch (sampleType) {
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_IQ:
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_REAL:
+				ArrayBlockingQueue<float[]> floatQueue = new ArrayBlockingQueue<float[]>(QUEUE_SIZE);
+				ArrayBlockingQueue<float[]> floatPool = new ArrayBlockingQueue<float[]>(QUEUE_SIZE);
+				for (int i = 0; i < QUEUE_SIZE; i++)
+					floatPool.offer(new float[samplesPerBuffer]);
+				for (int i = 0; i < numConverters; i++) {
+					AirspyFloatConverter converter = new AirspyFloatConverter(sampleType, packingEnabled, inputQueues.get(i),
+							rawPool, floatQueue, floatPool);
+					if (sequencer != null)
+						converter.setSequencer(sequencer, i);
+					converters[i] = converter;
+				}
+				return runBenchmark(sampleType, packingEnabled, executionModel, numWorkers, durationMs, samplesPerBuffer,
+						rawPool, inputQueues, converters, floatQueue, floatPool);
+			case Airspy.AIRSPY_SAMPLE_INT16_IQ:
+			case Airspy.AIRSPY_SAMPLE_INT16_REAL:
+			case Airspy.AIRSPY_SAMPLE_UINT16_REAL:
+				ArrayBlockingQueue<short[]> shortQueue = new ArrayBlockingQueue<short[]>(QUEUE_SIZE);
+				ArrayBlockingQueue<short[]> shortPool = new ArrayBlockingQueue<short[]>(QUEUE_SIZE);
+				for (int i = 0; i < QUEUE_SIZE; i++)
+					shortPool.offer(new short[samplesPerBuffer]);
+				for (int i = 0; i < numConverters; i++) {
+					AirspyInt16Converter converter = new AirspyInt16Converter(sampleType, packingEnabled, inputQueues.get(i),
+							rawPool, shortQueue, shortPool);
+					if (sequencer != null)
+						converter.setSequencer(sequencer, i);
+					converters[i] = converter;
+				}
+				return runBenchmark(sampleType, packingEnabled, executionModel, numWorkers, durationMs, samplesPerBuffer,
+						rawPool, inputQueues, converters, shortQueue, shortPool);
+			case Airspy.AIRSPY_SAMPLE_INT8_IQ:
+			case Airspy.AIRSPY_SAMPLE_UINT8_IQ:
+			case Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED:
+				ArrayBlockingQueue<byte[]> byteQueue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+				ArrayBlockingQueue<byte[]> bytePool = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+				for (int i = 0; i < QUEUE_SIZE; i++)
+					bytePool.offer(new byte[samplesPerBuffer + (sampleType == Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED ? 1 : 0)]);
+				converters[0] = new AirspyInt8Converter(sampleType, packingEnabled, inputQueues.get(0), rawPool, byteQueue, bytePool);
+				return runBenchmark(sampleType, packingEnabled, executionModel, numWorkers, durationMs, samplesPerBuffer,
+						rawPool, inputQueues, converters, byteQueue, bytePool);
+			default:
+				Log.e(LOGTAG, "benchmarkExecutionModel: Invalid sample type: " + sampleType);
+				throw new Exception("Invalid sample type: " + sampleType);
+		}
+	}
+
+	/**
+	 * Runs the benchmark with the prepared converters and queues.
+	 */
+	private static <T> Result runBenchmark(int sampleType, boolean packingEnabled, int executionModel, int numWorkers,
+										   int durationMs, final int samplesPerBuffer, ArrayBlockingQueue<byte[]> rawPool,
+										   ArrayList<ArrayBlockingQueue<byte[]>> inputQueues, Thread[] converters,
+										   final ArrayBlockingQueue<T> outputQueue, final ArrayBlockingQueue<T> outputPool)
+			throws InterruptedException {
+		final long[] consumedBuffers = new long[1];
+		final boolean[] stopConsumer = new boolean[1];
+		boolean inline = executionModel == Airspy.AIRSPY_EXECUTION_MODEL_INLINE;
+
+		// The consumer plays the role of the application and returns the buffers immediately:
+		Thread consumer = new Thread() {
+			public void run() {
+				while (!stopConsumer[0]) {
+					try {
+						T buffer = outputQueue.poll(100, TimeUnit.MILLISECONDS);
+						if (buffer == null)
+							continue;
+						outputPool.offer(buffer);
+						consumedBuffers[0]++;
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+		};
+		consumer.start();
+		if (!inline) {
+			for (Thread converter : converters)
+				converter.start();
+		}
+
+		// The calling thread plays the role of the USB thread:
+		long dispatchCounter = 0;
+		long startTime = System.nanoTime();
+		long endTime = startTime + durationMs * 1000000L;
+		while (System.nanoTime() < endTime) {
+			byte[] rawBuffer = rawPool.poll(1000, TimeUnit.MILLISECONDS);
+			if (rawBuffer == null) {
+				Log.e(LOGTAG, "runBenchmark: Raw buffer pool is empty. Stop!");
+				break;
+			}
+			if (inline) {
+				T outputBuffer = outputPool.poll(1000, TimeUnit.MILLISECONDS);
+				if (outputBuffer == null) {
+					Log.e(LOGTAG, "runBenchmark: Output buffer pool is empty. Stop!");
+					break;
+				}
+				convert(converters[0], rawBuffer, outputBuffer);
+				outputQueue.offer(outputBuffer);
+				rawPool.offer(rawBuffer);
+			} else {
+				inputQueues.get((int) (dispatchCounter++ % inputQueues.size())).put(rawBuffer);
+			}
+		}
+
+		// Wait until all buffers are converted and stop the threads:
+		while (outputPool.remainingCapacity() > 0 && System.nanoTime() < endTime + 1000000000L)
+			Thread.sleep(1);
+		long timeNs = System.nanoTime() - startTime;
+		for (Thread converter : converters) {
+			if (converter instanceof AirspyInt16Converter)
+				((AirspyInt16Converter) converter).requestStop();
+			else if (converter instanceof AirspyFloatConverter)
+				((AirspyFloatConverter) converter).requestStop();
+			else if (converter instanceof AirspyInt8Converter)
+				((AirspyInt8Converter) converter).requestStop();
+			converter.interrupt();		// don't wait for the timeout of the queues
+		}
+		// The next benchmark must not share the cpu with converters of this one:
+		for (Thread converter : converters)
+			converter.join();
+		stopConsumer[0] = true;
+		consumer.join();
+
+		Result result = new Result();
+		result.sampleType = sampleType;
+		result.executionModel = executionModel;
+		result.numWorkers = (executionModel == Airspy.AIRSPY_EXECUTION_MODEL_WORKERS) ? numWorkers : 1;
+		result.packingEnabled = packingEnabled;
+		result.samples = consumedBuffers[0] * samplesPerBuffer;
+		result.timeNs = timeNs;
+		Log.i(LOGTAG, "runBenchmark: " + result);
+		return result;
+	}
+
+	/**
+	 * Calls the convert() method of the given converter
+	 */
+	private static void convert(Thread converter, byte[] rawBuffer, Object outputBuffer) {
+		if (converter instanceof AirspyInt16Converter)
+			((AirspyInt16Converter) converter).convert(rawBuffer, (short[]) outputBuffer);
+		else if (converter instanceof AirspyFloatConverter)
+			((AirspyFloatConverter) converter).convert(rawBuffer, (float[]) outputBuffer);
+		else if (converter instanceof AirspyInt8Converter)
+			((AirspyInt8Converter) converter).convert(rawBuffer, (byte[]) outputBuffer);
+	}
+
+	/**
+	 * Runs the execution model benchmark for all sample types and returns a report. For every
+	 * sample type and execution model, the report contains the throughput and the real time
+	 * factor for each of the given sample rates (the best model is marked with '*').
+	 *
+	 * @param sampleRates		sample rates of the Airspy in Sps (see Airspy.getSampleRates())
+	 * @param packingEnabled	if true, the raw buffers are packed
+	 * @param maxWorkers		max. number of workers to test (e.g. number of cpu cores)
+	 * @param usbPacketSize		size of the raw buffers in bytes (as transferred over USB; if packing is
+	 *                          enabled a multiple of AirspyStreamingConfig.PACKET_SIZE_ALIGNMENT)
+	 * @param durationMs		duration of each single run in milliseconds
+	 * @return report (human readable)
+	 */
+	public static String benchmarkExecutionModels(int[] sampleRates, boolean packingEnabled, int maxWorkers,
+												  int usbPacketSize, int durationMs) {
+		StringBuilder report = new StringBuilder();
+		for (int sampleType = Airspy.AIRSPY_SAMPLE_FLOAT32_IQ; sampleType <= Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED; sampleType++) {
+			ArrayList<Result> results = new ArrayList<Result>();
+			try {
+				results.add(benchmarkExecutionModel(sampleType, packingEnabled, Airspy.AIRSPY_EXECUTION_MODEL_INLINE, 1, usbPacketSize, durationMs));
+				results.add(benchmarkExecutionModel(sampleType, packingEnabled, Airspy.AIRSPY_EXECUTION_MODEL_PIPELINED, 1, usbPacketSize, durationMs));
+				if (Airspy.isStatelessSampleType(sampleType)) {
+					for (int workers = 2; workers <= maxWorkers; workers *= 2)
+						results.add(benchmarkExecutionModel(sampleType, packingEnabled, Airspy.AIRSPY_EXECUTION_MODEL_WORKERS, workers, usbPacketSize, durationMs));
+				}
+			} catch (Exception e) {
+				Log.e(LOGTAG, "benchmarkExecutionModels: Benchmark failed: " + e.getMessage());
+				report.append("Sample type ").append(sampleType).append(": failed (").append(e.getMessage()).append(")\n");
+				continue;
+			}
+
+			Result best = results.get(0);
+			for (Result result : results) {
+				if (result.getSamplesPerSecond() > best.getSamplesPerSecond())
+					best = result;
+			}
+
+			report.append("Sample type ").append(sampleType).append(":\n");
+			for (Result result : results) {
+				report.append(result == best ? " * " : "   ")
+						.append(executionModelToString(result.executionModel, result.numWorkers)).append(": ")
+						.append(result.getSamplesPerSecond() / 1000).append(" kSps");
+				for (int sampleRate : sampleRates)
+					report.append(String.format("  %.2fx@%.1fMSps", result.getRealTimeFactor(sampleRate), sampleRate / 1e6));
+				report.append("\n");
+			}
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Measures the throughput of the AirspyResampler for one output rate. Random complex samples
+	 * are resampled buffer by buffer in the calling thread.
+	 *
+	 * @param inputRate		complex input rate in Sps (e.g. half of the Airspy sample rate for IQ)
+	 * @param outputRate	complex output rate in Sps
+	 * @param filterSpan	length of the filter (see AirspyResampler)
+	 * @param int16			if true, the int16 version is measured; otherwise the float version
+	 * @param bufferLength	number of values (2 per complex sample) per input buffer
+	 * @param durationMs	duration of the benchmark in milliseconds
+	 * @return number of complex input samples resampled per second
+	 * @throws Exception if the resampler can't be created for these rates
+	 */
+	public static long benchmarkResampler(int inputRate, int outputRate, int filterSpan, boolean int16,
+										  int bufferLength, int durationMs) throws Exception {
+		AirspyResampler resampler = new AirspyResampler(inputRate, outputRate, filterSpan, 60);
+		Random random = new Random(0);
+		float[] floatInput = new float[bufferLength];
+		short[] int16Input = new short[bufferLength];
+		for (int i = 0; i < bufferLength; i++) {
+			floatInput[i] = random.nextFloat() * 2 - 1;
+			int16Input[i] = (short) (random.nextInt(65536) - 32768);
+		}
+		float[] floatOutput = new float[resampler.getMaxOutputLength(bufferLength)];
+		short[] int16Output = new short[resampler.getMaxOutputLength(bufferLength)];
+
+		long samples = 0;
+		long startTime = System.nanoTime();
+		long endTime = startTime + durationMs * 1000000L;
+		long now;
+		do {
+			if (int16)
+				resampler.resample(int16Input, bufferLength, int16Output);
+			else
+				resampler.resample(floatInput, bufferLength, floatOutput);
+			samples += bufferLength / 2;
+			now = System.nanoTime();
+		} while (now < endTime);
+		return samples * 1000000000L / (now - startTime);
+	}
+
+	/**
+	 * Measures the throughput of the AirspyResampler for several output rates and returns a
+	 * human readable report (one line per rate with the real time factor for the input rate).
+	 *
+	 * @param inputRate		complex input rate in Sps
+	 * @param outputRates	complex output rates in Sps
+	 * @param filterSpan	length of the filter (see AirspyResampler)
+	 * @param durationMs	duration of each run in milliseconds
+	 * @return report
+	 */
+	public static String benchmarkResamplers(int inputRate, int[] outputRates, int filterSpan, int durationMs) {
+		StringBuilder report = new StringBuilder();
+		report.append("Resampler from ").append(inputRate / 1000).append(" kSps (filter span ").append(filterSpan).append("):\n");
+		for (int outputRate : outputRates) {
+			try {
+				long floatRate = benchmarkResampler(inputRate, outputRate, filterSpan, false, 1024 * 16, durationMs);
+				long int16Rate = benchmarkResampler(inputRate, outputRate, filterSpan, true, 1024 * 16, durationMs);
+				report.append(String.format("   -> %d kSps: float %d kSps (%.2fx)  int16 %d kSps (%.2fx)\n", outputRate / 1000,
+						floatRate / 1000, (double) floatRate / inputRate, int16Rate / 1000, (double) int16Rate / inputRate));
+			} catch (Exception e) {
+				Log.e(LOGTAG, "benchmarkResamplers: Benchmark failed: " + e.getMessage());
+				report.append("   -> ").append(outputRate / 1000).append(" kSps: failed (").append(e.getMessage()).append(")\n");
+			}
+		}
+		return report.toString();
+	}
+
+
+	/**
+	 * Measures how fast the calling thread can convert raw samples to float IQ and demodulate
+	 * them with the AirspyFmDemodulator (i.e. both on a single core).
+	 *
+	 * @param sampleRate	sample rate of the Airspy in Sps (the IQ rate is half of it)
+	 * @param stereo		if true, the stereo decoder is enabled
+	 * @param usbPacketSize	size of the raw buffers in bytes (as transferred over USB)
+	 * @param durationMs	duration of the benchmark in milliseconds
+	 * @return real time factor (values below 1 mean that one core can not keep up)
+	 * @throws Exception if the demodulator can't be created for this rate
+	 */
+	public static double benchmarkFmDemodulator(int sampleRate, boolean stereo, int usbPacketSize, int durationMs) throws Exception {
+		int samplesPerBuffer = usbPacketSize / 2;
+		AirspyFloatConverter converter = new AirspyFloatConverter(Airspy.AIRSPY_SAMPLE_FLOAT32_IQ, false, null, null, null, null);
+		AirspyFmDemodulator demodulator = new AirspyFmDemodulator(sampleRate / 2, samplesPerBuffer, stereo,
+				AirspyFmDemodulator.DEEMPHASIS_EUROPE);
+		Random random = new Random(0);
+		byte[] raw = new byte[usbPacketSize];
+		random.nextBytes(raw);
+		for (int j = 1; j < raw.length; j += 2)
+			raw[j] &= 0x0F;
+		float[] iq = new float[samplesPerBuffer];
+		float[] audio = new float[demodulator.getMaxOutputLength(samplesPerBuffer)];
+
+		long samples = 0;
+		long startTime = System.nanoTime();
+		long endTime = startTime + durationMs * 1000000L;
+		long now;
+		do {
+			converter.convert(raw, iq);
+			demodulator.demodulate(iq, samplesPerBuffer, audio);
+			samples += samplesPerBuffer;
+			now = System.nanoTime();
+		} while (now < endTime);
+		return samples * 1000000000.0 / (now - startTime) / sampleRate;
+	}
+
+	/**
+	 * Creates a recording of real samples (AIRSPY_SAMPLE_INT16_REAL) that contains random DF17
+	 * extended squitters at Fs/4 (as the Airspy delivers a 1090 MHz signal) plus white noise.
+	 * Can be used to replay the same signal to the AirspyModeSDecoder on every device.
+	 *
+	 * @param sampleRate		sample rate of the Airspy in Sps (real samples)
+	 * @param durationMs		length of the recording in milliseconds
+	 * @param messagesPerSecond	number of messages per second (evenly spaced)
+	 * @param snrDb				ratio of the pulse amplitude to the noise amplitude (dB)
+	 * @return recording (12 bit samples, signed)
+	 */
+	public static short[] createModeSRecording(int sampleRate, int durationMs, int messagesPerSecond, double snrDb) {
+		Random random = new Random(0);
+		short[] recording = new short[(int) ((long) sampleRate * durationMs / 1000)];
+		double noise = 20;
+		double amplitude = noise * Math.pow(10, snrDb / 20);
+		for (int i = 0; i < recording.length; i++)
+			recording[i] = (short) Math.round(random.nextGaussian() * noise);
+
+		double samplesPerChip = sampleRate * 0.5e-6;
+		int spacing = sampleRate / Math.max(1, messagesPerSecond);
+		byte[] message = new byte[14];
+		for (int start = spacing / 2; start + 241 * samplesPerChip < recording.length; start += spacing) {
+			// Random DF17 message with a valid parity field:
+			random.nextBytes(message);
+			message[0] = (byte) ((17 << 3) | 5);
+			int crc = AirspyModeSDecoder.calcCrc(message);
+			message[11] = (byte) (crc >> 16);
+			message[12] = (byte) (crc >> 8);
+			message[13] = (byte) crc;
+
+			double phase = random.nextDouble() * 2 * Math.PI;
+			for (int chip = 0; chip < 16 + 224; chip++) {
+				boolean high;
+				if (chip < 16)
+					high = chip == 0 || chip == 2 || chip == 7 || chip == 9;
+				else {
+					int bit = (chip - 16) / 2;
+					boolean one = (message[bit / 8] & (0x80 >> (bit % 8))) != 0;
+					high = one == ((chip & 1) == 0);
+				}
+				if (!high)
+					continue;
+				int from = start + (int) Math.round(chip * samplesPerChip);
+				int to = start + (int) Math.round((chip + 1) * samplesPerChip);
+				for (int n = from; n < to; n++)		// carrier at Fs/4
+					recording[n] += (short) Math.round(amplitude * Math.cos(Math.PI / 2 * n + phase));
+			}
+		}
+		for (int i = 0; i < recording.length; i++)
+			recording[i] = (short) Math.max(-2048, Math.min(2047, recording[i]));
+		return recording;
+	}
+
+	/**
+	 * Replays a recording to the AirspyModeSDecoder in the calling thread (buffer by buffer as
+	 * the converters would deliver it) and returns a human readable report with the decoded
+	 * messages per second and the cpu time per MSps.
+	 *
+	 * @param recording		real samples (AIRSPY_SAMPLE_INT16_REAL), e.g. from createModeSRecording()
+	 * @param sampleRate	sample rate of the recording in Sps
+	 * @param bufferLength	number of samples per buffer
+	 * @param durationMs	duration of the benchmark in milliseconds (the recording is replayed in a loop)
+	 * @return report
+	 * @throws Exception if the decoder can't be created for this rate
+	 */
+	public static String benchmarkModeSDecoder(short[] recording, int sampleRate, int bufferLength, int durationMs) throws Exception {
+		AirspyModeSDecoder decoder = new AirspyModeSDecoder(sampleRate / 2, bufferLength);
+		short[] buffer = new short[bufferLength];
+		long samples = 0;
+		int position = 0;
+		long startTime = System.nanoTime();
+		long endTime = startTime + durationMs * 1000000L;
+		long now;
+		do {
+			for (int i = 0; i < bufferLength; i++) {
+				buffer[i] = recording[position++];
+				if (position == recording.length)
+					position = 0;
+			}
+			decoder.processInt16Real(buffer, bufferLength);
+			samples += bufferLength;
+			now = System.nanoTime();
+		} while (now < endTime);
+
+		double recordedSeconds = (double) samples / sampleRate;
+		return String.format("Mode S decoder @%.1fMSps: %.0f msgs/s (recording time), %d corrected, %.1f ms cpu per second per MSps (%.2fx real time)\n",
+				sampleRate / 1e6, decoder.getMessages() / recordedSeconds, decoder.getCorrectedMessages(),
+				decoder.getCpuLoad() * 1000 / (sampleRate / 1e6), 1 / decoder.getCpuLoad());
+	}
+
+	/**
+	 * Measures the image rejection of a Hilbert kernel preset: a real tone is converted to float
+	 * IQ and the power of the tone is compared with the power of its image (mirrored at 0 Hz).
+	 *
+	 * @param preset		AirspyFilterDesign.HILBERT_PRESET_*
+	 * @param frequency		frequency of the tone relative to the IQ sample rate (-0.5 - 0.5)
+	 * @return image rejection in dB
+	 * @throws Exception if the preset is invalid
+	 */
+	public static double measureImageRejection(int preset, double frequency) throws Exception {
+		float[] kernel = AirspyFilterDesign.getHilbertKernel(preset);
+		if (kernel == null)
+			throw new Exception("Invalid preset: " + preset);
+		int numSamples = 8192;		// complex samples per measurement
+		int bin = (int) Math.round(frequency * numSamples);
+		AirspyFloatConverter converter = new AirspyFloatConverter(Airspy.AIRSPY_SAMPLE_FLOAT32_IQ, false, null, null, null, null, kernel);
+		byte[] raw = new byte[4 * numSamples];
+		float[] iq = new float[2 * numSamples];
+		double toneFrequency = 0.25 + (double) bin / numSamples / 2;		// relative to the real sample rate
+
+		// The first buffer fills the filter, the second one is measured:
+		long n = 0;
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < 2 * numSamples; i++, n++) {
+				int value = 2048 + (int) Math.round(1800 * Math.cos(2 * Math.PI * toneFrequency * n));
+				raw[2 * i] = (byte) value;
+				raw[2 * i + 1] = (byte) (value >> 8);
+			}
+			converter.convert(raw, iq);
+		}
+		double tone = dftPower(iq, bin);
+		double image = dftPower(iq, -bin);
+		return 10 * Math.log10(Math.max(tone, image) / Math.min(tone, image));
+	}
+
+	private static double dftPower(float[] iq, int bin) {
+		int numSamples = iq.length / 2;
+		double re = 0;
+		double im = 0;
+		for (int i = 0; i < numSamples; i++) {
+			double phase = -2 * Math.PI * (((long) bin * i) % numSamples) / numSamples;
+			double c = Math.cos(phase);
+			double s = Math.sin(phase);
+			re += iq[2 * i] * c - iq[2 * i + 1] * s;
+			im += iq[2 * i] * s + iq[2 * i + 1] * c;
+		}
+		return re * re + im * im;
+	}
+
+	/**
+	 * Measures the image rejection and the conversion cost of all Hilbert kernel presets and
+	 * returns a human readable report (one line per preset), so that the preset can be chosen
+	 * for the device (see Airspy.setHilbertPreset()).
+	 *
+	 * @param durationMs	duration of each speed measurement in milliseconds
+	 * @return report
+	 */
+	public static String benchmarkHilbertPresets(int durationMs) {
+		StringBuilder report = new StringBuilder();
+		report.append("Hilbert kernel presets (image rejection at 10% / 25% / 40% of the IQ rate, cost per sample):\n");
+		byte[] raw = new byte[1024 * 16];
+		new Random(0).nextBytes(raw);
+		for (int j = 1; j < raw.length; j += 2)
+			raw[j] &= 0x0F;
+		float[] floatOutput = new float[raw.length / 2];
+		short[] int16Output = new short[raw.length / 2];
+
+		// Create all converters and warm them up first, so that the JIT treats all presets equally:
+		int numPresets = AirspyFilterDesign.HILBERT_PRESET_COUNT;
+		AirspyFloatConverter[] floatConverters = new AirspyFloatConverter[numPresets];
+		AirspyInt16Converter[] int16Converters = new AirspyInt16Converter[numPresets];
+		try {
+			for (int preset = 0; preset < numPresets; preset++) {
+				floatConverters[preset] = new AirspyFloatConverter(Airspy.AIRSPY_SAMPLE_FLOAT32_IQ, false,
+						null, null, null, null, AirspyFilterDesign.getHilbertKernel(preset));
+				int16Converters[preset] = new AirspyInt16Converter(Airspy.AIRSPY_SAMPLE_INT16_IQ, false,
+						null, null, null, null, AirspyFilterDesign.getHilbertKernelInt16(preset));
+			}
+			for (int i = 0; i < 200; i++) {
+				for (int preset = 0; preset < numPresets; preset++) {
+					floatConverters[preset].convert(raw, floatOutput);
+					int16Converters[preset].convert(raw, int16Output);
+				}
+			}
+
+			for (int preset = 0; preset < numPresets; preset++) {
+				long floatNs = 0;
+				long int16Ns = 0;
+				long samples = 0;
+				long endTime = System.nanoTime() + durationMs * 1000000L;
+				while (System.nanoTime() < endTime) {
+					long startTime = System.nanoTime();
+					floatConverters[preset].convert(raw, floatOutput);
+					long midTime = System.nanoTime();
+					int16Converters[preset].convert(raw, int16Output);
+					floatNs += midTime - startTime;
+					int16Ns += System.nanoTime() - midTime;
+					samples += raw.length / 2;
+				}
+				report.append(String.format("   %-12s %2d taps: %5.1f / %5.1f / %5.1f dB  float %.2f ns  int16 %.2f ns\n",
+						AirspyFilterDesign.hilbertPresetToString(preset), AirspyFilterDesign.getHilbertKernel(preset).length,
+						measureImageRejection(preset, 0.1), measureImageRejection(preset, 0.25), measureImageRejection(preset, 0.4),
+						(double) floatNs / samples, (double) int16Ns / samples));
+			}
+		} catch (Exception e) {
+			Log.e(LOGTAG, "benchmarkHilbertPresets: Benchmark failed: " + e.getMessage());
+			report.append("   failed (").append(e.getMessage()).append(")\n");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Compares the folded Hilbert FIR of the int16 IQ conversion (symmetric kernels) with the
+	 * generic loop that multiplies all taps, for all presets. Only the FIR runs (on the same
+	 * random samples), so the report shows the gain of the folding on the real -> IQ path
+	 * (e.g. 10 MSps real -> 5 MSps IQ).
+	 *
+	 * @param sampleRate	sample rate of the Airspy in Sps (real samples; for the real time factor)
+	 * @param durationMs	duration of each measurement in milliseconds
+	 * @return report (one line per preset with the cost per real input sample)
+	 */
+	public static String benchmarkInt16Fir(int sampleRate, int durationMs) {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("Int16 Hilbert FIR folded vs. generic (%.1f MSps real -> %.1f MSps IQ, per real sample):\n",
+				sampleRate / 1e6, sampleRate / 2e6));
+		short[] samples = new short[1024 * 16 / 2];
+		short[] buffer = new short[samples.length];
+		Random random = new Random(0);
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = (short) ((random.nextInt(4096) - 2048) << 4);
+
+		int numPresets = AirspyFilterDesign.HILBERT_PRESET_COUNT;
+		try {
+			AirspyInt16Converter[] converters = new AirspyInt16Converter[numPresets];
+			for (int preset = 0; preset < numPresets; preset++) {
+				converters[preset] = new AirspyInt16Converter(Airspy.AIRSPY_SAMPLE_INT16_IQ, false,
+						null, null, null, null, AirspyFilterDesign.getHilbertKernelInt16(preset));
+			}
+			// Warm up (JIT) both loops of all presets first:
+			for (int i = 0; i < 200; i++) {
+				for (int preset = 0; preset < numPresets; preset++) {
+					System.arraycopy(samples, 0, buffer, 0, samples.length);
+					converters[preset].firInterleaved(buffer);
+					System.arraycopy(samples, 0, buffer, 0, samples.length);
+					converters[preset].firInterleavedGeneric(buffer);
+				}
+			}
+
+			for (int preset = 0; preset < numPresets; preset++) {
+				long foldedNs = 0;
+				long genericNs = 0;
+				long count = 0;
+				long endTime = System.nanoTime() + durationMs * 1000000L;
+				while (System.nanoTime() < endTime) {
+					System.arraycopy(samples, 0, buffer, 0, samples.length);
+					long startTime = System.nanoTime();
+					converters[preset].firInterleaved(buffer);
+					long midTime = System.nanoTime();
+					System.arraycopy(samples, 0, buffer, 0, samples.length);
+					long midTime2 = System.nanoTime();
+					converters[preset].firInterleavedGeneric(buffer);
+					foldedNs += midTime - startTime;
+					genericNs += System.nanoTime() - midTime2;
+					count += samples.length;
+				}
+				double folded = (double) foldedNs / count;
+				double generic = (double) genericNs / count;
+				report.append(String.format("   %-12s %2d taps: folded %.2f ns (%.2fx real time)  generic %.2f ns (%.2fx real time)  speedup %.2fx\n",
+						AirspyFilterDesign.hilbertPresetToString(preset), AirspyFilterDesign.getHilbertKernelInt16(preset).length,
+						folded, 1e9 / folded / sampleRate, generic, 1e9 / generic / sampleRate, generic / folded));
+			}
+		} catch (Exception e) {
+			Log.e(LOGTAG, "benchmarkInt16Fir: Benchmark failed: " + e.getMessage());
+			report.append("   failed (").append(e.getMessage()).append(")\n");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Measures how fast raw samples are converted (only the conversion of the values, without
+	 * the IQ processing) with the given conversion mode.
+	 *
+	 * @param sampleType	Airspy.AIRSPY_SAMPLE_FLOAT32_*, *_INT16_* or *_UINT16_REAL
+	 * @param mode			AirspyConversionTable.MODE_*
+	 * @param durationMs	duration of the benchmark in milliseconds
+	 * @return number of converted samples per second
+	 * @throws Exception if the sample type or mode is invalid
+	 */
+	public static long benchmarkConversionMode(int sampleType, int mode, int durationMs) throws Exception {
+		boolean floatType = sampleType == Airspy.AIRSPY_SAMPLE_FLOAT32_IQ || sampleType == Airspy.AIRSPY_SAMPLE_FLOAT32_REAL;
+		AirspyConversionTable table = (mode == AirspyConversionTable.MODE_ARITHMETIC) ? null : new AirspyConversionTable(sampleType, mode);
+		byte[] raw = new byte[1024 * 16];
+		new Random(0).nextBytes(raw);
+		for (int j = 1; j < raw.length; j += 2)
+			raw[j] &= 0x0F;
+		int count = raw.length / 2;
+		float[] floatOutput = new float[count];
+		short[] int16Output = new short[count];
+
+		long samples = 0;
+		long startTime = System.nanoTime();
+		long endTime = startTime + durationMs * 1000000L;
+		long now;
+		do {
+			if (table != null) {
+				if (floatType)
+					table.convert(raw, floatOutput, count);
+				else
+					table.convert(raw, int16Output, count);
+			} else if (floatType) {
+				AirspyFloatConverter.convertSamplesFloat(raw, floatOutput, count);
+			} else if (sampleType == Airspy.AIRSPY_SAMPLE_UINT16_REAL) {
+				AirspyInt16Converter.convertSamplesUint16(raw, int16Output, count);
+			} else {
+				AirspyInt16Converter.convertSamplesInt16(raw, int16Output, count);
+			}
+			samples += count;
+			now = System.nanoTime();
+		} while (now < endTime);
+		return samples * 1000000000L / (now - startTime);
+	}
+
+	/**
+	 * Determines the fastest conversion mode for a sample type on this device (the result can
+	 * be passed to Airspy.setConversionMode()).
+	 *
+	 * @param sampleType	Airspy.AIRSPY_SAMPLE_FLOAT32_*, *_INT16_* or *_UINT16_REAL
+	 * @param durationMs	duration of each measurement in milliseconds
+	 * @return AirspyConversionTable.MODE_* with the highest rate
+	 * @throws Exception if the sample type is invalid
+	 */
+	public static int getFastestConversionMode(int sampleType, int durationMs) throws Exception {
+		int fastestMode = AirspyConversionTable.MODE_ARITHMETIC;
+		long fastestRate = 0;
+		for (int mode = 0; mode < AirspyConversionTable.MODE_COUNT; mode++)
+			benchmarkConversionMode(sampleType, mode, durationMs / 4);		// warm up (JIT)
+		for (int mode = 0; mode < AirspyConversionTable.MODE_COUNT; mode++) {
+			long rate = benchmarkConversionMode(sampleType, mode, durationMs);
+			if (rate > fastestRate) {
+				fastestRate = rate;
+				fastestMode = mode;
+			}
+		}
+		return fastestMode;
+	}
+
+	/**
+	 * Compares the conversion modes for the float and int16 sample types and returns a human
+	 * readable report (one line per sample type).
+	 *
+	 * @param durationMs	duration of each measurement in milliseconds
+	 * @return report
+	 */
+	public static String benchmarkConversionModes(int durationMs) {
+		StringBuilder report = new StringBuilder();
+		report.append("Conversion of raw samples (MSps):\n");
+		int[] sampleTypes = {Airspy.AIRSPY_SAMPLE_FLOAT32_REAL, Airspy.AIRSPY_SAMPLE_INT16_REAL, Airspy.AIRSPY_SAMPLE_UINT16_REAL};
+		String[] names = {"float", "int16", "uint16"};
+		try {
+			for (int sampleType : sampleTypes) {
+				for (int mode = 0; mode < AirspyConversionTable.MODE_COUNT; mode++)
+					benchmarkConversionMode(sampleType, mode, durationMs / 4);		// warm up (JIT)
+			}
+			for (int i = 0; i < sampleTypes.length; i++) {
+				report.append("   ").append(names[i]).append(":");
+				for (int mode = 0; mode < AirspyConversionTable.MODE_COUNT; mode++) {
+					report.append(String.format("  %s %.1f", AirspyConversionTable.modeToString(mode),
+							benchmarkConversionMode(sampleTypes[i], mode, durationMs) / 1e6));
+				}
+				report.append("\n");
+			}
+		} catch (Exception e) {
+			Log.e(LOGTAG, "benchmarkConversionModes: Benchmark failed: " + e.getMessage());
+			report.append("   failed (").append(e.getMessage()).append(")\n");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Compares the cost of the float and the fixed-point way from the raw samples to a narrowband
+	 * channel: conversion to float IQ + AirspyChannelFrontEnd versus conversion to int16 IQ +
+	 * AirspyInt16ChannelFrontEnd. Both run buffer by buffer in the calling thread.
+	 *
+	 * @param sampleRate	sample rate of the Airspy in Sps (the IQ rate is half of it)
+	 * @param channelRate	complex sample rate of the channel in Sps (max. 250 kSps)
+	 * @param bandwidth		one sided bandwidth of the channel in Hz
+	 * @param durationMs	duration of each measurement in milliseconds
+	 * @return report (one line per path with the cost per complex input sample)
+	 */
+	public static String benchmarkChannelFrontEnds(int sampleRate, int channelRate, double bandwidth, int durationMs) {
+		StringBuilder report = new StringBuilder();
+		int iqRate = sampleRate / 2;
+		report.append(String.format("Channel front-end %d kSps -> %d kSps (incl. conversion, per complex input sample):\n",
+				iqRate / 1000, channelRate / 1000));
+		byte[] raw = new byte[1024 * 16];
+		new Random(0).nextBytes(raw);
+		for (int j = 1; j < raw.length; j += 2)
+			raw[j] &= 0x0F;
+		int length = raw.length / 2;
+		float[] floatBuffer = new float[length];
+		short[] int16Buffer = new short[length];
+		try {
+			AirspyFloatConverter floatConverter = new AirspyFloatConverter(Airspy.AIRSPY_SAMPLE_FLOAT32_IQ, false,
+					null, null, null, null);
+			AirspyInt16Converter int16Converter = new AirspyInt16Converter(Airspy.AIRSPY_SAMPLE_INT16_IQ, false,
+					null, null, null, null);
+			AirspyChannelFrontEnd floatFrontEnd = new AirspyChannelFrontEnd(iqRate, channelRate, bandwidth, length);
+			AirspyInt16ChannelFrontEnd int16FrontEnd = new AirspyInt16ChannelFrontEnd(iqRate, channelRate, bandwidth, length);
+			floatFrontEnd.setChannelOffset(iqRate / 8);
+			int16FrontEnd.setChannelOffset(iqRate / 8);
+			float[] floatOutput = new float[floatFrontEnd.getMaxOutputLength(length)];
+			short[] int16Output = new short[int16FrontEnd.getMaxOutputLength(length)];
+
+			// Warm up (JIT) both paths first:
+			for (int i = 0; i < 200; i++) {
+				floatConverter.convert(raw, floatBuffer);
+				floatFrontEnd.process(floatBuffer, length, floatOutput);
+				int16Converter.convert(raw, int16Buffer);
+				int16FrontEnd.process(int16Buffer, length, int16Output);
+			}
+
+			long[] convertNs = new long[2];
+			long[] frontEndNs = new long[2];
+			long samples = 0;
+			long endTime = System.nanoTime() + durationMs * 1000000L;
+			while (System.nanoTime() < endTime) {
+				long time0 = System.nanoTime();
+				floatConverter.convert(raw, floatBuffer);
+				long time1 = System.nanoTime();
+				floatFrontEnd.process(floatBuffer, length, floatOutput);
+				long time2 = System.nanoTime();
+				int16Converter.convert(raw, int16Buffer);
+				long time3 = System.nanoTime();
+				int16FrontEnd.process(int16Buffer, length, int16Output);
+				long time4 = System.nanoTime();
+				convertNs[0] += time1 - time0;
+				frontEndNs[0] += time2 - time1;
+				convertNs[1] += time3 - time2;
+				frontEndNs[1] += time4 - time3;
+				samples += length / 2;
+			}
+			String[] names = {"float", "int16"};
+			for (int i = 0; i < 2; i++) {
+				double ns = (double) (convertNs[i] + frontEndNs[i]) / samples;
+				report.append(String.format("   %s: conversion %.2f ns + front-end %.2f ns = %.2f ns (%.2fx real time)\n",
+						names[i], (double) convertNs[i] / samples, (double) frontEndNs[i] / samples, ns, 1e9 / ns / iqRate));
+			}
+			report.append("   int16 half-band stages (taps): ")
+					.append(Arrays.toString(int16FrontEnd.getHalfbandTaps())).append("\n");
+		} catch (Exception e) {
+			Log.e(LOGTAG, "benchmarkChannelFrontEnds: Benchmark failed: " + e.getMessage());
+			report.append("   failed (").append(e.getMessage()).append(")\n");
+		}
+		return report.toString();
+	}
+}
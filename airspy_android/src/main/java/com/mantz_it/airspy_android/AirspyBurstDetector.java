@@ -0,0 +1,342 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyBurstDetector.java
+ * Description: This class is a pipeline stage (float IQ) that detects bursts of energy. It
+ *              estimates the noise floor from the power of short blocks while no burst is
+ *              active, starts a burst if a block exceeds the noise floor by a threshold and
+ *              ends it after a hangover time without such a block. Each burst is delivered as
+ *              a self-contained segment (including pre and post padding) with its start
+ *              sample index and power via a callback. The samples in the pipeline are not
+ *              modified, so the stage can be combined with any other stage.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyBurstDetector implements AirspyDspStage<float[]> {
+
+	private static final String LOGTAG = "AirspyBurstDetector";
+
+	private static final float FLOOR_FALL = 0.05f;		// adaption of the noise floor to lower power (per block)
+	private static final float FLOOR_RISE = 0.002f;		// adaption of the noise floor to higher power (per block)
+
+	private static final int STATE_IDLE = 0;			// waiting for a burst
+	private static final int STATE_ACTIVE = 1;			// recording a burst
+	private static final int STATE_ENDING = 2;			// hangover expired; recording the post padding
+
+	private int blockSamples;				// number of complex samples per power measurement
+	private float thresholdFactor;			// linear power ratio to the noise floor that starts a burst
+	private int hangoverBlocks;				// number of quiet blocks that end a burst
+	private int preSamples;					// padding before the first active block (complex samples)
+	private int postSamples;				// padding after the last active block (complex samples)
+	private BurstCallbackInterface callback = null;
+
+	// Detector state (only accessed by the thread that runs the pipeline):
+	private int state = STATE_IDLE;
+	private long sampleIndex = 0;			// absolute index of the next input sample
+	private float blockPower = 0;			// power sum of the current block
+	private int blockFill = 0;				// number of samples in the current block
+	private float noiseFloor = -1;			// linear noise floor (-1 = not yet measured)
+	private float[] history;				// ring of the last preSamples + blockSamples samples (idle state)
+	private int historyPos = 0;				// next write position in the history (values)
+	private int historyFill = 0;			// number of valid values in the history
+	private float[] burst;					// samples of the current burst
+	private int burstFill = 0;				// number of valid values in burst
+	private long burstStart;				// absolute index of the first sample of the burst
+	private long burstEnd;					// absolute index after the last sample of the burst (STATE_ENDING)
+	private int quietBlocks = 0;			// number of quiet blocks since the last active block
+	private float peakPower;				// highest block power of the burst
+	private float activePowerSum;			// power sum of the active blocks of the burst
+	private int activeBlocks;				// number of active blocks of the burst
+
+	// Statistics:
+	private volatile long bursts = 0;			// number of emitted bursts
+	private volatile long burstSamples = 0;		// number of complex samples in the emitted bursts
+	private volatile long inputSamples = 0;		// number of complex input samples
+
+	/**
+	 * Holds a single detected burst
+	 */
+	public static class Burst {
+		private float[] samples;
+		private long startSample;
+		private float peakPowerDb;
+		private float averagePowerDb;
+		private float noiseFloorDb;
+		private boolean truncated;
+
+		public Burst(float[] samples, long startSample, float peakPowerDb, float averagePowerDb,
+					 float noiseFloorDb, boolean truncated) {
+			this.samples = samples;
+			this.startSample = startSample;
+			this.peakPowerDb = peakPowerDb;
+			this.averagePowerDb = averagePowerDb;
+			this.noiseFloorDb = noiseFloorDb;
+			this.truncated = truncated;
+		}
+
+		/**
+		 * @return interleaved I/Q samples of the burst (including the padding); owned by the receiver
+		 */
+		public float[] getSamples() {
+			return samples;
+		}
+
+		/**
+		 * @return number of complex samples in the burst
+		 */
+		public int getLength() {
+			return samples.length / 2;
+		}
+
+		/**
+		 * @return absolute index of the first sample (counted at the position of the detector in the pipeline)
+		 */
+		public long getStartSample() {
+			return startSample;
+		}
+
+		/**
+		 * @return highest block power of the burst in dB relative to full scale
+		 */
+		public float getPeakPowerDb() {
+			return peakPowerDb;
+		}
+
+		/**
+		 * @return average power of the active blocks in dB relative to full scale
+		 */
+		public float getAveragePowerDb() {
+			return averagePowerDb;
+		}
+
+		/**
+		 * @return noise floor at the start of the burst in dB relative to full scale
+		 */
+		public float getNoiseFloorDb() {
+			return noiseFloorDb;
+		}
+
+		/**
+		 * @return true if the burst was cut at the max. burst length
+		 */
+		public boolean isTruncated() {
+			return truncated;
+		}
+	}
+
+	/**
+	 * Constructor for the burst detector
+	 *
+	 * @param blockSamples		number of complex samples per power measurement (time resolution)
+	 * @param thresholdDb		power above the noise floor (dB) that starts a burst
+	 * @param hangoverSamples	number of complex samples below the threshold that end a burst
+	 * @param preSamples		number of complex samples before the burst that are included
+	 * @param postSamples		number of complex samples after the burst that are included
+	 * @param maxBurstSamples	max. number of complex samples per burst (longer bursts are split)
+	 * @throws Exception if the configuration is invalid
+	 */
+	public AirspyBurstDetector(int blockSamples, float thresholdDb, int hangoverSamples, int preSamples,
+							   int postSamples, int maxBurstSamples) throws Exception {
+		if (blockSamples <= 0 || thresholdDb <= 0 || hangoverSamples < 0 || preSamples < 0 || postSamples < 0
+				|| maxBurstSamples < preSamples + blockSamples + postSamples) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: blockSamples=" + blockSamples + " thresholdDb=" + thresholdDb
+					+ " hangoverSamples=" + hangoverSamples + " preSamples=" + preSamples + " postSamples=" + postSamples
+					+ " maxBurstSamples=" + maxBurstSamples);
+			throw new Exception("Invalid configuration: blockSamples=" + blockSamples + " thresholdDb=" + thresholdDb
+					+ " hangoverSamples=" + hangoverSamples + " preSamples=" + preSamples + " postSamples=" + postSamples
+					+ " maxBurstSamples=" + maxBurstSamples);
+		}
+		this.blockSamples = blockSamples;
+		this.thresholdFactor = (float) Math.pow(10, thresholdDb / 10);
+		this.hangoverBlocks = Math.max(1, (hangoverSamples + blockSamples - 1) / blockSamples);
+		this.preSamples = preSamples;
+		this.postSamples = postSamples;
+		this.history = new float[2 * (preSamples + blockSamples)];
+		this.burst = new float[2 * maxBurstSamples];
+	}
+
+	/**
+	 * Sets the callback that receives the bursts. It is called by the thread that runs the
+	 * pipeline, so it should hand the burst over to another thread (see AirspyBurstWriter).
+	 *
+	 * @param callback	callback interface or null
+	 */
+	public void setCallback(BurstCallbackInterface callback) {
+		this.callback = callback;
+	}
+
+	/**
+	 * @return current noise floor estimate in dB relative to full scale
+	 */
+	public float getNoiseFloorDb() {
+		return noiseFloor < 0 ? Float.NEGATIVE_INFINITY : toDb(noiseFloor);
+	}
+
+	/**
+	 * @return number of emitted bursts
+	 */
+	public long getBursts() {
+		return bursts;
+	}
+
+	/**
+	 * @return fraction of the input samples that were emitted as part of a burst (0 - 1)
+	 */
+	public double getBurstRatio() {
+		return inputSamples == 0 ? 0 : (double) burstSamples / inputSamples;
+	}
+
+	private static float toDb(float power) {
+		return (float) (10 * Math.log10(power));
+	}
+
+	@Override
+	public int process(float[] samples, int length) {
+		for (int i = 0; i + 1 < length; i += 2) {
+			float re = samples[i];
+			float im = samples[i + 1];
+			if (state == STATE_IDLE) {
+				history[historyPos] = re;
+				history[historyPos + 1] = im;
+				historyPos = (historyPos + 2) % history.length;
+				if (historyFill < history.length)
+					historyFill += 2;
+			} else {
+				burst[burstFill++] = re;
+				burst[burstFill++] = im;
+			}
+			sampleIndex++;
+			blockPower += re * re + im * im;
+			if (++blockFill == blockSamples)
+				endOfBlock();
+			if (state == STATE_ENDING && sampleIndex == burstEnd)
+				emit(false);
+			else if (state != STATE_IDLE && burstFill == burst.length)
+				emit(true);
+		}
+		inputSamples += length / 2;
+		return length;
+	}
+
+	private void endOfBlock() {
+		float power = blockPower / blockSamples;
+		blockPower = 0;
+		blockFill = 0;
+		boolean active = noiseFloor >= 0 && power > noiseFloor * thresholdFactor;
+
+		switch (state) {
+			case STATE_IDLE:
+				if (!active) {
+					if (noiseFloor < 0)
+						noiseFloor = power;
+					else
+						noiseFloor += (power < noiseFloor ? FLOOR_FALL : FLOOR_RISE) * (power - noiseFloor);
+					break;
+				}
+				startBurst();
+				addActiveBlock(power);
+				break;
+			case STATE_ACTIVE:
+			case STATE_ENDING:
+				if (active) {
+					addActiveBlock(power);
+				} else if (state == STATE_ACTIVE && ++quietBlocks >= hangoverBlocks) {
+					// The burst ended after the last active block. Samples beyond the post padding are cut:
+					state = STATE_ENDING;
+					burstEnd = sampleIndex - (long) quietBlocks * blockSamples + postSamples;
+					if (burstEnd <= burstStart) {
+						// The burst was split during the hangover and the end lies in the emitted segment:
+						state = STATE_IDLE;
+						burstFill = 0;
+					} else if (burstEnd <= sampleIndex) {
+						burstFill = Math.max(0, burstFill - 2 * (int) (sampleIndex - burstEnd));
+						emit(false);
+					}
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Starts a burst: the history contains the pre padding and the active block.
+	 */
+	private void startBurst() {
+		int first = (historyPos - historyFill + history.length) % history.length;
+		int firstPart = Math.min(historyFill, history.length - first);
+		System.arraycopy(history, first, burst, 0, firstPart);
+		System.arraycopy(history, 0, burst, firstPart, historyFill - firstPart);
+		burstFill = historyFill;
+		burstStart = sampleIndex - historyFill / 2;
+		historyFill = 0;
+		historyPos = 0;
+		peakPower = 0;
+		activePowerSum = 0;
+		activeBlocks = 0;
+	}
+
+	private void addActiveBlock(float power) {
+		state = STATE_ACTIVE;
+		quietBlocks = 0;
+		activePowerSum += power;
+		activeBlocks++;
+		if (power > peakPower)
+			peakPower = power;
+	}
+
+	private void emit(boolean truncated) {
+		float[] samples = new float[burstFill];
+		System.arraycopy(burst, 0, samples, 0, burstFill);
+		bursts++;
+		burstSamples += burstFill / 2;
+		if (callback != null) {
+			callback.onBurst(new Burst(samples, burstStart, toDb(peakPower), toDb(activePowerSum / Math.max(1, activeBlocks)),
+					toDb(noiseFloor), truncated));
+		}
+		if (truncated) {
+			// The burst goes on: continue with a new segment
+			burstStart += burstFill / 2;
+			burstFill = 0;
+			peakPower = 0;
+			activePowerSum = 0;
+			activeBlocks = 0;
+		} else {
+			state = STATE_IDLE;
+			burstFill = 0;
+		}
+	}
+
+	@Override
+	public int getOutputLength(int inputLength) {
+		return inputLength;
+	}
+
+	public interface BurstCallbackInterface {
+		/**
+		 * Called for every detected burst (by the thread that runs the pipeline).
+		 *
+		 * @param burst		detected burst
+		 */
+		void onBurst(Burst burst);
+	}
+}
@@ -0,0 +1,147 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyBurstWriter.java
+ * Description: This class writes the bursts of an AirspyBurstDetector to files (one file
+ *              per burst, interleaved float32 I/Q in little endian, named after the start
+ *              sample of the burst). It is set as callback of the detector and does the
+ *              file I/O in its own thread, so the pipeline is never blocked. If the writer
+ *              can't keep up, bursts are dropped and counted.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyBurstWriter extends Thread implements AirspyBurstDetector.BurstCallbackInterface {
+
+	private static final String LOGTAG = "AirspyBurstWriter";
+	private boolean stopRequested = false;
+	private File directory;							// destination of the burst files
+	private String prefix;							// beginning of each file name
+	private ArrayBlockingQueue<AirspyBurstDetector.Burst> queue;	// bursts that wait to be written
+	private volatile long writtenBursts = 0;		// number of bursts written to files
+	private volatile long writtenBytes = 0;			// number of bytes written to files
+	private volatile long droppedBursts = 0;		// number of bursts dropped because the queue was full
+
+	/**
+	 * Constructor for the burst writer
+	 *
+	 * @param directory		destination directory of the burst files (must exist)
+	 * @param prefix		beginning of each file name (followed by the start sample and ".iq")
+	 * @param queueSize		max. number of bursts that can wait to be written
+	 * @throws Exception if the directory does not exist or queueSize is invalid
+	 */
+	public AirspyBurstWriter(File directory, String prefix, int queueSize) throws Exception {
+		if (!directory.isDirectory() || queueSize <= 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: directory=" + directory.getAbsolutePath() + " queueSize=" + queueSize);
+			throw new Exception("Invalid configuration: directory=" + directory.getAbsolutePath() + " queueSize=" + queueSize);
+		}
+		this.directory = directory;
+		this.prefix = prefix;
+		this.queue = new ArrayBlockingQueue<AirspyBurstDetector.Burst>(queueSize);
+	}
+
+	/**
+	 * @return number of bursts written to files
+	 */
+	public long getWrittenBursts() {
+		return writtenBursts;
+	}
+
+	/**
+	 * @return number of bytes written to files
+	 */
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	/**
+	 * @return number of bursts that were dropped because the writer could not keep up
+	 */
+	public long getDroppedBursts() {
+		return droppedBursts;
+	}
+
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	/**
+	 * Called by the burst detector. Queues the burst and never blocks.
+	 *
+	 * @param burst		detected burst
+	 */
+	@Override
+	public void onBurst(AirspyBurstDetector.Burst burst) {
+		if (!queue.offer(burst))
+			droppedBursts++;
+	}
+
+	public void run() {
+		ByteBuffer buffer = null;
+		while (!stopRequested || !queue.isEmpty()) {
+			AirspyBurstDetector.Burst burst;
+			try {
+				burst = queue.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting for bursts. Stop!");
+				break;
+			}
+			if (burst == null)
+				continue;
+
+			float[] samples = burst.getSamples();
+			if (buffer == null || buffer.capacity() < samples.length * 4)
+				buffer = ByteBuffer.allocateDirect(samples.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.clear();
+			buffer.asFloatBuffer().put(samples);
+			buffer.limit(samples.length * 4);
+
+			File file = new File(directory, String.format("%s%012d.iq", prefix, burst.getStartSample()));
+			try {
+				FileOutputStream outputStream = new FileOutputStream(file);
+				FileChannel channel = outputStream.getChannel();
+				try {
+					while (buffer.hasRemaining())
+						channel.write(buffer);
+				} finally {
+					channel.close();
+					outputStream.close();
+				}
+				writtenBursts++;
+				writtenBytes += samples.length * 4;
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while writing " + file.getAbsolutePath() + ": " + e.getMessage());
+			}
+		}
+		this.stopRequested = true;
+	}
+}
@@ -0,0 +1,167 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyChannelFrontEnd.java
+ * Description: Front-end for narrowband receivers: it moves a channel of the float IQ stream
+ *              to baseband (AirspyNco), filters and decimates it to the channel rate in two
+ *              AirspyResampler stages and measures the channel power. The input buffer is
+ *              not modified, so several front-ends can work on the same buffer. Inputs of
+ *              max. 250 kSps (e.g. the output of a shared wideband front-end, see
+ *              AirspyNarrowbandDemodulator) are filtered in a single stage. All buffers are
+ *              allocated in the constructor.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyChannelFrontEnd {
+
+	private static final String LOGTAG = "AirspyChannelFrontEnd";
+	private static final int INTERMEDIATE_RATE = 250000;	// rate after the first decimation stage
+	private int inputRate;
+	private int channelRate;
+	private int maxInputLength;
+	private AirspyNco nco;
+	private AirspyResampler firstStage;			// input rate -> 250 kHz (wide transition band); null for inputs <= 250 kHz
+	private AirspyResampler secondStage;		// 250 kHz (or the input rate) -> channel rate (channel filter)
+	private float[] shiftBuffer;				// shifted copy of the input
+	private float[] intermediateBuffer;			// complex samples at 250 kHz
+	private volatile float powerDb = Float.NEGATIVE_INFINITY;	// power of the last channel buffer (dBFS)
+
+	/**
+	 * Constructor for the front-end
+	 *
+	 * @param inputRate			complex sample rate of the IQ input in Sps
+	 * @param channelRate		complex sample rate of the channel output in Sps (max. 250 kSps and max. inputRate)
+	 * @param bandwidth			one sided bandwidth of the channel filter in Hz (passband edge)
+	 * @param maxInputLength	max. number of values (2 per complex sample) per call of process()
+	 * @throws Exception if the configuration is invalid
+	 */
+	public AirspyChannelFrontEnd(int inputRate, int channelRate, double bandwidth, int maxInputLength) throws Exception {
+		if (channelRate > Math.min(inputRate, INTERMEDIATE_RATE) || bandwidth <= 0
+				|| bandwidth >= channelRate / 2 || maxInputLength <= 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: inputRate=" + inputRate + " channelRate=" + channelRate
+					+ " bandwidth=" + bandwidth);
+			throw new Exception("Invalid configuration: inputRate=" + inputRate + " channelRate=" + channelRate
+					+ " bandwidth=" + bandwidth);
+		}
+		this.inputRate = inputRate;
+		this.channelRate = channelRate;
+		this.maxInputLength = maxInputLength;
+		this.nco = new AirspyNco(inputRate);
+		this.shiftBuffer = new float[maxInputLength];
+		int secondStageRate = inputRate;
+		if (inputRate > INTERMEDIATE_RATE) {
+			this.firstStage = new AirspyResampler(inputRate, INTERMEDIATE_RATE, bandwidth, INTERMEDIATE_RATE - bandwidth, 60);
+			this.intermediateBuffer = new float[firstStage.getMaxOutputLength(maxInputLength)];
+			secondStageRate = INTERMEDIATE_RATE;
+		}
+		double stopband = Math.min(bandwidth * 1.5, channelRate - bandwidth);
+		this.secondStage = new AirspyResampler(secondStageRate, channelRate, bandwidth, stopband, 60);
+	}
+
+	/**
+	 * Tunes the front-end to a channel. Can be called at any time (phase continuous).
+	 *
+	 * @param offset	frequency of the channel relative to the center of the input in Hz
+	 * @return true on success; false if the offset is out of range
+	 */
+	public boolean setChannelOffset(double offset) {
+		return nco.setFrequency(-offset);
+	}
+
+	/**
+	 * @return frequency of the channel relative to the center of the input in Hz
+	 */
+	public double getChannelOffset() {
+		return -nco.getFrequency();
+	}
+
+	/**
+	 * @return complex sample rate of the input in Sps
+	 */
+	public int getInputRate() {
+		return inputRate;
+	}
+
+	/**
+	 * @return complex sample rate of the channel output in Sps
+	 */
+	public int getChannelRate() {
+		return channelRate;
+	}
+
+	/**
+	 * @return max. number of values (2 per complex sample) per call of process()
+	 */
+	public int getMaxInputLength() {
+		return maxInputLength;
+	}
+
+	/**
+	 * @return average power of the last channel buffer in dB relative to full scale
+	 */
+	public float getPowerDb() {
+		return powerDb;
+	}
+
+	/**
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @return max. number of values (2 per complex sample) that process() writes
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		if (firstStage == null)
+			return secondStage.getMaxOutputLength(inputLength);
+		return secondStage.getMaxOutputLength(firstStage.getMaxOutputLength(inputLength));
+	}
+
+	/**
+	 * Shifts, filters and decimates the next buffer of the stream. The input is not modified.
+	 *
+	 * @param input			interleaved I/Q samples (float) at the input rate
+	 * @param inputLength	number of input values (max. maxInputLength)
+	 * @param output		buffer for the channel (min. getMaxOutputLength(inputLength) values)
+	 * @return number of values (2 per complex sample) written to the output
+	 */
+	public int process(float[] input, int inputLength, float[] output) {
+		if (inputLength > maxInputLength) {
+			Log.e(LOGTAG, "process: Input length " + inputLength + " exceeds max. input length " + maxInputLength);
+			return 0;
+		}
+		System.arraycopy(input, 0, shiftBuffer, 0, inputLength);
+		nco.mix(shiftBuffer, inputLength);
+		int length;
+		if (firstStage == null) {
+			length = secondStage.resample(shiftBuffer, inputLength, output);
+		} else {
+			length = firstStage.resample(shiftBuffer, inputLength, intermediateBuffer);
+			length = secondStage.resample(intermediateBuffer, length, output);
+		}
+
+		float sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += output[i] * output[i];
+		if (length > 0)
+			powerDb = (float) (10 * Math.log10(sum / (length / 2) + 1e-20));
+		return length;
+	}
+}
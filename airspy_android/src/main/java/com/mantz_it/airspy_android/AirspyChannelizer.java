@@ -0,0 +1,223 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyChannelizer.java
+ * Description: Polyphase filter bank channelizer. It splits a stream of complex samples
+ *              (interleaved I/Q, float) into N equally spaced channels in one pass: the
+ *              input is weighted with a prototype lowpass, folded to N points and
+ *              transformed by an FFT. Channel c is centered at c * sampleRate / N (channels
+ *              above N/2 are the negative frequencies). The channels are either critically
+ *              sampled (decimation N) or 2x oversampled (decimation N/2). Disabled channels
+ *              are not calculated and if only a few channels are enabled, their DFT bins
+ *              are calculated directly instead of the FFT.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyChannelizer {
+
+	private static final String LOGTAG = "AirspyChannelizer";
+	private int numChannels;				// N
+	private int decimation;					// N (critically sampled) or N/2 (oversampled)
+	private int filterLength;				// N * tapsPerChannel
+	private float[] prototype;				// prototype lowpass (reversed: prototype[n] weights x[t-n])
+	private float[] ring;					// input history (complex, stored twice to read it without wrapping)
+	private int ringPos = 0;				// position of the next sample in the ring (0 - filterLength-1)
+	private int sampleCounter = 0;			// number of samples since the last output block
+	private long blockCounter = 0;			// number of output blocks since creation
+	private float[] folded;					// folded input of one block (complex; N points)
+	private AirspyFft fft;
+	private float[] twiddleCos;				// cos(2*pi*k/N) for the direct calculation of single bins
+	private float[] twiddleSin;				// sin(2*pi*k/N)
+	private boolean[] channelEnabled;
+	private int[] enabledChannels;			// indices of the enabled channels
+	private boolean useFft;					// true if the FFT is cheaper than calculating the enabled bins directly
+
+	/**
+	 * Constructor for the channelizer. All channels are enabled.
+	 *
+	 * @param numChannels		number of channels N (power of two; min. 2)
+	 * @param oversampled		if true, each channel is sampled at 2 * sampleRate / N; otherwise at sampleRate / N
+	 * @param tapsPerChannel	length of the prototype filter in multiples of N (more: sharper channel edges)
+	 * @param attenuationDb		stopband attenuation of the prototype filter in dB
+	 * @throws Exception if the configuration is invalid
+	 */
+	public AirspyChannelizer(int numChannels, boolean oversampled, int tapsPerChannel, double attenuationDb) throws Exception {
+		if (numChannels < 2 || (numChannels & (numChannels - 1)) != 0 || tapsPerChannel < 1) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: channels=" + numChannels + " taps=" + tapsPerChannel);
+			throw new Exception("Invalid configuration: channels=" + numChannels + " taps=" + tapsPerChannel);
+		}
+		this.numChannels = numChannels;
+		this.decimation = oversampled ? numChannels / 2 : numChannels;
+		this.filterLength = numChannels * tapsPerChannel;
+		this.prototype = AirspyFilterDesign.lowpass(filterLength, 0.5 / numChannels, AirspyFilterDesign.kaiserBeta(attenuationDb), 1);
+		this.ring = new float[4 * filterLength];
+		this.folded = new float[2 * numChannels];
+		this.fft = new AirspyFft(numChannels);
+		this.twiddleCos = new float[numChannels];
+		this.twiddleSin = new float[numChannels];
+		for (int k = 0; k < numChannels; k++) {
+			twiddleCos[k] = (float) Math.cos(2 * Math.PI * k / numChannels);
+			twiddleSin[k] = (float) Math.sin(2 * Math.PI * k / numChannels);
+		}
+		boolean[] mask = new boolean[numChannels];
+		for (int c = 0; c < numChannels; c++)
+			mask[c] = true;
+		setChannelMask(mask);
+	}
+
+	/**
+	 * Selects the channels that are calculated. Must not be called while process() is running.
+	 *
+	 * @param mask		one entry per channel (true: enabled)
+	 * @return true on success; false if the mask has the wrong size
+	 */
+	public boolean setChannelMask(boolean[] mask) {
+		if (mask.length != numChannels) {
+			Log.e(LOGTAG, "setChannelMask: Mask has " + mask.length + " entries instead of " + numChannels);
+			return false;
+		}
+		this.channelEnabled = mask.clone();
+		int count = 0;
+		for (boolean enabled : mask)
+			if (enabled)
+				count++;
+		this.enabledChannels = new int[count];
+		for (int c = 0, i = 0; c < numChannels; c++)
+			if (mask[c])
+				enabledChannels[i++] = c;
+		// FFT: ~ N/2 * log2(N) butterflies; direct: N complex MACs per enabled bin
+		this.useFft = count * 2 > Integer.numberOfTrailingZeros(numChannels);
+		return true;
+	}
+
+	/**
+	 * @param channel	channel index (0 - N-1)
+	 * @return true if the channel is calculated
+	 */
+	public boolean isChannelEnabled(int channel) {
+		return channelEnabled[channel];
+	}
+
+	/**
+	 * @return number of channels N
+	 */
+	public int getNumChannels() {
+		return numChannels;
+	}
+
+	/**
+	 * @return decimation of the channels (N or N/2)
+	 */
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * @param channel		channel index (0 - N-1)
+	 * @param sampleRate	complex sample rate of the input in Sps
+	 * @return center frequency of the channel relative to the center of the input in Hz
+	 */
+	public double getChannelFrequency(int channel, double sampleRate) {
+		int c = (channel < numChannels / 2) ? channel : channel - numChannels;
+		return c * sampleRate / numChannels;
+	}
+
+	/**
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @return max. number of values (2 per complex sample) that process() writes into each channel
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		return 2 * (inputLength / 2 / decimation + 1);
+	}
+
+	/**
+	 * Splits the next buffer of the stream into the channels. The state is carried across calls.
+	 *
+	 * @param input			interleaved I/Q samples (float)
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @param outputs		one buffer per channel (min. getMaxOutputLength(inputLength) values);
+	 *                      entries of disabled channels may be null
+	 * @return number of values (2 per complex sample) written into each enabled channel
+	 */
+	public int process(float[] input, int inputLength, float[][] outputs) {
+		int out = 0;
+		for (int i = 0; i < inputLength - 1; i += 2) {
+			// write the sample twice, so that the last filterLength samples are always contiguous:
+			ring[2 * ringPos] = ring[2 * (ringPos + filterLength)] = input[i];
+			ring[2 * ringPos + 1] = ring[2 * (ringPos + filterLength) + 1] = input[i + 1];
+			ringPos = (ringPos + 1) % filterLength;
+			if (++sampleCounter == decimation) {
+				sampleCounter = 0;
+				calcBlock(outputs, out);
+				out += 2;
+			}
+		}
+		return out;
+	}
+
+	private void calcBlock(float[][] outputs, int out) {
+		// weight the history with the prototype and fold it to N points (newest sample is x[t]):
+		int newest = ringPos + filterLength - 1;
+		for (int k = 0; k < numChannels; k++) {
+			float re = 0;
+			float im = 0;
+			for (int n = k; n < filterLength; n += numChannels) {
+				float h = prototype[n];
+				int idx = 2 * (newest - n);
+				re += h * ring[idx];
+				im += h * ring[idx + 1];
+			}
+			folded[2 * k] = re;
+			folded[2 * k + 1] = im;
+		}
+
+		// with 2x oversampling every second block has an additional phase of (-1)^c:
+		boolean oddBlock = decimation != numChannels && (blockCounter++ & 1) == 1;
+
+		if (useFft) {
+			fft.transform(folded, true);
+			for (int c : enabledChannels) {
+				float sign = (oddBlock && (c & 1) == 1) ? -1 : 1;
+				outputs[c][out] = sign * folded[2 * c];
+				outputs[c][out + 1] = sign * folded[2 * c + 1];
+			}
+		} else {
+			for (int c : enabledChannels) {
+				float re = 0;
+				float im = 0;
+				int w = 0;
+				for (int k = 0; k < numChannels; k++) {
+					float cos = twiddleCos[w];
+					float sin = twiddleSin[w];
+					re += folded[2 * k] * cos - folded[2 * k + 1] * sin;
+					im += folded[2 * k] * sin + folded[2 * k + 1] * cos;
+					w = (w + c) & (numChannels - 1);
+				}
+				float sign = (oddBlock && (c & 1) == 1) ? -1 : 1;
+				outputs[c][out] = sign * re;
+				outputs[c][out + 1] = sign * im;
+			}
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyCompressor.java
+ * Description: This class compresses the raw sample stream of the Airspy with the
+ *              AirspyLosslessCodec and writes the frames to an output stream. The
+ *              encoding is done by one or more encoder threads, this thread
+ *              dispatches the raw buffers round robin and writes the frames in order.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyCompressor extends Thread {
+
+	private static final String LOGTAG = "AirspyCompressor";
+	private static final int WORKER_QUEUE_SIZE = 2;			// Number of buffers that can be in flight per encoder
+	private boolean stopRequested = false;
+	private boolean packingEnabled = false;
+	private ArrayBlockingQueue<byte[]> inputQueue;			// Queue from which the raw samples are taken
+	private ArrayBlockingQueue<byte[]> inputReturnQueue;	// Queue to return the used input buffers to the pool
+	private OutputStream outputStream;						// Stream to which the frames are written
+	private EncoderThread[] encoders;
+
+	// statistics:
+	private volatile long inputBytes = 0;			// number of (unpacked) raw bytes that were compressed
+	private volatile long outputBytes = 0;			// number of bytes written to the output stream
+
+	/**
+	 * Constructor for the compressor.
+	 *
+	 * @param numEncoders		number of encoder threads (1 or more)
+	 * @param packingEnabled	Indicates if the input samples are packed
+	 * @param inputQueue		Queue from which the raw samples are taken (e.g. Airspy.getRawQueue())
+	 * @param inputReturnQueue	Queue to return the used input buffers to the pool (e.g. Airspy.getRawReturnPoolQueue())
+	 * @param outputStream		Stream to which the compressed frames are written
+	 * @throws Exception if the number of encoders is invalid
+	 */
+	public AirspyCompressor(int numEncoders, boolean packingEnabled, ArrayBlockingQueue<byte[]> inputQueue,
+							ArrayBlockingQueue<byte[]> inputReturnQueue, OutputStream outputStream) throws Exception {
+		if (numEncoders < 1) {
+			Log.e(LOGTAG, "constructor: Invalid number of encoders: " + numEncoders);
+			throw new Exception("Invalid number of encoders: " + numEncoders);
+		}
+		this.packingEnabled = packingEnabled;
+		this.inputQueue = inputQueue;
+		this.inputReturnQueue = inputReturnQueue;
+		this.outputStream = outputStream;
+		this.encoders = new EncoderThread[numEncoders];
+		for (int i = 0; i < numEncoders; i++)
+			this.encoders[i] = new EncoderThread();
+	}
+
+	/**
+	 * @return compression ratio (unpacked raw bytes / compressed bytes); 0 if nothing was written yet
+	 */
+	public double getCompressionRatio() {
+		if (outputBytes == 0)
+			return 0;
+		return (double) inputBytes / outputBytes;
+	}
+
+	/**
+	 * @return number of bytes written to the output stream
+	 */
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+
+	/**
+	 * Returns the encoder speed of all encoder threads together. This is the number of samples
+	 * per second that could be encoded if the encoders were busy all the time.
+	 *
+	 * @return encoder speed in samples per second; 0 if nothing was encoded yet
+	 */
+	public long getEncoderSampleRate() {
+		long rate = 0;
+		for (EncoderThread encoder : encoders) {
+			if (encoder.encodingTimeNs > 0)
+				rate += encoder.encodedSamples * 1000000000L / encoder.encodingTimeNs;
+		}
+		return rate;
+	}
+
+	/**
+	 * Checks if the encoders are fast enough to compress the given sample rate in real time.
+	 * Call this after the compressor was running for some time. Use it with the rates returned
+	 * by Airspy.getSampleRates().
+	 *
+	 * @param sampleRate	sample rate of the Airspy in Sps
+	 * @return true if the measured encoder speed is higher than the sample rate
+	 */
+	public boolean isRealTimeCapable(int sampleRate) {
+		return getEncoderSampleRate() > sampleRate;
+	}
+
+	/**
+	 * Stops the compressor. The frames that are already dispatched to the encoders are still
+	 * written to the output stream before the thread ends.
+	 */
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	public void run() {
+		long dispatched = 0;
+		long written = 0;
+		int maxInFlight = encoders.length * WORKER_QUEUE_SIZE;
+		byte[] inputBuffer;
+
+		for (EncoderThread encoder : encoders)
+			encoder.start();
+
+		boolean error = false;
+		while (!stopRequested) {
+			// First we dispatch as many input buffers to the encoders as possible:
+			if (dispatched - written < maxInFlight) {
+				try {
+					inputBuffer = inputQueue.poll(dispatched == written ? 1000 : 0, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Log.e(LOGTAG, "run: Interrupted while waiting for buffers in the input queue. Stop!");
+					stopRequested = true;
+					continue;
+				}
+				if (inputBuffer != null) {
+					encoders[(int) (dispatched % encoders.length)].inputQueue.offer(inputBuffer);
+					dispatched++;
+					continue;
+				}
+				if (dispatched == written) {
+					Log.e(LOGTAG, "run: No input buffers available in the queue. Stop!");
+					stopRequested = true;
+					continue;
+				}
+			}
+
+			// Next we collect the next frame (in order) and write it to the output stream:
+			if (!writeNextFrame(encoders[(int) (written % encoders.length)])) {
+				error = true;
+				break;
+			}
+			written++;
+		}
+
+		// Write the frames that are still in flight:
+		while (!error && written < dispatched) {
+			if (!writeNextFrame(encoders[(int) (written % encoders.length)]))
+				break;
+			written++;
+		}
+
+		// Stop the encoders and return the raw buffers they did not take:
+		for (EncoderThread encoder : encoders)
+			encoder.requestStop();
+		for (EncoderThread encoder : encoders) {
+			try {
+				encoder.join();
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting for the encoders to stop!");
+			}
+			byte[] buffer;
+			while ((buffer = encoder.inputQueue.poll()) != null)
+				inputReturnQueue.offer(buffer);
+		}
+		try {
+			outputStream.flush();
+		} catch (IOException e) {
+			Log.e(LOGTAG, "run: Error while flushing the output stream: " + e.getMessage());
+		}
+		Log.i(LOGTAG, "run: Compressor stopped. Compression ratio: " + getCompressionRatio()
+				+ " Encoder speed: " + getEncoderSampleRate() + " Sps");
+	}
+
+	/**
+	 * Takes the next frame from the given encoder and writes it to the output stream.
+	 *
+	 * @param encoder	encoder that encodes the next frame (in order)
+	 * @return true on success; false if the encoder did not deliver a frame or the stream failed
+	 */
+	private boolean writeNextFrame(EncoderThread encoder) {
+		EncodedFrame frame;
+		try {
+			frame = encoder.outputQueue.poll(1000, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "writeNextFrame: Interrupted while waiting for encoded frames. Stop!");
+			return false;
+		}
+		if (frame == null) {
+			Log.e(LOGTAG, "writeNextFrame: Encoder did not deliver a frame. Stop!");
+			return false;
+		}
+		boolean success = true;
+		try {
+			outputStream.write(frame.data, 0, frame.length);
+		} catch (IOException e) {
+			Log.e(LOGTAG, "writeNextFrame: Error while writing to the output stream: " + e.getMessage());
+			success = false;
+		}
+		inputBytes += frame.rawLength;
+		outputBytes += frame.length;
+		encoder.framePool.offer(frame);
+		return success;
+	}
+
+	/**
+	 * Holds an encoded frame
+	 */
+	private static class EncodedFrame {
+		byte[] data = new byte[0];
+		int length = 0;
+		int rawLength = 0;
+	}
+
+	/**
+	 * Encoder thread. Takes raw buffers from its input queue, encodes them and returns the
+	 * raw buffers to the pool of the Airspy.
+	 */
+	private class EncoderThread extends Thread {
+		ArrayBlockingQueue<byte[]> inputQueue = new ArrayBlockingQueue<byte[]>(WORKER_QUEUE_SIZE);
+		ArrayBlockingQueue<EncodedFrame> outputQueue = new ArrayBlockingQueue<EncodedFrame>(WORKER_QUEUE_SIZE);
+		ArrayBlockingQueue<EncodedFrame> framePool = new ArrayBlockingQueue<EncodedFrame>(WORKER_QUEUE_SIZE);
+		private AirspyLosslessCodec codec = null;
+		private byte[] packingBuffer = null;
+		private boolean stopRequested = false;
+		volatile long encodedSamples = 0;
+		volatile long encodingTimeNs = 0;
+
+		EncoderThread() {
+			for (int i = 0; i < WORKER_QUEUE_SIZE; i++)
+				framePool.offer(new EncodedFrame());
+		}
+
+		void requestStop() {
+			this.stopRequested = true;
+		}
+
+		public void run() {
+			byte[] origInputBuffer;
+			byte[] inputBuffer;
+			EncodedFrame frame;
+
+			while (!stopRequested) {
+				try {
+					origInputBuffer = inputQueue.poll(1000, TimeUnit.MILLISECONDS);
+					if (origInputBuffer == null)
+						continue;
+					frame = framePool.poll(1000, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Log.e(LOGTAG, "EncoderThread.run: Interrupted while waiting for buffers. Stop!");
+					break;
+				}
+				if (frame == null) {
+					Log.e(LOGTAG, "EncoderThread.run: No frames available in the pool. Stop!");
+					inputReturnQueue.offer(origInputBuffer);
+					break;
+				}
+
+				long startTime = System.nanoTime();
+
+				// Maybe unpack the samples first:
+				if (packingEnabled) {
+					int unpackedLength = origInputBuffer.length * 4 / 3;
+					if (packingBuffer == null || packingBuffer.length != unpackedLength)
+						packingBuffer = new byte[unpackedLength];
+					Airspy.unpackSamples(origInputBuffer, packingBuffer, unpackedLength);
+					inputBuffer = packingBuffer;
+				} else {
+					inputBuffer = origInputBuffer;
+				}
+
+				int count = inputBuffer.length / 2;
+				if (codec == null || codec.getMaxSamples() < count)
+					codec = new AirspyLosslessCodec(count);
+				if (frame.data.length < AirspyLosslessCodec.getMaxFrameSize(count))
+					frame.data = new byte[AirspyLosslessCodec.getMaxFrameSize(count)];
+				frame.length = codec.encode(inputBuffer, count, frame.data);
+				if (frame.length < 0) {
+					Log.e(LOGTAG, "EncoderThread.run: Could not encode " + count + " samples. Write them verbatim!");
+					frame.length = Math.max(0, AirspyLosslessCodec.encodeVerbatim(inputBuffer, count, frame.data));
+				}
+				frame.rawLength = 2 * count;
+
+				encodingTimeNs += System.nanoTime() - startTime;
+				encodedSamples += count;
+
+				inputReturnQueue.offer(origInputBuffer);
+				outputQueue.offer(frame);
+			}
+		}
+	}
+}
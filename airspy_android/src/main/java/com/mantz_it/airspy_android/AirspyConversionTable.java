@@ -0,0 +1,190 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyConversionTable.java
+ * Description: This class converts raw 12 bit samples with precomputed lookup tables instead
+ *              of the arithmetic of the converters. MODE_TABLE_12BIT assembles the 12 bit
+ *              value from the two bytes and looks it up in a 4096-entry table;
+ *              MODE_TABLE_16BIT reads the little endian 16 bit words in bulk and looks them up
+ *              in a 65536-entry table (the upper 4 bits are ignored). A fixed DC offset and
+ *              scale can be folded into the tables. Without offset and scale the results are
+ *              identical to the arithmetic conversion. Which mode is fastest depends on the
+ *              device (see AirspyBenchmark.benchmarkConversionModes()).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyConversionTable {
+
+	private static final String LOGTAG = "AirspyConversionTable";
+
+	public static final int MODE_ARITHMETIC = 0;	// no table (convertSamples*() of the converters)
+	public static final int MODE_TABLE_12BIT = 1;	// 4096-entry table indexed by the 12 bit value
+	public static final int MODE_TABLE_16BIT = 2;	// 65536-entry table indexed by the 16 bit word
+	public static final int MODE_COUNT = 3;
+
+	private int sampleType;
+	private int mode;
+	private float[] floatTable = null;	// table for the float sample types
+	private short[] int16Table = null;	// table for the int16 sample types
+	private short[] words = null;		// 16 bit words of the input (MODE_TABLE_16BIT)
+
+	/**
+	 * Constructor for a table without DC offset and scale
+	 *
+	 * @param sampleType	Airspy.AIRSPY_SAMPLE_FLOAT32_IQ, *_FLOAT32_REAL, *_INT16_IQ, *_INT16_REAL or *_UINT16_REAL
+	 * @param mode			MODE_TABLE_12BIT or MODE_TABLE_16BIT
+	 * @throws Exception if sample type or mode are invalid
+	 */
+	public AirspyConversionTable(int sampleType, int mode) throws Exception {
+		this(sampleType, mode, 0, 1);
+	}
+
+	/**
+	 * Constructor for the table
+	 *
+	 * @param sampleType	Airspy.AIRSPY_SAMPLE_FLOAT32_IQ, *_FLOAT32_REAL, *_INT16_IQ, *_INT16_REAL or *_UINT16_REAL
+	 * @param mode			MODE_TABLE_12BIT or MODE_TABLE_16BIT
+	 * @param dcOffset		DC offset (in raw 12 bit units) that is subtracted from each sample
+	 * @param scale			factor that is applied after the offset (int16 results are rounded and saturated)
+	 * @throws Exception if sample type or mode are invalid
+	 */
+	public AirspyConversionTable(int sampleType, int mode, float dcOffset, float scale) throws Exception {
+		if (mode != MODE_TABLE_12BIT && mode != MODE_TABLE_16BIT) {
+			Log.e(LOGTAG, "constructor: Invalid conversion mode: " + mode);
+			throw new Exception("Invalid conversion mode: " + mode);
+		}
+		this.sampleType = sampleType;
+		this.mode = mode;
+		int size = (mode == MODE_TABLE_12BIT) ? 4096 : 65536;
+		boolean exact = dcOffset == 0 && scale == 1;
+
+		switch (sampleType) {
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_IQ:
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_REAL:
+				floatTable = new float[size];
+				for (int i = 0; i < size; i++) {
+					int raw = i & 0x0FFF;
+					// same expression as convertSamplesFloat() to get identical results:
+					floatTable[i] = exact ? (raw - 2048) * (1f / 2048f) : (raw - 2048 - dcOffset) * scale * (1f / 2048f);
+				}
+				break;
+			case Airspy.AIRSPY_SAMPLE_INT16_IQ:
+			case Airspy.AIRSPY_SAMPLE_INT16_REAL:
+			case Airspy.AIRSPY_SAMPLE_UINT16_REAL:
+				int center = (sampleType == Airspy.AIRSPY_SAMPLE_UINT16_REAL) ? 0 : 2048;
+				int16Table = new short[size];
+				for (int i = 0; i < size; i++) {
+					int raw = i & 0x0FFF;
+					int value = exact ? (raw - center) << 4 : Math.round((raw - center - dcOffset) * scale * 16);
+					if (sampleType == Airspy.AIRSPY_SAMPLE_UINT16_REAL)
+						value = Math.max(0, Math.min(65535, value));
+					else
+						value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+					int16Table[i] = (short) value;
+				}
+				break;
+			default:
+				Log.e(LOGTAG, "constructor: Invalid sample type: " + sampleType);
+				throw new Exception("Invalid sample type: " + sampleType);
+		}
+	}
+
+	/**
+	 * @return sample type this table was built for
+	 */
+	public int getSampleType() {
+		return sampleType;
+	}
+
+	/**
+	 * @return MODE_TABLE_12BIT or MODE_TABLE_16BIT
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Reads count little endian 16 bit words from src (MODE_TABLE_16BIT)
+	 */
+	private short[] readWords(byte[] src, int count) {
+		if (words == null || words.length < count)
+			words = new short[count];
+		ByteBuffer.wrap(src, 0, 2 * count).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(words, 0, count);
+		return words;
+	}
+
+	/**
+	 * Converts raw samples (little endian, unsigned-12bit-integer) to float (float sample types only)
+	 *
+	 * @param src   input samples; min. twice the size of output
+	 * @param dest  output samples; min. of size 'count'
+	 * @param count number of samples to process
+	 */
+	public void convert(byte[] src, float[] dest, int count) {
+		float[] table = floatTable;
+		if (mode == MODE_TABLE_16BIT) {
+			short[] words = readWords(src, count);
+			for (int i = 0; i < count; i++)
+				dest[i] = table[words[i] & 0xFFFF];
+		} else {
+			for (int i = 0; i < count; i++)
+				dest[i] = table[((src[2 * i + 1] & 0x0F) << 8) | (src[2 * i] & 0xFF)];
+		}
+	}
+
+	/**
+	 * Converts raw samples (little endian, unsigned-12bit-integer) to int16 (int16 sample types only)
+	 *
+	 * @param src   input samples; min. twice the size of output
+	 * @param dest  output samples; min. of size 'count'
+	 * @param count number of samples to process
+	 */
+	public void convert(byte[] src, short[] dest, int count) {
+		short[] table = int16Table;
+		if (mode == MODE_TABLE_16BIT) {
+			short[] words = readWords(src, count);
+			for (int i = 0; i < count; i++)
+				dest[i] = table[words[i] & 0xFFFF];
+		} else {
+			for (int i = 0; i < count; i++)
+				dest[i] = table[((src[2 * i + 1] & 0x0F) << 8) | (src[2 * i] & 0xFF)];
+		}
+	}
+
+	/**
+	 * @param mode	MODE_ARITHMETIC, MODE_TABLE_12BIT or MODE_TABLE_16BIT
+	 * @return name of the mode
+	 */
+	public static String modeToString(int mode) {
+		switch (mode) {
+			case MODE_ARITHMETIC:	return "arithmetic";
+			case MODE_TABLE_12BIT:	return "table 12 bit";
+			case MODE_TABLE_16BIT:	return "table 16 bit";
+			default:				return "unknown";
+		}
+	}
+}
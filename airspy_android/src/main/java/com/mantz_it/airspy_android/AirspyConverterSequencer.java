@@ -0,0 +1,87 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyConverterSequencer.java
+ * Description: This class is shared by multiple converter workers that convert the
+ *              samples of a single Airspy in parallel. Each buffer has a sequence number
+ *              (the position in the received stream) and a worker has to wait until all
+ *              buffers with lower numbers were delivered before it may deliver its own.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyConverterSequencer {
+
+	private static final String LOGTAG = "AirspyConverterSequencer";
+	private static final long TIMEOUT = 1000;	// Timeout (in ms) for waiting on the other workers
+	private int numWorkers;
+	private long nextSequenceNumber = 0;		// Sequence number of the buffer that has to be delivered next
+
+	/**
+	 * Constructor for the sequencer
+	 *
+	 * @param numWorkers	number of workers that share the conversion
+	 */
+	public AirspyConverterSequencer(int numWorkers) {
+		this.numWorkers = numWorkers;
+	}
+
+	/**
+	 * @return number of workers that share the conversion
+	 */
+	public int getNumWorkers() {
+		return numWorkers;
+	}
+
+	/**
+	 * Blocks until the buffer with the given sequence number is the next one to be delivered.
+	 *
+	 * @param sequenceNumber	sequence number of the buffer
+	 * @return true if it is the turn of the caller; false on timeout or if interrupted
+	 */
+	public synchronized boolean awaitTurn(long sequenceNumber) {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (nextSequenceNumber != sequenceNumber) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				return false;
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "awaitTurn: Interrupted while waiting for buffer " + nextSequenceNumber);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the buffer with the given sequence number as delivered and wakes up the other workers.
+	 *
+	 * @param sequenceNumber	sequence number of the buffer that was delivered
+	 */
+	public synchronized void done(long sequenceNumber) {
+		nextSequenceNumber = sequenceNumber + 1;
+		notifyAll();
+	}
+}
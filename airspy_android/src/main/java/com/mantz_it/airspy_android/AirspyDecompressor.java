@@ -0,0 +1,164 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyDecompressor.java
+ * Description: This class reads a stream of frames written by the AirspyCompressor
+ *              and decodes them into raw (unpacked) sample buffers. The output queues
+ *              can be used as input queues of the AirspyInt16Converter or the
+ *              AirspyFloatConverter (with packing disabled) to replay recordings.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyDecompressor extends Thread {
+
+	private static final String LOGTAG = "AirspyDecompressor";
+	private boolean stopRequested = false;
+	private boolean endOfStream = false;
+	private DataInputStream inputStream;					// Stream from which the frames are read
+	private ArrayBlockingQueue<byte[]> outputQueue;			// Queue to deliver the decoded raw samples
+	private ArrayBlockingQueue<byte[]> outputPoolQueue;		// Queue from which the output buffers are taken
+	private AirspyLosslessCodec codec = null;
+	private byte[] frameBuffer = new byte[AirspyLosslessCodec.HEADER_SIZE];
+	private volatile long decodedFrames = 0;
+
+	/**
+	 * Constructor for the decompressor. The buffers in the output pool must have the size of
+	 * the (unpacked) buffers that were compressed (i.e. Airspy.getUsbPacketSize()).
+	 *
+	 * @param inputStream		Stream from which the compressed frames are read
+	 * @param outputQueue		Queue to deliver the decoded raw samples
+	 * @param outputPoolQueue	Queue from which the output buffers are taken
+	 */
+	public AirspyDecompressor(InputStream inputStream, ArrayBlockingQueue<byte[]> outputQueue,
+							  ArrayBlockingQueue<byte[]> outputPoolQueue) {
+		this.inputStream = new DataInputStream(inputStream);
+		this.outputQueue = outputQueue;
+		this.outputPoolQueue = outputPoolQueue;
+	}
+
+	/**
+	 * @return true if the end of the input stream was reached
+	 */
+	public boolean isEndOfStream() {
+		return endOfStream;
+	}
+
+	/**
+	 * @return number of frames that were decoded
+	 */
+	public long getDecodedFrames() {
+		return decodedFrames;
+	}
+
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	public void run() {
+		byte[] outputBuffer;
+
+		while (!stopRequested) {
+			// First read the next frame header from the stream:
+			try {
+				inputStream.readFully(frameBuffer, 0, AirspyLosslessCodec.HEADER_SIZE);
+			} catch (EOFException e) {
+				Log.i(LOGTAG, "run: End of stream reached after " + decodedFrames + " frames.");
+				endOfStream = true;
+				break;
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while reading from the input stream: " + e.getMessage());
+				break;
+			}
+			int frameLength = AirspyLosslessCodec.getFrameLength(frameBuffer, 0);
+			if (frameLength < 0) {
+				Log.e(LOGTAG, "run: Invalid frame header in the input stream. Stop!");
+				break;
+			}
+
+			// Get a fresh output buffer from the pool:
+			try {
+				outputBuffer = outputPoolQueue.poll(1000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting for buffers in the output pool. Stop!");
+				break;
+			}
+			if (outputBuffer == null) {
+				Log.e(LOGTAG, "run: No output buffers available in the pool. Stop!");
+				break;
+			}
+
+			// Check the header against the output buffer before anything is allocated:
+			int count = AirspyLosslessCodec.getFrameSampleCount(frameBuffer, 0);
+			if (count != outputBuffer.length / 2 || frameLength > AirspyLosslessCodec.getMaxFrameSize(count)) {
+				Log.e(LOGTAG, "run: Frame with " + count + " samples and " + frameLength + " Bytes does not match "
+						+ "the buffer size " + outputBuffer.length + ". Stop!");
+				outputPoolQueue.offer(outputBuffer);
+				break;
+			}
+
+			// Read the rest of the frame:
+			try {
+				if (frameBuffer.length < frameLength) {
+					byte[] tmp = new byte[frameLength];
+					System.arraycopy(frameBuffer, 0, tmp, 0, AirspyLosslessCodec.HEADER_SIZE);
+					frameBuffer = tmp;
+				}
+				inputStream.readFully(frameBuffer, AirspyLosslessCodec.HEADER_SIZE, frameLength - AirspyLosslessCodec.HEADER_SIZE);
+			} catch (EOFException e) {
+				Log.e(LOGTAG, "run: End of stream reached within a frame after " + decodedFrames + " frames.");
+				endOfStream = true;
+				outputPoolQueue.offer(outputBuffer);
+				break;
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while reading from the input stream: " + e.getMessage());
+				outputPoolQueue.offer(outputBuffer);
+				break;
+			}
+
+			// Decode the frame:
+			if (codec == null || codec.getMaxSamples() < count)
+				codec = new AirspyLosslessCodec(count);
+			if (codec.decode(frameBuffer, 0, outputBuffer) != count) {
+				Log.e(LOGTAG, "run: Could not decode frame with " + count + " samples. Stop!");
+				outputPoolQueue.offer(outputBuffer);
+				break;
+			}
+			decodedFrames++;
+
+			try {
+				outputQueue.put(outputBuffer);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while putting a buffer in the output queue. Stop!");
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.mantz_it.airspy_android;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyDspPipeline.java
+ * Description: A chain of AirspyDspStage objects that is executed on the converter thread
+ *              after the conversion (see Airspy.setFloatPipeline() and setInt16Pipeline()).
+ *              All stages run back-to-back on the same pooled buffer, so the samples stay
+ *              in the cache and no additional thread or queue is needed. The pipeline is
+ *              built by chaining add() calls and must not be modified while the Airspy is
+ *              receiving. Stages like decimators and resamplers return a different number of
+ *              samples from call to call, so the pipeline records the valid length of each
+ *              buffer it processed; the consumer of the queue gets it with getLength(buffer).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyDspPipeline<T> {
+
+	private ArrayList<AirspyDspStage<T>> stages = new ArrayList<AirspyDspStage<T>>();
+	private final IdentityHashMap<T, Integer> lengths = new IdentityHashMap<T, Integer>();	// valid length per (pooled) buffer
+
+	/**
+	 * Appends a stage to the end of the pipeline
+	 *
+	 * @param stage		stage to append
+	 * @return this pipeline (to chain the calls)
+	 */
+	public AirspyDspPipeline<T> add(AirspyDspStage<T> stage) {
+		stages.add(stage);
+		return this;
+	}
+
+	/**
+	 * @return number of stages in the pipeline
+	 */
+	public int getNumStages() {
+		return stages.size();
+	}
+
+	/**
+	 * @param index		index of the stage (0 - getNumStages()-1)
+	 * @return the stage at the given position
+	 */
+	public AirspyDspStage<T> getStage(int index) {
+		return stages.get(index);
+	}
+
+	/**
+	 * Calculates the max. number of valid samples in a buffer that leaves the pipeline (e.g. to
+	 * size the buffers of the consumer). The actual number of a buffer is returned by getLength().
+	 *
+	 * @param inputLength	number of samples (array elements) in each buffer
+	 * @return max. number of valid samples at the end of the pipeline
+	 */
+	public int getOutputLength(int inputLength) {
+		int length = inputLength;
+		for (int i = 0; i < stages.size(); i++)
+			length = stages.get(i).getOutputLength(length);
+		return length;
+	}
+
+	/**
+	 * Runs all stages on the given buffer. Stops as soon as a stage drops the buffer.
+	 *
+	 * @param samples	buffer with the samples
+	 * @param length	number of valid samples in the buffer
+	 * @return number of valid samples after the last stage (0 if the buffer was dropped)
+	 */
+	public int process(T samples, int length) {
+		for (int i = 0; i < stages.size() && length > 0; i++)
+			length = stages.get(i).process(samples, length);
+		synchronized (lengths) {
+			lengths.put(samples, length);
+		}
+		return length;
+	}
+
+	/**
+	 * Returns the number of valid samples of a buffer that was taken from the queue of the
+	 * Airspy. The buffers keep their full size; only the first getLength(buffer) elements are
+	 * valid. This is the length that process() returned for the buffer the last time.
+	 *
+	 * @param samples	buffer from the queue (float or int16 queue of the Airspy)
+	 * @return number of valid samples in the buffer or -1 if the buffer was never processed by this pipeline
+	 */
+	public int getLength(T samples) {
+		synchronized (lengths) {
+			Integer length = lengths.get(samples);
+			return length == null ? -1 : length;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.mantz_it.airspy_android;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyDspStage.java
+ * Description: Interface for a processing stage that can be appended to the conversion of
+ *              the Airspy (see AirspyDspPipeline). A stage works in-place on the buffer of
+ *              the converter (float[] or short[]) and is called on the converter thread
+ *              right after the conversion of each buffer.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public interface AirspyDspStage<T> {
+
+	/**
+	 * Processes the samples in-place. A stage may shrink the number of valid samples (e.g. a
+	 * decimator) but never grow it. Returning 0 drops the whole buffer (e.g. a squelch).
+	 *
+	 * @param samples	buffer with the samples (interleaved I/Q for IQ sample types)
+	 * @param length	number of valid samples (array elements) in the buffer
+	 * @return number of valid samples in the buffer after processing (0 to drop the buffer)
+	 */
+	int process(T samples, int length);
+
+	/**
+	 * @param inputLength	number of valid samples (array elements) that go into process()
+	 * @return max. number of valid samples that process() returns (decimators and resamplers
+	 *         may return less in some calls; see AirspyDspPipeline.getLength())
+	 */
+	int getOutputLength(int inputLength);
+}
@@ -0,0 +1,142 @@
+package com.mantz_it.airspy_android;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyDspStages.java
+ * Description: A collection of simple AirspyDspStage implementations for float IQ samples
+ *              (interleaved I/Q) that can be appended to an AirspyDspPipeline.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyDspStages {
+
+	/**
+	 * Decimates complex samples by averaging each block of 'factor' samples (boxcar filter).
+	 * The factor should divide the number of complex samples per buffer.
+	 */
+	public static class Decimator implements AirspyDspStage<float[]> {
+		private int factor;
+
+		/**
+		 * @param factor	decimation factor (min. 1)
+		 * @throws Exception if the factor is invalid
+		 */
+		public Decimator(int factor) throws Exception {
+			if (factor < 1)
+				throw new Exception("Invalid decimation factor: " + factor);
+			this.factor = factor;
+		}
+
+		@Override
+		public int process(float[] samples, int length) {
+			int outLength = getOutputLength(length);
+			float scale = 1f / factor;
+			int in = 0;
+			for (int out = 0; out < outLength; out += 2) {
+				float re = 0;
+				float im = 0;
+				for (int k = 0; k < factor; k++) {
+					re += samples[in++];
+					im += samples[in++];
+				}
+				samples[out] = re * scale;
+				samples[out + 1] = im * scale;
+			}
+			return outLength;
+		}
+
+		@Override
+		public int getOutputLength(int inputLength) {
+			return inputLength / (2 * factor) * 2;
+		}
+	}
+
+	/**
+	 * Replaces complex samples by their magnitude (the buffer afterwards contains real samples
+	 * and half as many values).
+	 */
+	public static class Magnitude implements AirspyDspStage<float[]> {
+		@Override
+		public int process(float[] samples, int length) {
+			int outLength = getOutputLength(length);
+			for (int i = 0; i < outLength; i++) {
+				float re = samples[2 * i];
+				float im = samples[2 * i + 1];
+				samples[i] = (float) Math.sqrt(re * re + im * im);
+			}
+			return outLength;
+		}
+
+		@Override
+		public int getOutputLength(int inputLength) {
+			return inputLength / 2;
+		}
+	}
+
+	/**
+	 * Drops all buffers with an average power (of the complex samples) below a threshold.
+	 * Buffers that are dropped do not show up in the conversion queue.
+	 */
+	public static class Squelch implements AirspyDspStage<float[]> {
+		private volatile float threshold;	// linear power threshold (1.0 is full scale)
+		private volatile float lastPowerDb = Float.NEGATIVE_INFINITY;
+
+		/**
+		 * @param thresholdDb	power threshold in dB relative to full scale
+		 */
+		public Squelch(float thresholdDb) {
+			setThreshold(thresholdDb);
+		}
+
+		/**
+		 * Changes the threshold (can be called while receiving).
+		 *
+		 * @param thresholdDb	power threshold in dB relative to full scale
+		 */
+		public void setThreshold(float thresholdDb) {
+			this.threshold = (float) Math.pow(10, thresholdDb / 10);
+		}
+
+		/**
+		 * @return average power of the last buffer in dB relative to full scale
+		 */
+		public float getLastPowerDb() {
+			return lastPowerDb;
+		}
+
+		@Override
+		public int process(float[] samples, int length) {
+			if (length < 2)
+				return length;
+			float sum = 0;
+			for (int i = 0; i < length; i++)
+				sum += samples[i] * samples[i];
+			float power = sum / (length / 2);
+			lastPowerDb = (float) (10 * Math.log10(power));
+			return power < threshold ? 0 : length;
+		}
+
+		@Override
+		public int getOutputLength(int inputLength) {
+			return inputLength;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.mantz_it.airspy_android;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyFft.java
+ * Description: In-place radix-2 FFT for complex samples (interleaved I/Q, float). The
+ *              twiddle factors and the bit reversal table are calculated once in the
+ *              constructor, so transform() does not allocate memory.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyFft {
+
+	private int size;				// number of complex points (power of two)
+	private float[] cos;			// cos(2*pi*k/size) for k < size/2
+	private float[] sin;			// sin(2*pi*k/size) for k < size/2
+	private int[] bitReversed;		// bit reversed index of each point
+
+	/**
+	 * Constructor for the FFT
+	 *
+	 * @param size		number of complex points (power of two; min. 2)
+	 * @throws Exception if size is not a power of two
+	 */
+	public AirspyFft(int size) throws Exception {
+		if (size < 2 || (size & (size - 1)) != 0)
+			throw new Exception("FFT size must be a power of two: " + size);
+		this.size = size;
+		this.cos = new float[size / 2];
+		this.sin = new float[size / 2];
+		for (int k = 0; k < size / 2; k++) {
+			cos[k] = (float) Math.cos(2 * Math.PI * k / size);
+			sin[k] = (float) Math.sin(2 * Math.PI * k / size);
+		}
+		int bits = Integer.numberOfTrailingZeros(size);
+		this.bitReversed = new int[size];
+		for (int i = 0; i < size; i++)
+			bitReversed[i] = Integer.reverse(i) >>> (32 - bits);
+	}
+
+	/**
+	 * @return number of complex points
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Calculates the (unscaled) DFT of the samples in-place.
+	 *
+	 * @param data		interleaved I/Q samples (2 * size values)
+	 * @param inverse	if true, the exponent is positive (inverse DFT without the 1/size scaling)
+	 */
+	public void transform(float[] data, boolean inverse) {
+		// bit reversal permutation:
+		for (int i = 0; i < size; i++) {
+			int j = bitReversed[i];
+			if (j > i) {
+				float tmp = data[2 * i];
+				data[2 * i] = data[2 * j];
+				data[2 * j] = tmp;
+				tmp = data[2 * i + 1];
+				data[2 * i + 1] = data[2 * j + 1];
+				data[2 * j + 1] = tmp;
+			}
+		}
+
+		// butterflies:
+		float sign = inverse ? 1 : -1;
+		for (int half = 1; half < size; half *= 2) {
+			int step = size / (2 * half);
+			for (int start = 0; start < size; start += 2 * half) {
+				for (int k = 0; k < half; k++) {
+					float wr = cos[k * step];
+					float wi = sign * sin[k * step];
+					int a = 2 * (start + k);
+					int b = 2 * (start + k + half);
+					float tr = data[b] * wr - data[b + 1] * wi;
+					float ti = data[b] * wi + data[b + 1] * wr;
+					data[b] = data[a] - tr;
+					data[b + 1] = data[a + 1] - ti;
+					data[a] += tr;
+					data[a + 1] += ti;
+				}
+			}
+		}
+	}
+}
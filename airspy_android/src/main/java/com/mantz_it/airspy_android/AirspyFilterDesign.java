@@ -0,0 +1,203 @@
+package com.mantz_it.airspy_android;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyFilterDesign.java
+ * Description: Static helper functions to design FIR filters (Kaiser windowed sinc) for the
+ *              DSP classes of this library (e.g. AirspyResampler) and the half-band (Hilbert)
+ *              kernels of the IQ converters, including the built-in kernel presets.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyFilterDesign {
+
+	// Presets for the Hilbert kernel of the IQ converters:
+	public static final int HILBERT_PRESET_FAST = 0;			// 8 taps (for slow devices)
+	public static final int HILBERT_PRESET_NORMAL = 1;			// 24 taps (HB_KERNEL_FLOAT; default)
+	public static final int HILBERT_PRESET_HIGH_QUALITY = 2;	// 48 taps
+	public static final int HILBERT_PRESET_COUNT = 3;
+
+	/**
+	 * Calculates the Kaiser window parameter beta for the desired stopband attenuation
+	 * (formula by Kaiser).
+	 *
+	 * @param attenuationDb		stopband attenuation in dB
+	 * @return beta of the Kaiser window
+	 */
+	public static double kaiserBeta(double attenuationDb) {
+		if (attenuationDb > 50)
+			return 0.1102 * (attenuationDb - 8.7);
+		if (attenuationDb >= 21)
+			return 0.5842 * Math.pow(attenuationDb - 21, 0.4) + 0.07886 * (attenuationDb - 21);
+		return 0;
+	}
+
+	/**
+	 * Estimates the number of taps that a Kaiser windowed filter needs for the given
+	 * attenuation and transition width (formula by Kaiser).
+	 *
+	 * @param attenuationDb		stopband attenuation in dB
+	 * @param transitionWidth	width of the transition band relative to the sample rate (0 - 0.5)
+	 * @return number of taps
+	 */
+	public static int kaiserNumTaps(double attenuationDb, double transitionWidth) {
+		return (int) Math.ceil((attenuationDb - 7.95) / (14.36 * transitionWidth)) + 1;
+	}
+
+	/**
+	 * Zeroth order modified Bessel function of the first kind (needed for the Kaiser window)
+	 */
+	private static double besselI0(double x) {
+		double sum = 1;
+		double term = 1;
+		double halfX = x / 2;
+		for (int k = 1; k < 50; k++) {
+			term *= (halfX / k) * (halfX / k);
+			sum += term;
+			if (term < sum * 1e-12)
+				break;
+		}
+		return sum;
+	}
+
+	/**
+	 * Designs a lowpass filter (Kaiser windowed sinc).
+	 *
+	 * @param numTaps		number of taps
+	 * @param cutoff		cutoff frequency (-6 dB) relative to the sample rate (0 - 0.5)
+	 * @param kaiserBeta	parameter of the Kaiser window (see kaiserBeta())
+	 * @param gain			gain of the filter at DC
+	 * @return filter taps
+	 */
+	public static float[] lowpass(int numTaps, double cutoff, double kaiserBeta, double gain) {
+		double[] taps = new double[numTaps];
+		double center = (numTaps - 1) / 2.0;
+		double i0Beta = besselI0(kaiserBeta);
+		double sum = 0;
+		for (int i = 0; i < numTaps; i++) {
+			double t = i - center;
+			double sinc = (t == 0) ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+			double r = (numTaps > 1) ? 2 * t / (numTaps - 1) : 0;
+			double window = besselI0(kaiserBeta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+			taps[i] = sinc * window;
+			sum += taps[i];
+		}
+		float[] result = new float[numTaps];
+		for (int i = 0; i < numTaps; i++)
+			result[i] = (float) (taps[i] * gain / sum);
+		return result;
+	}
+
+	/**
+	 * Designs a half-band lowpass filter and returns its taps in the format of the Hilbert kernel
+	 * of the IQ converters (see AirspyFloatConverter.HB_KERNEL_FLOAT): the center tap (0.5) and
+	 * all zero taps are removed. The full filter has 2 * numTaps - 1 taps.
+	 *
+	 * @param numTaps		number of remaining taps (even; min. 2)
+	 * @param kaiserBeta	parameter of the Kaiser window (see kaiserBeta())
+	 * @return numTaps taps (sum 0.5, i.e. unity gain at DC together with the center tap)
+	 */
+	public static float[] halfband(int numTaps, double kaiserBeta) {
+		float[] full = lowpass(2 * numTaps - 1, 0.25, kaiserBeta, 1);
+		float[] result = new float[numTaps];
+		double sum = 0;
+		for (int i = 0; i < numTaps; i++) {
+			result[i] = full[2 * i];
+			sum += result[i];
+		}
+		for (int i = 0; i < numTaps; i++)
+			result[i] = (float) (result[i] * 0.5 / sum);
+		return result;
+	}
+
+	/**
+	 * Estimates the number of half-band taps (without center and zero taps) for the desired
+	 * stopband attenuation and transition width.
+	 *
+	 * @param attenuationDb		stopband attenuation in dB
+	 * @param transitionWidth	width of the transition band relative to the sample rate (e.g. 0.05)
+	 * @return number of taps for halfband() (even)
+	 */
+	public static int halfbandNumTaps(double attenuationDb, double transitionWidth) {
+		int fullTaps = kaiserNumTaps(attenuationDb, transitionWidth);
+		int numTaps = (fullTaps + 1) / 2;
+		return Math.max(2, numTaps + (numTaps & 1));
+	}
+
+	/**
+	 * Returns the Hilbert kernel of a preset. HILBERT_PRESET_NORMAL is the kernel that the
+	 * converters always used (HB_KERNEL_FLOAT).
+	 *
+	 * @param preset	HILBERT_PRESET_FAST, *_NORMAL or *_HIGH_QUALITY
+	 * @return kernel for the AirspyFloatConverter or null if the preset is invalid
+	 */
+	public static float[] getHilbertKernel(int preset) {
+		switch (preset) {
+			case HILBERT_PRESET_FAST:
+				return halfband(8, kaiserBeta(50));
+			case HILBERT_PRESET_NORMAL:
+				return AirspyFloatConverter.HB_KERNEL_FLOAT.clone();
+			case HILBERT_PRESET_HIGH_QUALITY:
+				return halfband(48, kaiserBeta(100));
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Same as getHilbertKernel() but in Q15 for the AirspyInt16Converter.
+	 *
+	 * @param preset	HILBERT_PRESET_FAST, *_NORMAL or *_HIGH_QUALITY
+	 * @return kernel for the AirspyInt16Converter or null if the preset is invalid
+	 */
+	public static short[] getHilbertKernelInt16(int preset) {
+		if (preset == HILBERT_PRESET_NORMAL)
+			return AirspyInt16Converter.HB_KERNEL_INT16.clone();
+		float[] kernel = getHilbertKernel(preset);
+		return kernel == null ? null : toQ15(kernel);
+	}
+
+	/**
+	 * @param preset	HILBERT_PRESET_FAST, *_NORMAL or *_HIGH_QUALITY
+	 * @return name of the preset
+	 */
+	public static String hilbertPresetToString(int preset) {
+		switch (preset) {
+			case HILBERT_PRESET_FAST:			return "fast";
+			case HILBERT_PRESET_NORMAL:			return "normal";
+			case HILBERT_PRESET_HIGH_QUALITY:	return "high quality";
+			default:							return "unknown";
+		}
+	}
+
+	/**
+	 * Converts filter taps into Q15 fixed point values (rounded and saturated).
+	 *
+	 * @param taps	filter taps
+	 * @return taps scaled by 32768
+	 */
+	public static short[] toQ15(float[] taps) {
+		short[] result = new short[taps.length];
+		for (int i = 0; i < taps.length; i++)
+			result[i] = (short) Math.max(-32768, Math.min(32767, Math.round(taps[i] * 32768.0)));
+		return result;
+	}
+}
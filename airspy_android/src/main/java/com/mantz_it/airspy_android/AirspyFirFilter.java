@@ -0,0 +1,322 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyFirFilter.java
+ * Description: This class filters complex samples with a (long) real FIR kernel and
+ *              optionally decimates them. Short kernels are convolved directly (only the
+ *              output samples that survive the decimation are computed); long kernels use
+ *              overlap-save fast convolution with a preallocated AirspyFft and the spectrum
+ *              of the kernel calculated once in the constructor. In MODE_AUTO the method is
+ *              chosen by comparing the taps per output sample with a crossover point that is
+ *              measured once per process (see getCrossoverTaps()). getFloatStage() and
+ *              getInt16Stage() return AirspyDspStage objects for an AirspyDspPipeline.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyFirFilter {
+
+	private static final String LOGTAG = "AirspyFirFilter";
+	public static final int MODE_AUTO = 0;			// choose direct or FFT convolution by the crossover point
+	public static final int MODE_DIRECT = 1;		// time domain convolution
+	public static final int MODE_FFT = 2;			// overlap-save fast convolution
+	private static final int MIN_FFT_SIZE = 64;
+	private static volatile int crossoverTaps = -1;	// measured crossover point (-1 = not yet measured)
+
+	private int numTaps;
+	private int decimation;
+	private int maxInputLength;		// max. number of values per call
+	private boolean useFft;
+	private float[] reversedTaps;	// kernel in reversed order (direct convolution)
+	private float[] work;			// numTaps-1 complex samples of history followed by the input
+	private int phase = 0;			// index of the next output sample within the decimation
+	private AirspyFft fft = null;
+	private float[] spectrum;		// FFT of the kernel (scaled by 1/fftSize)
+	private float[] block;			// FFT buffer
+	private int blockLength;		// number of new complex samples per FFT block
+	private float[] scratch;		// float copy of int16 samples
+
+	/**
+	 * Constructor for the filter
+	 *
+	 * @param taps				real FIR kernel
+	 * @param decimation		decimation factor (1 for no decimation)
+	 * @param mode				MODE_AUTO, MODE_DIRECT or MODE_FFT
+	 * @param maxInputLength	max. number of values (2 per complex sample) per call
+	 * @throws Exception if the configuration is invalid
+	 */
+	public AirspyFirFilter(float[] taps, int decimation, int mode, int maxInputLength) throws Exception {
+		if (taps.length == 0 || decimation < 1 || maxInputLength < 2 || mode < MODE_AUTO || mode > MODE_FFT) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: numTaps=" + taps.length + " decimation=" + decimation
+					+ " mode=" + mode + " maxInputLength=" + maxInputLength);
+			throw new Exception("Invalid configuration: numTaps=" + taps.length + " decimation=" + decimation
+					+ " mode=" + mode + " maxInputLength=" + maxInputLength);
+		}
+		this.numTaps = taps.length;
+		this.decimation = decimation;
+		this.maxInputLength = maxInputLength;
+		this.work = new float[2 * (numTaps - 1) + maxInputLength];
+		if (mode == MODE_AUTO)
+			this.useFft = numTaps / decimation > getCrossoverTaps();
+		else
+			this.useFft = mode == MODE_FFT;
+
+		if (useFft) {
+			int fftSize = Math.max(MIN_FFT_SIZE, Integer.highestOneBit(4 * numTaps - 1) << 1);
+			this.fft = new AirspyFft(fftSize);
+			this.blockLength = fftSize - (numTaps - 1);
+			this.block = new float[2 * fftSize];
+			this.spectrum = new float[2 * fftSize];
+			for (int i = 0; i < numTaps; i++)
+				spectrum[2 * i] = taps[i] / fftSize;
+			fft.transform(spectrum, false);
+		} else {
+			this.reversedTaps = new float[numTaps];
+			for (int i = 0; i < numTaps; i++)
+				reversedTaps[i] = taps[numTaps - 1 - i];
+		}
+	}
+
+	/**
+	 * Returns the number of taps (per output sample) above which the FFT convolution is faster
+	 * than the direct convolution on this device. It is measured once (takes up to ~100 ms) unless it
+	 * was set with setCrossoverTaps().
+	 *
+	 * @return crossover point in taps
+	 */
+	public static synchronized int getCrossoverTaps() {
+		if (crossoverTaps < 0)
+			crossoverTaps = measureCrossoverTaps();
+		return crossoverTaps;
+	}
+
+	/**
+	 * Sets the crossover point (e.g. a value measured earlier) so that it is not measured again.
+	 *
+	 * @param taps	crossover point in taps
+	 */
+	public static synchronized void setCrossoverTaps(int taps) {
+		crossoverTaps = taps;
+	}
+
+	/**
+	 * Measures the time of both methods for increasing kernel lengths.
+	 *
+	 * @return the smallest measured kernel length for which the FFT convolution was faster
+	 */
+	private static int measureCrossoverTaps() {
+		float[] samples = new float[1024 * 8];
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = (float) Math.sin(i * 0.1);
+		int taps;
+		for (taps = 16; taps <= 1024; taps *= 2) {
+			try {
+				float[] kernel = AirspyFilterDesign.lowpass(taps, 0.1, 5, 1);
+				long direct = measure(new AirspyFirFilter(kernel, 1, MODE_DIRECT, samples.length), samples);
+				long fast = measure(new AirspyFirFilter(kernel, 1, MODE_FFT, samples.length), samples);
+				if (fast < direct)
+					break;
+			} catch (Exception e) {
+				Log.e(LOGTAG, "measureCrossoverTaps: " + e.getMessage());
+				break;
+			}
+		}
+		Log.i(LOGTAG, "measureCrossoverTaps: FFT convolution is faster from " + taps + " taps on.");
+		return taps;
+	}
+
+	private static long measure(AirspyFirFilter filter, float[] samples) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			long startTime = System.nanoTime();
+			filter.filter(samples, samples.length, samples);
+			best = Math.min(best, System.nanoTime() - startTime);
+		}
+		return best;
+	}
+
+	/**
+	 * @return true if the filter uses the FFT convolution
+	 */
+	public boolean isFftConvolution() {
+		return useFft;
+	}
+
+	/**
+	 * @return number of taps of the kernel
+	 */
+	public int getNumTaps() {
+		return numTaps;
+	}
+
+	/**
+	 * @return decimation factor
+	 */
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * @param inputLength	number of values (2 per complex sample) that go into filter()
+	 * @return max. number of values that filter() returns
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		return ((inputLength / 2 + decimation - 1) / decimation) * 2;
+	}
+
+	/**
+	 * Clears the history of the filter.
+	 */
+	public void reset() {
+		java.util.Arrays.fill(work, 0);
+		phase = 0;
+	}
+
+	/**
+	 * Filters and decimates complex samples. The input and output may be the same array.
+	 * If the number of complex samples is a multiple of the decimation, the output always
+	 * has input/decimation samples.
+	 *
+	 * @param input		interleaved I/Q samples
+	 * @param length	number of values (max. maxInputLength)
+	 * @param output	interleaved I/Q samples (min. getMaxOutputLength(length) values)
+	 * @return number of values in the output
+	 */
+	public int filter(float[] input, int length, float[] output) {
+		if (length > maxInputLength) {
+			Log.e(LOGTAG, "filter: Input length " + length + " exceeds max. input length " + maxInputLength);
+			return 0;
+		}
+		int history = 2 * (numTaps - 1);
+		length &= ~1;
+		System.arraycopy(input, 0, work, history, length);
+		int outLength = useFft ? filterFft(length / 2, output) : filterDirect(length / 2, output);
+		System.arraycopy(work, length, work, 0, history);
+		return outLength;
+	}
+
+	private int filterDirect(int numSamples, float[] output) {
+		int out = 0;
+		int k;
+		for (k = phase; k < numSamples; k += decimation) {
+			float re = 0;
+			float im = 0;
+			int idx = 2 * k;
+			for (int j = 0; j < numTaps; j++, idx += 2) {
+				re += reversedTaps[j] * work[idx];
+				im += reversedTaps[j] * work[idx + 1];
+			}
+			output[out++] = re;
+			output[out++] = im;
+		}
+		phase = k - numSamples;
+		return out;
+	}
+
+	private int filterFft(int numSamples, float[] output) {
+		int out = 0;
+		int k = phase;
+		for (int start = 0; start < numSamples; start += blockLength) {
+			// [numTaps-1 samples history][up to blockLength new samples][zeros]:
+			int newSamples = Math.min(blockLength, numSamples - start);
+			int values = 2 * (numTaps - 1 + newSamples);
+			System.arraycopy(work, 2 * start, block, 0, values);
+			java.util.Arrays.fill(block, values, block.length, 0);
+			fft.transform(block, false);
+			for (int i = 0; i < block.length; i += 2) {
+				float re = block[i] * spectrum[i] - block[i + 1] * spectrum[i + 1];
+				float im = block[i] * spectrum[i + 1] + block[i + 1] * spectrum[i];
+				block[i] = re;
+				block[i + 1] = im;
+			}
+			fft.transform(block, true);
+			// The first numTaps-1 outputs are corrupted by the circular convolution:
+			for (; k < start + newSamples; k += decimation) {
+				int idx = 2 * (numTaps - 1 + k - start);
+				output[out++] = block[idx];
+				output[out++] = block[idx + 1];
+			}
+		}
+		phase = k - numSamples;
+		return out;
+	}
+
+	/**
+	 * Same as filter() for int16 samples (the result is rounded and saturated).
+	 *
+	 * @param input		interleaved I/Q samples (signed-16bit-integer)
+	 * @param length	number of values (max. maxInputLength)
+	 * @param output	interleaved I/Q samples (min. getMaxOutputLength(length) values)
+	 * @return number of values in the output
+	 */
+	public int filter(short[] input, int length, short[] output) {
+		if (length > maxInputLength) {
+			Log.e(LOGTAG, "filter: Input length " + length + " exceeds max. input length " + maxInputLength);
+			return 0;
+		}
+		if (scratch == null)
+			scratch = new float[maxInputLength];
+		for (int i = 0; i < length; i++)
+			scratch[i] = input[i];
+		int outLength = filter(scratch, length, scratch);
+		for (int i = 0; i < outLength; i++) {
+			int value = Math.round(scratch[i]);
+			output[i] = (short) (value > Short.MAX_VALUE ? Short.MAX_VALUE : value < Short.MIN_VALUE ? Short.MIN_VALUE : value);
+		}
+		return outLength;
+	}
+
+	/**
+	 * @return a stage that filters float IQ samples (the decimation should divide the number of complex samples per buffer)
+	 */
+	public AirspyDspStage<float[]> getFloatStage() {
+		return new AirspyDspStage<float[]>() {
+			@Override
+			public int process(float[] samples, int length) {
+				return filter(samples, length, samples);
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return inputLength / (2 * decimation) * 2;
+			}
+		};
+	}
+
+	/**
+	 * @return a stage that filters int16 IQ samples (the decimation should divide the number of complex samples per buffer)
+	 */
+	public AirspyDspStage<short[]> getInt16Stage() {
+		return new AirspyDspStage<short[]>() {
+			@Override
+			public int process(short[] samples, int length) {
+				return filter(samples, length, samples);
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return inputLength / (2 * decimation) * 2;
+			}
+		};
+	}
+}
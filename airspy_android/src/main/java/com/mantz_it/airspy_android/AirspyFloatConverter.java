@@ -58,6 +58,16 @@ public class AirspyFloatConverter extends Thread{
 	private ArrayBlockingQueue<byte[]> inputReturnQueue;   // Queue to return the used input buffers to the pool
 	private ArrayBlockingQueue<float[]> outputQueue;       // Queue to deliver the converted samples
 	private ArrayBlockingQueue<float[]> outputPoolQueue;   // Queue from which the output buffers are taken
+	private byte[] packingBuffer = null;                   // Buffer for the unpacked samples (if packing is enabled)
+	private AirspyConverterSequencer sequencer = null;     // Keeps the output in order if there are multiple workers
+	private long sequenceNumber = 0;                       // Sequence number of the next buffer of this worker
+	private AirspySampleStatistics statistics = null;      // Collects peak, RMS and clipping of the samples (optional)
+	private AirspyDspPipeline<float[]> pipeline = null;    // Additional processing stages (optional)
+	private AirspyConversionTable conversionTable = null;  // Lookup table for the conversion (optional)
+	private boolean splitLayout = false;                   // IQ: I in the first and Q in the second half of the buffer
+	private float[] splitScratch = null;                   // Q values until they are copied to the second half
+	private float[] kernel;                                // Hilbert kernel (see HB_KERNEL_FLOAT)
+	private AirspyKernels kernels;                         // Inner loops (scalar or Vector API, see AirspyKernels)
 	private int len = 0;
 	private int firIndex = 0;
 	private int delayIndex = 0;
@@ -109,17 +119,47 @@ public class AirspyFloatConverter extends Thread{
 	public AirspyFloatConverter(int sampleType, boolean packingEnabled, ArrayBlockingQueue<byte[]> inputQueue,
 								ArrayBlockingQueue<byte[]> inputReturnQueue, ArrayBlockingQueue<float[]> outputQueue,
 								ArrayBlockingQueue<float[]> outputPoolQueue) throws Exception {
+		this(sampleType, packingEnabled, inputQueue, inputReturnQueue, outputQueue, outputPoolQueue, HB_KERNEL_FLOAT);
+	}
+
+	/**
+	 * Constructor for the float Converter with a custom Hilbert kernel
+	 * @param sampleType		Desired sample type of the output samples (Airspy.AIRSPY_SAMPLE_FLOAT32_IQ or *_FLOAT32_REAL
+	 * @param packingEnabled	Indicates if the input samples are packed
+	 * @param inputQueue		Queue from which the input samples are taken
+	 * @param inputReturnQueue	Queue to return the used input buffers to the pool
+	 * @param outputQueue		Queue to deliver the converted samples
+	 * @param outputPoolQueue	Queue from which the output buffers are taken
+	 * @param hilbertKernel		Hilbert kernel with zeros removed (see AirspyFilterDesign.getHilbertKernel())
+	 * @throws Exception if the sample type does not match a float based type or the kernel is not even and symmetric
+	 */
+	public AirspyFloatConverter(int sampleType, boolean packingEnabled, ArrayBlockingQueue<byte[]> inputQueue,
+								ArrayBlockingQueue<byte[]> inputReturnQueue, ArrayBlockingQueue<float[]> outputQueue,
+								ArrayBlockingQueue<float[]> outputPoolQueue, float[] hilbertKernel) throws Exception {
 		if(sampleType != Airspy.AIRSPY_SAMPLE_FLOAT32_IQ && sampleType != Airspy.AIRSPY_SAMPLE_FLOAT32_REAL) {
 			Log.e(LOGTAG, "constructor: Invalid sample type: " + sampleType);
 			throw new Exception("Invalid sample type: " + sampleType);
 		}
+		if(hilbertKernel.length < 2 || hilbertKernel.length % 2 != 0) {
+			Log.e(LOGTAG, "constructor: Invalid Hilbert kernel length: " + hilbertKernel.length);
+			throw new Exception("Invalid Hilbert kernel length: " + hilbertKernel.length);
+		}
+		// The kernels fold both halves of the kernel (see AirspyKernels.firInterleaved()):
+		for (int i = 0; i < hilbertKernel.length / 2; i++) {
+			if (hilbertKernel[i] != hilbertKernel[hilbertKernel.length - 1 - i]) {
+				Log.e(LOGTAG, "constructor: Hilbert kernel is not symmetric!");
+				throw new Exception("Hilbert kernel is not symmetric!");
+			}
+		}
 		this.sampleType = sampleType;
 		this.packingEnabled = packingEnabled;
 		this.inputQueue = inputQueue;
 		this.inputReturnQueue = inputReturnQueue;
 		this.outputQueue = outputQueue;
 		this.outputPoolQueue = outputPoolQueue;
-		this.len = HB_KERNEL_FLOAT.length;
+		this.kernel = hilbertKernel;
+		this.kernels = AirspyKernels.getInstance();
+		this.len = hilbertKernel.length;
 		this.hbc = 0.5f;
 		this.delayLine = new float[this.len / 2];
 		this.firQueue = new float[this.len * SIZE_FACTOR];
@@ -147,41 +187,136 @@ public class AirspyFloatConverter extends Thread{
 		}
 	}
 
+	/**
+	 * Same as convertSamplesFloat(src, dest, count) but also collects peak, RMS, DC offset,
+	 * clipping and histogram of the samples in the same loop and adds them to the given statistics.
+	 *
+	 * @param src   		input samples (little endian, unsigned-12bit-integer); min. twice the size of output
+	 * @param dest  		output samples (signed-32bit-float); min. of size 'count'
+	 * @param count 		number of samples to process
+	 * @param statistics	statistics to update (may be null)
+	 */
+	public static void convertSamplesFloat(byte[] src, float[] dest, int count, AirspySampleStatistics statistics) {
+		if (statistics == null) {
+			convertSamplesFloat(src, dest, count);
+			return;
+		}
+		if (src.length < 2 * count || dest.length < count) {
+			Log.e(LOGTAG, "convertSamplesFloat: input buffers have invalid length: src=" + src.length + " dest=" + dest.length);
+			return;
+		}
+		int raw, value;
+		int peak = 0;
+		int clippedLow = 0;
+		int clippedHigh = 0;
+		long sum = 0;
+		long sumSquares = 0;
+		int[] histogram = statistics.getHistogramScratch();
+		for (int i = 0; i < count; i++) {
+			raw = ((src[2 * i + 1] & 0x0F) << 8) + (src[2 * i] & 0xFF);
+			value = raw - 2048;
+			dest[i] = value * (1f / 2048f);
+			sum += value;
+			sumSquares += value * value;
+			if (value < 0)
+				value = -value;
+			if (value > peak)
+				peak = value;
+			if (raw == AirspySampleStatistics.RAW_MIN)
+				clippedLow++;
+			else if (raw == AirspySampleStatistics.RAW_MAX)
+				clippedHigh++;
+			if (histogram != null)
+				histogram[raw]++;
+		}
+		statistics.add(count, peak, sum, sumSquares, clippedLow, clippedHigh, histogram);
+	}
+
+	/**
+	 * Makes this converter one of several workers that share the conversion. The workers get
+	 * the input buffers round robin (worker i gets buffer i, i+n, i+2n, ... from its own input
+	 * queue) and use the sequencer to deliver the output buffers in the original order.
+	 * Only stateless sample types (real samples) must be converted by multiple workers!
+	 * Has to be called before the thread is started.
+	 *
+	 * @param sequencer		sequencer shared by all workers
+	 * @param workerIndex	index of this worker (0 - sequencer.getNumWorkers()-1)
+	 */
+	public void setSequencer(AirspyConverterSequencer sequencer, int workerIndex) {
+		this.sequencer = sequencer;
+		this.sequenceNumber = workerIndex;
+	}
+
+	/**
+	 * Lets the converter collect peak, RMS and clipping of the samples while converting them.
+	 * Has to be called before the thread is started.
+	 *
+	 * @param statistics	statistics to update (null to disable)
+	 */
+	public void setStatistics(AirspySampleStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Lets the converter use a lookup table instead of the arithmetic conversion. The table is
+	 * not used while statistics are collected. Has to be called before the thread is started.
+	 *
+	 * @param conversionTable	table for the sample type of this converter (null to disable)
+	 */
+	public void setConversionTable(AirspyConversionTable conversionTable) {
+		this.conversionTable = conversionTable;
+	}
+
+	/**
+	 * Selects the layout of the IQ samples in the output buffers: interleaved (I,Q,I,Q,...) or
+	 * split (all I values in the first half of the buffer, all Q values in the second half).
+	 * Has to be called before the thread is started.
+	 *
+	 * @param splitLayout	true for the split layout; false for the interleaved layout (default)
+	 */
+	public void setSplitLayout(boolean splitLayout) {
+		this.splitLayout = splitLayout;
+	}
+
+	/**
+	 * Appends the stages of the given pipeline to the conversion. They run on the converter
+	 * thread after the conversion of each buffer. Has to be called before the thread is started.
+	 *
+	 * @param pipeline	additional processing stages (null to disable)
+	 */
+	public void setPipeline(AirspyDspPipeline<float[]> pipeline) {
+		this.pipeline = pipeline;
+	}
+
 	public void requestStop() {
 		this.stopRequested = true;
 	}
 
 	private void firInterleaved(float[] samples) {
-		float acc;
-		int idxKernel, idx1, idx2;
-
-		for (int i = 0; i < samples.length; i += 2)
-		{
-			firQueue[firIndex] = samples[i];
-			acc = 0;
-
-			// Convolution
-			idxKernel = 0;
-			idx1 = firIndex;
-			idx2 = firIndex + len - 1;
-			for(; idxKernel < (len/2)-4; idxKernel+=4, idx1+=4, idx2-=4) {
-				acc +=    HB_KERNEL_FLOAT[idxKernel] * (firQueue[idx1] + firQueue[idx2])
-						+ HB_KERNEL_FLOAT[idxKernel+1] * (firQueue[idx1+1] + firQueue[idx2-1])
-						+ HB_KERNEL_FLOAT[idxKernel+2] * (firQueue[idx1+2] + firQueue[idx2-2])
-						+ HB_KERNEL_FLOAT[idxKernel+3] * (firQueue[idx1+3] + firQueue[idx2-3]);
-			}
-			// Rest of the convolution: ( if kernel length is not dividable by 2*4 )
-			for(; idxKernel < len/2; idxKernel++, idx1++, idx2--) {
-				acc += HB_KERNEL_FLOAT[idxKernel] * (firQueue[idx1] + firQueue[idx2]);
-			}
+		firIndex = kernels.firInterleaved(samples, samples.length, kernel, firQueue, firIndex, SIZE_FACTOR);
+	}
 
-			if (--firIndex < 0) {
-				firIndex = len * (SIZE_FACTOR - 1);
-				System.arraycopy(firQueue, 0, firQueue, firIndex + 1, len - 1);
-			}
+	/**
+	 * Same as delayInterleaved(samples, 1) but also moves the I values (even indices) to the
+	 * first half and the delayed Q values to the second half of the buffer in the same loop.
+	 */
+	private void delaySplit(float[] samples) {
+		int halfLen = len >> 1;
+		int half = samples.length / 2;
+		if (splitScratch == null || splitScratch.length != half)
+			splitScratch = new float[half];
+
+		for (int k = 0; k < half; k++) {
+			float q = samples[2 * k + 1];
+			samples[k] = samples[2 * k];		// k <= 2k: the value was already read
+			splitScratch[k] = delayLine[delayIndex];
+			delayLine[delayIndex] = q;
 
-			samples[i] = acc;
+			if (++delayIndex >= halfLen) {
+				delayIndex = 0;
+			}
 		}
+		System.arraycopy(splitScratch, 0, samples, half, half);
 	}
 
 	private void delayInterleaved(float[] samples, int offset) {
@@ -200,23 +335,17 @@ public class AirspyFloatConverter extends Thread{
 	}
 
 	private void removeDC(float[] samples) {
-		for (int i = 0; i < samples.length; i++)
-		{
-			samples[i] = samples[i] - avg;
-			avg += SCALE * samples[i];
-		}
+		avg = kernels.removeDC(samples, samples.length, avg, SCALE);
 	}
 
 	private void translateFs4(float[] samples) {
-		for (int i = 0; i < samples.length; i += 4) {
-			samples[i] = -samples[i];
-			samples[i + 1] = -samples[i + 1] * hbc;
-			//samples[i + 2] = samples[i + 2];
-			samples[i + 3] = samples[i + 3] * hbc;
-		}
+		kernels.translateFs4(samples, samples.length, hbc);
 
 		firInterleaved(samples);
-		delayInterleaved(samples, 1);
+		if (splitLayout)
+			delaySplit(samples);
+		else
+			delayInterleaved(samples, 1);
 	}
 
 	public void processSamplesFloat(float[] samples) {
@@ -224,10 +353,61 @@ public class AirspyFloatConverter extends Thread{
 		translateFs4(samples);
 	}
 
-	public void run() {
+	/**
+	 * Converts a single buffer of raw samples (as received from the Airspy) into the given output
+	 * buffer. This is what the converter thread does for every buffer in the input queue. It can
+	 * also be called directly without starting the thread (e.g. by the USB thread of the Airspy
+	 * if the inline execution model is used). Don't mix both ways of calling!
+	 *
+	 * @param origInputBuffer	raw samples (packed if packing is enabled)
+	 * @param outputBuffer		buffer for the converted samples
+	 * @return number of valid samples in the output buffer (0 if the pipeline dropped the buffer)
+	 */
+	public int convert(byte[] origInputBuffer, float[] outputBuffer) {
 		byte[] inputBuffer;
+
+		// Maybe unpack the samples first:
+		if (packingEnabled) {
+			int unpackedLength = origInputBuffer.length * 4 / 3;
+			if (packingBuffer == null || packingBuffer.length != unpackedLength)
+				packingBuffer = new byte[unpackedLength];
+			Airspy.unpackSamples(origInputBuffer, packingBuffer, unpackedLength);
+			inputBuffer = packingBuffer;
+		} else {
+			inputBuffer = origInputBuffer;
+		}
+
+		// Next we do the processing for the conversion (statistics need the arithmetic conversion):
+		boolean useTable = conversionTable != null && statistics == null;
+		switch (sampleType) {
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_IQ:
+				if (useTable)
+					conversionTable.convert(inputBuffer, outputBuffer, outputBuffer.length);
+				else if (statistics != null)
+					convertSamplesFloat(inputBuffer, outputBuffer, outputBuffer.length, statistics);
+				else
+					kernels.convertSamplesFloat(inputBuffer, outputBuffer, outputBuffer.length);
+				processSamplesFloat(outputBuffer);
+				break;
+
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_REAL:
+				if (useTable)
+					conversionTable.convert(inputBuffer, outputBuffer, outputBuffer.length);
+				else if (statistics != null)
+					convertSamplesFloat(inputBuffer, outputBuffer, outputBuffer.length, statistics);
+				else
+					kernels.convertSamplesFloat(inputBuffer, outputBuffer, outputBuffer.length);
+				break;
+		}
+
+		// Finally run the additional processing stages:
+		if (pipeline != null)
+			return pipeline.process(outputBuffer, outputBuffer.length);
+		return outputBuffer.length;
+	}
+
+	public void run() {
 		byte[] origInputBuffer;
-		byte[] packingBuffer = null;
 		float[] outputBuffer = null;
 
 		while (!stopRequested) {
@@ -259,32 +439,25 @@ public class AirspyFloatConverter extends Thread{
 				continue;
 			}
 
-			// Maybe unpack the samples first:
-			if (packingEnabled) {
-				int unpackedLength = origInputBuffer.length * 4 / 3;
-				if (packingBuffer == null || packingBuffer.length != unpackedLength)
-					packingBuffer = new byte[unpackedLength];
-				Airspy.unpackSamples(origInputBuffer, packingBuffer, unpackedLength);
-				inputBuffer = packingBuffer;
-			} else {
-				inputBuffer = origInputBuffer;
-			}
-
-			// Next we do the processing for the conversion:
-			switch (sampleType) {
-				case Airspy.AIRSPY_SAMPLE_FLOAT32_IQ:
-					convertSamplesFloat(inputBuffer, outputBuffer, outputBuffer.length);
-					processSamplesFloat(outputBuffer);
-					break;
-
-				case Airspy.AIRSPY_SAMPLE_FLOAT32_REAL:
-					convertSamplesFloat(inputBuffer, outputBuffer, outputBuffer.length);
-					break;
-			}
+			// Do the conversion:
+			int length = convert(origInputBuffer, outputBuffer);
 
 			// Finally we return the buffers to the corresponding queues:
 			inputReturnQueue.offer(origInputBuffer);
-			outputQueue.offer(outputBuffer);
+			if(sequencer != null && !sequencer.awaitTurn(sequenceNumber)) {
+				Log.e(LOGTAG, "run: Other workers did not deliver their buffers in time. Stop!");
+				outputPoolQueue.offer(outputBuffer);
+				stopRequested = true;
+				continue;
+			}
+			if(length > 0)
+				outputQueue.offer(outputBuffer);
+			else
+				outputPoolQueue.offer(outputBuffer);	// dropped by the pipeline
+			if(sequencer != null) {
+				sequencer.done(sequenceNumber);
+				sequenceNumber += sequencer.getNumWorkers();
+			}
 		}
 	}
 }
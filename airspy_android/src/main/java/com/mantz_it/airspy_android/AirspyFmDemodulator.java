@@ -0,0 +1,246 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyFmDemodulator.java
+ * Description: Wideband FM (broadcast) demodulator for the float IQ samples of the Airspy.
+ *              The chain is: decimation to 250 kHz (one or two AirspyResampler stages),
+ *              quadrature discriminator, optional stereo decoding (19 kHz pilot PLL and
+ *              38 kHz subcarrier), 15 kHz audio lowpass with decimation to 48 kHz and
+ *              de-emphasis. All buffers are allocated in the constructor; demodulate()
+ *              does not allocate memory. The output is interleaved stereo audio (L/R).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyFmDemodulator {
+
+	private static final String LOGTAG = "AirspyFmDemodulator";
+	public static final int MPX_RATE = 250000;				// rate of the demodulated multiplex signal
+	public static final int AUDIO_RATE = 48000;				// rate of the audio output
+	public static final double DEEMPHASIS_EUROPE = 50e-6;	// time constant of the de-emphasis (Europe)
+	public static final double DEEMPHASIS_USA = 75e-6;		// time constant of the de-emphasis (USA)
+	private static final int INTERMEDIATE_RATE = 1000000;	// rate after the first decimation stage (if needed)
+	private static final double MAX_DEVIATION = 75000;		// max. frequency deviation of broadcast FM
+	private static final double PILOT_FREQUENCY = 19000;
+	private static final double PLL_BANDWIDTH = 20;			// loop bandwidth of the pilot PLL in Hz
+	private static final float PILOT_LOCK_THRESHOLD = 0.02f;	// min. pilot amplitude (relative to full deviation)
+
+	private int maxInputLength;
+	private AirspyResampler firstStage = null;		// input rate -> 1 MHz (only for high input rates)
+	private AirspyResampler secondStage;			// -> 250 kHz
+	private AirspyResampler audioStage;				// 250 kHz -> 48 kHz (I: L+R, Q: L-R)
+	private float[] intermediateBuffer;				// complex samples after the first stage
+	private float[] channelBuffer;					// complex samples at 250 kHz
+	private float[] audioBuffer;					// (L+R, L-R) pairs at 48 kHz
+	private float prevI = 0;						// last sample for the discriminator
+	private float prevQ = 0;
+	private float discriminatorGain;				// scales the phase difference to +-1 for full deviation
+
+	// Pilot PLL (phase in 2^32 units):
+	private boolean stereoEnabled;
+	private int pllPhase = 0;
+	private int pllFrequency;						// current phase increment per sample
+	private int pllNominalFrequency;				// phase increment of 19 kHz
+	private float pllKp;							// proportional gain (phase units per error)
+	private float pllKi;							// integral gain (phase units per error)
+	private float pilotLevel = 0;					// lowpass filtered in-phase pilot amplitude (lock detector)
+	private volatile boolean stereo = false;		// true if the last buffer was decoded in stereo
+
+	// De-emphasis:
+	private float deemphasisAlpha;
+	private float deemphasisL = 0;
+	private float deemphasisR = 0;
+
+	/**
+	 * Constructor for the FM demodulator
+	 *
+	 * @param inputRate			complex sample rate of the IQ input in Sps (half of the Airspy sample rate)
+	 * @param maxInputLength	max. number of values (2 per complex sample) per call of demodulate()
+	 * @param stereoEnabled		if true, stereo is decoded whenever the pilot tone is present
+	 * @param deemphasis		time constant of the de-emphasis (DEEMPHASIS_EUROPE or DEEMPHASIS_USA)
+	 * @throws Exception if the input rate is too low or the resamplers can't be created
+	 */
+	public AirspyFmDemodulator(int inputRate, int maxInputLength, boolean stereoEnabled, double deemphasis) throws Exception {
+		if (inputRate < MPX_RATE || maxInputLength <= 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: inputRate=" + inputRate + " maxInputLength=" + maxInputLength);
+			throw new Exception("Invalid configuration: inputRate=" + inputRate + " maxInputLength=" + maxInputLength);
+		}
+		this.maxInputLength = maxInputLength;
+		this.stereoEnabled = stereoEnabled;
+
+		// Channel filter: +-100 kHz passband. A first stage with a wide transition band brings
+		// high rates down to 1 MHz cheaply; the second stage does the sharp filtering:
+		int channelRate = inputRate;
+		int length = maxInputLength;
+		if (inputRate >= 2 * INTERMEDIATE_RATE) {
+			firstStage = new AirspyResampler(inputRate, INTERMEDIATE_RATE, 150000, INTERMEDIATE_RATE - 150000, 60);
+			length = firstStage.getMaxOutputLength(length);
+			intermediateBuffer = new float[length];
+			channelRate = INTERMEDIATE_RATE;
+		}
+		secondStage = new AirspyResampler(channelRate, MPX_RATE, 100000, 150000, 60);
+		length = secondStage.getMaxOutputLength(length);
+		channelBuffer = new float[length];
+
+		// Audio: 15 kHz lowpass that also removes the pilot:
+		audioStage = new AirspyResampler(MPX_RATE, AUDIO_RATE, 15000, 18500, 50);
+		audioBuffer = new float[audioStage.getMaxOutputLength(length)];
+
+		discriminatorGain = (float) (MPX_RATE / (2 * Math.PI * MAX_DEVIATION));
+
+		// Second order PLL (damping 0.707); phase detector gain: ~ pilot amplitude / 2 (~0.05):
+		double omega = 2 * Math.PI * PLL_BANDWIDTH / MPX_RATE;
+		double detectorGain = 0.05;
+		double phaseUnits = 4294967296.0 / (2 * Math.PI);
+		pllKp = (float) (2 * 0.707 * omega / detectorGain * phaseUnits);
+		pllKi = (float) (omega * omega / detectorGain * phaseUnits);
+		pllNominalFrequency = (int) Math.round(PILOT_FREQUENCY / MPX_RATE * 4294967296.0);
+		pllFrequency = pllNominalFrequency;
+
+		deemphasisAlpha = (float) (1 - Math.exp(-1 / (AUDIO_RATE * deemphasis)));
+	}
+
+	/**
+	 * @return true if the last buffer was decoded in stereo (pilot present and PLL locked)
+	 */
+	public boolean isStereo() {
+		return stereo;
+	}
+
+	/**
+	 * @return amplitude of the pilot tone relative to full deviation (~0.1 for a stereo station)
+	 */
+	public float getPilotLevel() {
+		return 2 * pilotLevel;
+	}
+
+	/**
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @return max. number of audio values (2 per stereo frame) that one call can produce
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		return audioBuffer.length;
+	}
+
+	/**
+	 * Fast approximation of atan2 (max. error ~0.0015 rad); also used by the AirspyNarrowbandDemodulator
+	 */
+	static float fastAtan2(float y, float x) {
+		float absY = Math.abs(y) + 1e-20f;
+		float absX = Math.abs(x);
+		float angle;
+		if (absX >= absY) {
+			float z = absY / absX;
+			angle = (float) (Math.PI / 4) * z - z * (z - 1) * (0.2447f + 0.0663f * z);
+		} else {
+			float z = absX / absY;
+			angle = (float) (Math.PI / 2) - ((float) (Math.PI / 4) * z - z * (z - 1) * (0.2447f + 0.0663f * z));
+		}
+		if (x < 0)
+			angle = (float) Math.PI - angle;
+		return y < 0 ? -angle : angle;
+	}
+
+	/**
+	 * Demodulates the next buffer of the stream.
+	 *
+	 * @param input			interleaved I/Q samples (float) at the input rate
+	 * @param inputLength	number of input values (max. maxInputLength)
+	 * @param audio			buffer for the audio (min. getMaxOutputLength(inputLength) values)
+	 * @return number of values written to audio (interleaved L/R; 2 per frame)
+	 */
+	public int demodulate(float[] input, int inputLength, float[] audio) {
+		if (inputLength > maxInputLength) {
+			Log.e(LOGTAG, "demodulate: Input length " + inputLength + " exceeds max. input length " + maxInputLength);
+			return 0;
+		}
+
+		// Channel filter and decimation to 250 kHz:
+		int length;
+		if (firstStage != null) {
+			length = firstStage.resample(input, inputLength, intermediateBuffer);
+			length = secondStage.resample(intermediateBuffer, length, channelBuffer);
+		} else {
+			length = secondStage.resample(input, inputLength, channelBuffer);
+		}
+
+		// Discriminator and stereo decoder. The result is written back into the channel buffer
+		// as complex pairs (I: L+R, Q: L-R), so that the audio stage filters both at once:
+		float prevI = this.prevI;
+		float prevQ = this.prevQ;
+		int phase = this.pllPhase;
+		int frequency = this.pllFrequency;
+		float pilotLevel = this.pilotLevel;
+		boolean decodeStereo = stereoEnabled && this.stereo;
+		for (int i = 0; i < length; i += 2) {
+			float re = channelBuffer[i];
+			float im = channelBuffer[i + 1];
+			float mpx = fastAtan2(im * prevI - re * prevQ, re * prevI + im * prevQ) * discriminatorGain;
+			prevI = re;
+			prevQ = im;
+
+			float diff = 0;
+			if (stereoEnabled) {
+				float sin = AirspyNco.sin(phase);
+				float cos = AirspyNco.cos(phase);
+				float error = -mpx * sin;
+				frequency += (int) (pllKi * error);
+				phase += frequency + (int) (pllKp * error);
+				pilotLevel += 0.0001f * (mpx * cos - pilotLevel);
+				// The PLL locks cos(phase) to the pilot (sin(wt)), so the 38 kHz subcarrier
+				// sin(2wt) is -sin(2 * phase):
+				if (decodeStereo)
+					diff = -4 * mpx * sin * cos;
+			}
+			channelBuffer[i] = mpx;
+			channelBuffer[i + 1] = diff;
+		}
+		this.prevI = prevI;
+		this.prevQ = prevQ;
+		this.pllPhase = phase;
+		// Don't let the loop run away if there is no pilot:
+		if (Math.abs(frequency - pllNominalFrequency) > pllNominalFrequency / 100)
+			frequency = pllNominalFrequency;
+		this.pllFrequency = frequency;
+		this.pilotLevel = pilotLevel;
+		this.stereo = stereoEnabled && pilotLevel > PILOT_LOCK_THRESHOLD / 2;
+
+		// Audio lowpass and decimation to 48 kHz:
+		length = audioStage.resample(channelBuffer, length, audioBuffer);
+
+		// Matrix and de-emphasis:
+		float l = deemphasisL;
+		float r = deemphasisR;
+		for (int i = 0; i < length; i += 2) {
+			float sum = audioBuffer[i];
+			float diff = audioBuffer[i + 1];
+			l += deemphasisAlpha * ((sum + diff) - l);
+			r += deemphasisAlpha * ((sum - diff) - r);
+			audio[i] = l;
+			audio[i + 1] = r;
+		}
+		deemphasisL = l;
+		deemphasisR = r;
+		return length;
+	}
+}
@@ -0,0 +1,201 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyGatedRecorder.java
+ * Description: This class records the samples that pass an AirspySquelchGate to a file.
+ *              It takes the buffers from the float or int16 queue of the Airspy (depending on
+ *              the sample type) and writes each buffer as a record with its stream position,
+ *              so the gaps of the closed squelch can be reconstructed:
+ *
+ *              long position   (number of values in the stream before this record)
+ *              long timestamp  (System.currentTimeMillis() of the conversion)
+ *              int  length     (number of values in this record)
+ *              length values   (float32 or int16)
+ *
+ *              All fields are little endian. The gate has to be the last stage of the
+ *              pipeline of the Airspy. IQ samples are recorded interleaved (I,Q,I,Q,...) as
+ *              they are delivered; the split IQ layout (Airspy.AIRSPY_IQ_LAYOUT_SPLIT) is not
+ *              supported (the Airspy can't combine it with a pipeline anyway).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyGatedRecorder extends Thread {
+
+	private static final String LOGTAG = "AirspyGatedRecorder";
+	private static final int RECORD_HEADER_SIZE = 20;	// position + timestamp + length
+	private boolean stopRequested = false;
+	private Airspy airspy;
+	private AirspySquelchGate gate;
+	private File file;
+	private volatile long writtenBytes = 0;		// number of bytes written to the file
+	private volatile long records = 0;			// number of records (buffers) written to the file
+	private volatile long gaps = 0;				// number of records that do not follow the previous one
+
+	/**
+	 * Constructor for the gated recorder. The gate's stage must be the last stage of the float
+	 * (AIRSPY_SAMPLE_FLOAT32_*) or int16 (AIRSPY_SAMPLE_INT16_*) pipeline of the Airspy.
+	 *
+	 * @param airspy	Airspy that delivers the samples (sample type float or int16)
+	 * @param gate		squelch gate that is part of the pipeline
+	 * @param file		destination file
+	 * @throws Exception if the sample type is not supported
+	 */
+	public AirspyGatedRecorder(Airspy airspy, AirspySquelchGate gate, File file) throws Exception {
+		if (!isFloat(airspy.getSampleType()) && !isInt16(airspy.getSampleType())) {
+			Log.e(LOGTAG, "constructor: Sample type not supported: " + airspy.getSampleType());
+			throw new Exception("Sample type not supported: " + airspy.getSampleType());
+		}
+		this.airspy = airspy;
+		this.gate = gate;
+		this.file = file;
+	}
+
+	private static boolean isFloat(int sampleType) {
+		return sampleType == Airspy.AIRSPY_SAMPLE_FLOAT32_IQ || sampleType == Airspy.AIRSPY_SAMPLE_FLOAT32_REAL;
+	}
+
+	private static boolean isInt16(int sampleType) {
+		return sampleType == Airspy.AIRSPY_SAMPLE_INT16_IQ || sampleType == Airspy.AIRSPY_SAMPLE_INT16_REAL
+				|| sampleType == Airspy.AIRSPY_SAMPLE_UINT16_REAL;
+	}
+
+	/**
+	 * @return number of bytes written to the file
+	 */
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	/**
+	 * @return number of records (buffers) written to the file
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return number of times the gate opened (records that do not continue the previous one)
+	 */
+	public long getGaps() {
+		return gaps;
+	}
+
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	public void run() {
+		boolean floatSamples = isFloat(airspy.getSampleType());
+		ArrayBlockingQueue<float[]> floatQueue = floatSamples ? airspy.getFloatQueue() : null;
+		ArrayBlockingQueue<short[]> int16Queue = floatSamples ? null : airspy.getInt16Queue();
+		ByteBuffer header = ByteBuffer.allocateDirect(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer data = null;
+		long nextPosition = -1;
+		FileOutputStream outputStream;
+
+		try {
+			outputStream = new FileOutputStream(file);
+		} catch (IOException e) {
+			Log.e(LOGTAG, "run: Cannot open " + file.getAbsolutePath() + ": " + e.getMessage());
+			this.stopRequested = true;
+			return;
+		}
+		FileChannel channel = outputStream.getChannel();
+
+		try {
+			while (!stopRequested) {
+				float[] floatBuffer = null;
+				short[] int16Buffer = null;
+				try {
+					if (floatSamples)
+						floatBuffer = floatQueue.poll(1000, TimeUnit.MILLISECONDS);
+					else
+						int16Buffer = int16Queue.poll(1000, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Log.e(LOGTAG, "run: Interrupted while waiting for buffers. Stop!");
+					break;
+				}
+				if (floatBuffer == null && int16Buffer == null)
+					continue;		// squelch is closed (or the Airspy stopped)
+
+				AirspySquelchGate.Segment segment = gate.getSegmentQueue().poll();
+				if (segment == null) {
+					Log.e(LOGTAG, "run: Received a buffer without segment. Is the gate the last stage of the pipeline? Stop!");
+					break;
+				}
+
+				int bytesPerValue = floatSamples ? 4 : 2;
+				int dataSize = segment.getLength() * bytesPerValue;
+				if (data == null || data.capacity() < dataSize)
+					data = ByteBuffer.allocateDirect(dataSize).order(ByteOrder.LITTLE_ENDIAN);
+				data.clear();
+				if (floatSamples) {
+					data.asFloatBuffer().put(floatBuffer, 0, segment.getLength());
+					airspy.getFloatReturnPoolQueue().offer(floatBuffer);
+				} else {
+					data.asShortBuffer().put(int16Buffer, 0, segment.getLength());
+					airspy.getInt16ReturnPoolQueue().offer(int16Buffer);
+				}
+				data.limit(dataSize);
+
+				header.clear();
+				header.putLong(segment.getPosition());
+				header.putLong(segment.getTimestamp());
+				header.putInt(segment.getLength());
+				header.flip();
+				while (header.hasRemaining())
+					channel.write(header);
+				while (data.hasRemaining())
+					channel.write(data);
+
+				if (segment.getPosition() != nextPosition)
+					gaps++;
+				nextPosition = segment.getPosition() + segment.getLength();
+				records++;
+				writtenBytes += RECORD_HEADER_SIZE + dataSize;
+			}
+		} catch (IOException e) {
+			Log.e(LOGTAG, "run: Error while writing " + file.getAbsolutePath() + ": " + e.getMessage());
+		} finally {
+			try {
+				channel.close();
+				outputStream.close();
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while closing " + file.getAbsolutePath() + ": " + e.getMessage());
+			}
+		}
+		Log.i(LOGTAG, "run: Wrote " + writtenBytes + " Bytes in " + records + " records (" + gaps + " gaps, gate open "
+				+ String.format("%.1f", gate.getOpenRatio() * 100) + "% of the time).");
+		this.stopRequested = true;
+	}
+}
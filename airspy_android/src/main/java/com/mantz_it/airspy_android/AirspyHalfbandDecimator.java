@@ -0,0 +1,193 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyHalfbandDecimator.java
+ * Description: Fixed-point (Q15) half-band filter that decimates complex int16 samples (interleaved
+ *              I/Q) by 2. Only the non-zero taps are evaluated and the symmetric taps are folded,
+ *              so one output costs numTaps/2 + 1 multiplications per component. It streams from
+ *              buffer to buffer (odd buffer lengths are fine) and allocates no memory after construction.
+ *              Arithmetic: the taps are Q15, the center tap is 0.5 (16384). The products are summed
+ *              in a 32 bit accumulator; the constructor checks that it can't overflow for any input
+ *              (32768 * sum of the absolute taps < 2^31). The result is rounded to nearest (ties towards
+ *              +inf: (acc + 2^14) >> 15) and saturated to the range of a short. The DC gain is 1, so
+ *              there is no headroom above full scale: only the overshoot of the filter (e.g. a full
+ *              scale step) can saturate.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyHalfbandDecimator {
+
+	private static final String LOGTAG = "AirspyHalfbandDecimator";
+	private static final int CENTER_TAP = 16384;		// 0.5 in Q15
+	private short[] taps;			// non-zero taps without the center tap (see AirspyFilterDesign.halfband())
+	private int numTaps;
+	private int delay;				// distance of the center tap from the newest sample (in complex samples)
+	private int maxInputLength;
+	private short[] work;			// history and input (interleaved I/Q)
+	private int workLength;			// number of complex samples in work
+	private int next;				// index of the newest complex sample of the next output
+
+	/**
+	 * Constructor for the decimator. The filter is designed for the given transition width
+	 * (see AirspyFilterDesign.halfbandNumTaps()).
+	 *
+	 * @param transitionWidth	width of the transition band relative to the input rate (0 - 0.5)
+	 * @param attenuationDb		stopband attenuation in dB (max. ~90 dB due to the Q15 taps)
+	 * @param maxInputLength	max. number of values (2 per complex sample) per call of decimate()
+	 * @throws Exception if the configuration is invalid
+	 */
+	public AirspyHalfbandDecimator(double transitionWidth, double attenuationDb, int maxInputLength) throws Exception {
+		this(AirspyFilterDesign.toQ15(AirspyFilterDesign.halfband(
+				AirspyFilterDesign.halfbandNumTaps(attenuationDb, transitionWidth), AirspyFilterDesign.kaiserBeta(attenuationDb))),
+				maxInputLength);
+	}
+
+	/**
+	 * Constructor for the decimator with custom taps
+	 *
+	 * @param taps				half-band taps in Q15 without the center tap and without the zero taps
+	 *                          (e.g. AirspyFilterDesign.toQ15(AirspyFilterDesign.halfband(...))); symmetric
+	 * @param maxInputLength	max. number of values (2 per complex sample) per call of decimate()
+	 * @throws Exception if the taps are invalid or the accumulator could overflow
+	 */
+	public AirspyHalfbandDecimator(short[] taps, int maxInputLength) throws Exception {
+		if (taps.length < 2 || taps.length % 2 != 0 || maxInputLength <= 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: taps=" + taps.length + " maxInputLength=" + maxInputLength);
+			throw new Exception("Invalid configuration: taps=" + taps.length + " maxInputLength=" + maxInputLength);
+		}
+		long sum = CENTER_TAP;
+		for (int i = 0; i < taps.length; i++) {
+			if (taps[i] != taps[taps.length - 1 - i]) {
+				Log.e(LOGTAG, "constructor: Taps are not symmetric!");
+				throw new Exception("Taps are not symmetric!");
+			}
+			sum += Math.abs(taps[i]);
+		}
+		if (32768 * sum + 16384 > Integer.MAX_VALUE) {
+			Log.e(LOGTAG, "constructor: Accumulator could overflow (sum of taps: " + sum / 32768.0 + ")");
+			throw new Exception("Accumulator could overflow (sum of taps: " + sum / 32768.0 + ")");
+		}
+		this.taps = taps;
+		this.numTaps = taps.length;
+		this.delay = taps.length - 1;
+		this.maxInputLength = maxInputLength;
+		this.work = new short[2 * (2 * delay + 1) + maxInputLength];
+		reset();
+	}
+
+	/**
+	 * @return number of non-zero taps (without the center tap)
+	 */
+	public int getNumTaps() {
+		return numTaps;
+	}
+
+	/**
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @return max. number of values (2 per complex sample) that decimate() writes
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		return 2 * ((inputLength / 2 + 1) / 2);
+	}
+
+	/**
+	 * Clears the history (e.g. before a new stream is decimated).
+	 */
+	public void reset() {
+		Arrays.fill(work, (short) 0);
+		workLength = 2 * delay;
+		next = 2 * delay;
+	}
+
+	/**
+	 * Filters and decimates the next buffer of the stream. Output and input may be the same array.
+	 *
+	 * @param input			interleaved I/Q samples (signed-16bit-integer)
+	 * @param inputLength	number of input values (2 per complex sample; max. maxInputLength)
+	 * @param output		buffer for the output (min. getMaxOutputLength(inputLength) values)
+	 * @return number of values written to the output (2 per complex sample)
+	 */
+	public int decimate(short[] input, int inputLength, short[] output) {
+		if (inputLength > maxInputLength) {
+			Log.e(LOGTAG, "decimate: Input length " + inputLength + " exceeds max. input length " + maxInputLength);
+			return 0;
+		}
+		short[] work = this.work;
+		short[] taps = this.taps;
+		int half = numTaps / 2;
+		int centerOffset = 2 * delay;
+		int pairOffset = 4 * delay;
+		int out = 0;
+		System.arraycopy(input, 0, work, 2 * workLength, inputLength & ~1);
+		workLength += inputLength / 2;
+
+		int end = 2 * workLength;
+		int a0 = 2 * next;
+		for (; a0 < end; a0 += 4) {
+			// newest sample at a, center tap at a - 2 * delay, tap pairs at a - 4i and a - 4 * delay + 4i:
+			int re = CENTER_TAP * work[a0 - centerOffset];
+			int im = CENTER_TAP * work[a0 - centerOffset + 1];
+			int a = a0;
+			int b = a0 - pairOffset;
+			for (int i = 0; i < half; i++) {
+				int c = taps[i];
+				re += c * (work[a] + work[b]);
+				im += c * (work[a + 1] + work[b + 1]);
+				a -= 4;
+				b += 4;
+			}
+			re = (re + 16384) >> 15;
+			im = (im + 16384) >> 15;
+			output[out++] = (short) (re > 32767 ? 32767 : (re < -32768 ? -32768 : re));
+			output[out++] = (short) (im > 32767 ? 32767 : (im < -32768 ? -32768 : im));
+		}
+		next = a0 / 2;
+
+		// keep the samples that the next outputs need:
+		int start = next - 2 * delay;
+		System.arraycopy(work, 2 * start, work, 0, 2 * (workLength - start));
+		workLength -= start;
+		next -= start;
+		return out;
+	}
+
+	/**
+	 * @return a stage that decimates int16 IQ samples with this filter (in-place)
+	 */
+	public AirspyDspStage<short[]> getInt16Stage() {
+		return new AirspyDspStage<short[]>() {
+			@Override
+			public int process(short[] samples, int length) {
+				return decimate(samples, length, samples);
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return getMaxOutputLength(inputLength);
+			}
+		};
+	}
+}
@@ -0,0 +1,208 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyInt16ChannelFrontEnd.java
+ * Description: Fixed-point version of the AirspyChannelFrontEnd for the int16 IQ stream: it moves
+ *              a channel to baseband (AirspyNco), decimates it by 2 in a cascade of Q15 half-band
+ *              filters (AirspyHalfbandDecimator) as long as the rate stays at or above the channel rate
+ *              and filters and resamples it to the channel rate in an int16 AirspyResampler (channel
+ *              filter). So the whole way from the 12 bit ADC to the narrowband IQ samples stays in
+ *              integer arithmetic. Each half-band stage only has to keep the aliases out of the
+ *              channel (passband: bandwidth, stopband: rate/2 - bandwidth), so the first stages are short.
+ *              Scaling: the int16 converter delivers the 12 bit samples in the upper 12 bits, so full
+ *              scale is the same in every stage and there is no headroom above it. All stages round to
+ *              nearest and saturate (a complex sample with I and Q both near full scale can saturate
+ *              in the NCO; the filters only at their overshoot). The 4 unused lower bits take up the
+ *              resolution that the decimation gains (0.5 bit per halving), so down to about 1/256 of the
+ *              input rate the quantization of the stages stays below the noise of the ADC.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyInt16ChannelFrontEnd {
+
+	private static final String LOGTAG = "AirspyInt16ChannelFrontEnd";
+	private static final double ATTENUATION_DB = 60;	// stopband attenuation of all stages
+	private int inputRate;
+	private int channelRate;
+	private int maxInputLength;
+	private AirspyNco nco;
+	private AirspyHalfbandDecimator[] halfbands;	// input rate -> input rate / 2^n (n = halfbands.length)
+	private AirspyResampler channelFilter;			// input rate / 2^n -> channel rate
+	private short[] shiftBuffer;					// shifted (and decimated) copy of the input
+	private volatile float powerDb = Float.NEGATIVE_INFINITY;	// power of the last channel buffer (dBFS)
+
+	/**
+	 * Constructor for the front-end
+	 *
+	 * @param inputRate			complex sample rate of the IQ input in Sps
+	 * @param channelRate		complex sample rate of the channel output in Sps (max. inputRate)
+	 * @param bandwidth			one sided bandwidth of the channel filter in Hz (passband edge)
+	 * @param maxInputLength	max. number of values (2 per complex sample) per call of process()
+	 * @throws Exception if the configuration is invalid
+	 */
+	public AirspyInt16ChannelFrontEnd(int inputRate, int channelRate, double bandwidth, int maxInputLength) throws Exception {
+		if (channelRate <= 0 || channelRate > inputRate || bandwidth <= 0 || bandwidth >= channelRate / 2
+				|| maxInputLength <= 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: inputRate=" + inputRate + " channelRate=" + channelRate
+					+ " bandwidth=" + bandwidth);
+			throw new Exception("Invalid configuration: inputRate=" + inputRate + " channelRate=" + channelRate
+					+ " bandwidth=" + bandwidth);
+		}
+		this.inputRate = inputRate;
+		this.channelRate = channelRate;
+		this.maxInputLength = maxInputLength;
+		this.nco = new AirspyNco(inputRate);
+		this.shiftBuffer = new short[maxInputLength];
+
+		// Half-band cascade:
+		ArrayList<AirspyHalfbandDecimator> stages = new ArrayList<AirspyHalfbandDecimator>();
+		int rate = inputRate;
+		int length = maxInputLength;
+		while (rate % 2 == 0 && rate / 2 >= channelRate) {
+			double transitionWidth = (rate / 2 - 2 * bandwidth) / rate;
+			stages.add(new AirspyHalfbandDecimator(transitionWidth, ATTENUATION_DB, length));
+			length = stages.get(stages.size() - 1).getMaxOutputLength(length);
+			rate /= 2;
+		}
+		this.halfbands = stages.toArray(new AirspyHalfbandDecimator[stages.size()]);
+
+		// Channel filter:
+		double stopband = Math.min(bandwidth * 1.5, channelRate - bandwidth);
+		this.channelFilter = new AirspyResampler(rate, channelRate, bandwidth, stopband, ATTENUATION_DB);
+	}
+
+	/**
+	 * Tunes the front-end to a channel. Can be called at any time (phase continuous).
+	 *
+	 * @param offset	frequency of the channel relative to the center of the input in Hz
+	 * @return true on success; false if the offset is out of range
+	 */
+	public boolean setChannelOffset(double offset) {
+		return nco.setFrequency(-offset);
+	}
+
+	/**
+	 * @return frequency of the channel relative to the center of the input in Hz
+	 */
+	public double getChannelOffset() {
+		return -nco.getFrequency();
+	}
+
+	/**
+	 * @return complex sample rate of the input in Sps
+	 */
+	public int getInputRate() {
+		return inputRate;
+	}
+
+	/**
+	 * @return complex sample rate of the channel output in Sps
+	 */
+	public int getChannelRate() {
+		return channelRate;
+	}
+
+	/**
+	 * @return number of half-band stages (each decimates by 2)
+	 */
+	public int getNumHalfbandStages() {
+		return halfbands.length;
+	}
+
+	/**
+	 * @return number of non-zero taps of each half-band stage (first stage first)
+	 */
+	public int[] getHalfbandTaps() {
+		int[] taps = new int[halfbands.length];
+		for (int i = 0; i < halfbands.length; i++)
+			taps[i] = halfbands[i].getNumTaps();
+		return taps;
+	}
+
+	/**
+	 * @return average power of the last channel buffer in dB relative to full scale
+	 */
+	public float getPowerDb() {
+		return powerDb;
+	}
+
+	/**
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @return max. number of values (2 per complex sample) that process() writes
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		int length = inputLength;
+		for (AirspyHalfbandDecimator halfband : halfbands)
+			length = halfband.getMaxOutputLength(length);
+		return channelFilter.getMaxOutputLength(length);
+	}
+
+	/**
+	 * Shifts, filters and decimates the next buffer of the stream. The input is not modified
+	 * (unless it is also used as output, which is allowed).
+	 *
+	 * @param input			interleaved I/Q samples (signed-16bit-integer) at the input rate
+	 * @param inputLength	number of input values (max. maxInputLength)
+	 * @param output		buffer for the channel (min. getMaxOutputLength(inputLength) values)
+	 * @return number of values (2 per complex sample) written to the output
+	 */
+	public int process(short[] input, int inputLength, short[] output) {
+		if (inputLength > maxInputLength) {
+			Log.e(LOGTAG, "process: Input length " + inputLength + " exceeds max. input length " + maxInputLength);
+			return 0;
+		}
+		System.arraycopy(input, 0, shiftBuffer, 0, inputLength);
+		nco.mix(shiftBuffer, inputLength);
+		int length = inputLength;
+		for (AirspyHalfbandDecimator halfband : halfbands)
+			length = halfband.decimate(shiftBuffer, length, shiftBuffer);
+		length = channelFilter.resample(shiftBuffer, length, output);
+
+		long sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += output[i] * output[i];
+		if (length > 0)
+			powerDb = (float) (10 * Math.log10((double) sum / (length / 2) / (32768.0 * 32768.0) + 1e-20));
+		return length;
+	}
+
+	/**
+	 * @return a stage that replaces the int16 IQ samples with the channel (in-place)
+	 */
+	public AirspyDspStage<short[]> getInt16Stage() {
+		return new AirspyDspStage<short[]>() {
+			@Override
+			public int process(short[] samples, int length) {
+				return AirspyInt16ChannelFrontEnd.this.process(samples, length, samples);
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return getMaxOutputLength(inputLength);
+			}
+		};
+	}
+}
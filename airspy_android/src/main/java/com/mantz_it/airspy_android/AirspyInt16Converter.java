@@ -57,6 +57,16 @@ public class AirspyInt16Converter extends Thread{
 	private ArrayBlockingQueue<byte[]> inputReturnQueue;   // Queue to return the used input buffers to the pool
 	private ArrayBlockingQueue<short[]> outputQueue;       // Queue to deliver the converted samples
 	private ArrayBlockingQueue<short[]> outputPoolQueue;   // Queue from which the output buffers are taken
+	private byte[] packingBuffer = null;                   // Buffer for the unpacked samples (if packing is enabled)
+	private AirspyConverterSequencer sequencer = null;     // Keeps the output in order if there are multiple workers
+	private long sequenceNumber = 0;                       // Sequence number of the next buffer of this worker
+	private AirspySampleStatistics statistics = null;      // Collects peak, RMS and clipping of the samples (optional)
+	private AirspyDspPipeline<short[]> pipeline = null;    // Additional processing stages (optional)
+	private AirspyConversionTable conversionTable = null;  // Lookup table for the conversion (optional)
+	private boolean splitLayout = false;                   // IQ: I in the first and Q in the second half of the buffer
+	private short[] splitScratch = null;                   // Q values until they are copied to the second half
+	private short[] kernel;                                // Hilbert kernel (see HB_KERNEL_INT16)
+	private boolean symmetricKernel;                       // true if the kernel can be folded (like all built-in kernels)
 	private int len = 0;
 	private int firIndex = 0;
 	private int delayIndex = 0;
@@ -108,17 +118,44 @@ public class AirspyInt16Converter extends Thread{
 	public AirspyInt16Converter(int sampleType, boolean packingEnabled, ArrayBlockingQueue<byte[]> inputQueue,
 								ArrayBlockingQueue<byte[]> inputReturnQueue, ArrayBlockingQueue<short[]> outputQueue,
 								ArrayBlockingQueue<short[]> outputPoolQueue) throws Exception {
+		this(sampleType, packingEnabled, inputQueue, inputReturnQueue, outputQueue, outputPoolQueue, HB_KERNEL_INT16);
+	}
+
+	/**
+	 * Constructor for the int16 Converter with a custom Hilbert kernel
+	 * @param sampleType		Desired sample type of the output samples (Airspy.AIRSPY_SAMPLE_INT16_IQ, *_INT16_REAL or *_UINT16_REAL
+	 * @param packingEnabled	Indicates if the input samples are packed
+	 * @param inputQueue		Queue from which the input samples are taken
+	 * @param inputReturnQueue	Queue to return the used input buffers to the pool
+	 * @param outputQueue		Queue to deliver the converted samples
+	 * @param outputPoolQueue	Queue from which the output buffers are taken
+	 * @param hilbertKernel		Hilbert kernel with zeros removed in Q15 (see AirspyFilterDesign.getHilbertKernelInt16())
+	 * @throws Exception if the sample type does not match a int16 based type or the kernel length is not even
+	 */
+	public AirspyInt16Converter(int sampleType, boolean packingEnabled, ArrayBlockingQueue<byte[]> inputQueue,
+								ArrayBlockingQueue<byte[]> inputReturnQueue, ArrayBlockingQueue<short[]> outputQueue,
+								ArrayBlockingQueue<short[]> outputPoolQueue, short[] hilbertKernel) throws Exception {
 		if(sampleType != Airspy.AIRSPY_SAMPLE_INT16_IQ && sampleType != Airspy.AIRSPY_SAMPLE_INT16_REAL && sampleType != Airspy.AIRSPY_SAMPLE_UINT16_REAL) {
 			Log.e(LOGTAG, "constructor: Invalid sample type: " + sampleType);
 			throw new Exception("Invalid sample type: " + sampleType);
 		}
+		if(hilbertKernel.length < 2 || hilbertKernel.length % 2 != 0) {
+			Log.e(LOGTAG, "constructor: Invalid Hilbert kernel length: " + hilbertKernel.length);
+			throw new Exception("Invalid Hilbert kernel length: " + hilbertKernel.length);
+		}
 		this.sampleType = sampleType;
 		this.packingEnabled = packingEnabled;
 		this.inputQueue = inputQueue;
 		this.inputReturnQueue = inputReturnQueue;
 		this.outputQueue = outputQueue;
 		this.outputPoolQueue = outputPoolQueue;
-		this.len = HB_KERNEL_INT16.length;
+		this.kernel = hilbertKernel;
+		this.len = hilbertKernel.length;
+		this.symmetricKernel = true;
+		for (int i = 0; i < len / 2; i++) {
+			if (hilbertKernel[i] != hilbertKernel[len - 1 - i])
+				this.symmetricKernel = false;
+		}
 		this.delayLine = new short[this.len / 2];
 		this.firQueue = new int[this.len * SIZE_FACTOR];
 	}
@@ -146,6 +183,51 @@ public class AirspyInt16Converter extends Thread{
 		}
 	}
 
+	/**
+	 * Same as convertSamplesInt16(src, dest, count) but also collects peak, RMS, DC offset,
+	 * clipping and histogram of the samples in the same loop and adds them to the given statistics.
+	 *
+	 * @param src   		input samples (little endian, unsigned-12bit-integer); min. twice the size of output
+	 * @param dest  		output samples (signed-16bit-integer); min. of size 'count'
+	 * @param count 		number of samples to process
+	 * @param statistics	statistics to update (may be null)
+	 */
+	public static void convertSamplesInt16(byte[] src, short[] dest, int count, AirspySampleStatistics statistics) {
+		if (statistics == null) {
+			convertSamplesInt16(src, dest, count);
+			return;
+		}
+		if (src.length < 2 * count || dest.length < count) {
+			Log.e(LOGTAG, "convertSamplesInt16: input buffers have invalid length: src=" + src.length + " dest=" + dest.length);
+			return;
+		}
+		int raw, value;
+		int peak = 0;
+		int clippedLow = 0;
+		int clippedHigh = 0;
+		long sum = 0;
+		long sumSquares = 0;
+		int[] histogram = statistics.getHistogramScratch();
+		for (int i = 0; i < count; i++) {
+			raw = ((src[2 * i + 1] & 0x0F) << 8) + (src[2 * i] & 0xFF);
+			value = raw - 2048;
+			dest[i] = (short) (value << 4);
+			sum += value;
+			sumSquares += value * value;
+			if (value < 0)
+				value = -value;
+			if (value > peak)
+				peak = value;
+			if (raw == AirspySampleStatistics.RAW_MIN)
+				clippedLow++;
+			else if (raw == AirspySampleStatistics.RAW_MAX)
+				clippedHigh++;
+			if (histogram != null)
+				histogram[raw]++;
+		}
+		statistics.add(count, peak, sum, sumSquares, clippedLow, clippedHigh, histogram);
+	}
+
 	/**
 	 * Converts a byte array (little endian, unsigned-12bit-integer) to a short array (unsigned-16bit-integer)
 	 *
@@ -169,20 +251,165 @@ public class AirspyInt16Converter extends Thread{
 		}
 	}
 
+	/**
+	 * Same as convertSamplesUint16(src, dest, count) but also collects peak, RMS, DC offset,
+	 * clipping and histogram of the samples in the same loop and adds them to the given statistics.
+	 *
+	 * @param src   		input samples (little endian, unsigned-12bit-integer); min. twice the size of output
+	 * @param dest  		output samples (unsigned-16bit-integer); min. of size 'count'
+	 * @param count 		number of samples to process
+	 * @param statistics	statistics to update (may be null)
+	 */
+	public static void convertSamplesUint16(byte[] src, short[] dest, int count, AirspySampleStatistics statistics) {
+		if (statistics == null) {
+			convertSamplesUint16(src, dest, count);
+			return;
+		}
+		if (src.length < 2 * count || dest.length < count) {
+			Log.e(LOGTAG, "convertSamplesUint16: input buffers have invalid length: src=" + src.length + " dest=" + dest.length);
+			return;
+		}
+		int raw, value;
+		int peak = 0;
+		int clippedLow = 0;
+		int clippedHigh = 0;
+		long sum = 0;
+		long sumSquares = 0;
+		int[] histogram = statistics.getHistogramScratch();
+		for (int i = 0; i < count; i++) {
+			raw = ((src[2 * i + 1] & 0x0F) << 8) + (src[2 * i] & 0xFF);
+			dest[i] = (short) (raw << 4);
+			value = raw - 2048;
+			sum += value;
+			sumSquares += value * value;
+			if (value < 0)
+				value = -value;
+			if (value > peak)
+				peak = value;
+			if (raw == AirspySampleStatistics.RAW_MIN)
+				clippedLow++;
+			else if (raw == AirspySampleStatistics.RAW_MAX)
+				clippedHigh++;
+			if (histogram != null)
+				histogram[raw]++;
+		}
+		statistics.add(count, peak, sum, sumSquares, clippedLow, clippedHigh, histogram);
+	}
+
+	/**
+	 * Makes this converter one of several workers that share the conversion. The workers get
+	 * the input buffers round robin (worker i gets buffer i, i+n, i+2n, ... from its own input
+	 * queue) and use the sequencer to deliver the output buffers in the original order.
+	 * Only stateless sample types (real samples) must be converted by multiple workers!
+	 * Has to be called before the thread is started.
+	 *
+	 * @param sequencer		sequencer shared by all workers
+	 * @param workerIndex	index of this worker (0 - sequencer.getNumWorkers()-1)
+	 */
+	public void setSequencer(AirspyConverterSequencer sequencer, int workerIndex) {
+		this.sequencer = sequencer;
+		this.sequenceNumber = workerIndex;
+	}
+
+	/**
+	 * Lets the converter collect peak, RMS and clipping of the samples while converting them.
+	 * Has to be called before the thread is started.
+	 *
+	 * @param statistics	statistics to update (null to disable)
+	 */
+	public void setStatistics(AirspySampleStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Lets the converter use a lookup table instead of the arithmetic conversion. The table is
+	 * not used while statistics are collected. Has to be called before the thread is started.
+	 *
+	 * @param conversionTable	table for the sample type of this converter (null to disable)
+	 */
+	public void setConversionTable(AirspyConversionTable conversionTable) {
+		this.conversionTable = conversionTable;
+	}
+
+	/**
+	 * Selects the layout of the IQ samples in the output buffers: interleaved (I,Q,I,Q,...) or
+	 * split (all I values in the first half of the buffer, all Q values in the second half).
+	 * Has to be called before the thread is started.
+	 *
+	 * @param splitLayout	true for the split layout; false for the interleaved layout (default)
+	 */
+	public void setSplitLayout(boolean splitLayout) {
+		this.splitLayout = splitLayout;
+	}
+
+	/**
+	 * Appends the stages of the given pipeline to the conversion. They run on the converter
+	 * thread after the conversion of each buffer. Has to be called before the thread is started.
+	 *
+	 * @param pipeline	additional processing stages (null to disable)
+	 */
+	public void setPipeline(AirspyDspPipeline<short[]> pipeline) {
+		this.pipeline = pipeline;
+	}
+
 	public void requestStop() {
 		this.stopRequested = true;
 	}
 
-	private void firInterleaved(short[] samples) {
+	/**
+	 * Filters the even samples with the Hilbert kernel (folded if the kernel is symmetric).
+	 * Package-private so that the unit test can compare it to firInterleavedGeneric().
+	 */
+	void firInterleaved(short[] samples) {
+		if (!symmetricKernel) {
+			firInterleavedGeneric(samples);
+			return;
+		}
+		int acc;
+		int idxKernel, idx1, idx2;
+		int halfLen = len / 2;
+
+		for (int i = 0; i < samples.length; i += 2) {
+			firQueue[firIndex] = samples[i];
+			acc = 0;
+
+			// Convolution (the kernel is symmetric: fold both halves, unrolled by 4):
+			idxKernel = 0;
+			idx1 = firIndex;
+			idx2 = firIndex + len - 1;
+			for (; idxKernel <= halfLen - 4; idxKernel += 4, idx1 += 4, idx2 -= 4) {
+				acc +=    kernel[idxKernel] * (firQueue[idx1] + firQueue[idx2])
+						+ kernel[idxKernel + 1] * (firQueue[idx1 + 1] + firQueue[idx2 - 1])
+						+ kernel[idxKernel + 2] * (firQueue[idx1 + 2] + firQueue[idx2 - 2])
+						+ kernel[idxKernel + 3] * (firQueue[idx1 + 3] + firQueue[idx2 - 3]);
+			}
+			// Rest of the convolution: ( if kernel length is not dividable by 2*4 )
+			for (; idxKernel < halfLen; idxKernel++, idx1++, idx2--) {
+				acc += kernel[idxKernel] * (firQueue[idx1] + firQueue[idx2]);
+			}
+
+			if (--firIndex < 0) {
+				firIndex = len * (SIZE_FACTOR - 1);
+				System.arraycopy(firQueue, 0, firQueue, firIndex + 1, len - 1);
+			}
+
+			samples[i] = (short) (acc >> 15);
+		}
+	}
+
+	/**
+	 * Same as firInterleaved() for kernels that are not symmetric (all taps are multiplied).
+	 * This is also the reference for the folded loop (the int arithmetic wraps, so both are bit-exact).
+	 */
+	void firInterleavedGeneric(short[] samples) {
 		int acc;
 
 		for (int i = 0; i < samples.length; i += 2) {
 			firQueue[firIndex] = samples[i];
 			acc = 0;
 
-			// Auto vectorization works on VS2012, VS2013 and GCC
 			for (int j = 0; j < len; j++) {
-				acc += HB_KERNEL_INT16[j] * firQueue[firIndex + j];
+				acc += kernel[j] * firQueue[firIndex + j];
 			}
 
 			if (--firIndex < 0) {
@@ -194,6 +421,29 @@ public class AirspyInt16Converter extends Thread{
 		}
 	}
 
+	/**
+	 * Same as delayInterleaved(samples, 1) but also moves the I values (even indices) to the
+	 * first half and the delayed Q values to the second half of the buffer in the same loop.
+	 */
+	private void delaySplit(short[] samples) {
+		int halfLen = len >> 1;
+		int half = samples.length / 2;
+		if (splitScratch == null || splitScratch.length != half)
+			splitScratch = new short[half];
+
+		for (int k = 0; k < half; k++) {
+			short q = samples[2 * k + 1];
+			samples[k] = samples[2 * k];		// k <= 2k: the value was already read
+			splitScratch[k] = delayLine[delayIndex];
+			delayLine[delayIndex] = q;
+
+			if (++delayIndex >= halfLen) {
+				delayIndex = 0;
+			}
+		}
+		System.arraycopy(splitScratch, 0, samples, half, half);
+	}
+
 	private void delayInterleaved(short[] samples, int offset) {
 		int halfLen = len >> 1;
 		short res;
@@ -209,6 +459,45 @@ public class AirspyInt16Converter extends Thread{
 		}
 	}
 
+	/**
+	 * Same as delayInterleaved(samples, 1) but also quantizes I and the delayed Q values to 8 bit
+	 * in the same loop (rounded, clipped to [-128;127] and XORed with 'bias'). The int16 samples
+	 * are left unfinished (the Q values are not delayed).
+	 */
+	private int delayQuantizeInt8(short[] samples, byte[] dest, int offset, int bias) {
+		int halfLen = len >> 1;
+		int clipped = 0;
+		int re, im;
+
+		for (int i = 0; i < samples.length; i += 2) {
+			re = (samples[i] + 128) >> 8;
+			im = (delayLine[delayIndex] + 128) >> 8;
+			delayLine[delayIndex] = samples[i + 1];
+
+			if (++delayIndex >= halfLen) {
+				delayIndex = 0;
+			}
+
+			if (re > 127) {
+				re = 127;
+				clipped++;
+			} else if (re < -128) {
+				re = -128;
+				clipped++;
+			}
+			if (im > 127) {
+				im = 127;
+				clipped++;
+			} else if (im < -128) {
+				im = -128;
+				clipped++;
+			}
+			dest[offset + i] = (byte) (re ^ bias);
+			dest[offset + i + 1] = (byte) (im ^ bias);
+		}
+		return clipped;
+	}
+
 	private void removeDC(short[] samples) {
 		int u;
 		short x, y, w, s;
@@ -226,16 +515,22 @@ public class AirspyInt16Converter extends Thread{
 		}
 	}
 
-	private void translateFs4(short[] samples) {
+	private void rotateFs4(short[] samples) {
 		for (int i = 0; i < samples.length; i += 4) {
 			samples[i] = (short) -samples[i];
 			samples[i + 1] = (short) (-samples[i + 1] >> 1);
 			//samples[i + 2] = samples[i + 2];
 			samples[i + 3] = (short) (samples[i + 3] >> 1);
 		}
+	}
 
+	private void translateFs4(short[] samples) {
+		rotateFs4(samples);
 		firInterleaved(samples);
-		delayInterleaved(samples, 1);
+		if (splitLayout)
+			delaySplit(samples);
+		else
+			delayInterleaved(samples, 1);
 	}
 
 	public void processSamplesInt16(short[] samples) {
@@ -243,10 +538,82 @@ public class AirspyInt16Converter extends Thread{
 		translateFs4(samples);
 	}
 
-	public void run() {
+	/**
+	 * Same as processSamplesInt16() followed by a quantization to 8 bit (shift by 8, rounded and
+	 * clipped), but the quantization is done in the last loop of the IQ processing instead of an
+	 * extra pass over the int16 samples. Only for the interleaved layout (used by the AirspyInt8Converter).
+	 *
+	 * @param samples	real int16 samples (the buffer is used as scratch space)
+	 * @param dest		output samples (8 bit IQ); min. of size 'offset + samples.length'
+	 * @param offset	position of the first output sample in dest
+	 * @param bias		0 for signed output, 0x80 for unsigned output (offset 128)
+	 * @return number of clipped samples
+	 */
+	int processSamplesInt8(short[] samples, byte[] dest, int offset, int bias) {
+		removeDC(samples);
+		rotateFs4(samples);
+		firInterleaved(samples);
+		return delayQuantizeInt8(samples, dest, offset, bias);
+	}
+
+	/**
+	 * Converts a single buffer of raw samples (as received from the Airspy) into the given output
+	 * buffer. This is what the converter thread does for every buffer in the input queue. It can
+	 * also be called directly without starting the thread (e.g. by the USB thread of the Airspy
+	 * if the inline execution model is used). Don't mix both ways of calling!
+	 *
+	 * @param origInputBuffer	raw samples (packed if packing is enabled)
+	 * @param outputBuffer		buffer for the converted samples
+	 * @return number of valid samples in the output buffer (0 if the pipeline dropped the buffer)
+	 */
+	public int convert(byte[] origInputBuffer, short[] outputBuffer) {
 		byte[] inputBuffer;
+
+		// Maybe unpack the samples first:
+		if (packingEnabled) {
+			int unpackedLength = origInputBuffer.length * 4 / 3;
+			if (packingBuffer == null || packingBuffer.length != unpackedLength)
+				packingBuffer = new byte[unpackedLength];
+			Airspy.unpackSamples(origInputBuffer, packingBuffer, unpackedLength);
+			inputBuffer = packingBuffer;
+		} else {
+			inputBuffer = origInputBuffer;
+		}
+
+		// Next we do the processing for the conversion (statistics need the arithmetic conversion):
+		boolean useTable = conversionTable != null && statistics == null;
+		switch (sampleType) {
+			case Airspy.AIRSPY_SAMPLE_INT16_IQ:
+				if (useTable)
+					conversionTable.convert(inputBuffer, outputBuffer, outputBuffer.length);
+				else
+					convertSamplesInt16(inputBuffer, outputBuffer, outputBuffer.length, statistics);
+				processSamplesInt16(outputBuffer);
+				break;
+
+			case Airspy.AIRSPY_SAMPLE_INT16_REAL:
+				if (useTable)
+					conversionTable.convert(inputBuffer, outputBuffer, outputBuffer.length);
+				else
+					convertSamplesInt16(inputBuffer, outputBuffer, outputBuffer.length, statistics);
+				break;
+
+			case Airspy.AIRSPY_SAMPLE_UINT16_REAL:
+				if (useTable)
+					conversionTable.convert(inputBuffer, outputBuffer, outputBuffer.length);
+				else
+					convertSamplesUint16(inputBuffer, outputBuffer, outputBuffer.length, statistics);
+				break;
+		}
+
+		// Finally run the additional processing stages:
+		if (pipeline != null)
+			return pipeline.process(outputBuffer, outputBuffer.length);
+		return outputBuffer.length;
+	}
+
+	public void run() {
 		byte[] origInputBuffer;
-		byte[] packingBuffer = null;
 		short[] outputBuffer = null;
 
 		while (!stopRequested) {
@@ -278,36 +645,25 @@ public class AirspyInt16Converter extends Thread{
 				continue;
 			}
 
-			// Maybe unpack the samples first:
-			if (packingEnabled) {
-				int unpackedLength = origInputBuffer.length * 4 / 3;
-				if (packingBuffer == null || packingBuffer.length != unpackedLength)
-					packingBuffer = new byte[unpackedLength];
-				Airspy.unpackSamples(origInputBuffer, packingBuffer, unpackedLength);
-				inputBuffer = packingBuffer;
-			} else {
-				inputBuffer = origInputBuffer;
-			}
-
-			// Next we do the processing for the conversion:
-			switch (sampleType) {
-				case Airspy.AIRSPY_SAMPLE_INT16_IQ:
-					convertSamplesInt16(inputBuffer, outputBuffer, outputBuffer.length);
-					processSamplesInt16(outputBuffer);
-					break;
-
-				case Airspy.AIRSPY_SAMPLE_INT16_REAL:
-					convertSamplesInt16(inputBuffer, outputBuffer, outputBuffer.length);
-					break;
-
-				case Airspy.AIRSPY_SAMPLE_UINT16_REAL:
-					convertSamplesUint16(inputBuffer, outputBuffer, outputBuffer.length);
-					break;
-			}
+			// Do the conversion:
+			int length = convert(origInputBuffer, outputBuffer);
 
 			// Finally we return the buffers to the corresponding queues:
 			inputReturnQueue.offer(origInputBuffer);
-			outputQueue.offer(outputBuffer);
+			if(sequencer != null && !sequencer.awaitTurn(sequenceNumber)) {
+				Log.e(LOGTAG, "run: Other workers did not deliver their buffers in time. Stop!");
+				outputPoolQueue.offer(outputBuffer);
+				stopRequested = true;
+				continue;
+			}
+			if(length > 0)
+				outputQueue.offer(outputBuffer);
+			else
+				outputPoolQueue.offer(outputBuffer);	// dropped by the pipeline
+			if(sequencer != null) {
+				sequencer.done(sequenceNumber);
+				sequenceNumber += sequencer.getNumWorkers();
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyInt8Converter.java
+ * Description: This class offers methods to convert the samples from the Airspy device
+ *              to various 8 bit IQ types. The IQ processing is done in int16 (see
+ *              AirspyInt16Converter) and the result is quantized to 8 bit with
+ *              rounding and clipping. For a fixed scale the quantization is done in the
+ *              last loop of the IQ processing; the scaled type needs the peak of the
+ *              whole block first and quantizes in a separate pass.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyInt8Converter extends Thread{
+	private static final String LOGTAG = "AirspyInt8Converter";
+	private boolean stopRequested = false;
+	private int sampleType = -1;
+	private boolean packingEnabled = false;
+	private ArrayBlockingQueue<byte[]> inputQueue;         // Queue from which the input samples are taken
+	private ArrayBlockingQueue<byte[]> inputReturnQueue;   // Queue to return the used input buffers to the pool
+	private ArrayBlockingQueue<byte[]> outputQueue;        // Queue to deliver the converted samples
+	private ArrayBlockingQueue<byte[]> outputPoolQueue;    // Queue from which the output buffers are taken
+	private byte[] packingBuffer = null;                   // Buffer for the unpacked samples (if packing is enabled)
+	private AirspyInt16Converter int16Processor;           // Does the int16 IQ processing (not started as thread)
+	private short[] int16Buffer = null;                    // Intermediate int16 IQ samples
+	private AirspySampleStatistics statistics = null;      // Collects peak, RMS and clipping of the samples (optional)
+	private volatile long clippedSamples = 0;              // Number of samples that were clipped while quantizing
+	private volatile long convertedSamples = 0;            // Number of samples that were quantized
+
+	/**
+	 * Constructor for the int8 Converter
+	 * @param sampleType		Desired sample type of the output samples (Airspy.AIRSPY_SAMPLE_INT8_IQ, *_UINT8_IQ or *_INT8_IQ_SCALED
+	 * @param packingEnabled	Indicates if the input samples are packed
+	 * @param inputQueue		Queue from which the input samples are taken
+	 * @param inputReturnQueue	Queue to return the used input buffers to the pool
+	 * @param outputQueue		Queue to deliver the converted samples
+	 * @param outputPoolQueue	Queue from which the output buffers are taken
+	 * @throws Exception if the sample type does not match a int8 based type
+	 */
+	public AirspyInt8Converter(int sampleType, boolean packingEnabled, ArrayBlockingQueue<byte[]> inputQueue,
+								ArrayBlockingQueue<byte[]> inputReturnQueue, ArrayBlockingQueue<byte[]> outputQueue,
+								ArrayBlockingQueue<byte[]> outputPoolQueue) throws Exception {
+		this(sampleType, packingEnabled, inputQueue, inputReturnQueue, outputQueue, outputPoolQueue, AirspyInt16Converter.HB_KERNEL_INT16);
+	}
+
+	/**
+	 * Constructor for the int8 Converter with a custom Hilbert kernel
+	 * @param sampleType		Desired sample type of the output samples (Airspy.AIRSPY_SAMPLE_INT8_IQ, *_UINT8_IQ or *_INT8_IQ_SCALED
+	 * @param packingEnabled	Indicates if the input samples are packed
+	 * @param inputQueue		Queue from which the input samples are taken
+	 * @param inputReturnQueue	Queue to return the used input buffers to the pool
+	 * @param outputQueue		Queue to deliver the converted samples
+	 * @param outputPoolQueue	Queue from which the output buffers are taken
+	 * @param hilbertKernel		Hilbert kernel with zeros removed in Q15 (see AirspyFilterDesign.getHilbertKernelInt16())
+	 * @throws Exception if the sample type does not match a int8 based type or the kernel length is not even
+	 */
+	public AirspyInt8Converter(int sampleType, boolean packingEnabled, ArrayBlockingQueue<byte[]> inputQueue,
+								ArrayBlockingQueue<byte[]> inputReturnQueue, ArrayBlockingQueue<byte[]> outputQueue,
+								ArrayBlockingQueue<byte[]> outputPoolQueue, short[] hilbertKernel) throws Exception {
+		if(sampleType != Airspy.AIRSPY_SAMPLE_INT8_IQ && sampleType != Airspy.AIRSPY_SAMPLE_UINT8_IQ && sampleType != Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED) {
+			Log.e(LOGTAG, "constructor: Invalid sample type: " + sampleType);
+			throw new Exception("Invalid sample type: " + sampleType);
+		}
+		this.sampleType = sampleType;
+		this.packingEnabled = packingEnabled;
+		this.inputQueue = inputQueue;
+		this.inputReturnQueue = inputReturnQueue;
+		this.outputQueue = outputQueue;
+		this.outputPoolQueue = outputPoolQueue;
+		this.int16Processor = new AirspyInt16Converter(Airspy.AIRSPY_SAMPLE_INT16_IQ, false, null, null, null, null, hilbertKernel);
+	}
+
+	/**
+	 * Quantizes a short array (signed-16bit-integer) to a byte array (signed-8bit-integer).
+	 * The samples are rounded to the nearest value and clipped to [-128;127].
+	 *
+	 * @param src		input samples (signed-16bit-integer); min. of size 'count'
+	 * @param dest		output samples (signed-8bit-integer); min. of size 'offset + count'
+	 * @param offset	position of the first output sample in dest
+	 * @param count		number of samples to process
+	 * @param shift		number of bits the samples are shifted right (8 for a plain int16 -> int8 conversion)
+	 * @return number of clipped samples
+	 */
+	public static int convertSamplesInt8(short[] src, byte[] dest, int offset, int count, int shift) {
+		if (src.length < count || dest.length < offset + count) {
+			Log.e(LOGTAG, "convertSamplesInt8: input buffers have invalid length: src=" + src.length + " dest=" + dest.length);
+			return 0;
+		}
+		int clipped = 0;
+		int round = (shift > 0) ? 1 << (shift - 1) : 0;
+		int v;
+		for (int i = 0; i < count; i++) {
+			v = (src[i] + round) >> shift;
+			if (v > 127) {
+				v = 127;
+				clipped++;
+			} else if (v < -128) {
+				v = -128;
+				clipped++;
+			}
+			dest[offset + i] = (byte) v;
+		}
+		return clipped;
+	}
+
+	/**
+	 * Quantizes a short array (signed-16bit-integer) to a byte array (unsigned-8bit-integer, offset 128;
+	 * rtl-sdr compatible). The samples are rounded to the nearest value and clipped to [0;255].
+	 *
+	 * @param src		input samples (signed-16bit-integer); min. of size 'count'
+	 * @param dest		output samples (unsigned-8bit-integer); min. of size 'count'
+	 * @param count		number of samples to process
+	 * @return number of clipped samples
+	 */
+	public static int convertSamplesUint8(short[] src, byte[] dest, int count) {
+		int clipped = convertSamplesInt8(src, dest, 0, count, 8);
+		for (int i = 0; i < count; i++)
+			dest[i] = (byte) (dest[i] + 128);
+		return clipped;
+	}
+
+	/**
+	 * Calculates the exponent for block scaling: The smallest shift that maps the peak
+	 * of the samples into the int8 range.
+	 *
+	 * @param src		input samples (signed-16bit-integer)
+	 * @param count		number of samples to process
+	 * @return exponent (0-8)
+	 */
+	public static int calcBlockExponent(short[] src, int count) {
+		int peak = 0;
+		for (int i = 0; i < count; i++) {
+			if (src[i] > peak)
+				peak = src[i];
+			else if (-src[i] > peak)
+				peak = -src[i];
+		}
+		int shift = 0;
+		while (shift < 8 && ((peak + ((shift > 0) ? 1 << (shift - 1) : 0)) >> shift) > 127)
+			shift++;
+		return shift;
+	}
+
+	/**
+	 * @return number of samples that were clipped while quantizing to 8 bit
+	 */
+	public long getClippedSamples() {
+		return clippedSamples;
+	}
+
+	/**
+	 * @return number of samples that were quantized to 8 bit
+	 */
+	public long getConvertedSamples() {
+		return convertedSamples;
+	}
+
+	/**
+	 * Lets the converter collect peak, RMS and clipping of the (12 bit) samples while converting them.
+	 * Has to be called before the thread is started.
+	 *
+	 * @param statistics	statistics to update (null to disable)
+	 */
+	public void setStatistics(AirspySampleStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	/**
+	 * Converts a single buffer of raw samples (as received from the Airspy) into the given output
+	 * buffer. This is what the converter thread does for every buffer in the input queue. It can
+	 * also be called directly without starting the thread (e.g. by the USB thread of the Airspy
+	 * if the inline execution model is used). Don't mix both ways of calling!
+	 *
+	 * @param origInputBuffer	raw samples (packed if packing is enabled)
+	 * @param outputBuffer		buffer for the converted samples
+	 */
+	public void convert(byte[] origInputBuffer, byte[] outputBuffer) {
+		byte[] inputBuffer;
+
+		// Maybe unpack the samples first:
+		if (packingEnabled) {
+			int unpackedLength = origInputBuffer.length * 4 / 3;
+			if (packingBuffer == null || packingBuffer.length != unpackedLength)
+				packingBuffer = new byte[unpackedLength];
+			Airspy.unpackSamples(origInputBuffer, packingBuffer, unpackedLength);
+			inputBuffer = packingBuffer;
+		} else {
+			inputBuffer = origInputBuffer;
+		}
+
+		// Next we do the int16 IQ processing ...
+		int count = (sampleType == Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED) ? outputBuffer.length - 1 : outputBuffer.length;
+		if (int16Buffer == null || int16Buffer.length != count)
+			int16Buffer = new short[count];
+		AirspyInt16Converter.convertSamplesInt16(inputBuffer, int16Buffer, count, statistics);
+
+		// ... and quantize the result to 8 bit (in the same loop if the scale is fixed):
+		switch (sampleType) {
+			case Airspy.AIRSPY_SAMPLE_INT8_IQ:
+				clippedSamples += int16Processor.processSamplesInt8(int16Buffer, outputBuffer, 0, 0);
+				break;
+
+			case Airspy.AIRSPY_SAMPLE_UINT8_IQ:
+				clippedSamples += int16Processor.processSamplesInt8(int16Buffer, outputBuffer, 0, 0x80);
+				break;
+
+			case Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED:
+				int16Processor.processSamplesInt16(int16Buffer);
+				// first byte of the buffer holds the exponent of the block:
+				int exponent = calcBlockExponent(int16Buffer, count);
+				outputBuffer[0] = (byte) exponent;
+				clippedSamples += convertSamplesInt8(int16Buffer, outputBuffer, 1, count, exponent);
+				break;
+		}
+		convertedSamples += count;
+	}
+
+	public void run() {
+		byte[] origInputBuffer;
+		byte[] outputBuffer = null;
+
+		while (!stopRequested) {
+			// First we get a fresh set of input and output buffers from the queues:
+			try {
+				outputBuffer = outputPoolQueue.poll(1000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				// Note: If the output buffer pool (filled by the user) is empty and the timeout is hit,
+				// we just wait again. After some time the Airspy class will stop because its usbQueue
+				// will run full.
+				Log.e(LOGTAG, "run: Interrupted while waiting for buffers in the output pool. Lets wait for another round...");
+				continue;
+			}
+			if(outputBuffer == null) {
+				Log.e(LOGTAG, "run: No output buffers available in the pool. Let's query it again...");
+				continue;
+			}
+
+			try {
+				origInputBuffer = inputQueue.poll(1000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrpted while waiting for buffers in the input queue. Stop!");
+				stopRequested = true;
+				continue;
+			}
+			if(origInputBuffer == null) {
+				Log.e(LOGTAG, "run: No input buffers available in the queue. Stop!");
+				stopRequested = true;
+				continue;
+			}
+
+			// Do the conversion:
+			convert(origInputBuffer, outputBuffer);
+
+			// Finally we return the buffers to the corresponding queues:
+			inputReturnQueue.offer(origInputBuffer);
+			outputQueue.offer(outputBuffer);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyKernels.java
+ * Description: This class contains the inner loops of the float conversion (convertSamplesFloat,
+ *              removeDC, translateFs4 and firInterleaved) as scalar Java code. The AirspyFloatConverter
+ *              calls them through getInstance(). On desktop JVMs a subclass that uses the Vector API
+ *              (com.mantz_it.airspy_vector.AirspyVectorKernels from the airspy_vector module) is
+ *              picked instead if it is on the classpath, can be loaded and produces the same output
+ *              as the scalar code. Otherwise (e.g. on Android) the scalar code is used.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyKernels {
+
+	private static final String LOGTAG = "AirspyKernels";
+	public static final String VECTOR_KERNELS_CLASS = "com.mantz_it.airspy_vector.AirspyVectorKernels";
+	public static final float MAX_VERIFY_ERROR = 1e-5f;		// max. deviation from the scalar output (relative to full scale)
+	private static AirspyKernels instance = null;
+
+	/**
+	 * Returns the kernels that are used by the converters. The first call tries to load the
+	 * Vector API kernels and verifies them against the scalar kernels.
+	 *
+	 * @return the vector kernels if they are available and correct; the scalar kernels otherwise
+	 */
+	public static synchronized AirspyKernels getInstance() {
+		if (instance == null) {
+			instance = loadVectorKernels();
+			if (instance == null)
+				instance = new AirspyKernels();
+			Log.i(LOGTAG, "getInstance: Using " + instance.getName() + " kernels.");
+		}
+		return instance;
+	}
+
+	/**
+	 * Overrides the kernels that are used by converters which are created afterwards
+	 * (e.g. to compare the scalar and vector kernels in a benchmark).
+	 *
+	 * @param kernels	kernels to use (null to select them again on the next getInstance())
+	 */
+	public static synchronized void setInstance(AirspyKernels kernels) {
+		instance = kernels;
+	}
+
+	/**
+	 * Tries to load and verify the Vector API kernels.
+	 *
+	 * @return the vector kernels or null if they are not available or not correct
+	 */
+	public static AirspyKernels loadVectorKernels() {
+		AirspyKernels kernels;
+		try {
+			kernels = (AirspyKernels) Class.forName(VECTOR_KERNELS_CLASS).getDeclaredConstructor().newInstance();
+		} catch (Throwable e) {
+			// Not on the classpath, jdk.incubator.vector is missing or the VM is too old:
+			return null;
+		}
+		try {
+			if (!verify(kernels, new AirspyKernels())) {
+				Log.e(LOGTAG, "loadVectorKernels: " + kernels.getName() + " kernels do not match the scalar kernels!");
+				return null;
+			}
+		} catch (Throwable e) {
+			Log.e(LOGTAG, "loadVectorKernels: Error while verifying " + kernels.getName() + " kernels: " + e.getMessage());
+			return null;
+		}
+		return kernels;
+	}
+
+	/**
+	 * Runs all kernels of both implementations on the same random samples and compares the output.
+	 *
+	 * @param kernels		kernels to verify
+	 * @param reference		kernels that produce the expected output (e.g. the scalar kernels)
+	 * @return true if all outputs are within MAX_VERIFY_ERROR of the reference output
+	 */
+	public static boolean verify(AirspyKernels kernels, AirspyKernels reference) {
+		final int count = 4096 + 4;		// not a multiple of the vector length to test the tail loops
+		Random random = new Random(1234);
+		byte[] raw = new byte[count * 2];
+		for (int i = 0; i < count; i++) {
+			int value = random.nextInt(4096);
+			raw[2 * i] = (byte) value;
+			raw[2 * i + 1] = (byte) (value >> 8);
+		}
+
+		// convertSamplesFloat:
+		float[] expected = new float[count];
+		float[] actual = new float[count];
+		reference.convertSamplesFloat(raw, expected, count);
+		kernels.convertSamplesFloat(raw, actual, count);
+		if (!compare(expected, actual, count))
+			return false;
+
+		// removeDC (several buffers to check the returned average):
+		float expectedAvg = 0.1f;
+		float actualAvg = 0.1f;
+		for (int n = 0; n < 3; n++) {
+			expectedAvg = reference.removeDC(expected, count, expectedAvg, 0.01f);
+			actualAvg = kernels.removeDC(actual, count, actualAvg, 0.01f);
+			if (!compare(expected, actual, count) || Math.abs(expectedAvg - actualAvg) > MAX_VERIFY_ERROR)
+				return false;
+		}
+
+		// translateFs4:
+		reference.translateFs4(expected, count, 0.5f);
+		kernels.translateFs4(actual, count, 0.5f);
+		if (!compare(expected, actual, count))
+			return false;
+
+		// firInterleaved with a buffer that wraps the queue of the default and of the longest preset:
+		for (int preset = 0; preset < AirspyFilterDesign.HILBERT_PRESET_COUNT; preset++) {
+			float[] kernel = AirspyFilterDesign.getHilbertKernel(preset);
+			float[] expectedQueue = new float[kernel.length * 16];
+			float[] actualQueue = new float[kernel.length * 16];
+			float[] expectedSamples = expected.clone();
+			float[] actualSamples = expected.clone();
+			int expectedIndex = 0;
+			int actualIndex = 0;
+			for (int n = 0; n < 2; n++) {
+				expectedIndex = reference.firInterleaved(expectedSamples, count, kernel, expectedQueue, expectedIndex, 16);
+				actualIndex = kernels.firInterleaved(actualSamples, count, kernel, actualQueue, actualIndex, 16);
+				if (expectedIndex != actualIndex || !compare(expectedSamples, actualSamples, count))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean compare(float[] expected, float[] actual, int count) {
+		for (int i = 0; i < count; i++) {
+			if (!(Math.abs(expected[i] - actual[i]) <= MAX_VERIFY_ERROR))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return name of the implementation (e.g. for log output and benchmark reports)
+	 */
+	public String getName() {
+		return "scalar";
+	}
+
+	/**
+	 * Converts a byte array (little endian, unsigned-12bit-integer) to a float array (signed-32bit-float)
+	 *
+	 * @param src   input samples (little endian, unsigned-12bit-integer); min. twice the size of output
+	 * @param dest  output samples (signed-32bit-float); min. of size 'count'
+	 * @param count number of samples to process
+	 */
+	public void convertSamplesFloat(byte[] src, float[] dest, int count) {
+		AirspyFloatConverter.convertSamplesFloat(src, dest, count);
+	}
+
+	/**
+	 * Removes the DC offset from the samples with a moving average (single pole IIR).
+	 *
+	 * @param samples	samples to process (in place)
+	 * @param length	number of samples to process
+	 * @param avg		current DC estimate (from the previous call)
+	 * @param scale		weight of a new sample in the DC estimate
+	 * @return the new DC estimate (pass it to the next call)
+	 */
+	public float removeDC(float[] samples, int length, float avg, float scale) {
+		for (int i = 0; i < length; i++)
+		{
+			samples[i] = samples[i] - avg;
+			avg += scale * samples[i];
+		}
+		return avg;
+	}
+
+	/**
+	 * Shifts the spectrum by -fs/4 (multiplies the samples with the pattern -1, -hbc, 1, hbc).
+	 *
+	 * @param samples	samples to process (in place)
+	 * @param length	number of samples to process (multiple of 4)
+	 * @param hbc		scale of the odd samples (gain of the Hilbert filter)
+	 */
+	public void translateFs4(float[] samples, int length, float hbc) {
+		for (int i = 0; i < length; i += 4) {
+			samples[i] = -samples[i];
+			samples[i + 1] = -samples[i + 1] * hbc;
+			//samples[i + 2] = samples[i + 2];
+			samples[i + 3] = samples[i + 3] * hbc;
+		}
+	}
+
+	/**
+	 * Filters the even samples with the (symmetric) Hilbert kernel. The odd samples are not touched.
+	 *
+	 * @param samples		samples to process (in place)
+	 * @param length		number of samples to process (multiple of 2)
+	 * @param kernel		Hilbert kernel with zeros removed (must be symmetric; both halves are folded)
+	 * @param firQueue		history of the filter (size: kernel.length * sizeFactor)
+	 * @param firIndex		current position in the history (from the previous call)
+	 * @param sizeFactor	size of the history in multiples of the kernel length
+	 * @return the new position in the history (pass it to the next call)
+	 */
+	public int firInterleaved(float[] samples, int length, float[] kernel, float[] firQueue, int firIndex, int sizeFactor) {
+		float acc;
+		int idxKernel, idx1, idx2;
+		int len = kernel.length;
+
+		for (int i = 0; i < length; i += 2)
+		{
+			firQueue[firIndex] = samples[i];
+			acc = 0;
+
+			// Convolution
+			idxKernel = 0;
+			idx1 = firIndex;
+			idx2 = firIndex + len - 1;
+			for(; idxKernel < (len/2)-4; idxKernel+=4, idx1+=4, idx2-=4) {
+				acc +=    kernel[idxKernel] * (firQueue[idx1] + firQueue[idx2])
+						+ kernel[idxKernel+1] * (firQueue[idx1+1] + firQueue[idx2-1])
+						+ kernel[idxKernel+2] * (firQueue[idx1+2] + firQueue[idx2-2])
+						+ kernel[idxKernel+3] * (firQueue[idx1+3] + firQueue[idx2-3]);
+			}
+			// Rest of the convolution: ( if kernel length is not dividable by 2*4 )
+			for(; idxKernel < len/2; idxKernel++, idx1++, idx2--) {
+				acc += kernel[idxKernel] * (firQueue[idx1] + firQueue[idx2]);
+			}
+
+			if (--firIndex < 0) {
+				firIndex = len * (sizeFactor - 1);
+				System.arraycopy(firQueue, 0, firQueue, firIndex + 1, len - 1);
+			}
+
+			samples[i] = acc;
+		}
+		return firIndex;
+	}
+}
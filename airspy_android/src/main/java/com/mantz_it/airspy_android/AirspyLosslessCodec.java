@@ -0,0 +1,403 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyLosslessCodec.java
+ * Description: This class implements a lossless codec for the raw 12 bit ADC samples
+ *              of the Airspy. It uses FLAC-style fixed linear predictors (order 0-3)
+ *              and Rice coded residuals. Each frame is self-contained and falls back
+ *              to verbatim samples if the samples cannot be compressed.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyLosslessCodec {
+
+	private static final String LOGTAG = "AirspyLosslessCodec";
+
+	// Frame layout (little endian):
+	//   [0-3]   magic 'A','S','L','C'
+	//   [4-7]   number of samples in the frame
+	//   [8-11]  length of the payload in bytes
+	//   [12-]   payload: predictor order (1 byte; 0xFF = verbatim), warmup samples (2 bytes each),
+	//           Rice coded residuals (4 bit rice parameter per partition)
+	public static final int HEADER_SIZE = 12;
+	private static final int MAGIC = 0x434C5341;		// 'A','S','L','C' in little endian
+	private static final int MAX_ORDER = 3;
+	private static final int VERBATIM = 0xFF;
+	private static final int PARTITION_SIZE = 256;		// number of residuals that share a rice parameter
+	private static final int MAX_RICE_PARAM = 15;
+
+	private int maxSamples;
+	private int samples[];			// 12 bit samples of the current frame
+	private int residuals[];		// zigzag encoded residuals of the current frame
+
+	// Bit writer / reader state:
+	private byte[] bitBuffer;
+	private int bytePos;
+	private int byteLimit;
+	private long bitAccu;
+	private int bitCount;
+
+	/**
+	 * Constructor for the codec. All buffers are allocated here, so that encoding and decoding
+	 * does not allocate memory. A codec instance must not be shared between threads.
+	 *
+	 * @param maxSamples	maximum number of samples per frame
+	 */
+	public AirspyLosslessCodec(int maxSamples) {
+		this.maxSamples = maxSamples;
+		this.samples = new int[maxSamples];
+		this.residuals = new int[maxSamples];
+	}
+
+	/**
+	 * @return maximum number of samples per frame
+	 */
+	public int getMaxSamples() {
+		return maxSamples;
+	}
+
+	/**
+	 * Returns the maximum size of an encoded frame (the size of a verbatim frame).
+	 *
+	 * @param count		number of samples in the frame
+	 * @return maximum size of the frame in bytes
+	 */
+	public static int getMaxFrameSize(int count) {
+		return HEADER_SIZE + 1 + 2 * count;
+	}
+
+	/**
+	 * Writes a buffer of raw samples as a verbatim frame (without compression). This can't fail
+	 * for valid buffers, so it is the fallback if encode() fails.
+	 *
+	 * @param src		raw samples (2 bytes per sample)
+	 * @param count		number of samples
+	 * @param dest		destination buffer; min. getMaxFrameSize(count) bytes
+	 * @return length of the frame in bytes; -1 on error
+	 */
+	public static int encodeVerbatim(byte[] src, int count, byte[] dest) {
+		if (count < 0 || src.length < 2 * count || dest.length < getMaxFrameSize(count)) {
+			Log.e(LOGTAG, "encodeVerbatim: buffers have invalid length: count=" + count + " src=" + src.length + " dest=" + dest.length);
+			return -1;
+		}
+		dest[HEADER_SIZE] = (byte) VERBATIM;
+		for (int i = 0; i < count; i++) {
+			dest[HEADER_SIZE + 1 + 2 * i] = src[2 * i];
+			dest[HEADER_SIZE + 2 + 2 * i] = (byte) (src[2 * i + 1] & 0x0F);
+		}
+		writeInt(dest, 0, MAGIC);
+		writeInt(dest, 4, count);
+		writeInt(dest, 8, 1 + 2 * count);
+		return getMaxFrameSize(count);
+	}
+
+	/**
+	 * Reads the total length of a frame from its header.
+	 *
+	 * @param header	buffer that contains at least HEADER_SIZE bytes of the frame header
+	 * @param offset	position of the header in the buffer
+	 * @return total length of the frame (including header) or -1 if the header is invalid
+	 */
+	public static int getFrameLength(byte[] header, int offset) {
+		if (readInt(header, offset) != MAGIC)
+			return -1;
+		int payloadLength = readInt(header, offset + 8);
+		if (payloadLength < 1)
+			return -1;
+		return HEADER_SIZE + payloadLength;
+	}
+
+	/**
+	 * Reads the number of samples of a frame from its header.
+	 *
+	 * @param header	buffer that contains at least HEADER_SIZE bytes of the frame header
+	 * @param offset	position of the header in the buffer
+	 * @return number of samples in the frame
+	 */
+	public static int getFrameSampleCount(byte[] header, int offset) {
+		return readInt(header, offset + 4);
+	}
+
+	/**
+	 * Encodes a buffer of raw samples (little endian, unsigned-12bit-integer; same format as the
+	 * unpacked samples of the Airspy) into a frame.
+	 *
+	 * @param src		raw samples (2 bytes per sample)
+	 * @param count		number of samples to encode (must not exceed maxSamples)
+	 * @param dest		destination buffer; min. getMaxFrameSize(count) bytes
+	 * @return length of the frame in bytes; -1 on error
+	 */
+	public int encode(byte[] src, int count, byte[] dest) {
+		if (count > maxSamples || src.length < 2 * count || dest.length < getMaxFrameSize(count)) {
+			Log.e(LOGTAG, "encode: buffers have invalid length: count=" + count + " src=" + src.length + " dest=" + dest.length);
+			return -1;
+		}
+
+		// Extract the samples and calculate the residual energy for all fixed predictors in one pass:
+		long sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int x, x1 = 0, x2 = 0, x3 = 0, r;
+		for (int i = 0; i < count; i++) {
+			x = ((src[2 * i + 1] & 0x0F) << 8) | (src[2 * i] & 0xFF);
+			samples[i] = x;
+			if (i >= MAX_ORDER) {
+				sum0 += x;
+				r = x - x1;
+				sum1 += (r < 0) ? -r : r;
+				r = x - 2 * x1 + x2;
+				sum2 += (r < 0) ? -r : r;
+				r = x - 3 * x1 + 3 * x2 - x3;
+				sum3 += (r < 0) ? -r : r;
+			}
+			x3 = x2;
+			x2 = x1;
+			x1 = x;
+		}
+		int order = 0;
+		long best = sum0;
+		if (sum1 < best) { order = 1; best = sum1; }
+		if (sum2 < best) { order = 2; best = sum2; }
+		if (sum3 < best) { order = 3; }
+		if (count <= order)
+			order = 0;
+
+		// Calculate the zigzag encoded residuals:
+		for (int i = order; i < count; i++) {
+			switch (order) {
+				case 0: r = samples[i]; break;
+				case 1: r = samples[i] - samples[i - 1]; break;
+				case 2: r = samples[i] - 2 * samples[i - 1] + samples[i - 2]; break;
+				default: r = samples[i] - 3 * samples[i - 1] + 3 * samples[i - 2] - samples[i - 3]; break;
+			}
+			residuals[i] = (r << 1) ^ (r >> 31);
+		}
+
+		// Write the payload. If it gets bigger than the verbatim payload, we fall back to verbatim:
+		startWriting(dest, HEADER_SIZE, HEADER_SIZE + 1 + 2 * count);
+		boolean success = writeBits(order, 8);
+		for (int i = 0; success && i < order; i++)
+			success = writeBits(samples[i], 16);
+		for (int p = order; success && p < count; p += PARTITION_SIZE) {
+			int end = Math.min(p + PARTITION_SIZE, count);
+			int k = calcRiceParameter(p, end);
+			success = writeBits(k, 4);
+			for (int i = p; success && i < end; i++)
+				success = writeRice(residuals[i], k);
+		}
+		if (success)
+			success = flushBits();
+
+		int payloadLength;
+		if (success) {
+			payloadLength = bytePos - HEADER_SIZE;
+		} else {
+			dest[HEADER_SIZE] = (byte) VERBATIM;
+			for (int i = 0; i < count; i++) {
+				dest[HEADER_SIZE + 1 + 2 * i] = (byte) (samples[i] & 0xFF);
+				dest[HEADER_SIZE + 2 + 2 * i] = (byte) (samples[i] >> 8);
+			}
+			payloadLength = 1 + 2 * count;
+		}
+
+		writeInt(dest, 0, MAGIC);
+		writeInt(dest, 4, count);
+		writeInt(dest, 8, payloadLength);
+		return HEADER_SIZE + payloadLength;
+	}
+
+	/**
+	 * Decodes a frame into raw samples (little endian, unsigned-12bit-integer; same format as
+	 * the unpacked samples of the Airspy)
+	 *
+	 * @param src		buffer containing the frame
+	 * @param offset	position of the frame in src
+	 * @param dest		destination for the raw samples; min. twice the number of samples in the frame
+	 * @return number of decoded samples; -1 on error
+	 */
+	public int decode(byte[] src, int offset, byte[] dest) {
+		int frameLength = getFrameLength(src, offset);
+		int count = getFrameSampleCount(src, offset);
+		if (frameLength < 0 || offset + frameLength > src.length) {
+			Log.e(LOGTAG, "decode: invalid frame header!");
+			return -1;
+		}
+		if (count < 0 || count > maxSamples || dest.length < 2 * count) {
+			Log.e(LOGTAG, "decode: buffers have invalid length: count=" + count + " dest=" + dest.length);
+			return -1;
+		}
+
+		int payload = offset + HEADER_SIZE;
+		int order = src[payload] & 0xFF;
+		if (order == VERBATIM) {
+			if (frameLength - HEADER_SIZE < 1 + 2 * count) {
+				Log.e(LOGTAG, "decode: verbatim frame is truncated!");
+				return -1;
+			}
+			System.arraycopy(src, payload + 1, dest, 0, 2 * count);
+			return count;
+		}
+		if (order > MAX_ORDER) {
+			Log.e(LOGTAG, "decode: invalid predictor order: " + order);
+			return -1;
+		}
+
+		startReading(src, payload + 1, offset + frameLength);
+		for (int i = 0; i < order && i < count; i++)
+			samples[i] = readBits(16);
+		int x, r;
+		for (int p = order; p < count; p += PARTITION_SIZE) {
+			int end = Math.min(p + PARTITION_SIZE, count);
+			int k = readBits(4);
+			for (int i = p; i < end; i++) {
+				x = readRice(k);
+				r = (x >>> 1) ^ -(x & 1);
+				switch (order) {
+					case 0: samples[i] = r; break;
+					case 1: samples[i] = r + samples[i - 1]; break;
+					case 2: samples[i] = r + 2 * samples[i - 1] - samples[i - 2]; break;
+					default: samples[i] = r + 3 * samples[i - 1] - 3 * samples[i - 2] + samples[i - 3]; break;
+				}
+			}
+		}
+		if (bytePos > byteLimit) {
+			Log.e(LOGTAG, "decode: frame is truncated!");
+			return -1;
+		}
+
+		for (int i = 0; i < count; i++) {
+			dest[2 * i] = (byte) (samples[i] & 0xFF);
+			dest[2 * i + 1] = (byte) ((samples[i] >> 8) & 0x0F);
+		}
+		return count;
+	}
+
+	/**
+	 * Calculates the rice parameter that approximately minimizes the code length of a partition.
+	 *
+	 * @param start		first residual of the partition
+	 * @param end		last residual + 1 of the partition
+	 * @return rice parameter
+	 */
+	private int calcRiceParameter(int start, int end) {
+		long sum = 0;
+		for (int i = start; i < end; i++)
+			sum += residuals[i];
+		long mean = sum / (end - start);
+		int k = 0;
+		while (k < MAX_RICE_PARAM && (1L << (k + 1)) <= mean)
+			k++;
+		return k;
+	}
+
+	private void startWriting(byte[] buffer, int offset, int limit) {
+		bitBuffer = buffer;
+		bytePos = offset;
+		byteLimit = limit;
+		bitAccu = 0;
+		bitCount = 0;
+	}
+
+	/**
+	 * Appends bits to the bit stream (MSB first)
+	 *
+	 * @param value		value to write
+	 * @param bits		number of bits (max. 32)
+	 * @return false if the limit of the buffer is reached
+	 */
+	private boolean writeBits(int value, int bits) {
+		bitAccu = (bitAccu << bits) | (value & ((1L << bits) - 1));
+		bitCount += bits;
+		while (bitCount >= 8) {
+			if (bytePos >= byteLimit)
+				return false;
+			bitCount -= 8;
+			bitBuffer[bytePos++] = (byte) (bitAccu >> bitCount);
+		}
+		return true;
+	}
+
+	private boolean writeRice(int value, int k) {
+		int q = value >>> k;
+		// unary coded quotient (q zeros followed by a one):
+		while (q >= 24) {
+			if (!writeBits(0, 24))
+				return false;
+			q -= 24;
+		}
+		return writeBits(1, q + 1) && writeBits(value, k);
+	}
+
+	private boolean flushBits() {
+		if (bitCount > 0)
+			return writeBits(0, 8 - bitCount);
+		return true;
+	}
+
+	private void startReading(byte[] buffer, int offset, int limit) {
+		bitBuffer = buffer;
+		bytePos = offset;
+		byteLimit = limit;
+		bitAccu = 0;
+		bitCount = 0;
+	}
+
+	/**
+	 * Reads bits from the bit stream (MSB first). Reading beyond the limit returns zero bits
+	 * and is detected by the caller by checking bytePos.
+	 *
+	 * @param bits		number of bits (max. 32)
+	 * @return value
+	 */
+	private int readBits(int bits) {
+		while (bitCount < bits) {
+			int b = (bytePos < byteLimit) ? (bitBuffer[bytePos] & 0xFF) : 0;
+			bytePos++;
+			bitAccu = (bitAccu << 8) | b;
+			bitCount += 8;
+		}
+		bitCount -= bits;
+		return (int) ((bitAccu >> bitCount) & ((1L << bits) - 1));
+	}
+
+	private int readRice(int k) {
+		int q = 0;
+		while (readBits(1) == 0) {
+			q++;
+			if (bytePos > byteLimit)
+				return 0;
+		}
+		return (q << k) | readBits(k);
+	}
+
+	private static int readInt(byte[] b, int offset) {
+		return b[offset] & 0xFF | (b[offset + 1] & 0xFF) << 8 |
+				(b[offset + 2] & 0xFF) << 16 | (b[offset + 3] & 0xFF) << 24;
+	}
+
+	private static void writeInt(byte[] b, int offset, int i) {
+		b[offset] = (byte) (i & 0xff);
+		b[offset + 1] = (byte) ((i >> 8) & 0xff);
+		b[offset + 2] = (byte) ((i >> 16) & 0xff);
+		b[offset + 3] = (byte) ((i >> 24) & 0xff);
+	}
+}
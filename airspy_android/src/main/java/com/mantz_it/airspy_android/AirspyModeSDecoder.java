@@ -0,0 +1,480 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyModeSDecoder.java
+ * Description: Mode S / ADS-B decoder (1090 MHz). It calculates the magnitude of the samples
+ *              (real samples of the Airspy: the signal is at Fs/4, so two consecutive samples
+ *              are an I/Q pair; or IQ samples), searches the Mode S preamble at every
+ *              magnitude sample, slices the 112 bit extended squitter (DF17 / DF18), checks
+ *              the CRC (single bit errors are corrected) and delivers valid messages via a
+ *              callback. The magnitude of the last frame is kept across calls, so frames
+ *              that span two buffers are found as well.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyModeSDecoder {
+
+	private static final String LOGTAG = "AirspyModeSDecoder";
+	private static final double CHIP_US = 0.5;				// duration of one chip (half a bit)
+	private static final int PREAMBLE_CHIPS = 16;			// 8 us preamble
+	private static final int LONG_BITS = 112;				// length of an extended squitter
+	private static final int CRC_POLYNOMIAL = 0xFFF409;		// Mode S CRC-24 generator
+	private static final int[] CRC_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i << 16;
+			for (int j = 0; j < 8; j++)
+				crc = ((crc & 0x800000) != 0) ? ((crc << 1) ^ CRC_POLYNOMIAL) : (crc << 1);
+			CRC_TABLE[i] = crc & 0xFFFFFF;
+		}
+	}
+
+	private double samplesPerChip;				// magnitude samples per chip
+	private int frameSamples;					// magnitude samples of a complete frame
+	private float[] magnitude;					// history (last frame) + current buffer
+	private double[] prefix;					// prefix sums of the magnitude (prefix[i] = sum of magnitude[0..i-1])
+	private int historyLength = 0;				// number of valid history samples at the start of magnitude
+	private int skipUntil = 0;					// index up to which no preamble is searched (inside a decoded frame)
+	private long firstSampleIndex = 0;			// absolute index of magnitude[0]
+	private double magnitudeRate;
+	private int maxInputLength;
+	private byte[] frame = new byte[LONG_BITS / 8];
+	private int[] syndromeKeys = new int[512];	// open addressing hash table: syndrome -> bit position
+	private int[] syndromeBits = new int[512];
+	private MessageCallbackInterface callback = null;
+
+	// Statistics:
+	private volatile long preambles = 0;		// number of detected preambles
+	private volatile long messages = 0;			// number of valid messages
+	private volatile long corrected = 0;		// number of messages with a corrected bit
+	private volatile long processedSamples = 0;	// number of magnitude samples
+	private volatile long processingTimeNs = 0;	// time spent in the process*() methods
+
+	/**
+	 * Holds a single decoded message
+	 */
+	public static class Message {
+		private byte[] data;
+		private double time;
+		private float signalLevel;
+		private boolean corrected;
+
+		public Message(byte[] data, double time, float signalLevel, boolean corrected) {
+			this.data = data;
+			this.time = time;
+			this.signalLevel = signalLevel;
+			this.corrected = corrected;
+		}
+
+		/**
+		 * @return copy of the 14 message bytes
+		 */
+		public byte[] getData() {
+			return data.clone();
+		}
+
+		/**
+		 * @return time of the message in seconds since the start of the stream
+		 */
+		public double getTime() {
+			return time;
+		}
+
+		/**
+		 * @return average magnitude of the preamble pulses (in units of the input samples)
+		 */
+		public float getSignalLevel() {
+			return signalLevel;
+		}
+
+		/**
+		 * @return true if a bit error was corrected
+		 */
+		public boolean isCorrected() {
+			return corrected;
+		}
+
+		/**
+		 * @return downlink format (17 or 18)
+		 */
+		public int getDownlinkFormat() {
+			return (data[0] & 0xFF) >> 3;
+		}
+
+		/**
+		 * @return 24 bit ICAO address of the aircraft
+		 */
+		public int getIcaoAddress() {
+			return ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+		}
+
+		/**
+		 * @return ADS-B type code (1-4: identification, 9-18: airborne position, 19: velocity, ...)
+		 */
+		public int getTypeCode() {
+			return (data[4] & 0xFF) >> 3;
+		}
+
+		/**
+		 * @return call sign of the aircraft or null if this is not an identification message
+		 */
+		public String getCallsign() {
+			int typeCode = getTypeCode();
+			if (typeCode < 1 || typeCode > 4)
+				return null;
+			String charset = "#ABCDEFGHIJKLMNOPQRSTUVWXYZ##### ###############0123456789######";
+			long bits = 0;
+			for (int i = 5; i < 11; i++)
+				bits = (bits << 8) | (data[i] & 0xFF);
+			StringBuilder callsign = new StringBuilder(8);
+			for (int i = 7; i >= 0; i--)
+				callsign.append(charset.charAt((int) ((bits >> (6 * i)) & 0x3F)));
+			return callsign.toString().trim();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder hex = new StringBuilder(2 * data.length + 2);
+			hex.append('*');
+			for (byte b : data)
+				hex.append(String.format("%02X", b & 0xFF));
+			hex.append(';');
+			return hex.toString();
+		}
+	}
+
+	/**
+	 * Constructor for the decoder
+	 *
+	 * @param magnitudeRate		rate of the magnitude samples in Sps: half of the sample rate for real
+	 *                          samples or the complex sample rate for IQ samples (min. 4 MSps,
+	 *                          i.e. 2 samples per chip)
+	 * @param maxInputLength	max. number of values per call of the process*() methods
+	 * @throws Exception if the rate is too low
+	 */
+	public AirspyModeSDecoder(double magnitudeRate, int maxInputLength) throws Exception {
+		if (magnitudeRate < 4000000 || maxInputLength <= 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: magnitudeRate=" + magnitudeRate + " maxInputLength=" + maxInputLength);
+			throw new Exception("Invalid configuration: magnitudeRate=" + magnitudeRate + " maxInputLength=" + maxInputLength);
+		}
+		this.magnitudeRate = magnitudeRate;
+		this.maxInputLength = maxInputLength;
+		this.samplesPerChip = magnitudeRate * CHIP_US / 1000000;
+		this.frameSamples = (int) Math.ceil((PREAMBLE_CHIPS + 2 * LONG_BITS + 1) * samplesPerChip) + 1;
+		this.magnitude = new float[frameSamples + maxInputLength / 2];
+		this.prefix = new double[magnitude.length + 1];
+
+		// Syndromes of all single bit errors (the first 5 bits (DF) are not corrected):
+		java.util.Arrays.fill(syndromeKeys, -1);
+		for (int bit = 5; bit < LONG_BITS; bit++) {
+			java.util.Arrays.fill(frame, (byte) 0);
+			frame[bit / 8] = (byte) (0x80 >> (bit % 8));
+			int syndrome = calcSyndrome(frame);
+			int slot = syndrome & (syndromeKeys.length - 1);
+			while (syndromeKeys[slot] != -1)
+				slot = (slot + 1) & (syndromeKeys.length - 1);
+			syndromeKeys[slot] = syndrome;
+			syndromeBits[slot] = bit;
+		}
+	}
+
+	/**
+	 * Sets the callback that receives the decoded messages. It is called on the thread that
+	 * calls the process*() methods.
+	 *
+	 * @param callback	callback interface or null
+	 */
+	public void setCallback(MessageCallbackInterface callback) {
+		this.callback = callback;
+	}
+
+	/**
+	 * Calculates the CRC-24 of the first 88 bits of an extended squitter.
+	 *
+	 * @param data	message (min. 11 bytes)
+	 * @return CRC-24
+	 */
+	public static int calcCrc(byte[] data) {
+		int crc = 0;
+		for (int i = 0; i < 11; i++)
+			crc = ((crc << 8) ^ CRC_TABLE[((crc >> 16) ^ data[i]) & 0xFF]) & 0xFFFFFF;
+		return crc;
+	}
+
+	/**
+	 * @return CRC of the message xor the parity field (0 for a valid message)
+	 */
+	private static int calcSyndrome(byte[] data) {
+		int parity = ((data[11] & 0xFF) << 16) | ((data[12] & 0xFF) << 8) | (data[13] & 0xFF);
+		return calcCrc(data) ^ parity;
+	}
+
+	/**
+	 * Decodes Airspy samples of type AIRSPY_SAMPLE_INT16_REAL.
+	 *
+	 * @param samples	real samples (signed-16bit-integer)
+	 * @param length	number of samples (max. maxInputLength)
+	 */
+	public void processInt16Real(short[] samples, int length) {
+		if (!checkLength("processInt16Real", length))
+			return;
+		long startTime = System.nanoTime();
+		int n = length / 2;
+		for (int i = 0; i < n; i++)
+			magnitude[historyLength + i] = approxMagnitude(samples[2 * i], samples[2 * i + 1]);
+		detect(n);
+		processingTimeNs += System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Decodes Airspy samples of type AIRSPY_SAMPLE_UINT16_REAL.
+	 *
+	 * @param samples	real samples (unsigned-16bit-integer)
+	 * @param length	number of samples (max. maxInputLength)
+	 */
+	public void processUint16Real(short[] samples, int length) {
+		if (!checkLength("processUint16Real", length))
+			return;
+		long startTime = System.nanoTime();
+		int n = length / 2;
+		for (int i = 0; i < n; i++)
+			magnitude[historyLength + i] = approxMagnitude((short) (samples[2 * i] ^ 0x8000), (short) (samples[2 * i + 1] ^ 0x8000));
+		detect(n);
+		processingTimeNs += System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Decodes IQ samples of type AIRSPY_SAMPLE_INT16_IQ.
+	 *
+	 * @param samples	interleaved I/Q samples (signed-16bit-integer; Airspy.AIRSPY_IQ_LAYOUT_INTERLEAVED,
+	 *                  the split layout is not supported)
+	 * @param length	number of values (2 per complex sample; max. maxInputLength)
+	 */
+	public void processInt16Iq(short[] samples, int length) {
+		if (!checkLength("processInt16Iq", length))
+			return;
+		processInt16Real(samples, length);		// same magnitude calculation
+	}
+
+	/**
+	 * Decodes IQ samples of type AIRSPY_SAMPLE_FLOAT32_IQ.
+	 *
+	 * @param samples	interleaved I/Q samples (float; Airspy.AIRSPY_IQ_LAYOUT_INTERLEAVED,
+	 *                  the split layout is not supported)
+	 * @param length	number of values (2 per complex sample; max. maxInputLength)
+	 */
+	public void processFloatIq(float[] samples, int length) {
+		if (!checkLength("processFloatIq", length))
+			return;
+		long startTime = System.nanoTime();
+		int n = length / 2;
+		for (int i = 0; i < n; i++) {
+			float re = Math.abs(samples[2 * i]);
+			float im = Math.abs(samples[2 * i + 1]);
+			magnitude[historyLength + i] = (re > im) ? re + 0.4f * im : im + 0.4f * re;
+		}
+		detect(n);
+		processingTimeNs += System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Checks the length of an input buffer (the magnitude buffer holds max. maxInputLength / 2 samples).
+	 *
+	 * @param method	name of the calling method (for the log)
+	 * @param length	number of values in the buffer
+	 * @return true if the buffer can be processed; false if it has to be ignored
+	 */
+	private boolean checkLength(String method, int length) {
+		if (length > maxInputLength) {
+			Log.e(LOGTAG, method + ": Input length " + length + " exceeds max. input length " + maxInputLength
+					+ ". Ignore buffer!");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Alpha max plus beta min approximation of sqrt(a^2 + b^2) (max. error ~4%)
+	 */
+	private static float approxMagnitude(int a, int b) {
+		if (a < 0)
+			a = -a;
+		if (b < 0)
+			b = -b;
+		return (a > b) ? a + 0.4f * b : b + 0.4f * a;
+	}
+
+	/**
+	 * Sum of the magnitude within one chip (rounded to whole samples; used for the fast preamble search)
+	 */
+	private double chipEnergy(int start, int chip) {
+		int a = start + (int) (chip * samplesPerChip + 0.5);
+		int b = start + (int) ((chip + 1) * samplesPerChip + 0.5);
+		return prefix[b] - prefix[a];
+	}
+
+	/**
+	 * Sum of the magnitude within one chip for a fractional start position (linear interpolation
+	 * of the prefix sums). Needed because a chip is only a few samples long.
+	 */
+	private double chipEnergy(double start, int chip) {
+		double a = start + chip * samplesPerChip;
+		double b = a + samplesPerChip;
+		int ia = (int) a;
+		int ib = (int) b;
+		return prefix[ib] + (b - ib) * magnitude[ib] - prefix[ia] - (a - ia) * magnitude[ia];
+	}
+
+	/**
+	 * @return correlation of the preamble pulses at a fractional start position
+	 */
+	private double preambleScore(double start) {
+		return chipEnergy(start, 0) + chipEnergy(start, 2) + chipEnergy(start, 7) + chipEnergy(start, 9)
+				- (chipEnergy(start, 1) + chipEnergy(start, 3) + chipEnergy(start, 4) + chipEnergy(start, 5)
+				+ chipEnergy(start, 6) + chipEnergy(start, 8)) * 4 / 6;
+	}
+
+	private void detect(int newSamples) {
+		int total = historyLength + newSamples;
+		for (int i = historyLength; i < total; i++)
+			prefix[i + 1] = prefix[i] + magnitude[i];
+
+		int lastStart = total - frameSamples;
+		for (int s = Math.max(skipUntil, 1); s < lastStart; s++) {
+			// Preamble: pulses in chips 0, 2, 7 and 9; quiet in 1, 3, 4, 5, 6 and 8:
+			double c0 = chipEnergy(s, 0);
+			double c1 = chipEnergy(s, 1);
+			if (c0 <= 2 * c1)
+				continue;		// fast reject
+			double c2 = chipEnergy(s, 2);
+			double c7 = chipEnergy(s, 7);
+			double c9 = chipEnergy(s, 9);
+			double high = Math.min(Math.min(c0, c2), Math.min(c7, c9));
+			double low = (c1 + chipEnergy(s, 3) + chipEnergy(s, 4) + chipEnergy(s, 5) + chipEnergy(s, 6) + chipEnergy(s, 8)) / 6;
+			if (high <= 2 * low)
+				continue;		// no preamble
+			preambles++;
+
+			// The pulses start somewhere between s-1 and s. Find the best fractional position:
+			double start = s;
+			double bestScore = preambleScore(start);
+			for (int k = 1; k < 4; k++) {
+				double score = preambleScore(s - k * 0.25);
+				if (score > bestScore) {
+					bestScore = score;
+					start = s - k * 0.25;
+				}
+			}
+
+			// Slice the bits (pulse position: first half high = 1):
+			for (int i = 0; i < frame.length; i++)
+				frame[i] = 0;
+			for (int bit = 0; bit < LONG_BITS; bit++) {
+				if (chipEnergy(start, PREAMBLE_CHIPS + 2 * bit) > chipEnergy(start, PREAMBLE_CHIPS + 2 * bit + 1))
+					frame[bit / 8] |= (byte) (0x80 >> (bit % 8));
+			}
+			int df = (frame[0] & 0xFF) >> 3;
+			if (df != 17 && df != 18)
+				continue;
+
+			// CRC check and single bit correction:
+			boolean wasCorrected = false;
+			int syndrome = calcSyndrome(frame);
+			if (syndrome != 0) {
+				int slot = syndrome & (syndromeKeys.length - 1);
+				while (syndromeKeys[slot] != -1 && syndromeKeys[slot] != syndrome)
+					slot = (slot + 1) & (syndromeKeys.length - 1);
+				if (syndromeKeys[slot] == -1)
+					continue;
+				int bit = syndromeBits[slot];
+				frame[bit / 8] ^= (byte) (0x80 >> (bit % 8));
+				wasCorrected = true;
+				corrected++;
+			}
+
+			messages++;
+			if (callback != null) {
+				double time = (firstSampleIndex + s) / magnitudeRate;
+				float level = (float) ((c0 + c2 + c7 + c9) / (4 * samplesPerChip));
+				callback.onMessage(new Message(frame.clone(), time, level, wasCorrected));
+			}
+			skipUntil = s + frameSamples - 1;
+			s = skipUntil - 1;
+		}
+
+		// Keep the last frame for the next call:
+		int keep = Math.min(frameSamples, total);
+		int drop = total - keep;
+		System.arraycopy(magnitude, drop, magnitude, 0, keep);
+		for (int i = 0; i < keep; i++)
+			prefix[i + 1] = prefix[i] + magnitude[i];
+		historyLength = keep;
+		skipUntil -= drop;
+		firstSampleIndex += drop;
+		processedSamples += newSamples;
+	}
+
+	/**
+	 * @return number of detected preambles
+	 */
+	public long getPreambles() {
+		return preambles;
+	}
+
+	/**
+	 * @return number of valid messages (including corrected ones)
+	 */
+	public long getMessages() {
+		return messages;
+	}
+
+	/**
+	 * @return number of messages with a corrected bit error
+	 */
+	public long getCorrectedMessages() {
+		return corrected;
+	}
+
+	/**
+	 * Returns the cpu load of the decoder (1.0 is one core fully loaded if the samples arrive
+	 * in real time).
+	 *
+	 * @return processing time / duration of the processed samples
+	 */
+	public double getCpuLoad() {
+		if (processedSamples == 0)
+			return 0;
+		return processingTimeNs / 1e9 / (processedSamples / magnitudeRate);
+	}
+
+	public interface MessageCallbackInterface {
+		/**
+		 * Called for every valid message.
+		 *
+		 * @param message	decoded message
+		 */
+		void onMessage(Message message);
+	}
+}
@@ -0,0 +1,313 @@
+package com.mantz_it.airspy_android;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyNarrowbandDemodulator.java
+ * Description: Narrowband demodulator (AM, USB, LSB and NFM) for the float IQ samples of
+ *              the Airspy. Each instance has its own AirspyChannelFrontEnd (frequency
+ *              shift, channel filter and decimation) and does not modify the input buffer,
+ *              so several demodulators can run on the same buffer (e.g. one after the other
+ *              in the consumer thread). To avoid that each of them repeats the work at the
+ *              full input rate, several demodulators can be attached to one shared
+ *              AirspyChannelFrontEnd (e.g. 250 kSps): the shared front-end processes each
+ *              buffer once and the demodulators only filter their channels out of its
+ *              output. A squelch skips the demodulation and the audio processing while it
+ *              is closed. The cpu time of the calling thread spent in demodulate() is
+ *              measured per instance (see getCpuLoad()).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyNarrowbandDemodulator {
+
+	private static final String LOGTAG = "AirspyNarrowbandDemodulator";
+
+	// Modes:
+	public static final int MODE_AM = 0;
+	public static final int MODE_USB = 1;
+	public static final int MODE_LSB = 2;
+	public static final int MODE_NFM = 3;
+
+	private static final double AM_BANDWIDTH = 4500;		// one sided bandwidth of the channel filters (Hz)
+	private static final double SSB_BANDWIDTH = 1350;		// half of the SSB passband (300 - 3000 Hz)
+	private static final double SSB_CENTER = 1650;			// center of the SSB passband (Hz)
+	private static final double NFM_BANDWIDTH = 5000;
+	private static final double NFM_DEVIATION = 2500;		// deviation that yields full scale audio
+	private static final float AGC_TARGET = 0.5f;			// audio level of the AGC
+	private static final float AGC_MAX_GAIN = 10000;
+	private static final float SQUELCH_HYSTERESIS_DB = 3;
+
+	private int mode;
+	private int audioRate;
+	private AirspyChannelFrontEnd frontEnd;
+	private float[] channelBuffer;
+	private double channelOffset = 0;
+
+	// Demodulator state:
+	private float prevI = 0;					// last sample (NFM discriminator)
+	private float prevQ = 0;
+	private float dcLevel = 0;					// DC of the AM envelope
+	private int ssbPhase = 0;					// phase of the SSB oscillator (2^32 is 2*pi)
+	private int ssbPhaseIncrement;
+	private float agcEnvelope = AGC_TARGET;		// peak envelope of the audio (AGC)
+	private float agcDecay;						// decay of the envelope per sample (~1 s)
+	private float nfmGain;
+
+	// Squelch:
+	private volatile float squelchDb = Float.NEGATIVE_INFINITY;	// open threshold (dBFS); -inf: always open
+	private volatile boolean squelchOpen = true;
+
+	// Cpu time statistics:
+	private volatile long processingTimeNs = 0;	// thread cpu time spent in demodulate()
+	private volatile long processedSamples = 0;	// number of complex input samples
+
+	/**
+	 * Constructor for the demodulator
+	 *
+	 * @param mode				MODE_AM, MODE_USB, MODE_LSB or MODE_NFM
+	 * @param inputRate			complex sample rate of the IQ input in Sps (half of the Airspy sample rate)
+	 * @param audioRate			sample rate of the audio output in Sps (e.g. 16000 or 48000)
+	 * @param maxInputLength	max. number of values (2 per complex sample) per call of demodulate()
+	 * @throws Exception if the mode or the rates are invalid
+	 */
+	public AirspyNarrowbandDemodulator(int mode, int inputRate, int audioRate, int maxInputLength) throws Exception {
+		double bandwidth;
+		switch (mode) {
+			case MODE_AM:	bandwidth = AM_BANDWIDTH;	break;
+			case MODE_USB:
+			case MODE_LSB:	bandwidth = SSB_BANDWIDTH;	break;
+			case MODE_NFM:	bandwidth = NFM_BANDWIDTH;	break;
+			default:
+				Log.e(LOGTAG, "constructor: Invalid mode: " + mode);
+				throw new Exception("Invalid mode: " + mode);
+		}
+		this.mode = mode;
+		this.audioRate = audioRate;
+		this.frontEnd = new AirspyChannelFrontEnd(inputRate, audioRate, bandwidth, maxInputLength);
+		this.channelBuffer = new float[frontEnd.getMaxOutputLength(maxInputLength)];
+		this.ssbPhaseIncrement = (int) Math.round((mode == MODE_USB ? SSB_CENTER : -SSB_CENTER) / audioRate * 4294967296.0);
+		this.agcDecay = (float) Math.exp(-1.0 / audioRate);
+		this.nfmGain = (float) (audioRate / (2 * Math.PI * NFM_DEVIATION));
+		setChannelOffset(0);
+	}
+
+	/**
+	 * Constructor for a demodulator that is attached to a shared front-end. The caller runs
+	 * sharedFrontEnd.process() once per buffer and passes its output to demodulate() of all
+	 * attached demodulators. Channel offsets are relative to the center of the shared front-end.
+	 *
+	 * @param mode				MODE_AM, MODE_USB, MODE_LSB or MODE_NFM
+	 * @param sharedFrontEnd	front-end whose output is the input of this demodulator
+	 * @param audioRate			sample rate of the audio output in Sps (max. the channel rate of the front-end)
+	 * @throws Exception if the mode or the rates are invalid
+	 */
+	public AirspyNarrowbandDemodulator(int mode, AirspyChannelFrontEnd sharedFrontEnd, int audioRate) throws Exception {
+		this(mode, sharedFrontEnd.getChannelRate(), audioRate,
+				sharedFrontEnd.getMaxOutputLength(sharedFrontEnd.getMaxInputLength()));
+	}
+
+	/**
+	 * Tunes the demodulator. For SSB this is the frequency of the (suppressed) carrier.
+	 *
+	 * @param offset	frequency of the channel relative to the center of the input (or of the
+	 *                  shared front-end) in Hz
+	 * @return true on success; false if the offset is out of range
+	 */
+	public boolean setChannelOffset(double offset) {
+		// For SSB the front-end is centered on the passband instead of the carrier:
+		double shift = 0;
+		if (mode == MODE_USB)
+			shift = SSB_CENTER;
+		else if (mode == MODE_LSB)
+			shift = -SSB_CENTER;
+		if (!frontEnd.setChannelOffset(offset + shift))
+			return false;
+		this.channelOffset = offset;
+		return true;
+	}
+
+	/**
+	 * @return frequency of the channel relative to the center of the input in Hz
+	 */
+	public double getChannelOffset() {
+		return channelOffset;
+	}
+
+	/**
+	 * @return MODE_AM, MODE_USB, MODE_LSB or MODE_NFM
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return sample rate of the audio output in Sps
+	 */
+	public int getAudioRate() {
+		return audioRate;
+	}
+
+	/**
+	 * Sets the squelch threshold. The squelch opens if the channel power rises above the
+	 * threshold and closes if it falls 3 dB below it. Can be called at any time.
+	 *
+	 * @param thresholdDb	channel power in dBFS (Float.NEGATIVE_INFINITY: squelch always open)
+	 */
+	public void setSquelch(float thresholdDb) {
+		this.squelchDb = thresholdDb;
+	}
+
+	/**
+	 * @return true if the squelch is open
+	 */
+	public boolean isSquelchOpen() {
+		return squelchOpen;
+	}
+
+	/**
+	 * @return channel power of the last buffer in dBFS
+	 */
+	public float getChannelPowerDb() {
+		return frontEnd.getPowerDb();
+	}
+
+	/**
+	 * @return cpu time of the calling thread spent in demodulate() since creation in ns
+	 */
+	public long getProcessingTimeNs() {
+		return processingTimeNs;
+	}
+
+	/**
+	 * Returns the cpu load of this demodulator (1.0 is one core fully loaded if the samples
+	 * arrive in real time).
+	 *
+	 * @return processing time / duration of the processed samples
+	 */
+	public double getCpuLoad() {
+		if (processedSamples == 0)
+			return 0;
+		return processingTimeNs / 1e9 / ((double) processedSamples / frontEnd.getInputRate());
+	}
+
+	/**
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @return max. number of audio samples (mono) that one call can produce
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		return frontEnd.getMaxOutputLength(inputLength) / 2;
+	}
+
+	/**
+	 * Demodulates the next buffer of the stream. The input buffer is not modified. While the
+	 * squelch is closed, the audio is filled with silence.
+	 *
+	 * @param input			interleaved I/Q samples (float) at the input rate (or the output of the shared front-end)
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @param audio			buffer for the audio (mono; min. getMaxOutputLength(inputLength) samples)
+	 * @return number of audio samples written
+	 */
+	public int demodulate(float[] input, int inputLength, float[] audio) {
+		long startTime = Debug.threadCpuTimeNanos();
+		int length = frontEnd.process(input, inputLength, channelBuffer);
+		int numSamples = length / 2;
+
+		// Squelch (with hysteresis):
+		float power = frontEnd.getPowerDb();
+		if (squelchOpen && power < squelchDb - SQUELCH_HYSTERESIS_DB)
+			squelchOpen = false;
+		else if (!squelchOpen && power >= squelchDb)
+			squelchOpen = true;
+
+		if (!squelchOpen) {
+			Arrays.fill(audio, 0, numSamples, 0);
+		} else {
+			switch (mode) {
+				case MODE_AM:
+					demodulateAm(numSamples, audio);
+					break;
+				case MODE_USB:
+				case MODE_LSB:
+					demodulateSsb(numSamples, audio);
+					break;
+				case MODE_NFM:
+					demodulateNfm(numSamples, audio);
+					break;
+			}
+			if (mode != MODE_NFM)
+				applyAgc(audio, numSamples);
+		}
+
+		processedSamples += inputLength / 2;
+		processingTimeNs += Debug.threadCpuTimeNanos() - startTime;
+		return numSamples;
+	}
+
+	private void demodulateAm(int numSamples, float[] audio) {
+		float dc = dcLevel;
+		for (int i = 0; i < numSamples; i++) {
+			float re = channelBuffer[2 * i];
+			float im = channelBuffer[2 * i + 1];
+			float envelope = (float) Math.sqrt(re * re + im * im);
+			dc += 0.001f * (envelope - dc);
+			audio[i] = envelope - dc;
+		}
+		dcLevel = dc;
+	}
+
+	private void demodulateSsb(int numSamples, float[] audio) {
+		// shift the passband back so that the carrier is at DC and take the real part:
+		int phase = ssbPhase;
+		for (int i = 0; i < numSamples; i++) {
+			audio[i] = channelBuffer[2 * i] * AirspyNco.cos(phase) - channelBuffer[2 * i + 1] * AirspyNco.sin(phase);
+			phase += ssbPhaseIncrement;
+		}
+		ssbPhase = phase;
+	}
+
+	private void demodulateNfm(int numSamples, float[] audio) {
+		float prevI = this.prevI;
+		float prevQ = this.prevQ;
+		for (int i = 0; i < numSamples; i++) {
+			float re = channelBuffer[2 * i];
+			float im = channelBuffer[2 * i + 1];
+			audio[i] = AirspyFmDemodulator.fastAtan2(im * prevI - re * prevQ, re * prevI + im * prevQ) * nfmGain;
+			prevI = re;
+			prevQ = im;
+		}
+		this.prevI = prevI;
+		this.prevQ = prevQ;
+	}
+
+	private void applyAgc(float[] audio, int numSamples) {
+		float envelope = agcEnvelope;
+		for (int i = 0; i < numSamples; i++) {
+			float level = Math.abs(audio[i]);
+			envelope = (level > envelope) ? level : envelope * agcDecay;
+			audio[i] *= Math.min(AGC_MAX_GAIN, AGC_TARGET / (envelope + 1e-9f));
+		}
+		agcEnvelope = envelope;
+	}
+}
@@ -0,0 +1,207 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyNco.java
+ * Description: Numerically controlled oscillator that shifts complex samples (interleaved
+ *              I/Q) in frequency. It uses a 32 bit phase accumulator and a sine table, so
+ *              it does not allocate memory and needs no renormalization. The frequency can
+ *              be changed at any time; the new value is used from the next buffer on and
+ *              the phase stays continuous. getFloatStage() and getInt16Stage() return
+ *              AirspyDspStage objects that can be appended to an AirspyDspPipeline.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyNco {
+
+	private static final String LOGTAG = "AirspyNco";
+	private static final int LUT_BITS = 12;						// 4096 entries in the sine table
+	private static final int LUT_SIZE = 1 << LUT_BITS;
+	private static final int LUT_MASK = LUT_SIZE - 1;
+	private static final int COS_OFFSET = LUT_SIZE / 4;			// cos(x) = sin(x + pi/2)
+	private static final float[] SIN_FLOAT = new float[LUT_SIZE];
+	private static final short[] SIN_INT16 = new short[LUT_SIZE];	// Q15
+
+	static {
+		for (int i = 0; i < LUT_SIZE; i++) {
+			double sin = Math.sin(2 * Math.PI * i / LUT_SIZE);
+			SIN_FLOAT[i] = (float) sin;
+			SIN_INT16[i] = (short) Math.max(-32767, Math.min(32767, Math.round(sin * 32768)));
+		}
+	}
+
+	private double sampleRate;						// complex sample rate of the stream (in Sps)
+	private volatile double frequency = 0;			// frequency shift (in Hz)
+	private volatile int phaseIncrement = 0;		// phase increment per sample (2^32 is 2*pi)
+	private int phase = 0;							// phase accumulator (only used by the converter thread)
+
+	/**
+	 * Constructor for the NCO
+	 *
+	 * @param sampleRate	complex sample rate of the samples that are shifted (in Sps); for the IQ
+	 *                      sample types of the Airspy this is half of the sample rate of the Airspy
+	 * @throws Exception if the sample rate is invalid
+	 */
+	public AirspyNco(double sampleRate) throws Exception {
+		if (sampleRate <= 0) {
+			Log.e(LOGTAG, "constructor: Invalid sample rate: " + sampleRate);
+			throw new Exception("Invalid sample rate: " + sampleRate);
+		}
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Sets the frequency shift. A channel at +offset Hz is moved to baseband with a shift of
+	 * -offset Hz. Can be called while the NCO is running (e.g. from the GUI thread); the new
+	 * frequency is used from the next buffer on and the phase stays continuous.
+	 *
+	 * @param frequency		frequency shift in Hz (-sampleRate/2 - sampleRate/2)
+	 * @return true on success; false if the frequency is out of range
+	 */
+	public boolean setFrequency(double frequency) {
+		if (Math.abs(frequency) > sampleRate / 2) {
+			Log.e(LOGTAG, "setFrequency: Frequency " + frequency + " is out of range (sample rate: " + sampleRate + ")");
+			return false;
+		}
+		this.frequency = frequency;
+		this.phaseIncrement = (int) Math.round(frequency / sampleRate * 4294967296.0);
+		return true;
+	}
+
+	/**
+	 * @return frequency shift in Hz
+	 */
+	public double getFrequency() {
+		return frequency;
+	}
+
+	/**
+	 * @return complex sample rate of the samples that are shifted (in Sps)
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Table lookup of sin() for other classes of this library that run their own phase accumulator.
+	 *
+	 * @param phase		phase (2^32 is 2*pi)
+	 * @return sin(phase)
+	 */
+	static float sin(int phase) {
+		return SIN_FLOAT[phase >>> (32 - LUT_BITS)];
+	}
+
+	/**
+	 * Table lookup of cos() for other classes of this library that run their own phase accumulator.
+	 *
+	 * @param phase		phase (2^32 is 2*pi)
+	 * @return cos(phase)
+	 */
+	static float cos(int phase) {
+		return SIN_FLOAT[((phase >>> (32 - LUT_BITS)) + COS_OFFSET) & LUT_MASK];
+	}
+
+	/**
+	 * Multiplies the complex samples with the oscillator.
+	 *
+	 * @param samples	interleaved I/Q samples (float)
+	 * @param length	number of values (2 per complex sample)
+	 */
+	public void mix(float[] samples, int length) {
+		int phase = this.phase;
+		int increment = this.phaseIncrement;
+		for (int i = 0; i < length - 1; i += 2) {
+			int index = phase >>> (32 - LUT_BITS);
+			float sin = SIN_FLOAT[index];
+			float cos = SIN_FLOAT[(index + COS_OFFSET) & LUT_MASK];
+			float re = samples[i];
+			float im = samples[i + 1];
+			samples[i] = re * cos - im * sin;
+			samples[i + 1] = re * sin + im * cos;
+			phase += increment;
+		}
+		this.phase = phase;
+	}
+
+	/**
+	 * Multiplies the complex samples with the oscillator. The results are rounded and
+	 * saturated to the range of a short.
+	 *
+	 * @param samples	interleaved I/Q samples (signed-16bit-integer)
+	 * @param length	number of values (2 per complex sample)
+	 */
+	public void mix(short[] samples, int length) {
+		int phase = this.phase;
+		int increment = this.phaseIncrement;
+		for (int i = 0; i < length - 1; i += 2) {
+			int index = phase >>> (32 - LUT_BITS);
+			int sin = SIN_INT16[index];
+			int cos = SIN_INT16[(index + COS_OFFSET) & LUT_MASK];
+			int re = samples[i];
+			int im = samples[i + 1];
+			int outRe = (re * cos - im * sin + 16384) >> 15;
+			int outIm = (re * sin + im * cos + 16384) >> 15;
+			samples[i] = (short) (outRe > 32767 ? 32767 : (outRe < -32768 ? -32768 : outRe));
+			samples[i + 1] = (short) (outIm > 32767 ? 32767 : (outIm < -32768 ? -32768 : outIm));
+			phase += increment;
+		}
+		this.phase = phase;
+	}
+
+	/**
+	 * @return a stage that shifts float IQ samples with this NCO
+	 */
+	public AirspyDspStage<float[]> getFloatStage() {
+		return new AirspyDspStage<float[]>() {
+			@Override
+			public int process(float[] samples, int length) {
+				mix(samples, length);
+				return length;
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return inputLength;
+			}
+		};
+	}
+
+	/**
+	 * @return a stage that shifts int16 IQ samples with this NCO
+	 */
+	public AirspyDspStage<short[]> getInt16Stage() {
+		return new AirspyDspStage<short[]>() {
+			@Override
+			public int process(short[] samples, int length) {
+				mix(samples, length);
+				return length;
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return inputLength;
+			}
+		};
+	}
+}
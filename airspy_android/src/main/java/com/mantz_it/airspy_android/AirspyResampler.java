@@ -0,0 +1,324 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyResampler.java
+ * Description: Polyphase rational resampler (interpolation by L, decimation by M) for complex
+ *              samples (interleaved I/Q) in float or int16 format. It streams from buffer
+ *              to buffer: the filter history and the phase are carried across calls and
+ *              no memory is allocated after construction. The anti-aliasing filter is
+ *              designed from the rates (Kaiser window) or can be supplied by the user.
+ *              An instance must only be used for one stream and one sample format.
+ *              The int16 path sums the Q15 products in a 64 bit accumulator: a polyphase
+ *              filter of a sharp low-pass can have a sum of absolute taps close to or above
+ *              1.0 (e.g. 250 kSps -> 48 kSps), which would overflow 32 bits for full scale input.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyResampler {
+
+	private static final String LOGTAG = "AirspyResampler";
+	public static final int MAX_INTERPOLATION = 4096;		// limits the size of the filter bank
+	private int interpolation;			// L
+	private int decimation;				// M
+	private int tapsPerPhase;			// number of taps of each polyphase filter
+	private float[] bank;				// polyphase filters: bank[p * tapsPerPhase + k] = prototype[p + k * L]
+	private short[] bankQ15;			// same as bank but Q15 (for int16 samples)
+	private float[] historyFloat;		// last (tapsPerPhase-1) complex input samples (float)
+	private short[] historyInt16;		// last (tapsPerPhase-1) complex input samples (int16)
+	private int base = 0;				// index of the newest input sample of the next output (relative to the next buffer)
+	private int phase = 0;				// polyphase filter of the next output (0 - L-1)
+
+	/**
+	 * Constructor for a resampler with a filter that is designed from the rates. The transition
+	 * band of the filter ends at the lower of the two Nyquist frequencies.
+	 *
+	 * @param inputRate			complex sample rate of the input (in Sps)
+	 * @param outputRate		complex sample rate of the output (in Sps)
+	 * @param filterSpan		length of the filter in samples of the lower of both rates (more: sharper
+	 *                          filter, more cpu); the filter has filterSpan * max(L, M) taps
+	 * @param attenuationDb		stopband attenuation of the filter in dB
+	 * @throws Exception if the rates lead to an interpolation above MAX_INTERPOLATION or are invalid
+	 */
+	public AirspyResampler(int inputRate, int outputRate, int filterSpan, double attenuationDb) throws Exception {
+		if (inputRate <= 0 || outputRate <= 0 || filterSpan < 1) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: " + inputRate + " -> " + outputRate + " Sps, span=" + filterSpan);
+			throw new Exception("Invalid configuration: " + inputRate + " -> " + outputRate + " Sps, span=" + filterSpan);
+		}
+		int gcd = gcd(inputRate, outputRate);
+		int l = outputRate / gcd;
+		int m = inputRate / gcd;
+		if (l > MAX_INTERPOLATION) {
+			Log.e(LOGTAG, "constructor: Interpolation " + l + " is too large (max. " + MAX_INTERPOLATION + ")");
+			throw new Exception("Interpolation " + l + " is too large (max. " + MAX_INTERPOLATION + ")");
+		}
+		int numTaps = filterSpan * Math.max(l, m);
+		double nyquist = 0.5 / Math.max(l, m);		// relative to the rate of the interpolated signal
+		double transitionWidth = (attenuationDb - 7.95) / (14.36 * Math.max(1, numTaps - 1));
+		double cutoff = nyquist - transitionWidth / 2;
+		if (cutoff < nyquist / 2) {
+			Log.w(LOGTAG, "constructor: A filter span of " + filterSpan + " is not enough for " + attenuationDb
+					+ " dB. Transition band will reach beyond Nyquist.");
+			cutoff = nyquist / 2;
+		}
+		init(l, m, AirspyFilterDesign.lowpass(numTaps, cutoff, AirspyFilterDesign.kaiserBeta(attenuationDb), l));
+	}
+
+	/**
+	 * Constructor for a resampler with a filter that is designed from a passband and a stopband
+	 * edge. Signals between passband and stopband may alias into the transition band of the output.
+	 *
+	 * @param inputRate			complex sample rate of the input (in Sps)
+	 * @param outputRate		complex sample rate of the output (in Sps)
+	 * @param passband			end of the passband in Hz
+	 * @param stopband			start of the stopband in Hz
+	 * @param attenuationDb		stopband attenuation of the filter in dB
+	 * @throws Exception if the rates lead to an interpolation above MAX_INTERPOLATION or are invalid
+	 */
+	public AirspyResampler(int inputRate, int outputRate, double passband, double stopband, double attenuationDb) throws Exception {
+		if (inputRate <= 0 || outputRate <= 0 || passband <= 0 || stopband <= passband) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: " + inputRate + " -> " + outputRate + " Sps, passband="
+					+ passband + " stopband=" + stopband);
+			throw new Exception("Invalid configuration: " + inputRate + " -> " + outputRate + " Sps, passband="
+					+ passband + " stopband=" + stopband);
+		}
+		int gcd = gcd(inputRate, outputRate);
+		int l = outputRate / gcd;
+		int m = inputRate / gcd;
+		if (l > MAX_INTERPOLATION) {
+			Log.e(LOGTAG, "constructor: Interpolation " + l + " is too large (max. " + MAX_INTERPOLATION + ")");
+			throw new Exception("Interpolation " + l + " is too large (max. " + MAX_INTERPOLATION + ")");
+		}
+		double filterRate = (double) inputRate * l;		// rate of the interpolated signal
+		int numTaps = AirspyFilterDesign.kaiserNumTaps(attenuationDb, (stopband - passband) / filterRate);
+		numTaps = (numTaps + l - 1) / l * l;
+		init(l, m, AirspyFilterDesign.lowpass(numTaps, (passband + stopband) / 2 / filterRate,
+				AirspyFilterDesign.kaiserBeta(attenuationDb), l));
+	}
+
+	/**
+	 * Constructor for a resampler with a user supplied filter. The filter runs at input rate * L
+	 * and should have a DC gain of L.
+	 *
+	 * @param interpolation		interpolation factor L
+	 * @param decimation		decimation factor M
+	 * @param prototype			taps of the anti-aliasing filter
+	 * @throws Exception if the factors are invalid
+	 */
+	public AirspyResampler(int interpolation, int decimation, float[] prototype) throws Exception {
+		if (interpolation < 1 || decimation < 1 || prototype == null || prototype.length == 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: L=" + interpolation + " M=" + decimation);
+			throw new Exception("Invalid configuration: L=" + interpolation + " M=" + decimation);
+		}
+		int gcd = gcd(interpolation, decimation);
+		if (gcd != 1)
+			Log.w(LOGTAG, "constructor: L=" + interpolation + " and M=" + decimation + " are not coprime.");
+		init(interpolation, decimation, prototype);
+	}
+
+	private void init(int interpolation, int decimation, float[] prototype) throws Exception {
+		if (interpolation > MAX_INTERPOLATION) {
+			Log.e(LOGTAG, "init: Interpolation " + interpolation + " is too large (max. " + MAX_INTERPOLATION + ")");
+			throw new Exception("Interpolation " + interpolation + " is too large (max. " + MAX_INTERPOLATION + ")");
+		}
+		this.interpolation = interpolation;
+		this.decimation = decimation;
+		this.tapsPerPhase = (prototype.length + interpolation - 1) / interpolation;
+		this.bank = new float[interpolation * tapsPerPhase];
+		for (int p = 0; p < interpolation; p++) {
+			for (int k = 0; k < tapsPerPhase; k++) {
+				int i = p + k * interpolation;
+				bank[p * tapsPerPhase + k] = (i < prototype.length) ? prototype[i] : 0;
+			}
+		}
+		this.bankQ15 = AirspyFilterDesign.toQ15(bank);
+		this.historyFloat = new float[2 * (tapsPerPhase - 1)];
+		this.historyInt16 = new short[2 * (tapsPerPhase - 1)];
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/**
+	 * @return interpolation factor L
+	 */
+	public int getInterpolation() {
+		return interpolation;
+	}
+
+	/**
+	 * @return decimation factor M
+	 */
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * @return number of taps of each polyphase filter
+	 */
+	public int getTapsPerPhase() {
+		return tapsPerPhase;
+	}
+
+	/**
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @return max. number of output values (2 per complex sample) that one call can produce
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		long outputs = ((long) (inputLength / 2) * interpolation + decimation - 1) / decimation + 1;
+		return (int) (2 * outputs);
+	}
+
+	/**
+	 * Clears the filter history (e.g. after a discontinuity of the input stream).
+	 */
+	public void reset() {
+		base = 0;
+		phase = 0;
+		Arrays.fill(historyFloat, 0);
+		Arrays.fill(historyInt16, (short) 0);
+	}
+
+	/**
+	 * Resamples the next buffer of the stream.
+	 *
+	 * @param input			interleaved I/Q samples (float)
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @param output		buffer for the output (min. getMaxOutputLength(inputLength) values)
+	 * @return number of values written to the output (2 per complex sample)
+	 */
+	public int resample(float[] input, int inputLength, float[] output) {
+		int n = inputLength / 2;
+		int hist = tapsPerPhase - 1;
+		int out = 0;
+		while (base < n) {
+			int coef = phase * tapsPerPhase;
+			float re = 0;
+			float im = 0;
+			if (base >= hist) {
+				// fast path: all taps are inside the current buffer
+				int j = 2 * base;
+				for (int k = 0; k < tapsPerPhase; k++) {
+					float c = bank[coef + k];
+					re += c * input[j];
+					im += c * input[j + 1];
+					j -= 2;
+				}
+			} else {
+				for (int k = 0; k < tapsPerPhase; k++) {
+					int idx = base - k;
+					float c = bank[coef + k];
+					if (idx >= 0) {
+						re += c * input[2 * idx];
+						im += c * input[2 * idx + 1];
+					} else {
+						re += c * historyFloat[2 * (hist + idx)];
+						im += c * historyFloat[2 * (hist + idx) + 1];
+					}
+				}
+			}
+			output[out++] = re;
+			output[out++] = im;
+			phase += decimation;
+			base += phase / interpolation;
+			phase %= interpolation;
+		}
+		base -= n;
+
+		// keep the newest samples for the next call:
+		if (n >= hist) {
+			System.arraycopy(input, 2 * (n - hist), historyFloat, 0, 2 * hist);
+		} else {
+			System.arraycopy(historyFloat, 2 * n, historyFloat, 0, 2 * (hist - n));
+			System.arraycopy(input, 0, historyFloat, 2 * (hist - n), 2 * n);
+		}
+		return out;
+	}
+
+	/**
+	 * Resamples the next buffer of the stream. The results are rounded and saturated to the
+	 * range of a short.
+	 *
+	 * @param input			interleaved I/Q samples (signed-16bit-integer)
+	 * @param inputLength	number of input values (2 per complex sample)
+	 * @param output		buffer for the output (min. getMaxOutputLength(inputLength) values)
+	 * @return number of values written to the output (2 per complex sample)
+	 */
+	public int resample(short[] input, int inputLength, short[] output) {
+		int n = inputLength / 2;
+		int hist = tapsPerPhase - 1;
+		int out = 0;
+		while (base < n) {
+			int coef = phase * tapsPerPhase;
+			long re = 0;
+			long im = 0;
+			if (base >= hist) {
+				// fast path: all taps are inside the current buffer
+				int j = 2 * base;
+				for (int k = 0; k < tapsPerPhase; k++) {
+					long c = bankQ15[coef + k];
+					re += c * input[j];
+					im += c * input[j + 1];
+					j -= 2;
+				}
+			} else {
+				for (int k = 0; k < tapsPerPhase; k++) {
+					int idx = base - k;
+					long c = bankQ15[coef + k];
+					if (idx >= 0) {
+						re += c * input[2 * idx];
+						im += c * input[2 * idx + 1];
+					} else {
+						re += c * historyInt16[2 * (hist + idx)];
+						im += c * historyInt16[2 * (hist + idx) + 1];
+					}
+				}
+			}
+			re = (re + 16384) >> 15;
+			im = (im + 16384) >> 15;
+			output[out++] = (short) (re > 32767 ? 32767 : (re < -32768 ? -32768 : re));
+			output[out++] = (short) (im > 32767 ? 32767 : (im < -32768 ? -32768 : im));
+			phase += decimation;
+			base += phase / interpolation;
+			phase %= interpolation;
+		}
+		base -= n;
+
+		// keep the newest samples for the next call:
+		if (n >= hist) {
+			System.arraycopy(input, 2 * (n - hist), historyInt16, 0, 2 * hist);
+		} else {
+			System.arraycopy(historyInt16, 2 * n, historyInt16, 0, 2 * (hist - n));
+			System.arraycopy(input, 0, historyInt16, 2 * (hist - n), 2 * n);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,328 @@
+package com.mantz_it.airspy_android;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspySampleStatistics.java
+ * Description: This class accumulates statistics of the raw 12 bit samples (peak, RMS, DC
+ *              offset, clipping at 0/4095 and optionally a histogram of the ADC values). The values are collected by the converters in the same loop that
+ *              converts the samples (see the convertSamples*() variants that take a
+ *              statistics object). Each time enough samples were seen, an immutable snapshot
+ *              is published which can be read by any thread (e.g. by the AirspyAgc).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspySampleStatistics {
+
+	public static final int FULL_SCALE = 2048;			// max. magnitude of a raw 12 bit sample (after removing the offset)
+	public static final int RAW_MIN = 0;				// raw value of a sample that was clipped at the bottom
+	public static final int RAW_MAX = 4095;				// raw value of a sample that was clipped at the top
+	public static final int HISTOGRAM_SIZE = 4096;		// one bin for each raw 12 bit value
+	private int samplesPerInterval;						// number of samples that make up one snapshot
+	private boolean histogramEnabled;					// if true, a histogram of the raw values is collected
+
+	// Accumulators of the current interval (guarded by this):
+	private long count = 0;
+	private int peak = 0;
+	private long sum = 0;
+	private long sumSquares = 0;
+	private long clippedLow = 0;
+	private long clippedHigh = 0;
+	private int[] histogram = null;
+	private long sequence = 0;
+
+	// Each converter thread counts the histogram of a buffer in its own array before it is merged:
+	private ThreadLocal<int[]> histogramScratch = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[HISTOGRAM_SIZE];
+		}
+	};
+
+	private AtomicReference<Snapshot> latest = new AtomicReference<Snapshot>(null);
+
+	/**
+	 * Immutable set of statistics of one interval
+	 */
+	public static class Snapshot {
+		private long sequence;
+		private long timestamp;
+		private long count;
+		private int peak;
+		private double mean;
+		private double rms;
+		private long clippedLow;
+		private long clippedHigh;
+		private int[] histogram;
+
+		public Snapshot(long sequence, long timestamp, long count, int peak, double mean, double rms,
+						long clippedLow, long clippedHigh, int[] histogram) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.count = count;
+			this.peak = peak;
+			this.mean = mean;
+			this.rms = rms;
+			this.clippedLow = clippedLow;
+			this.clippedHigh = clippedHigh;
+			this.histogram = histogram;
+		}
+
+		/**
+		 * @return running number of the snapshot (starting at 0)
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return time (System.currentTimeMillis()) at which the snapshot was taken
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return number of samples in the interval
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return max. magnitude of the samples in the interval (0 - 2048)
+		 */
+		public int getPeak() {
+			return peak;
+		}
+
+		/**
+		 * @return mean value (DC offset) of the samples in the interval (-2048 - 2047)
+		 */
+		public double getDcOffset() {
+			return mean;
+		}
+
+		/**
+		 * @return root mean square of the samples in the interval (0 - 2048); includes the DC offset
+		 */
+		public double getRms() {
+			return rms;
+		}
+
+		/**
+		 * @return number of samples in the interval that hit the limits of the ADC
+		 */
+		public long getClipped() {
+			return clippedLow + clippedHigh;
+		}
+
+		/**
+		 * @return number of samples in the interval with the raw value 0
+		 */
+		public long getClippedLow() {
+			return clippedLow;
+		}
+
+		/**
+		 * @return number of samples in the interval with the raw value 4095
+		 */
+		public long getClippedHigh() {
+			return clippedHigh;
+		}
+
+		/**
+		 * @return peak relative to full scale in dB (-inf if all samples were zero)
+		 */
+		public double getPeakDbfs() {
+			return 20 * Math.log10((double) peak / FULL_SCALE);
+		}
+
+		/**
+		 * @return RMS relative to full scale in dB (-inf if all samples were zero)
+		 */
+		public double getRmsDbfs() {
+			return 20 * Math.log10(rms / FULL_SCALE);
+		}
+
+		/**
+		 * @return fraction of samples that were clipped (0 - 1)
+		 */
+		public double getClipRatio() {
+			return count == 0 ? 0 : (double) getClipped() / count;
+		}
+
+		/**
+		 * @return true if the snapshot contains a histogram
+		 */
+		public boolean hasHistogram() {
+			return histogram != null;
+		}
+
+		/**
+		 * @param rawValue	raw 12 bit value (0 - 4095)
+		 * @return number of samples in the interval with this raw value (0 if there is no histogram)
+		 */
+		public int getHistogramBin(int rawValue) {
+			return histogram == null ? 0 : histogram[rawValue];
+		}
+
+		/**
+		 * Sums up the histogram into fewer bins (e.g. for displaying it).
+		 *
+		 * @param numBins	number of bins (divisor of 4096)
+		 * @return array with the number of samples per bin or null if there is no histogram
+		 */
+		public int[] getHistogram(int numBins) {
+			if (histogram == null || numBins <= 0 || HISTOGRAM_SIZE % numBins != 0)
+				return null;
+			int[] bins = new int[numBins];
+			int width = HISTOGRAM_SIZE / numBins;
+			for (int i = 0; i < HISTOGRAM_SIZE; i++)
+				bins[i / width] += histogram[i];
+			return bins;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("peak=%.1f dBFS rms=%.1f dBFS dc=%.1f clipped=%d+%d/%d", getPeakDbfs(), getRmsDbfs(),
+					mean, clippedLow, clippedHigh, count);
+		}
+	}
+
+	/**
+	 * Constructor for the statistics (without histogram)
+	 *
+	 * @param samplesPerInterval	number of samples after which a new snapshot is published
+	 * @throws Exception if samplesPerInterval is not positive
+	 */
+	public AirspySampleStatistics(int samplesPerInterval) throws Exception {
+		this(samplesPerInterval, false);
+	}
+
+	/**
+	 * Constructor for the statistics
+	 *
+	 * @param samplesPerInterval	number of samples after which a new snapshot is published
+	 * @param histogramEnabled		if true, a histogram of the raw 12 bit values is collected
+	 * @throws Exception if samplesPerInterval is not positive
+	 */
+	public AirspySampleStatistics(int samplesPerInterval, boolean histogramEnabled) throws Exception {
+		if (samplesPerInterval <= 0)
+			throw new Exception("Invalid number of samples per interval: " + samplesPerInterval);
+		this.samplesPerInterval = samplesPerInterval;
+		this.histogramEnabled = histogramEnabled;
+		if (histogramEnabled)
+			this.histogram = new int[HISTOGRAM_SIZE];
+	}
+
+	/**
+	 * @return number of samples after which a new snapshot is published
+	 */
+	public int getSamplesPerInterval() {
+		return samplesPerInterval;
+	}
+
+	/**
+	 * @return true if a histogram of the raw values is collected
+	 */
+	public boolean isHistogramEnabled() {
+		return histogramEnabled;
+	}
+
+	/**
+	 * Returns the array in which the calling thread counts the histogram of one buffer.
+	 * The array is passed back to add() which merges and clears it.
+	 *
+	 * @return histogram array of the calling thread (all zero) or null if the histogram is disabled
+	 */
+	public int[] getHistogramScratch() {
+		return histogramEnabled ? histogramScratch.get() : null;
+	}
+
+	/**
+	 * Adds the partial results of one buffer. Called by the converters once per buffer, so the
+	 * synchronization costs nothing compared to the conversion itself.
+	 *
+	 * @param count			number of samples in the buffer
+	 * @param peak			max. magnitude of the samples in the buffer
+	 * @param sum			sum of the samples in the buffer
+	 * @param sumSquares	sum of the squared samples in the buffer
+	 * @param clippedLow	number of samples with the raw value 0
+	 * @param clippedHigh	number of samples with the raw value 4095
+	 * @param histogram		histogram of the buffer (from getHistogramScratch(); will be cleared) or null
+	 */
+	public synchronized void add(int count, int peak, long sum, long sumSquares, int clippedLow, int clippedHigh, int[] histogram) {
+		this.count += count;
+		this.sum += sum;
+		this.sumSquares += sumSquares;
+		this.clippedLow += clippedLow;
+		this.clippedHigh += clippedHigh;
+		if (peak > this.peak)
+			this.peak = peak;
+		if (histogram != null && this.histogram != null) {
+			for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+				this.histogram[i] += histogram[i];
+				histogram[i] = 0;
+			}
+		}
+
+		if (this.count >= samplesPerInterval) {
+			latest.set(new Snapshot(sequence++, System.currentTimeMillis(), this.count, this.peak,
+					(double) this.sum / this.count, Math.sqrt((double) this.sumSquares / this.count),
+					this.clippedLow, this.clippedHigh, this.histogram));
+			this.count = 0;
+			this.peak = 0;
+			this.sum = 0;
+			this.sumSquares = 0;
+			this.clippedLow = 0;
+			this.clippedHigh = 0;
+			if (this.histogram != null)
+				this.histogram = new int[HISTOGRAM_SIZE];	// the old array now belongs to the snapshot
+		}
+	}
+
+	/**
+	 * Returns the snapshot of the last completed interval. This does not lock and can be
+	 * called at any rate (e.g. by the UI).
+	 *
+	 * @return the snapshot of the last completed interval or null if there is none yet
+	 */
+	public Snapshot getSnapshot() {
+		return latest.get();
+	}
+
+	/**
+	 * Discards the current interval and the last snapshot. Called by the Airspy in startRX().
+	 */
+	public synchronized void reset() {
+		count = 0;
+		peak = 0;
+		sum = 0;
+		sumSquares = 0;
+		clippedLow = 0;
+		clippedHigh = 0;
+		if (histogram != null)
+			histogram = new int[HISTOGRAM_SIZE];
+		latest.set(null);
+	}
+}
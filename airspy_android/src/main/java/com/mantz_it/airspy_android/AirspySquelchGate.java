@@ -0,0 +1,222 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspySquelchGate.java
+ * Description: This class implements a power squelch that gates whole buffers in the
+ *              converter pass (see getFloatStage() and getInt16Stage()). While the squelch is
+ *              closed the buffers are dropped and go back to the pool; while it is open they
+ *              are delivered and the gate records the stream position of each delivered
+ *              buffer, so that a consumer (e.g. the AirspyGatedRecorder) can reconstruct the
+ *              gaps. Hysteresis and a hangover time keep the gate from flapping.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspySquelchGate {
+
+	private static final String LOGTAG = "AirspySquelchGate";
+
+	private volatile float openThreshold;		// linear power that opens the gate (1.0 is full scale)
+	private volatile float closeThreshold;		// linear power below which the gate starts to close
+	private int hangoverBuffers;				// number of quiet buffers after which the gate closes
+	private boolean open = false;
+	private int quietBuffers = 0;
+	private long position = 0;					// number of values (array elements) that passed the gate
+	private volatile long openValues = 0;		// number of values that were delivered
+	private volatile float lastPowerDb = Float.NEGATIVE_INFINITY;
+	private LinkedBlockingQueue<Segment> segments = new LinkedBlockingQueue<Segment>();
+
+	/**
+	 * Position of a delivered buffer in the stream
+	 */
+	public static class Segment {
+		private long position;
+		private long timestamp;
+		private int length;
+
+		public Segment(long position, long timestamp, int length) {
+			this.position = position;
+			this.timestamp = timestamp;
+			this.length = length;
+		}
+
+		/**
+		 * @return number of values (array elements) in the stream before this buffer
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		/**
+		 * @return time (System.currentTimeMillis()) at which the buffer was converted
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return number of valid values in the buffer
+		 */
+		public int getLength() {
+			return length;
+		}
+	}
+
+	/**
+	 * Constructor for the squelch gate
+	 *
+	 * @param thresholdDb		average power of the complex samples (dB relative to full scale, see
+	 *                          AirspyDspStages.Squelch) that opens the gate
+	 * @param hysteresisDb		the gate closes below thresholdDb - hysteresisDb
+	 * @param hangoverBuffers	number of buffers below the closing threshold before the gate closes
+	 * @throws Exception if hysteresis or hangover are negative
+	 */
+	public AirspySquelchGate(float thresholdDb, float hysteresisDb, int hangoverBuffers) throws Exception {
+		if (hysteresisDb < 0 || hangoverBuffers < 0) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: hysteresisDb=" + hysteresisDb + " hangoverBuffers=" + hangoverBuffers);
+			throw new Exception("Invalid configuration: hysteresisDb=" + hysteresisDb + " hangoverBuffers=" + hangoverBuffers);
+		}
+		this.hangoverBuffers = hangoverBuffers;
+		setThreshold(thresholdDb, hysteresisDb);
+	}
+
+	/**
+	 * Changes the threshold (can be called while receiving).
+	 *
+	 * @param thresholdDb	average power (dB relative to full scale) that opens the gate
+	 * @param hysteresisDb	the gate closes below thresholdDb - hysteresisDb
+	 */
+	public void setThreshold(float thresholdDb, float hysteresisDb) {
+		this.openThreshold = (float) Math.pow(10, thresholdDb / 10);
+		this.closeThreshold = (float) Math.pow(10, (thresholdDb - hysteresisDb) / 10);
+	}
+
+	/**
+	 * @return average power of the last buffer in dB relative to full scale
+	 */
+	public float getLastPowerDb() {
+		return lastPowerDb;
+	}
+
+	/**
+	 * @return true if the gate is currently open
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * @return fraction of the stream that was delivered (0 - 1)
+	 */
+	public double getOpenRatio() {
+		return position == 0 ? 0 : (double) openValues / position;
+	}
+
+	/**
+	 * Returns the position of the next delivered buffer. The segments are in the same order
+	 * as the buffers in the output queue of the Airspy (the gate has to be the last stage
+	 * of the pipeline).
+	 *
+	 * @return the queue of segments (one per delivered buffer)
+	 */
+	public LinkedBlockingQueue<Segment> getSegmentQueue() {
+		return segments;
+	}
+
+	/**
+	 * Decides whether a buffer with the given average power is delivered.
+	 *
+	 * @param power		linear average power of the buffer (1.0 is full scale)
+	 * @param length	number of values in the buffer
+	 * @return length if the buffer is delivered; 0 if it is dropped
+	 */
+	private int gate(float power, int length) {
+		lastPowerDb = (float) (10 * Math.log10(power));
+		if (power > openThreshold) {
+			open = true;
+			quietBuffers = 0;
+		} else if (open && power < closeThreshold && ++quietBuffers > hangoverBuffers) {
+			open = false;
+		}
+		long start = position;
+		position += length;
+		if (!open)
+			return 0;
+		openValues += length;
+		segments.offer(new Segment(start, System.currentTimeMillis(), length));
+		return length;
+	}
+
+	/**
+	 * Clears the segment queue and the statistics. Has to be called before the Airspy is started.
+	 */
+	public void reset() {
+		open = false;
+		quietBuffers = 0;
+		position = 0;
+		openValues = 0;
+		segments.clear();
+	}
+
+	/**
+	 * @return a stage that gates float samples (IQ or real)
+	 */
+	public AirspyDspStage<float[]> getFloatStage() {
+		return new AirspyDspStage<float[]>() {
+			@Override
+			public int process(float[] samples, int length) {
+				float sum = 0;
+				for (int i = 0; i < length; i++)
+					sum += samples[i] * samples[i];
+				return gate(length < 2 ? 0 : sum / (length / 2), length);
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return inputLength;
+			}
+		};
+	}
+
+	/**
+	 * @return a stage that gates int16 samples (IQ or real)
+	 */
+	public AirspyDspStage<short[]> getInt16Stage() {
+		return new AirspyDspStage<short[]>() {
+			@Override
+			public int process(short[] samples, int length) {
+				long sum = 0;
+				for (int i = 0; i < length; i++)
+					sum += samples[i] * samples[i];
+				return gate(length < 2 ? 0 : (float) ((double) sum / (length / 2) / (32768.0 * 32768.0)), length);
+			}
+
+			@Override
+			public int getOutputLength(int inputLength) {
+				return inputLength;
+			}
+		};
+	}
+}
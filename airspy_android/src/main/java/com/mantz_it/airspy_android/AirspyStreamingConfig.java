@@ -0,0 +1,318 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyStreamingConfig.java
+ * Description: This class derives the buffer sizes of the receive pipeline (USB packet
+ *              size, number of parallel USB requests and the depths of the buffer pools
+ *              and queues) from a target latency and a target headroom. Set it with
+ *              Airspy.setStreamingConfig() before calling startRX().
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyStreamingConfig {
+
+	private static final String LOGTAG = "AirspyStreamingConfig";
+
+	// The packet size is always a multiple of this value: It is a multiple of the USB high speed
+	// bulk packet size (512 bytes) and of 12 bytes (8 packed samples, see Airspy.unpackSamples())
+	public static final int PACKET_SIZE_ALIGNMENT = 1536;
+
+	// Android versions before 9 (API 28) can not queue UsbRequests with more than 16 KiB:
+	public static final int DEFAULT_MAX_PACKET_SIZE = 10 * PACKET_SIZE_ALIGNMENT;	// 15360 bytes
+
+	// The target latency is split into this number of packets (a packet has to be received
+	// completely before it can be processed, so its duration is the minimal latency):
+	private static final int PACKETS_PER_LATENCY = 4;
+
+	private static final int MIN_USB_REQUESTS = 4;
+	private static final int MAX_USB_REQUESTS = 64;
+	private static final int MIN_QUEUE_SIZE = 4;
+	private static final int MAX_QUEUE_SIZE = 1024;
+	private static final int HELD_BUFFERS = 2;		// buffers that are held by the threads (not in a queue)
+
+	// Input:
+	private int targetLatencyMs;
+	private int headroomMs;
+	private int sampleRate;
+	private boolean packingEnabled;
+	private int sampleType;
+
+	// Derived values:
+	private int usbPacketSize;			// size of a UsbRequest in bytes
+	private int numUsbRequests;			// number of parallel UsbRequests
+	private int usbQueueSize;			// number of buffers in the usb pool (and size of the usbQueue)
+	private int conversionQueueSize;	// number of buffers in the conversion pool (and size of the conversion queue)
+
+	/**
+	 * Constructor for the streaming configuration. Uses DEFAULT_MAX_PACKET_SIZE.
+	 *
+	 * @param targetLatencyMs	latency (in ms) that the pipeline should add in normal operation
+	 * @param headroomMs		time (in ms) that the application (or the converter) may stall without losing samples
+	 * @param sampleRate		sample rate of the Airspy in Sps (see Airspy.getSampleRates())
+	 * @param packingEnabled	true if packing is enabled
+	 * @param sampleType		sample type that will be used (Airspy.AIRSPY_SAMPLE_*); needed for the memory footprint
+	 * @throws Exception if the values are invalid
+	 */
+	public AirspyStreamingConfig(int targetLatencyMs, int headroomMs, int sampleRate, boolean packingEnabled,
+								 int sampleType) throws Exception {
+		this(targetLatencyMs, headroomMs, sampleRate, packingEnabled, sampleType, DEFAULT_MAX_PACKET_SIZE);
+	}
+
+	/**
+	 * Constructor for the streaming configuration.
+	 *
+	 * @param targetLatencyMs	latency (in ms) that the pipeline should add in normal operation
+	 * @param headroomMs		time (in ms) that the application (or the converter) may stall without losing samples
+	 * @param sampleRate		sample rate of the Airspy in Sps (see Airspy.getSampleRates())
+	 * @param packingEnabled	true if packing is enabled
+	 * @param sampleType		sample type that will be used (Airspy.AIRSPY_SAMPLE_*); needed for the memory footprint
+	 * @param maxPacketSize		max. size of a UsbRequest in bytes (only raise it above DEFAULT_MAX_PACKET_SIZE on Android 9+)
+	 * @throws Exception if the values are invalid
+	 */
+	public AirspyStreamingConfig(int targetLatencyMs, int headroomMs, int sampleRate, boolean packingEnabled,
+								 int sampleType, int maxPacketSize) throws Exception {
+		if (targetLatencyMs <= 0 || maxPacketSize < PACKET_SIZE_ALIGNMENT) {
+			Log.e(LOGTAG, "constructor: Invalid parameters: latency=" + targetLatencyMs + "ms maxPacketSize=" + maxPacketSize);
+			throw new Exception("Invalid streaming configuration");
+		}
+		setParameters(headroomMs, sampleRate, packingEnabled, sampleType);
+		this.targetLatencyMs = targetLatencyMs;
+
+		// Packet size: a fraction of the target latency, aligned and within the limits
+		double bytesPerMs = getUsbByteRate() / 1000.0;
+		int alignedMax = maxPacketSize / PACKET_SIZE_ALIGNMENT * PACKET_SIZE_ALIGNMENT;
+		int packets = (int) Math.round(bytesPerMs * targetLatencyMs / PACKETS_PER_LATENCY / PACKET_SIZE_ALIGNMENT);
+		this.usbPacketSize = Math.max(PACKET_SIZE_ALIGNMENT, Math.min(alignedMax, packets * PACKET_SIZE_ALIGNMENT));
+
+		// USB requests: The device fills queued requests while the usb thread is not scheduled. They
+		// don't add latency, so we queue enough of them to bridge twice the target latency
+		this.numUsbRequests = clamp((int) Math.ceil(2 * targetLatencyMs / getPacketDurationMs()), MIN_USB_REQUESTS, MAX_USB_REQUESTS);
+
+		deriveQueueSizes();
+	}
+
+	/**
+	 * Constructor used by fromTransferSettings()
+	 */
+	private AirspyStreamingConfig() {
+	}
+
+	/**
+	 * Creates a streaming configuration with a given USB packet size and number of USB requests
+	 * (e.g. found by the AirspyAutotuner). Only the queue sizes are derived from the headroom.
+	 *
+	 * @param usbPacketSize		size of a UsbRequest in bytes (multiple of PACKET_SIZE_ALIGNMENT)
+	 * @param numUsbRequests	number of parallel UsbRequests
+	 * @param headroomMs		time (in ms) that the application (or the converter) may stall without losing samples
+	 * @param sampleRate		sample rate of the Airspy in Sps (see Airspy.getSampleRates())
+	 * @param packingEnabled	true if packing is enabled
+	 * @param sampleType		sample type that will be used (Airspy.AIRSPY_SAMPLE_*); needed for the memory footprint
+	 * @return streaming configuration
+	 * @throws Exception if the values are invalid
+	 */
+	public static AirspyStreamingConfig fromTransferSettings(int usbPacketSize, int numUsbRequests, int headroomMs,
+															 int sampleRate, boolean packingEnabled, int sampleType) throws Exception {
+		if (usbPacketSize < PACKET_SIZE_ALIGNMENT || usbPacketSize % PACKET_SIZE_ALIGNMENT != 0 || numUsbRequests < 1) {
+			Log.e(LOGTAG, "fromTransferSettings: Invalid transfer settings: packetSize=" + usbPacketSize
+					+ " requests=" + numUsbRequests);
+			throw new Exception("Invalid transfer settings");
+		}
+		AirspyStreamingConfig config = new AirspyStreamingConfig();
+		config.setParameters(headroomMs, sampleRate, packingEnabled, sampleType);
+		config.usbPacketSize = usbPacketSize;
+		config.numUsbRequests = numUsbRequests;
+		config.targetLatencyMs = (int) Math.ceil(config.getExpectedLatencyMs());
+		config.deriveQueueSizes();
+		return config;
+	}
+
+	/**
+	 * Checks and sets the common input values
+	 */
+	private void setParameters(int headroomMs, int sampleRate, boolean packingEnabled, int sampleType) throws Exception {
+		if (headroomMs < 0 || sampleRate <= 0) {
+			Log.e(LOGTAG, "setParameters: Invalid parameters: headroom=" + headroomMs + "ms sampleRate=" + sampleRate);
+			throw new Exception("Invalid streaming configuration");
+		}
+		if (sampleType < Airspy.AIRSPY_SAMPLE_FLOAT32_IQ || sampleType > Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED) {
+			Log.e(LOGTAG, "setParameters: Invalid sample type: " + sampleType);
+			throw new Exception("Invalid sample type: " + sampleType);
+		}
+		this.headroomMs = headroomMs;
+		this.sampleRate = sampleRate;
+		this.packingEnabled = packingEnabled;
+		this.sampleType = sampleType;
+	}
+
+	/**
+	 * Derives the queue sizes from the headroom (packet size and number of requests must be set)
+	 */
+	private void deriveQueueSizes() {
+		// Queues: They buffer the samples while the consumer stalls. First the conversion queue runs
+		// full, then the usbQueue. So each of them has to hold half of the headroom. The usb pool
+		// additionally has to provide the buffers for all queued requests
+		int queueDepth = clamp((int) Math.ceil(headroomMs / getPacketDurationMs() / 2) + HELD_BUFFERS, MIN_QUEUE_SIZE, MAX_QUEUE_SIZE);
+		this.usbQueueSize = numUsbRequests + queueDepth;
+		this.conversionQueueSize = queueDepth;
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * @return number of bytes per second that are transferred over USB
+	 */
+	public long getUsbByteRate() {
+		return packingEnabled ? sampleRate * 3L / 2 : sampleRate * 2L;
+	}
+
+	/**
+	 * @return duration of one USB packet in milliseconds
+	 */
+	public double getPacketDurationMs() {
+		return usbPacketSize * 1000.0 / getUsbByteRate();
+	}
+
+	/**
+	 * Returns the latency added by the pipeline in normal operation: A packet has to be complete
+	 * before it is processed and the processing of a packet takes less than the duration of a
+	 * packet (otherwise it wouldn't run in real time).
+	 *
+	 * @return latency in ms added by the pipeline in normal operation
+	 */
+	public double getExpectedLatencyMs() {
+		return 2 * getPacketDurationMs();
+	}
+
+	/**
+	 * @return latency in ms if all queues are full (after the consumer stalled for the headroom)
+	 */
+	public double getMaxLatencyMs() {
+		return getPacketDurationMs() * (1 + (usbQueueSize - numUsbRequests) + conversionQueueSize);
+	}
+
+	/**
+	 * @return time in ms that the consumer may stall before the usbQueue runs full
+	 */
+	public double getHeadroomMs() {
+		return getPacketDurationMs() * (usbQueueSize - numUsbRequests + conversionQueueSize);
+	}
+
+	/**
+	 * @return size of a UsbRequest in bytes (as transferred; see Airspy.getUsbPacketSize() for the unpacked size)
+	 */
+	public int getUsbPacketSize() {
+		return usbPacketSize;
+	}
+
+	/**
+	 * @return number of parallel UsbRequests
+	 */
+	public int getNumUsbRequests() {
+		return numUsbRequests;
+	}
+
+	/**
+	 * @return number of buffers in the usb buffer pool (and size of the usbQueue)
+	 */
+	public int getUsbQueueSize() {
+		return usbQueueSize;
+	}
+
+	/**
+	 * @return number of buffers in the conversion buffer pool (and size of the conversion queue)
+	 */
+	public int getConversionQueueSize() {
+		return conversionQueueSize;
+	}
+
+	/**
+	 * @return size of a converted buffer in bytes (depends on the sample type)
+	 */
+	public int getConversionBufferSize() {
+		int samples = (packingEnabled ? usbPacketSize * 4 / 3 : usbPacketSize) / 2;
+		switch (sampleType) {
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_IQ:
+			case Airspy.AIRSPY_SAMPLE_FLOAT32_REAL:
+				return samples * 4;
+			case Airspy.AIRSPY_SAMPLE_INT8_IQ:
+			case Airspy.AIRSPY_SAMPLE_UINT8_IQ:
+				return samples;
+			case Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED:
+				return samples + 1;
+			default:
+				return samples * 2;
+		}
+	}
+
+	/**
+	 * @return memory in bytes that is allocated for the usb buffer pool
+	 */
+	public long getUsbMemory() {
+		return (long) usbQueueSize * usbPacketSize;
+	}
+
+	/**
+	 * @return memory in bytes that is allocated for the conversion buffer pool (0 in raw mode)
+	 */
+	public long getConversionMemory() {
+		return (long) conversionQueueSize * getConversionBufferSize();
+	}
+
+	/**
+	 * @return memory in bytes that is allocated for all buffer pools
+	 */
+	public long getMemoryFootprint() {
+		return getUsbMemory() + getConversionMemory();
+	}
+
+	public int getTargetLatencyMs() {
+		return targetLatencyMs;
+	}
+
+	public int getTargetHeadroomMs() {
+		return headroomMs;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public boolean isPackingEnabled() {
+		return packingEnabled;
+	}
+
+	public int getSampleType() {
+		return sampleType;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("packet=%d bytes (%.2f ms) requests=%d usbQueue=%d conversionQueue=%d "
+						+ "latency=%.1f ms (max %.1f ms) headroom=%.1f ms memory=%d KiB",
+				usbPacketSize, getPacketDurationMs(), numUsbRequests, usbQueueSize, conversionQueueSize,
+				getExpectedLatencyMs(), getMaxLatencyMs(), getHeadroomMs(), getMemoryFootprint() / 1024);
+	}
+}
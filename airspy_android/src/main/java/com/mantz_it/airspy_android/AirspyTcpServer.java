@@ -0,0 +1,555 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyTcpServer.java
+ * Description: This class implements an rtl_tcp compatible TCP server that streams
+ *              the IQ samples of the Airspy to several network clients. It uses non-
+ *              blocking NIO with gathering writes from pooled direct buffers. Each
+ *              client has its own sample format, decimation and a bounded queue, so
+ *              that slow clients cannot stall the stream of the other clients.
+ *              The samples have to be interleaved (I,Q,I,Q,...): the server refuses an
+ *              Airspy that is configured for Airspy.AIRSPY_IQ_LAYOUT_SPLIT.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyTcpServer extends Thread {
+
+	private static final String LOGTAG = "AirspyTcpServer";
+
+	// Sample formats of the clients:
+	public static final int FORMAT_UINT8 = 0;			// 2 * 8bit unsigned int per sample (rtl_tcp compatible)
+	public static final int FORMAT_INT16 = 1;			// 2 * 16bit signed int per sample (little endian)
+	public static final int FORMAT_FLOAT32 = 2;			// 2 * 32bit float per sample (little endian)
+
+	// Commands (rtl_tcp compatible; 1 byte command + 4 byte parameter in big endian):
+	public static final int CMD_SET_FREQUENCY = 0x01;
+	public static final int CMD_SET_SAMPLE_RATE = 0x02;
+	public static final int CMD_SET_GAIN_MODE = 0x03;
+	public static final int CMD_SET_GAIN = 0x04;
+	public static final int CMD_SET_AGC_MODE = 0x08;				// RTL2832 digital AGC (ignored)
+	public static final int CMD_SET_GAIN_BY_INDEX = 0x0d;
+	// Extended commands:
+	public static final int CMD_SET_CLIENT_FORMAT = 0x80;
+	public static final int CMD_SET_CLIENT_DECIMATION = 0x81;		// 1 - 65536
+	public static final int CMD_SET_LNA_GAIN = 0x82;
+	public static final int CMD_SET_MIXER_GAIN = 0x83;
+	public static final int CMD_SET_VGA_GAIN = 0x84;
+
+	private static final int CLIENT_QUEUE_SIZE = 32;		// Number of buffers that can be queued per client
+	private static final int MAX_CLIENT_DECIMATION = 65536;	// 32767 * 65536 still fits into the int accumulators
+	private static final int RTL_TCP_TUNER_R820T = 5;		// tuner type in the rtl_tcp header
+	private static final int GAIN_COUNT = 22;				// number of gain steps in the rtl_tcp header
+	private boolean stopRequested = false;
+	private ArrayBlockingQueue<short[]> sampleQueue;		// Queue from which the int16 IQ samples are taken
+	private ArrayBlockingQueue<short[]> sampleReturnQueue;	// Queue to return the used sample buffers to the pool
+	private CommandHandler commandHandler;					// Executes the device commands of the clients
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
+	private CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<Client>();
+
+	/**
+	 * Constructor for a TCP server that streams the int16 IQ samples of an Airspy and executes the
+	 * commands of the clients on it. Has to be called after Airspy.startRX().
+	 *
+	 * @param port		TCP port to listen on (0 to choose a free port; see getLocalPort())
+	 * @param airspy	Airspy that is receiving with sample type AIRSPY_SAMPLE_INT16_IQ (interleaved layout)
+	 * @throws Exception if the sample type or IQ layout is not supported or the server socket cannot be opened
+	 */
+	public AirspyTcpServer(int port, Airspy airspy) throws Exception {
+		this(port, airspy.getInt16Queue(), airspy.getInt16ReturnPoolQueue(), new AirspyCommandHandler(airspy));
+		if (airspy.getSampleType() != Airspy.AIRSPY_SAMPLE_INT16_IQ) {
+			Log.e(LOGTAG, "constructor: Sample type not supported: " + airspy.getSampleType());
+			serverChannel.close();
+			selector.close();
+			throw new Exception("Sample type not supported: " + airspy.getSampleType());
+		}
+	}
+
+	/**
+	 * Constructor for the TCP server. The server socket is bound in the constructor. The
+	 * thread must be started to accept clients and stream samples.
+	 *
+	 * @param port				TCP port to listen on (0 to choose a free port; see getLocalPort())
+	 * @param sampleQueue		Queue from which the interleaved int16 IQ samples are taken (e.g. Airspy.getInt16Queue()
+	 *                          with Airspy.AIRSPY_IQ_LAYOUT_INTERLEAVED)
+	 * @param sampleReturnQueue	Queue to return the used buffers to the pool (e.g. Airspy.getInt16ReturnPoolQueue())
+	 * @param commandHandler	Executes the device commands of the clients (e.g. AirspyCommandHandler)
+	 * @throws IOException if the server socket cannot be opened
+	 */
+	public AirspyTcpServer(int port, ArrayBlockingQueue<short[]> sampleQueue, ArrayBlockingQueue<short[]> sampleReturnQueue,
+						   CommandHandler commandHandler) throws IOException {
+		this.sampleQueue = sampleQueue;
+		this.sampleReturnQueue = sampleReturnQueue;
+		this.commandHandler = commandHandler;
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.socket().setReuseAddress(true);
+		this.serverChannel.socket().bind(new InetSocketAddress(port));
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		Log.i(LOGTAG, "constructor: Listening on port " + getLocalPort());
+	}
+
+	/**
+	 * @return TCP port the server is listening on
+	 */
+	public int getLocalPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * @return number of connected clients
+	 */
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of all connected clients.
+	 *
+	 * @return list of client statistics
+	 */
+	public List<ClientStatistics> getClientStatistics() {
+		List<ClientStatistics> statistics = new ArrayList<ClientStatistics>();
+		for (Client client : clients)
+			statistics.add(new ClientStatistics(client));
+		return statistics;
+	}
+
+	public void requestStop() {
+		this.stopRequested = true;
+		selector.wakeup();
+	}
+
+	public void run() {
+		short[] samples;
+
+		while (!stopRequested) {
+			// First we distribute the next sample buffer to all clients:
+			try {
+				samples = sampleQueue.poll(10, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting for samples. Stop!");
+				break;
+			}
+			if (samples != null) {
+				for (Client client : clients) {
+					client.enqueueSamples(samples);
+					flushClient(client);
+				}
+				sampleReturnQueue.offer(samples);
+			}
+
+			// Next we handle the network events:
+			try {
+				selector.selectNow();
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error in select: " + e.getMessage());
+				break;
+			}
+			Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+			while (iterator.hasNext()) {
+				SelectionKey key = iterator.next();
+				iterator.remove();
+				if (!key.isValid())
+					continue;
+				if (key.isAcceptable())
+					acceptClient();
+				else {
+					Client client = (Client) key.attachment();
+					if (key.isReadable())
+						readCommands(client);
+					if (key.isValid() && key.isWritable())
+						flushClient(client);
+				}
+			}
+		}
+
+		// Close all connections:
+		for (Client client : clients)
+			closeClient(client);
+		try {
+			serverChannel.close();
+			selector.close();
+		} catch (IOException e) {
+			Log.e(LOGTAG, "run: Error while closing the server socket: " + e.getMessage());
+		}
+		Log.i(LOGTAG, "run: Server stopped.");
+	}
+
+	private void acceptClient() {
+		try {
+			SocketChannel channel = serverChannel.accept();
+			if (channel == null)
+				return;
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			Client client = new Client(channel);
+			client.key = channel.register(selector, SelectionKey.OP_READ, client);
+
+			// Send the rtl_tcp header ("RTL0" + tuner type + gain count):
+			ByteBuffer header = ByteBuffer.allocateDirect(12);
+			header.put((byte) 'R').put((byte) 'T').put((byte) 'L').put((byte) '0');
+			header.putInt(RTL_TCP_TUNER_R820T).putInt(GAIN_COUNT);
+			header.flip();
+			client.queue.add(header);
+			clients.add(client);
+			flushClient(client);
+			Log.i(LOGTAG, "acceptClient: Client connected: " + client.address);
+		} catch (IOException e) {
+			Log.e(LOGTAG, "acceptClient: Error while accepting client: " + e.getMessage());
+		}
+	}
+
+	private void closeClient(Client client) {
+		clients.remove(client);
+		try {
+			client.channel.close();
+		} catch (IOException e) {
+			Log.e(LOGTAG, "closeClient: Error while closing client " + client.address + ": " + e.getMessage());
+		}
+		Log.i(LOGTAG, "closeClient: Client disconnected: " + client.address + " (sent " + client.bytesSent
+				+ " Bytes, dropped " + client.droppedBuffers + " buffers)");
+	}
+
+	/**
+	 * Writes as much of the queued data of the client as possible (gathering write).
+	 * If data remains in the queue, the client is registered for OP_WRITE.
+	 *
+	 * @param client	client to flush
+	 */
+	private void flushClient(Client client) {
+		if (!client.channel.isOpen())
+			return;
+		try {
+			while (!client.queue.isEmpty()) {
+				int count = 0;
+				for (ByteBuffer buffer : client.queue)
+					client.writeArray[count++] = buffer;
+				long written = client.channel.write(client.writeArray, 0, count);
+				client.bytesSent += written;
+				// Recycle all buffers that were written completely:
+				while (!client.queue.isEmpty() && !client.queue.peekFirst().hasRemaining()) {
+					ByteBuffer buffer = client.queue.pollFirst();
+					if (buffer.capacity() == client.bufferSize)
+						client.pool.add(buffer);
+				}
+				if (written == 0)
+					break;
+			}
+			for (int i = 0; i < client.writeArray.length; i++)
+				client.writeArray[i] = null;
+			int ops = client.queue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+			if (client.key.interestOps() != ops)
+				client.key.interestOps(ops);
+		} catch (IOException e) {
+			closeClient(client);
+		}
+	}
+
+	/**
+	 * Reads and executes the commands of a client (5 bytes each).
+	 *
+	 * @param client	client to read from
+	 */
+	private void readCommands(Client client) {
+		try {
+			if (client.channel.read(client.commandBuffer) < 0) {
+				closeClient(client);
+				return;
+			}
+		} catch (IOException e) {
+			closeClient(client);
+			return;
+		}
+		if (client.commandBuffer.hasRemaining())
+			return;
+		client.commandBuffer.flip();
+		int command = client.commandBuffer.get() & 0xFF;
+		int parameter = client.commandBuffer.getInt();
+		client.commandBuffer.clear();
+
+		switch (command) {
+			case CMD_SET_CLIENT_FORMAT:
+				if (parameter < FORMAT_UINT8 || parameter > FORMAT_FLOAT32) {
+					Log.e(LOGTAG, "readCommands: Invalid sample format: " + parameter);
+					break;
+				}
+				client.format = parameter;
+				break;
+			case CMD_SET_CLIENT_DECIMATION:
+				if (parameter < 1 || parameter > MAX_CLIENT_DECIMATION) {
+					Log.e(LOGTAG, "readCommands: Invalid decimation: " + parameter);
+					break;
+				}
+				client.decimation = parameter;
+				client.decimationCount = 0;
+				client.sumI = 0;
+				client.sumQ = 0;
+				break;
+			default:
+				try {
+					if (commandHandler == null || !commandHandler.handleCommand(command, parameter))
+						Log.e(LOGTAG, "readCommands: Command 0x" + Integer.toHexString(command) + " (" + parameter + ") failed!");
+				} catch (Exception e) {
+					Log.e(LOGTAG, "readCommands: Error while executing command 0x" + Integer.toHexString(command)
+							+ ": " + e.getMessage());
+				}
+		}
+	}
+
+	/**
+	 * Bytes per IQ sample for a sample format
+	 *
+	 * @param format	FORMAT_UINT8, *_INT16 or *_FLOAT32
+	 * @return number of bytes per IQ sample
+	 */
+	public static int getBytesPerSample(int format) {
+		switch (format) {
+			case FORMAT_UINT8:		return 2;
+			case FORMAT_INT16:		return 4;
+			default:				return 8;
+		}
+	}
+
+	/**
+	 * Represents a connected client
+	 */
+	private static class Client {
+		final SocketChannel channel;
+		final String address;
+		SelectionKey key;
+		volatile int format = FORMAT_UINT8;
+		volatile int decimation = 1;
+		int decimationCount = 0;
+		int sumI = 0;
+		int sumQ = 0;
+		int bufferSize = 0;
+		final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>(CLIENT_QUEUE_SIZE + 1);
+		final ArrayDeque<ByteBuffer> pool = new ArrayDeque<ByteBuffer>(CLIENT_QUEUE_SIZE);
+		final ByteBuffer[] writeArray = new ByteBuffer[CLIENT_QUEUE_SIZE + 1];
+		final ByteBuffer commandBuffer = ByteBuffer.allocate(5);
+		final long connectTime = System.currentTimeMillis();
+		volatile long bytesSent = 0;
+		volatile long droppedBuffers = 0;
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+			this.address = String.valueOf(channel.socket().getRemoteSocketAddress());
+		}
+
+		/**
+		 * Converts the samples into the format of the client and appends them to the queue.
+		 * If the queue of the client is full, the samples are dropped.
+		 *
+		 * @param samples	interleaved int16 IQ samples
+		 */
+		void enqueueSamples(short[] samples) {
+			// The queue must not grow beyond the writeArray (the pool is reallocated if the buffer
+			// size changes while buffers of the old size are still queued):
+			if (queue.size() >= CLIENT_QUEUE_SIZE) {
+				droppedBuffers++;
+				return;
+			}
+			int size = samples.length * 4;		// max. size (float32 without decimation)
+			if (size != bufferSize) {
+				// (re)allocate the pool (queued buffers of the old size are not recycled):
+				pool.clear();
+				bufferSize = size;
+				for (int i = 0; i < CLIENT_QUEUE_SIZE; i++)
+					pool.add(ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN));
+			}
+			ByteBuffer buffer = pool.pollFirst();
+			if (buffer == null) {
+				droppedBuffers++;
+				return;
+			}
+			buffer.clear();
+			int format = this.format;
+			int decimation = this.decimation;
+			for (int i = 0; i < samples.length - 1; i += 2) {
+				sumI += samples[i];
+				sumQ += samples[i + 1];
+				if (++decimationCount < decimation)
+					continue;
+				int re = sumI / decimation;
+				int im = sumQ / decimation;
+				decimationCount = 0;
+				sumI = 0;
+				sumQ = 0;
+				switch (format) {
+					case FORMAT_UINT8:
+						buffer.put((byte) ((re >> 8) + 128));
+						buffer.put((byte) ((im >> 8) + 128));
+						break;
+					case FORMAT_INT16:
+						buffer.putShort((short) re);
+						buffer.putShort((short) im);
+						break;
+					default:
+						buffer.putFloat(re * (1f / 32768f));
+						buffer.putFloat(im * (1f / 32768f));
+						break;
+				}
+			}
+			buffer.flip();
+			if (buffer.hasRemaining())
+				queue.add(buffer);
+			else
+				pool.add(buffer);
+		}
+	}
+
+	/**
+	 * Snapshot of the statistics of a client
+	 */
+	public static class ClientStatistics {
+		public final String address;
+		public final int format;
+		public final int decimation;
+		public final long bytesSent;
+		public final long droppedBuffers;
+		public final long bytesPerSecond;
+
+		ClientStatistics(Client client) {
+			this.address = client.address;
+			this.format = client.format;
+			this.decimation = client.decimation;
+			this.bytesSent = client.bytesSent;
+			this.droppedBuffers = client.droppedBuffers;
+			long time = System.currentTimeMillis() - client.connectTime;
+			this.bytesPerSecond = time > 0 ? bytesSent * 1000 / time : 0;
+		}
+
+		@Override
+		public String toString() {
+			return address + ": format=" + format + " decimation=" + decimation + " sent=" + bytesSent
+					+ " Bytes (" + bytesPerSecond + " Bytes/s) dropped=" + droppedBuffers + " buffers";
+		}
+	}
+
+	/**
+	 * This Interface declares a method to execute the device commands that are received from the clients.
+	 * It is called from the server thread.
+	 */
+	public interface CommandHandler {
+		/**
+		 * Executes a command.
+		 *
+		 * @param command		command (CMD_SET_FREQUENCY, CMD_SET_SAMPLE_RATE, ...)
+		 * @param parameter		parameter of the command
+		 * @return true on success; false if the command is not supported or failed
+		 * @throws Exception on device errors
+		 */
+		public boolean handleCommand(int command, int parameter) throws Exception;
+	}
+
+	/**
+	 * Command handler that maps the commands to an Airspy instance.
+	 */
+	public static class AirspyCommandHandler implements CommandHandler {
+		private Airspy airspy;
+		private int[] sampleRates = null;
+
+		/**
+		 * Constructor for the command handler
+		 *
+		 * @param airspy	Airspy that delivers the samples of the server (interleaved IQ layout)
+		 * @throws Exception if the Airspy uses the split IQ layout (the clients expect interleaved samples)
+		 */
+		public AirspyCommandHandler(Airspy airspy) throws Exception {
+			if (airspy.getIqLayout() != Airspy.AIRSPY_IQ_LAYOUT_INTERLEAVED) {
+				Log.e(LOGTAG, "AirspyCommandHandler: IQ layout not supported: " + airspy.getIqLayout());
+				throw new Exception("IQ layout not supported: " + airspy.getIqLayout());
+			}
+			this.airspy = airspy;
+		}
+
+		public boolean handleCommand(int command, int parameter) throws Exception {
+			switch (command) {
+				case CMD_SET_FREQUENCY:
+					return airspy.setFrequency(parameter);
+				case CMD_SET_SAMPLE_RATE:
+					// The Airspy only supports the rates of getSampleRates(). Select the closest one:
+					if (sampleRates == null)
+						sampleRates = airspy.getSampleRates();
+					int index = 0;
+					for (int i = 1; i < sampleRates.length; i++) {
+						if (Math.abs(sampleRates[i] - parameter) < Math.abs(sampleRates[index] - parameter))
+							index = i;
+					}
+					return airspy.setSampleRate(index);
+				case CMD_SET_GAIN_MODE:
+					boolean automatic = parameter == 0;
+					return airspy.setLNAAutomaticGainControl(automatic) && airspy.setMixerAutomaticGainControl(automatic);
+				case CMD_SET_AGC_MODE:
+					// This is the digital AGC of the RTL2832 (not the tuner AGC). The Airspy has no
+					// equivalent, so the command is accepted and ignored:
+					Log.i(LOGTAG, "handleCommand: Ignoring digital AGC mode " + parameter);
+					return true;
+				case CMD_SET_GAIN:
+					// gain in tenth dB. Map it to a gain index (approx. 2 dB per step):
+					return setGainIndex(Math.round(parameter / 20f));
+				case CMD_SET_GAIN_BY_INDEX:
+					return setGainIndex(parameter);
+				case CMD_SET_LNA_GAIN:
+					return airspy.setLNAGain(parameter);
+				case CMD_SET_MIXER_GAIN:
+					return airspy.setMixerGain(parameter);
+				case CMD_SET_VGA_GAIN:
+					return airspy.setVGAGain(parameter);
+				default:
+					return false;
+			}
+		}
+
+		/**
+		 * Maps a gain index (0 - GAIN_COUNT-1) to the linearity gain presets of the Airspy.
+		 *
+		 * @param index		gain index
+		 * @return true on success
+		 * @throws Airspy.AirspyUsbException
+		 */
+		private boolean setGainIndex(int index) throws Airspy.AirspyUsbException {
+			index = Math.max(0, Math.min(GAIN_COUNT - 1, index));
+			return airspy.setLinearityGain(index * (Airspy.GAIN_PRESET_COUNT - 1) / (GAIN_COUNT - 1));
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package com.mantz_it.airspy_android;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyTimeMachine.java
+ * Description: This class implements a pre-trigger capture buffer ("time machine").
+ *              It continuously holds the last N milliseconds of raw USB data in a
+ *              fixed-size off-heap ring buffer. After the post-trigger window of a
+ *              trigger was received, the pre + post window is dumped to a file on a
+ *              background thread. The ring keeps recording during the dump: the dump
+ *              thread copies the window out in small chunks (holding the ring lock only
+ *              for the copy), so the byte positions always match the stream time. If the
+ *              stream overwrites a part of the window before it was copied (the file
+ *              system is slower than the stream), the dump is reported as failed.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyTimeMachine extends Thread {
+
+	private static final String LOGTAG = "AirspyTimeMachine";
+	private static final int MAX_PENDING_DUMPS = 8;		// Maximum number of triggers that can wait for their dump
+	private static final int DUMP_CHUNK_SIZE = 64 * 1024;	// bytes that are copied out of the ring at once
+	private boolean stopRequested = false;
+	private int sampleRate;							// Sample rate of the Airspy (in Sps)
+	private boolean packingEnabled;					// Indicates if the raw samples are packed (12 bit)
+	private int bytesPerSecond;						// raw USB bytes per second at the given sample rate
+	private int capacity;							// size of the ring buffer in bytes
+	private ByteBuffer ring;						// off-heap ring buffer (only written by the USB thread)
+	private ByteBuffer ringReader;					// duplicate of the ring (only used by the dump thread)
+	private ByteBuffer dumpChunk;					// chunk of a dump that was copied out of the ring
+	private volatile long totalWritten = 0;			// number of bytes written into the ring since creation
+	private final Object ringLock = new Object();	// guards the ring content and totalWritten
+	private ArrayBlockingQueue<Dump> pendingDumps;	// triggers that wait for the post window / dump
+	private DumpCallbackInterface callback = null;	// will be informed about finished dumps (may be null)
+
+	/**
+	 * Constructor for the time machine. The memory of the ring buffer is allocated once
+	 * in the constructor and can be calculated in advance by calling getRequiredMemory().
+	 *
+	 * @param sampleRate		Sample rate of the Airspy in Sps (see Airspy.getSampleRates())
+	 * @param packingEnabled	Indicates if packing is enabled on the Airspy
+	 * @param durationMs		Duration (in milliseconds) of the raw stream that is held in memory
+	 * @throws Exception if the resulting ring buffer size is invalid
+	 */
+	public AirspyTimeMachine(int sampleRate, boolean packingEnabled, int durationMs) throws Exception {
+		long requiredMemory = getRequiredMemory(sampleRate, packingEnabled, durationMs);
+		if(sampleRate <= 0 || requiredMemory <= 0 || requiredMemory > Integer.MAX_VALUE) {
+			Log.e(LOGTAG, "constructor: Invalid configuration: sampleRate=" + sampleRate + " durationMs=" + durationMs);
+			throw new Exception("Invalid configuration: sampleRate=" + sampleRate + " durationMs=" + durationMs);
+		}
+		this.sampleRate = sampleRate;
+		this.packingEnabled = packingEnabled;
+		this.bytesPerSecond = packingEnabled ? sampleRate * 3 / 2 : sampleRate * 2;
+		this.capacity = (int) requiredMemory;
+		this.ring = ByteBuffer.allocateDirect(capacity);
+		this.ringReader = ring.duplicate();
+		this.dumpChunk = ByteBuffer.allocateDirect(Math.min(DUMP_CHUNK_SIZE, capacity));
+		this.pendingDumps = new ArrayBlockingQueue<Dump>(MAX_PENDING_DUMPS);
+		Log.i(LOGTAG, "constructor: Allocated " + capacity + " Bytes for " + durationMs + " ms of raw samples.");
+	}
+
+	/**
+	 * Calculates the size of the ring buffer for the given configuration. The raw stream
+	 * contains 2 bytes per sample (or 1.5 bytes per sample if packing is enabled). The size is
+	 * aligned to 12 bytes so that the ring always holds complete (packed) samples.
+	 *
+	 * @param sampleRate		Sample rate of the Airspy in Sps
+	 * @param packingEnabled	Indicates if packing is enabled on the Airspy
+	 * @param durationMs		Duration (in milliseconds) of the raw stream that is held in memory
+	 * @return size of the ring buffer in bytes
+	 */
+	public static long getRequiredMemory(int sampleRate, boolean packingEnabled, int durationMs) {
+		long bytesPerSecond = packingEnabled ? (long) sampleRate * 3 / 2 : (long) sampleRate * 2;
+		long bytes = bytesPerSecond * durationMs / 1000;
+		return bytes - bytes % 12;
+	}
+
+	/**
+	 * @return size of the ring buffer in bytes
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return duration (in milliseconds) of the raw stream that fits into the ring buffer
+	 */
+	public int getDurationMs() {
+		return (int) ((long) capacity * 1000 / bytesPerSecond);
+	}
+
+	/**
+	 * @return sample rate (in Sps) this time machine was configured for
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @return true if the time machine expects packed samples
+	 */
+	public boolean isPackingEnabled() {
+		return packingEnabled;
+	}
+
+	/**
+	 * @return number of bytes that were written into the ring since creation
+	 */
+	public long getTotalWritten() {
+		return totalWritten;
+	}
+
+	/**
+	 * Sets the callback that is informed (from the dump thread) about finished dumps.
+	 *
+	 * @param callback	callback interface or null
+	 */
+	public void setCallback(DumpCallbackInterface callback) {
+		this.callback = callback;
+	}
+
+	/**
+	 * Writes a received USB buffer into the ring. This is called by the receive loop of the
+	 * Airspy class for every buffer and must not block.
+	 *
+	 * @param buffer	raw samples as received from the Airspy
+	 */
+	public void write(byte[] buffer) {
+		synchronized (ringLock) {
+			int offset = 0;
+			int length = buffer.length;
+			// only the last 'capacity' bytes of the buffer can be held:
+			if (length > capacity) {
+				offset = length - capacity;
+				length = capacity;
+			}
+			int writePos = (int) ((totalWritten + offset) % capacity);
+			int firstPart = Math.min(length, capacity - writePos);
+			ring.position(writePos);
+			ring.put(buffer, offset, firstPart);
+			if (firstPart < length) {
+				ring.position(0);
+				ring.put(buffer, offset + firstPart, length - firstPart);
+			}
+			totalWritten += buffer.length;
+		}
+	}
+
+	/**
+	 * Triggers a dump of the window [trigger - preMs; trigger + postMs] to the given file.
+	 * The dump is done by the time machine thread as soon as the post window was received.
+	 * Start and end of the window are aligned to full (packed) samples.
+	 * The time machine thread has to be started (by calling start()) before.
+	 *
+	 * @param file		destination file for the raw samples
+	 * @param preMs		duration (in ms) of the window before the trigger
+	 * @param postMs	duration (in ms) of the window after the trigger
+	 * @return true on success; false if the window does not fit into the ring or too many dumps are pending
+	 */
+	public boolean trigger(File file, int preMs, int postMs) {
+		long preBytes = alignToSample((long) bytesPerSecond * preMs / 1000);
+		long postBytes = alignToSample((long) bytesPerSecond * postMs / 1000);
+		if (preMs < 0 || postMs < 0 || preBytes + postBytes > capacity) {
+			Log.e(LOGTAG, "trigger: Window of " + preMs + "+" + postMs + " ms does not fit into the ring ("
+					+ getDurationMs() + " ms)!");
+			return false;
+		}
+		// The USB buffers are no multiple of a packed block (e.g. 16384 % 12 = 4):
+		long triggerPos = alignToSample(totalWritten);
+		Dump dump = new Dump(file, triggerPos - preBytes, triggerPos + postBytes);
+		if (!pendingDumps.offer(dump)) {
+			Log.e(LOGTAG, "trigger: Too many dumps pending. Ignore trigger!");
+			return false;
+		}
+		Log.d(LOGTAG, "trigger: Trigger at byte " + triggerPos + " (dump " + dump.start + " - " + dump.end + ")");
+		return true;
+	}
+
+	/**
+	 * Aligns a byte count to a full sample (2 bytes) or to a full packed block (12 bytes)
+	 *
+	 * @param bytes		number of bytes
+	 * @return aligned number of bytes
+	 */
+	private long alignToSample(long bytes) {
+		int alignment = packingEnabled ? 12 : 2;
+		return bytes - bytes % alignment;
+	}
+
+	/**
+	 * Same as alignToSample() but rounds up (for positions that must not lie before a limit)
+	 *
+	 * @param bytes		number of bytes (may be negative)
+	 * @return aligned number of bytes
+	 */
+	private long alignUpToSample(long bytes) {
+		int alignment = packingEnabled ? 12 : 2;
+		if (bytes <= 0)
+			return 0;
+		return alignToSample(bytes + alignment - 1);
+	}
+
+	public void requestStop() {
+		this.stopRequested = true;
+	}
+
+	public void run() {
+		Dump dump = null;
+
+		while (!stopRequested) {
+			// Get the next pending dump:
+			if (dump == null) {
+				try {
+					dump = pendingDumps.poll(1000, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Log.e(LOGTAG, "run: Interrupted while waiting for triggers. Stop!");
+					stopRequested = true;
+					continue;
+				}
+				if (dump == null)
+					continue;
+			}
+
+			// Wait until the post window was received:
+			if (totalWritten < dump.end) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					Log.e(LOGTAG, "run: Interrupted while waiting for the post trigger window. Stop!");
+					stopRequested = true;
+				}
+				continue;
+			}
+
+			// Write the window to the file (the ring keeps recording). The start of the pre window
+			// may be missing (stream started after it or the dump waited too long for its turn):
+			long start = Math.max(dump.start, alignUpToSample(totalWritten - capacity));
+			long missingBytes = start - dump.start;
+			try {
+				long written = dumpToFile(dump.file, start, dump.end);
+				if (written < 0) {
+					Log.e(LOGTAG, "run: Dump to " + dump.file.getAbsolutePath() + " was overwritten by the stream!");
+					deleteFile(dump.file);
+					if (callback != null)
+						callback.onDumpError(dump.file, "Dump was overwritten by the stream (storage too slow)");
+				} else {
+					if (missingBytes > 0)
+						Log.w(LOGTAG, "run: Pre trigger window of " + dump.file.getAbsolutePath() + " is truncated by "
+								+ missingBytes + " Bytes!");
+					Log.i(LOGTAG, "run: Dumped " + written + " Bytes to " + dump.file.getAbsolutePath());
+					if (callback != null)
+						callback.onDumpFinished(dump.file, written, missingBytes);
+				}
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while dumping to " + dump.file.getAbsolutePath() + ": " + e.getMessage());
+				deleteFile(dump.file);
+				if (callback != null)
+					callback.onDumpError(dump.file, e.getMessage());
+			}
+			dump = null;
+		}
+	}
+
+	/**
+	 * Writes the bytes [start; end) of the ring to a file. The ring is written concurrently, so
+	 * each chunk is copied out while holding the ring lock and only if it is still in the ring.
+	 *
+	 * @param file		destination file
+	 * @param start		first byte (absolute position in the stream)
+	 * @param end		last byte + 1 (absolute position in the stream)
+	 * @return number of bytes written or -1 if the stream overwrote a part of the window before it was copied
+	 * @throws IOException
+	 */
+	private long dumpToFile(File file, long start, long end) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(file);
+		FileChannel channel = outputStream.getChannel();
+		try {
+			long pos = start;
+			while (pos < end) {
+				int ringPos = (int) (pos % capacity);
+				int chunk = (int) Math.min(Math.min(end - pos, capacity - ringPos), dumpChunk.capacity());
+				synchronized (ringLock) {
+					if (pos < totalWritten - capacity)
+						return -1;
+					ringReader.limit(ringPos + chunk);
+					ringReader.position(ringPos);
+					dumpChunk.clear();
+					dumpChunk.put(ringReader);
+				}
+				dumpChunk.flip();
+				while (dumpChunk.hasRemaining())
+					channel.write(dumpChunk);
+				pos += chunk;
+			}
+			return end - start;
+		} finally {
+			channel.close();
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Deletes the (partial) file of a failed dump
+	 *
+	 * @param file	file to delete
+	 */
+	private void deleteFile(File file) {
+		if (file.exists() && !file.delete())
+			Log.e(LOGTAG, "deleteFile: Could not delete " + file.getAbsolutePath());
+	}
+
+	/**
+	 * Holds the window of a single trigger (absolute byte positions in the stream; the start
+	 * is negative if the pre window reaches back before the start of the stream)
+	 */
+	private static class Dump {
+		final File file;
+		final long start;
+		final long end;
+
+		Dump(File file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * This Interface declares callback methods that are called by the time machine thread after a dump
+	 */
+	public interface DumpCallbackInterface {
+		/**
+		 * Called after a dump was written successfully.
+		 *
+		 * @param file			file that contains the dump
+		 * @param bytes			number of bytes written
+		 * @param missingBytes	number of bytes missing at the start of the pre trigger window because they
+		 *                      were not (or no longer) in the ring; 0 if the window is complete
+		 */
+		public void onDumpFinished(File file, long bytes, long missingBytes);
+
+		/**
+		 * Called if there was an error while writing a dump. The (partial) file is deleted.
+		 *
+		 * @param file		file that should contain the dump
+		 * @param message	Reason for the Error
+		 */
+		public void onDumpError(File file, String message);
+	}
+}
@@ -0,0 +1,159 @@
+package com.mantz_it.airspy_android;
+
+import android.os.Process;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyTransferMonitor.java
+ * Description: This class collects timing statistics of the USB transfers while the
+ *              Airspy is receiving: intervals between completed requests (requestWait()),
+ *              the longest gap, the transfer rate, the fill level of the usbQueue and
+ *              how often the usb thread had to wait for a free buffer (pool pressure).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyTransferMonitor {
+
+	// All values are written by the usb thread only and can be read by any thread:
+	private volatile long completions = 0;			// number of completed requests
+	private volatile long bytes = 0;				// number of bytes received (excluding the first request)
+	private volatile long firstCompletionNs = 0;	// time of the first completed request
+	private volatile long lastCompletionNs = 0;		// time of the last completed request
+	private volatile long maxGapNs = 0;				// longest interval between two completed requests
+	private volatile int queueHighWater = 0;		// max. number of buffers in the usbQueue
+	private volatile long poolStalls = 0;			// number of times the usb thread had to wait for a buffer
+	private volatile long startTimeNs = 0;			// time of reset()
+	private volatile long startCpuTimeMs = 0;		// cpu time of the process at reset()
+
+	/**
+	 * Resets all statistics. Called by the Airspy in startRX().
+	 */
+	public void reset() {
+		completions = 0;
+		bytes = 0;
+		firstCompletionNs = 0;
+		lastCompletionNs = 0;
+		maxGapNs = 0;
+		queueHighWater = 0;
+		poolStalls = 0;
+		startTimeNs = System.nanoTime();
+		startCpuTimeMs = Process.getElapsedCpuTime();
+	}
+
+	/**
+	 * Called by the usb thread each time requestWait() returned a request.
+	 *
+	 * @param length		number of bytes in the request
+	 * @param queueFill		number of buffers in the usbQueue
+	 */
+	public void onRequestCompleted(int length, int queueFill) {
+		long now = System.nanoTime();
+		if (completions == 0) {
+			firstCompletionNs = now;
+		} else {
+			if (now - lastCompletionNs > maxGapNs)
+				maxGapNs = now - lastCompletionNs;
+			bytes += length;
+		}
+		lastCompletionNs = now;
+		if (queueFill > queueHighWater)
+			queueHighWater = queueFill;
+		completions++;
+	}
+
+	/**
+	 * Called by the usb thread if no buffer was available in the usb buffer pool.
+	 */
+	public void onPoolStall() {
+		poolStalls++;
+	}
+
+	/**
+	 * @return number of completed requests since startRX()
+	 */
+	public long getCompletions() {
+		return completions;
+	}
+
+	/**
+	 * @return time in ms since startRX()
+	 */
+	public long getElapsedMs() {
+		return (System.nanoTime() - startTimeNs) / 1000000;
+	}
+
+	/**
+	 * @return average interval between two completed requests in microseconds; 0 if not enough requests
+	 */
+	public long getAverageIntervalUs() {
+		if (completions < 2)
+			return 0;
+		return (lastCompletionNs - firstCompletionNs) / (completions - 1) / 1000;
+	}
+
+	/**
+	 * @return longest interval between two completed requests in microseconds
+	 */
+	public long getMaxGapUs() {
+		return maxGapNs / 1000;
+	}
+
+	/**
+	 * @return measured transfer rate in bytes per second; 0 if not enough requests
+	 */
+	public long getByteRate() {
+		if (completions < 2 || lastCompletionNs == firstCompletionNs)
+			return 0;
+		return bytes * 1000000000L / (lastCompletionNs - firstCompletionNs);
+	}
+
+	/**
+	 * @return max. number of buffers that were waiting in the usbQueue
+	 */
+	public int getQueueHighWater() {
+		return queueHighWater;
+	}
+
+	/**
+	 * @return number of times the usb thread had to wait for a free buffer in the pool
+	 */
+	public long getPoolStalls() {
+		return poolStalls;
+	}
+
+	/**
+	 * Returns the cpu load of the whole process since startRX() (1.0 is one core fully loaded).
+	 *
+	 * @return cpu time / elapsed time
+	 */
+	public double getCpuLoad() {
+		long elapsedMs = getElapsedMs();
+		if (elapsedMs == 0)
+			return 0;
+		return (double) (Process.getElapsedCpuTime() - startCpuTimeMs) / elapsedMs;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("completions=%d interval=%d us maxGap=%d us rate=%d B/s queueHighWater=%d poolStalls=%d cpu=%.2f",
+				completions, getAverageIntervalUs(), getMaxGapUs(), getByteRate(), queueHighWater, poolStalls, getCpuLoad());
+	}
+}
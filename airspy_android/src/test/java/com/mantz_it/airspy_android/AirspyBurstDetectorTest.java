@@ -0,0 +1,74 @@
+package com.mantz_it.airspy_android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the AirspyBurstDetector
+ */
+public class AirspyBurstDetectorTest {
+
+	private static final int NOISE_SAMPLES = 64 * 32;		// lets the noise floor settle before the burst
+
+	/**
+	 * Runs noise, a burst of burstSamples and noise through the detector (in buffers of 256 complex samples).
+	 */
+	private static ArrayList<AirspyBurstDetector.Burst> detect(AirspyBurstDetector detector, int burstSamples) {
+		final ArrayList<AirspyBurstDetector.Burst> bursts = new ArrayList<AirspyBurstDetector.Burst>();
+		detector.setCallback(new AirspyBurstDetector.BurstCallbackInterface() {
+			@Override
+			public void onBurst(AirspyBurstDetector.Burst burst) {
+				bursts.add(burst);
+			}
+		});
+		Random random = new Random(0);
+		int total = (NOISE_SAMPLES + burstSamples + 4096) / 256 * 256;
+		float[] samples = new float[2 * total];
+		for (int i = 0; i < total; i++) {
+			float amplitude = (i >= NOISE_SAMPLES && i < NOISE_SAMPLES + burstSamples) ? 0.5f : 0.001f;
+			samples[2 * i] = amplitude * (float) random.nextGaussian();
+			samples[2 * i + 1] = amplitude * (float) random.nextGaussian();
+		}
+		float[] buffer = new float[512];
+		for (int pos = 0; pos < samples.length; pos += buffer.length) {
+			System.arraycopy(samples, pos, buffer, 0, buffer.length);
+			detector.process(buffer, buffer.length);
+		}
+		return bursts;
+	}
+
+	@Test
+	public void burstIsDetected() throws Exception {
+		ArrayList<AirspyBurstDetector.Burst> bursts = detect(new AirspyBurstDetector(64, 6, 512, 64, 64, 10000), 960);
+		assertEquals(1, bursts.size());
+		assertEquals(NOISE_SAMPLES - 64, bursts.get(0).getStartSample());
+		assertEquals(64 + 960 + 64, bursts.get(0).getLength());
+		assertFalse(bursts.get(0).isTruncated());
+	}
+
+	@Test
+	public void splitDuringHangoverWithoutPostPadding() throws Exception {
+		// The burst reaches the max. length during the hangover; the end lies in the first segment:
+		ArrayList<AirspyBurstDetector.Burst> bursts = detect(new AirspyBurstDetector(64, 6, 512, 0, 0, 1000), 960);
+		assertEquals(1, bursts.size());
+		assertEquals(NOISE_SAMPLES, bursts.get(0).getStartSample());
+		assertEquals(1000, bursts.get(0).getLength());
+		assertTrue(bursts.get(0).isTruncated());
+	}
+
+	@Test
+	public void splitDuringHangoverWithPostPadding() throws Exception {
+		// The post padding reaches into the second segment, which is trimmed to it:
+		ArrayList<AirspyBurstDetector.Burst> bursts = detect(new AirspyBurstDetector(64, 6, 512, 0, 100, 1000), 960);
+		assertEquals(2, bursts.size());
+		assertEquals(1000, bursts.get(0).getLength());
+		assertTrue(bursts.get(0).isTruncated());
+		assertEquals(NOISE_SAMPLES + 1000, bursts.get(1).getStartSample());
+		assertEquals(60, bursts.get(1).getLength());
+		assertFalse(bursts.get(1).isTruncated());
+	}
+}
@@ -0,0 +1,75 @@
+package com.mantz_it.airspy_android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the AirspyFmDemodulator
+ */
+public class AirspyFmDemodulatorTest {
+
+	private static final int INPUT_RATE = AirspyFmDemodulator.MPX_RATE;
+	private static final int BUFFER_SIZE = 8192;		// values (2 per complex sample)
+	private static final double TONE_FREQUENCY = 1000;
+
+	/**
+	 * Modulates a stereo multiplex signal with a tone on the left channel only, demodulates it
+	 * and returns the separation (power of the left channel relative to the right channel in dB).
+	 */
+	private static double measureSeparation(AirspyFmDemodulator demodulator, double seconds) {
+		int numBuffers = (int) (seconds * INPUT_RATE * 2 / BUFFER_SIZE);
+		float[] input = new float[BUFFER_SIZE];
+		float[] audio = new float[demodulator.getMaxOutputLength(BUFFER_SIZE)];
+		double phase = 0;
+		long n = 0;
+		long audioFrames = 0;
+		double[] left = new double[2];		// correlation with cos and sin of the tone
+		double[] right = new double[2];
+		for (int b = 0; b < numBuffers; b++) {
+			for (int i = 0; i < BUFFER_SIZE; i += 2, n++) {
+				double t = (double) n / INPUT_RATE;
+				double l = Math.sin(2 * Math.PI * TONE_FREQUENCY * t);
+				double r = 0;
+				double pilot = Math.sin(2 * Math.PI * 19000 * t);
+				double subcarrier = Math.sin(2 * Math.PI * 38000 * t);
+				double mpx = 0.45 * (l + r) + 0.45 * (l - r) * subcarrier + 0.1 * pilot;
+				phase += 2 * Math.PI * 75000 * mpx / INPUT_RATE;
+				input[i] = (float) Math.cos(phase);
+				input[i + 1] = (float) Math.sin(phase);
+			}
+			int length = demodulator.demodulate(input, BUFFER_SIZE, audio);
+			for (int i = 0; i < length; i += 2, audioFrames++) {
+				// only the second half (the PLL has to lock first):
+				if (b < numBuffers / 2)
+					continue;
+				double t = 2 * Math.PI * TONE_FREQUENCY * audioFrames / AirspyFmDemodulator.AUDIO_RATE;
+				left[0] += audio[i] * Math.cos(t);
+				left[1] += audio[i] * Math.sin(t);
+				right[0] += audio[i + 1] * Math.cos(t);
+				right[1] += audio[i + 1] * Math.sin(t);
+			}
+		}
+		double leftPower = left[0] * left[0] + left[1] * left[1];
+		double rightPower = right[0] * right[0] + right[1] * right[1];
+		return 10 * Math.log10(leftPower / rightPower);
+	}
+
+	@Test
+	public void stereoSeparation() throws Exception {
+		AirspyFmDemodulator demodulator = new AirspyFmDemodulator(INPUT_RATE, BUFFER_SIZE, true,
+				AirspyFmDemodulator.DEEMPHASIS_EUROPE);
+		double separation = measureSeparation(demodulator, 2);
+		assertTrue(demodulator.isStereo());
+		assertTrue("Separation: " + separation + " dB", separation > 30);
+	}
+
+	@Test
+	public void monoHasNoSeparation() throws Exception {
+		AirspyFmDemodulator demodulator = new AirspyFmDemodulator(INPUT_RATE, BUFFER_SIZE, false,
+				AirspyFmDemodulator.DEEMPHASIS_EUROPE);
+		double separation = measureSeparation(demodulator, 1);
+		assertFalse(demodulator.isStereo());
+		assertTrue("Separation: " + separation + " dB", Math.abs(separation) < 0.5);
+	}
+}
@@ -0,0 +1,54 @@
+package com.mantz_it.airspy_android;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the AirspyInt16Converter
+ */
+public class AirspyInt16ConverterTest {
+
+	private static final int BUFFER_SIZE = 1024 * 16 / 2;	// int16 values of one USB packet
+
+	private static AirspyInt16Converter createConverter(short[] kernel) throws Exception {
+		return new AirspyInt16Converter(Airspy.AIRSPY_SAMPLE_INT16_IQ, false, null, null, null, null, kernel);
+	}
+
+	/**
+	 * Runs the same buffers through the folded and the generic FIR of two converters (the history
+	 * wraps several times) and checks that the outputs are identical.
+	 */
+	private static void assertFoldedMatchesGeneric(short[] kernel, boolean fullScale) throws Exception {
+		AirspyInt16Converter folded = createConverter(kernel);
+		AirspyInt16Converter generic = createConverter(kernel);
+		Random random = new Random(42);
+		for (int n = 0; n < 20; n++) {
+			short[] expected = new short[BUFFER_SIZE];
+			for (int i = 0; i < expected.length; i++) {
+				if (fullScale)
+					expected[i] = random.nextBoolean() ? Short.MAX_VALUE : Short.MIN_VALUE;
+				else
+					expected[i] = (short) random.nextInt(1 << 16);
+			}
+			short[] actual = expected.clone();
+			generic.firInterleavedGeneric(expected);
+			folded.firInterleaved(actual);
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void foldedFirMatchesGenericFirWithRandomSamples() throws Exception {
+		for (int preset = 0; preset < 3; preset++)
+			assertFoldedMatchesGeneric(AirspyFilterDesign.getHilbertKernelInt16(preset), false);
+	}
+
+	@Test
+	public void foldedFirMatchesGenericFirWithFullScaleSamples() throws Exception {
+		for (int preset = 0; preset < 3; preset++)
+			assertFoldedMatchesGeneric(AirspyFilterDesign.getHilbertKernelInt16(preset), true);
+	}
+}
@@ -0,0 +1,171 @@
+package com.mantz_it.airspy_android;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loopback tests for the AirspyTcpServer
+ */
+public class AirspyTcpServerTest {
+
+	private static final int BUFFER_SIZE = 16384;		// int16 values per sample buffer (uint8: 1 byte per value)
+	private ArrayBlockingQueue<short[]> sampleQueue;
+	private ArrayBlockingQueue<short[]> sampleReturnQueue;
+	private ArrayBlockingQueue<int[]> commands;
+	private AirspyTcpServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		sampleQueue = new ArrayBlockingQueue<short[]>(16);
+		sampleReturnQueue = new ArrayBlockingQueue<short[]>(16);
+		commands = new ArrayBlockingQueue<int[]>(16);
+		server = new AirspyTcpServer(0, sampleQueue, sampleReturnQueue, new AirspyTcpServer.CommandHandler() {
+			@Override
+			public boolean handleCommand(int command, int parameter) throws Exception {
+				commands.add(new int[] {command, parameter});
+				return true;
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.requestStop();
+		server.join(5000);
+	}
+
+	/**
+	 * Sample buffer whose uint8 representation is (i + seed) % 256 at index i
+	 */
+	private static short[] createSamples(int seed) {
+		short[] samples = new short[BUFFER_SIZE];
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = (short) ((((i + seed) & 0xFF) - 128) << 8);
+		return samples;
+	}
+
+	private Socket connect(int receiveBufferSize) throws Exception {
+		int clients = server.getClientCount();
+		Socket socket = new Socket();
+		if (receiveBufferSize > 0)
+			socket.setReceiveBufferSize(receiveBufferSize);
+		socket.connect(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+		while (server.getClientCount() == clients)
+			Thread.sleep(5);
+		return socket;
+	}
+
+	private static void assertHeader(DataInputStream input) throws IOException {
+		byte[] magic = new byte[4];
+		input.readFully(magic);
+		assertEquals("RTL0", new String(magic, "US-ASCII"));
+		assertEquals(5, input.readInt());		// tuner type (R820T)
+		assertEquals(22, input.readInt());		// gain count
+	}
+
+	private static AirspyTcpServer.ClientStatistics getStatistics(AirspyTcpServer server, Socket socket) {
+		for (AirspyTcpServer.ClientStatistics statistics : server.getClientStatistics()) {
+			if (statistics.address.endsWith(":" + socket.getLocalPort()))
+				return statistics;
+		}
+		return null;
+	}
+
+	@Test(timeout = 10000)
+	public void headerAndPayload() throws Exception {
+		Socket socket = connect(0);
+		try {
+			DataInputStream input = new DataInputStream(socket.getInputStream());
+			assertHeader(input);
+			for (int seed = 0; seed < 4; seed++) {
+				short[] samples = createSamples(seed);
+				sampleQueue.put(samples);
+				byte[] payload = new byte[BUFFER_SIZE];
+				input.readFully(payload);
+				for (int i = 0; i < payload.length; i++)
+					assertEquals((i + seed) & 0xFF, payload[i] & 0xFF);
+				assertTrue(sampleReturnQueue.poll(1000, TimeUnit.MILLISECONDS) == samples);
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void commandReachesHandler() throws Exception {
+		Socket socket = connect(0);
+		try {
+			DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+			output.writeByte(AirspyTcpServer.CMD_SET_FREQUENCY);
+			output.writeInt(100000000);
+			output.flush();
+			int[] command = commands.poll(5000, TimeUnit.MILLISECONDS);
+			assertNotNull(command);
+			assertEquals(AirspyTcpServer.CMD_SET_FREQUENCY, command[0]);
+			assertEquals(100000000, command[1]);
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void slowClientDropsOnlyItsOwnBuffers() throws Exception {
+		Socket slow = connect(4096);		// never reads
+		Socket fast = connect(0);
+		try {
+			final InputStream fastInput = fast.getInputStream();
+			final AtomicLong received = new AtomicLong(0);
+			Thread reader = new Thread() {
+				@Override
+				public void run() {
+					byte[] buffer = new byte[65536];
+					try {
+						int count;
+						while ((count = fastInput.read(buffer)) > 0)
+							received.addAndGet(count);
+					} catch (IOException e) {
+						// socket closed
+					}
+				}
+			};
+			reader.start();
+
+			// Feed more data than the queue and the socket buffers of the slow client can hold:
+			int buffers = 1000;
+			short[] samples = createSamples(0);
+			for (int i = 0; i < buffers; i++) {
+				sampleQueue.put(samples);
+				long expected = 12 + (long) (i + 1) * BUFFER_SIZE;
+				while (received.get() < expected)
+					Thread.sleep(1);
+				sampleReturnQueue.take();
+			}
+
+			assertEquals(12 + (long) buffers * BUFFER_SIZE, received.get());
+			AirspyTcpServer.ClientStatistics fastStatistics = getStatistics(server, fast);
+			AirspyTcpServer.ClientStatistics slowStatistics = getStatistics(server, slow);
+			assertNotNull(fastStatistics);
+			assertNotNull(slowStatistics);
+			assertEquals(0, fastStatistics.droppedBuffers);
+			assertTrue(slowStatistics.droppedBuffers > 0);
+			assertTrue(slowStatistics.bytesSent < 12 + (long) buffers * BUFFER_SIZE);
+		} finally {
+			fast.close();
+			slow.close();
+		}
+	}
+}
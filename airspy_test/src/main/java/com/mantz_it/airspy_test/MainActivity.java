@@ -22,6 +22,8 @@ import android.widget.Spinner;
 import android.widget.TextView;
 
 import com.mantz_it.airspy_android.Airspy;
+import com.mantz_it.airspy_android.AirspyBenchmark;
+import com.mantz_it.airspy_android.AirspyStreamingConfig;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -72,6 +74,7 @@ public class MainActivity extends ActionBarActivity implements Runnable, Airspy.
 	private int task = -1;
 	private static final int PRINT_INFO = 0;
 	private static final int RECEIVE = 1;
+	private static final int BENCHMARK = 2;
 
 	private boolean stopRequested = false;	// Used to stop receive thread
 
@@ -165,6 +168,12 @@ public class MainActivity extends ActionBarActivity implements Runnable, Airspy.
 			this.startActivity(intent);
 			return true;
 		}
+		if (id == R.id.action_benchmark) {
+			this.readGuiElements();
+			this.task = BENCHMARK;
+			new Thread(this).start();
+			return true;
+		}
 		if (id == R.id.action_settings) {
 			return true;
 		}
@@ -360,6 +369,7 @@ public class MainActivity extends ActionBarActivity implements Runnable, Airspy.
 		{
 			case PRINT_INFO:	infoThread(); break;
 			case RECEIVE:		receiveThread(); break;
+			case BENCHMARK:		benchmarkThread(); break;
 			default:
 		}
 
@@ -397,6 +407,43 @@ public class MainActivity extends ActionBarActivity implements Runnable, Airspy.
 		}
 	}
 
+	/**
+	 * Will run in a separate thread created by the 'Benchmark' menu item. Measures how fast the
+	 * samples can be converted with each execution model, how fast the resampler runs
+	 * for some common output rates and if the FM demodulator keeps up. Prints the report on the screen.
+	 * No Airspy is needed for this.
+	 */
+	public void benchmarkThread()
+	{
+		printOnScreen("Running benchmark (packing=" + packingEnabled + "). This takes a while...\n");
+		int cores = Runtime.getRuntime().availableProcessors();
+		// packed buffers must hold complete blocks of 8 samples (16 KiB would not):
+		int usbPacketSize = packingEnabled ? AirspyStreamingConfig.DEFAULT_MAX_PACKET_SIZE : 1024 * 16;
+		String report = AirspyBenchmark.benchmarkExecutionModels(new int[] {2500000, 10000000}, packingEnabled,
+				cores, usbPacketSize, 2000);
+		printOnScreen(report + "\n");
+		report = AirspyBenchmark.benchmarkResamplers(5000000, new int[] {2048000, 1000000, 48000}, 16, 1000);
+		printOnScreen(report + "\n");
+		for (int sampleRate : new int[] {2500000, 10000000}) {
+			try {
+				printOnScreen(String.format("FM stereo demodulator @%.1fMSps (incl. conversion, one core): %.2fx\n",
+						sampleRate / 1e6, AirspyBenchmark.benchmarkFmDemodulator(sampleRate, true, 1024 * 16, 2000)));
+			} catch (Exception e) {
+				printOnScreen("FM demodulator benchmark failed: " + e.getMessage() + "\n");
+			}
+		}
+		try {
+			printOnScreen(AirspyBenchmark.benchmarkModeSDecoder(AirspyBenchmark.createModeSRecording(10000000, 1000, 1000, 15),
+					10000000, 1024 * 16, 2000));
+		} catch (Exception e) {
+			printOnScreen("Mode S decoder benchmark failed: " + e.getMessage() + "\n");
+		}
+		printOnScreen(AirspyBenchmark.benchmarkHilbertPresets(1000));
+		printOnScreen(AirspyBenchmark.benchmarkInt16Fir(10000000, 1000));
+		printOnScreen(AirspyBenchmark.benchmarkConversionModes(500));
+		printOnScreen(AirspyBenchmark.benchmarkChannelFrontEnds(10000000, 50000, 12500, 1000));
+	}
+
 	/**
 	 * Will run in a separate thread created in rx(). Sets the Airspy into receiving
 	 * mode and then save the received samples to a file. Will run forever until user
@@ -477,8 +524,11 @@ public class MainActivity extends ActionBarActivity implements Runnable, Airspy.
 			ArrayBlockingQueue<short[]> shortReturnPoolQueue = null;
 			ArrayBlockingQueue<float[]> floatQueue = null;
 			ArrayBlockingQueue<float[]> floatReturnPoolQueue = null;
+			ArrayBlockingQueue<byte[]> byteQueue = null;
+			ArrayBlockingQueue<byte[]> byteReturnPoolQueue = null;
 			short[] shortSamples;
 			float[] floatSamples;
+			byte[] byteSamples;
 
 			// Start Receiving:
 			printOnScreen("Start Receiving... \n");
@@ -502,6 +552,12 @@ public class MainActivity extends ActionBarActivity implements Runnable, Airspy.
 					shortQueue = airspy.getInt16Queue();
 					shortReturnPoolQueue = airspy.getInt16ReturnPoolQueue();
 					break;
+				case Airspy.AIRSPY_SAMPLE_INT8_IQ:
+				case Airspy.AIRSPY_SAMPLE_UINT8_IQ:
+				case Airspy.AIRSPY_SAMPLE_INT8_IQ_SCALED:
+					byteQueue = airspy.getInt8Queue();
+					byteReturnPoolQueue = airspy.getInt8ReturnPoolQueue();
+					break;
 			}
 
 
@@ -550,6 +606,24 @@ public class MainActivity extends ActionBarActivity implements Runnable, Airspy.
 						break;
 					}
 				}
+				else if(byteQueue != null) {
+					byteSamples = byteQueue.poll(1000, TimeUnit.MILLISECONDS);
+					// We just write the whole packet into the file:
+					if(byteSamples != null)
+					{
+						outputStream.write(byteSamples);
+
+						// IMPORTANT: Return the buffer to the buffer pool of the airspy!
+						byteReturnPoolQueue.offer(byteSamples);
+					}
+					else
+					{
+						printOnScreen("Error: Queue is empty! (This happens most often because the queue ran full"
+								+ " which causes the Airspy class to stop receiving. Writing the samples to a file"
+								+ " seems to be working to slowly... try a lower sample rate.)\n");
+						break;
+					}
+				}
 				else {
 					shortSamples = shortQueue.poll(1000, TimeUnit.MILLISECONDS);
 					// We just write the whole packet into the file:
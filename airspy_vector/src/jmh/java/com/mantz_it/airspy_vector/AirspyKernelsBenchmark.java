@@ -0,0 +1,127 @@
+package com.mantz_it.airspy_vector;
+
+import com.mantz_it.airspy_android.AirspyFilterDesign;
+import com.mantz_it.airspy_android.AirspyKernels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyKernelsBenchmark.java
+ * Description: JMH benchmark of the scalar and Vector API kernels (see AirspyKernels and
+ *              AirspyVectorKernels). Each benchmark processes the samples of one USB packet (16 KB)
+ *              the way the AirspyFloatConverter does. The in-place kernels start from a copy of the
+ *              converted samples each time (otherwise they would decay to denormals); the copy is
+ *              measured separately by the copy benchmark. Run it with: gradle -p airspy_vector jmh
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AirspyKernelsBenchmark {
+
+	@Param({"scalar", "vector"})
+	public String implementation;
+
+	@Param({"0", "1", "2"})		// AirspyFilterDesign.HILBERT_PRESET_*
+	public int hilbertPreset;
+
+	private static final int COUNT = 1024 * 16 / 2;		// samples in one USB packet
+	private AirspyKernels kernels;
+	private byte[] raw;
+	private float[] converted;
+	private float[] samples;
+	private float[] kernel;
+	private float[] firQueue;
+	private int firIndex;
+	private float avg;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		kernels = "vector".equals(implementation) ? new AirspyVectorKernels() : new AirspyKernels();
+		if (!AirspyKernels.verify(kernels, new AirspyKernels()))
+			throw new IllegalStateException(kernels.getName() + " kernels do not match the scalar kernels!");
+		Random random = new Random(1234);
+		raw = new byte[COUNT * 2];
+		random.nextBytes(raw);
+		converted = new float[COUNT];
+		samples = new float[COUNT];
+		kernels.convertSamplesFloat(raw, converted, COUNT);
+		kernel = AirspyFilterDesign.getHilbertKernel(hilbertPreset);
+		firQueue = new float[kernel.length * 16];
+		firIndex = 0;
+		avg = 0;
+	}
+
+	@Benchmark
+	public float[] convertSamplesFloat() {
+		kernels.convertSamplesFloat(raw, samples, COUNT);
+		return samples;
+	}
+
+	@Benchmark
+	public float[] copy() {
+		System.arraycopy(converted, 0, samples, 0, COUNT);
+		return samples;
+	}
+
+	@Benchmark
+	public float removeDC() {
+		System.arraycopy(converted, 0, samples, 0, COUNT);
+		avg = kernels.removeDC(samples, COUNT, avg, 0.01f);
+		return avg;
+	}
+
+	@Benchmark
+	public float[] translateFs4() {
+		System.arraycopy(converted, 0, samples, 0, COUNT);
+		kernels.translateFs4(samples, COUNT, 0.5f);
+		return samples;
+	}
+
+	@Benchmark
+	public int firInterleaved() {
+		System.arraycopy(converted, 0, samples, 0, COUNT);
+		firIndex = kernels.firInterleaved(samples, COUNT, kernel, firQueue, firIndex, 16);
+		return firIndex;
+	}
+
+	@Benchmark
+	public float[] convertAndProcess() {
+		kernels.convertSamplesFloat(raw, samples, COUNT);
+		avg = kernels.removeDC(samples, COUNT, avg, 0.01f);
+		kernels.translateFs4(samples, COUNT, 0.5f);
+		firIndex = kernels.firInterleaved(samples, COUNT, kernel, firQueue, firIndex, 16);
+		return samples;
+	}
+}
@@ -0,0 +1,233 @@
+package com.mantz_it.airspy_vector;
+
+import com.mantz_it.airspy_android.AirspyKernels;
+
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <h1>Airspy USB Library for Android</h1>
+ *
+ * Module:      AirspyVectorKernels.java
+ * Description: This class implements the AirspyKernels with the Vector API (jdk.incubator.vector)
+ *              for desktop and server JVMs (Java 17+, run with --add-modules jdk.incubator.vector).
+ *              AirspyKernels.getInstance() picks it automatically if it is on the classpath.
+ *              The recursive loops are restructured so that the lanes don't depend on each other:
+ *              removeDC computes a whole vector of moving averages from the average before the
+ *              vector and firInterleaved computes a vector of consecutive outputs at once.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2015 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AirspyVectorKernels extends AirspyKernels {
+
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Short> SHORTS =				// same number of lanes as FLOATS
+			VectorSpecies.of(short.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+	private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, SHORTS.vectorShape());
+	private static final int LANES = FLOATS.length();
+
+	private volatile DcCoefficients dcCoefficients = null;		// cached for the last used scale
+
+	// Each converter thread collects the even samples of a buffer in its own array:
+	private ThreadLocal<float[]> firScratch = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[0];
+		}
+	};
+
+	/**
+	 * Coefficients of the moving average for one vector of samples:
+	 * avg[m] = c^m * avg + sum(t < m) scale * c^(m-1-t) * x[t]    with c = 1 - scale
+	 */
+	private static class DcCoefficients {
+		final float scale;
+		final float factor;				// c
+		final float factorPowLanes;		// c^LANES
+		final FloatVector factorPow;	// lane m: c^m
+		final FloatVector[] columns;	// columns[t] lane m: scale * c^(m-1-t) if t < m; else 0
+		final float[] last;				// scale * c^(LANES-1-t): weight of x[t] in the average after the vector
+
+		DcCoefficients(float scale) {
+			this.scale = scale;
+			this.factor = 1 - scale;
+			float[] pow = new float[LANES + 1];
+			pow[0] = 1;
+			for (int m = 1; m <= LANES; m++)
+				pow[m] = pow[m - 1] * factor;
+			this.factorPowLanes = pow[LANES];
+			this.factorPow = FloatVector.fromArray(FLOATS, pow, 0);
+			this.columns = new FloatVector[LANES];
+			this.last = new float[LANES];
+			float[] column = new float[LANES];
+			for (int t = 0; t < LANES; t++) {
+				for (int m = 0; m < LANES; m++)
+					column[m] = t < m ? scale * pow[m - 1 - t] : 0;
+				columns[t] = FloatVector.fromArray(FLOATS, column, 0);
+				last[t] = scale * pow[LANES - 1 - t];
+			}
+		}
+	}
+
+	/**
+	 * Constructor for the vector kernels
+	 *
+	 * @throws UnsupportedOperationException if the CPU has no usable vector unit (less than 4 float lanes)
+	 *                                       or is not little endian
+	 */
+	public AirspyVectorKernels() {
+		if (LANES < 4 || ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN)
+			throw new UnsupportedOperationException("No usable vector shape: " + FLOATS);
+	}
+
+	@Override
+	public String getName() {
+		return "vector (" + FLOATS.vectorBitSize() + " bit)";
+	}
+
+	@Override
+	public void convertSamplesFloat(byte[] src, float[] dest, int count) {
+		if (src.length < 2 * count || dest.length < count) {
+			super.convertSamplesFloat(src, dest, count);	// logs the error
+			return;
+		}
+		int i = 0;
+		int bound = FLOATS.loopBound(count);
+		for (; i < bound; i += LANES) {
+			// little endian byte pairs (checked in the constructor) are the 16 bit samples:
+			ShortVector raw = ((ShortVector) ByteVector.fromArray(BYTES, src, 2 * i).reinterpretAsShorts())
+					.and((short) 0x0FFF).sub((short) 2048);
+			((FloatVector) raw.convertShape(VectorOperators.S2F, FLOATS, 0)).mul(1f / 2048f).intoArray(dest, i);
+		}
+		for (; i < count; i++)
+			dest[i] = ((((src[2 * i + 1] & 0x0F) << 8) + (src[2 * i] & 0xFF)) - 2048) * (1f / 2048f);
+	}
+
+	@Override
+	public float removeDC(float[] samples, int length, float avg, float scale) {
+		DcCoefficients coefficients = dcCoefficients;
+		if (coefficients == null || coefficients.scale != scale) {
+			coefficients = new DcCoefficients(scale);
+			dcCoefficients = coefficients;
+		}
+
+		int i = 0;
+		int bound = FLOATS.loopBound(length);
+		for (; i < bound; i += LANES) {
+			// Contribution of the samples of this vector (independent of avg, so vectors can overlap):
+			FloatVector even = FloatVector.zero(FLOATS);
+			FloatVector odd = FloatVector.zero(FLOATS);
+			float next = 0;
+			for (int t = 0; t < LANES; t += 2) {
+				even = coefficients.columns[t].fma(FloatVector.broadcast(FLOATS, samples[i + t]), even);
+				odd = coefficients.columns[t + 1].fma(FloatVector.broadcast(FLOATS, samples[i + t + 1]), odd);
+				next += coefficients.last[t] * samples[i + t] + coefficients.last[t + 1] * samples[i + t + 1];
+			}
+			FloatVector x = FloatVector.fromArray(FLOATS, samples, i);
+			x.sub(coefficients.factorPow.fma(FloatVector.broadcast(FLOATS, avg), even.add(odd))).intoArray(samples, i);
+			avg = coefficients.factorPowLanes * avg + next;
+		}
+		for (; i < length; i++) {
+			samples[i] = samples[i] - avg;
+			avg += scale * samples[i];
+		}
+		return avg;
+	}
+
+	@Override
+	public void translateFs4(float[] samples, int length, float hbc) {
+		float[] pattern = new float[LANES];
+		for (int m = 0; m < LANES; m += 4) {
+			pattern[m] = -1;
+			pattern[m + 1] = -hbc;
+			pattern[m + 2] = 1;
+			pattern[m + 3] = hbc;
+		}
+		FloatVector factors = FloatVector.fromArray(FLOATS, pattern, 0);
+		int i = 0;
+		int bound = FLOATS.loopBound(length);
+		for (; i < bound; i += LANES)
+			FloatVector.fromArray(FLOATS, samples, i).mul(factors).intoArray(samples, i);
+		for (; i < length; i += 4) {
+			samples[i] = -samples[i];
+			samples[i + 1] = -samples[i + 1] * hbc;
+			samples[i + 3] = samples[i + 3] * hbc;
+		}
+	}
+
+	@Override
+	public int firInterleaved(float[] samples, int length, float[] kernel, float[] firQueue, int firIndex, int sizeFactor) {
+		int len = kernel.length;
+		int numSamples = length / 2;
+
+		// Collect the history (oldest first; firQueue[firIndex + j] holds the sample from j steps ago)
+		// and the even samples in one array:
+		float[] scratch = firScratch.get();
+		if (scratch.length < len - 1 + numSamples) {
+			scratch = new float[len - 1 + numSamples];
+			firScratch.set(scratch);
+		}
+		for (int j = 1; j < len; j++)
+			scratch[len - 1 - j] = firQueue[firIndex + j];
+		for (int n = 0; n < numSamples; n++)
+			scratch[len - 1 + n] = samples[2 * n];
+
+		// out[n] = sum(j) kernel[j] * scratch[len-1 + n - j]  for LANES consecutive outputs at once:
+		float[] out = new float[LANES];
+		int n = 0;
+		int bound = FLOATS.loopBound(numSamples);
+		for (; n < bound; n += LANES) {
+			FloatVector acc0 = FloatVector.zero(FLOATS);
+			FloatVector acc1 = FloatVector.zero(FLOATS);
+			int j = 0;
+			for (; j < len - 1; j += 2) {
+				acc0 = FloatVector.fromArray(FLOATS, scratch, len - 1 + n - j).fma(FloatVector.broadcast(FLOATS, kernel[j]), acc0);
+				acc1 = FloatVector.fromArray(FLOATS, scratch, len - 2 + n - j).fma(FloatVector.broadcast(FLOATS, kernel[j + 1]), acc1);
+			}
+			for (; j < len; j++)
+				acc0 = FloatVector.fromArray(FLOATS, scratch, len - 1 + n - j).fma(FloatVector.broadcast(FLOATS, kernel[j]), acc0);
+			acc0.add(acc1).intoArray(out, 0);
+			for (int m = 0; m < LANES; m++)
+				samples[2 * (n + m)] = out[m];
+		}
+		for (; n < numSamples; n++) {
+			float acc = 0;
+			for (int j = 0; j < len; j++)
+				acc += kernel[j] * scratch[len - 1 + n - j];
+			samples[2 * n] = acc;
+		}
+
+		// Leave the queue in the same state as the scalar code would (see AirspyKernels.firInterleaved()):
+		int wrapIndex = len * (sizeFactor - 1);
+		if (numSamples <= firIndex)
+			firIndex -= numSamples;
+		else
+			firIndex = wrapIndex - (numSamples - firIndex - 1) % (wrapIndex + 1);
+		for (int j = 1; j < len; j++)
+			firQueue[firIndex + j] = scratch[len - 1 + numSamples - j];
+		return firIndex;
+	}
+}